@@ -70,6 +70,22 @@ public interface CommandLineOptions {
 	File getDirectory();
 	boolean isDirectory();
 	
+	@Option(longName = "target",
+			description = "Java version of compiled MLM class files, from 5 to 8. "
+					+ "The MLMs can only be run on this or a later Java version.",
+			defaultValue = "7")
+	int getTarget();
+	
+	@Option(longName = "invokedynamic",
+			description = "Compile operators to invokedynamic call sites, which are specialized "
+					+ "for the types of their operands. Requires a target of 7 or later.")
+	boolean getInvokedynamic();
+	
+	@Option(shortName = "j",
+			description = "Number of threads used to compile input files. 0 for one thread per processor.",
+			defaultValue = "1")
+	int getJobs();
+	
 	@Option(shortName = "a",
 			description = "Arguments for MLM as Arden Syntax constants.")
 	List<String> getArguments();
@@ -80,6 +96,30 @@ public interface CommandLineOptions {
 	int getPort();
 	boolean isPort();
 
+	@Option(shortName = "w",
+			description = "Number of threads the evoke engine uses to run MLMs. "
+					+ "Different MLMs may run in parallel, calls to the same MLM are run one after another.",
+			defaultValue = "1")
+	int getWorkers();
+
+	@Option(longName = "backlog",
+			description = "Number of waiting calls in the evoke engine, "
+					+ "at which the event server stops reading events until the engine has caught up.",
+			defaultValue = "10000")
+	int getBacklog();
+
+	@Option(longName = "queuesize",
+			description = "Maximum number of waiting calls in the evoke engine. 0 for no limit.",
+			defaultValue = "0")
+	int getQueuesize();
+
+	@Option(longName = "overload",
+			description = "What to do with new events or calls while the evoke engine's queue is full: "
+					+ "block, drop_lowest (drop the waiting call with the lowest urgency), "
+					+ "coalesce (drop duplicate events) or reject.",
+			defaultValue = "block")
+	String getOverload();
+
 	
 	// *** Execution Environment ***
 	@Option(longName = { "classpath", "cp" },
@@ -97,6 +137,45 @@ public interface CommandLineOptions {
 			defaultValue = "stdio")
 	String getEnvironment();
 
+	@Option(longName = "dbpoolsize",
+			description = "Maximum number of open database connections.",
+			defaultValue = "8")
+	int getDbpoolsize();
+
+	@Option(longName = "dbvalidation",
+			description = "SQL statement that checks an idle database connection before it is reused, "
+					+ "e.g. \"select 1\".")
+	String getDbvalidation();
+	boolean isDbvalidation();
+
+	@Option(longName = "dbidletimeout",
+			description = "Seconds after which unused database connections are closed. 0 to keep them open.",
+			defaultValue = "600")
+	int getDbidletimeout();
+
+	@Option(longName = "dbtimeout",
+			description = "Seconds to wait for a free database connection. 0 to wait without limit.",
+			defaultValue = "30")
+	int getDbtimeout();
+
+	@Option(longName = "dbstatementcache",
+			description = "Number of prepared statements kept open per database connection. 0 to not cache them.",
+			defaultValue = "32")
+	int getDbstatementcache();
+
+	@Option(longName = "dbfetchsize",
+			description = "Number of rows fetched from the database at once. 0 to use the default of the driver.",
+			defaultValue = "100")
+	int getDbfetchsize();
+
+	@Option(longName = "dbtimecolumn",
+			description = "Name of the column with the time of each row in the results of database queries. "
+					+ "Results of queries that return this column are sorted by time, the time of each row "
+					+ "becomes the primary time of its values, and time constraints and FIRST, LAST, "
+					+ "EARLIEST and LATEST are evaluated by the database.")
+	String getDbtimecolumn();
+	boolean isDbtimecolumn();
+
 
 	// *** Files ***
 	@Unparsed
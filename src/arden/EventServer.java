@@ -1,38 +1,114 @@
 package arden;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Scanner;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 
+import arden.constants.ConstantParser;
+import arden.constants.ConstantParserException;
+import arden.engine.Call;
+import arden.engine.EvokeEngine;
 import arden.runtime.ArdenDuration;
 import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
 
 /**
  * Listens for events on a Socket. Calls
- * {@link ExecutionContext#callEvent(ArdenEvent)} on the given
- * {@link ExecutionContext}. <br/>
+ * {@link ExecutionContext#call(ArdenEvent, arden.runtime.ArdenValue, double)}
+ * on the given {@link ExecutionContext} for each line. <br/>
  * To send an event to the server (in bash):
- * 
+ *
  * <pre>
  *   <code>echo "Patient admission" > /dev/tcp/127.0.0.1/9701</code>
  * </pre>
+ * <p>
+ * The event name may be followed by tab separated <code>key=value</code>
+ * fields:
+ * </p>
+ * <ul>
+ * <li><code>eventtime</code>: the time of the event as Arden Syntax time
+ * constant. Defaults to the primary time or the current time.</li>
+ * <li><code>primarytime</code>: the primary time as Arden Syntax time
+ * constant. Defaults to the event time.</li>
+ * <li><code>urgency</code>: a number from 1 to 99. Defaults to 50.</li>
+ * <li><code>arguments</code>: comma separated Arden Syntax constants, which
+ * are passed to the MLMs directly evoked by the event (only if an
+ * {@link EvokeEngine} is given).</li>
+ * </ul>
+ * 
+ * <pre>
+ *   <code>printf "Patient admission\teventtime=2015-03-01T10:00:00\turgency=80\n" > /dev/tcp/127.0.0.1/9701</code>
+ * </pre>
+ * <p>
+ * All connections are handled by a single thread via a {@link Selector}, so
+ * there is no limit on the number of connected feeds. Events are parsed
+ * directly from the read buffers and are passed to the context in batches. If
+ * the engines queue holds more than the given number of calls, or if it is
+ * full, the server stops reading from its connections until the engine has
+ * caught up. The server never waits for the engines queue itself.
+ * </p>
  */
 public class EventServer implements Runnable {
-	private static final int MAX_CONNECTIONS = 10;
+	private static final int BUFFER_SIZE = 8 * 1024;
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+	private static final int MAX_BATCH_SIZE = 256;
+	// how often to check the engines queue while reading is paused
+	private static final long PAUSE_MILLIS = 10;
+	private static final int DEFAULT_URGENCY = 50;
+
 	private boolean verbose;
 	private int port;
-	private ExecutorService threadPool = Executors.newFixedThreadPool(MAX_CONNECTIONS);
 	private ExecutionContext context;
+	private EvokeEngine engine;
+	private int maxPendingCalls;
+	private final List<Message> batch = new ArrayList<>();
+	// calls which did not fit into the engines queue yet
+	private final List<Call> pendingCalls = new ArrayList<>();
+	private boolean paused = false;
 
 	public EventServer(ExecutionContext context, boolean verbose, int port) {
+		this(context, null, 0, verbose, port);
+	}
+
+	/** An event with the optional fields of its line. */
+	private static final class Message {
+		final ArdenEvent event;
+		final ArdenValue[] arguments;
+		final int urgency;
+
+		Message(ArdenEvent event, ArdenValue[] arguments, int urgency) {
+			this.event = event;
+			this.arguments = arguments;
+			this.urgency = urgency;
+		}
+	}
+
+	/**
+	 * @param engine
+	 *            the engine whose queue is checked for backpressure and which
+	 *            is called with the events. May be null, then the server
+	 *            never pauses and calls the context.
+	 * @param maxPendingCalls
+	 *            the number of waiting calls in the engines queue, at which
+	 *            the server stops reading events
+	 */
+	public EventServer(ExecutionContext context, EvokeEngine engine, int maxPendingCalls, boolean verbose, int port) {
 		this.verbose = verbose;
 		this.port = port;
 		this.context = context;
+		this.engine = engine;
+		this.maxPendingCalls = maxPendingCalls;
 	}
 
 	public void startServer() {
@@ -47,21 +123,58 @@ public class EventServer implements Runnable {
 		}
 
 		// listen for events in a thread
-		ServerSocket socket = null;
+		Selector selector = null;
+		ServerSocketChannel serverChannel = null;
 		try {
-			socket = new ServerSocket(port);
+			selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(new InetSocketAddress(port));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
 			while (!Thread.currentThread().isInterrupted()) {
-				Socket connection = socket.accept();
-				threadPool.execute(new ClientHandler(connection, context, verbose));
+				if (engine != null) {
+					submitPendingCalls();
+				}
+				updateBackpressure(selector);
+				if (paused) {
+					selector.select(PAUSE_MILLIS);
+				} else {
+					selector.select();
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept(selector, serverChannel);
+					} else if (key.isReadable()) {
+						read(key);
+					}
+				}
+				submitBatch();
 			}
 		} catch (IOException e) {
 			System.err.println("Could not listen for events");
 			e.printStackTrace();
 		} finally {
-			threadPool.shutdownNow();
-			if (socket != null) {
+			if (selector != null) {
+				for (SelectionKey key : selector.keys()) {
+					close(key);
+				}
 				try {
-					socket.close();
+					selector.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if (serverChannel != null) {
+				try {
+					serverChannel.close();
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
@@ -69,36 +182,271 @@ public class EventServer implements Runnable {
 		}
 	}
 
-	private static class ClientHandler implements Runnable {
-		private Socket connection;
-		private ExecutionContext context;
-		private boolean verbose;
+	private void accept(Selector selector, ServerSocketChannel serverChannel) throws IOException {
+		SocketChannel connection = serverChannel.accept();
+		if (connection == null) {
+			return;
+		}
+		connection.configureBlocking(false);
+		int ops = paused ? 0 : SelectionKey.OP_READ;
+		connection.register(selector, ops, ByteBuffer.allocate(BUFFER_SIZE));
+	}
 
-		ClientHandler(Socket connection, ExecutionContext context, boolean verbose) {
-			this.connection = connection;
-			this.context = context;
-			this.verbose = verbose;
+	private void read(SelectionKey key) {
+		SocketChannel connection = (SocketChannel) key.channel();
+		ByteBuffer buffer = (ByteBuffer) key.attachment();
+		int read;
+		try {
+			read = connection.read(buffer);
+		} catch (IOException e) {
+			e.printStackTrace();
+			close(key);
+			return;
 		}
 
-		@Override
-		public void run() {
-			try {
-				InputStream eventStream = connection.getInputStream();
-				Scanner scanner = new Scanner(eventStream);
-				while (scanner.hasNext() && !Thread.currentThread().isInterrupted()) {
-					String eventName = scanner.nextLine();
-					if (verbose) {
-						System.out.println("Received event: " + eventName);
-					}
-					// send event to context
-					ArdenEvent event = new ArdenEvent(eventName, context.getCurrentTime().value);
-					context.call(event, ArdenDuration.ZERO, 50);
-				}
-				scanner.close();
-			} catch (IOException e) {
-				e.printStackTrace();
+		buffer.flip();
+		parseLines(buffer);
+		if (read < 0) {
+			// end of stream, the last line may not end with a newline
+			if (buffer.hasRemaining()) {
+				addEvent(buffer.array(), buffer.position(), buffer.limit());
+			}
+			close(key);
+			return;
+		}
+		buffer.compact();
+
+		if (!buffer.hasRemaining()) {
+			// no newline in the whole buffer -> grow it for long lines
+			if (buffer.capacity() >= MAX_LINE_LENGTH) {
+				System.err.println("Event is longer than " + MAX_LINE_LENGTH + " bytes, closing connection");
+				close(key);
+				return;
+			}
+			ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			larger.put(buffer);
+			key.attach(larger);
+		}
+	}
+
+	/** Adds an event for each complete line and skips them in the buffer. */
+	private void parseLines(ByteBuffer buffer) {
+		byte[] bytes = buffer.array();
+		int start = buffer.position();
+		int end = buffer.limit();
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == '\n') {
+				addEvent(bytes, start, i);
+				start = i + 1;
+			}
+		}
+		buffer.position(start);
+	}
+
+	private void addEvent(byte[] bytes, int start, int end) {
+		if (end > start && bytes[end - 1] == '\r') {
+			end--;
+		}
+		if (end == start) {
+			// ignore empty lines
+			return;
+		}
+		if (verbose) {
+			System.out.println("Received event: " + decode(bytes, start, end));
+		}
+		try {
+			batch.add(parseMessage(bytes, start, end, context.getCurrentTime().value));
+		} catch (ConstantParserException | IllegalArgumentException e) {
+			System.err.println("Skipping malformed event \"" + decode(bytes, start, end) + "\": " + e.getMessage());
+			return;
+		}
+		if (batch.size() >= MAX_BATCH_SIZE) {
+			submitBatch();
+		}
+	}
+
+	/**
+	 * Parses the line between start and end directly from the buffer. Only
+	 * the event name and values, which are parsed as Arden Syntax constants,
+	 * are decoded to strings.
+	 */
+	private static Message parseMessage(byte[] bytes, int start, int end, long currentTime)
+			throws ConstantParserException {
+		int nameEnd = indexOf(bytes, start, end, '\t');
+		String name = decode(bytes, start, nameEnd);
+		Long eventTime = null;
+		Long primaryTime = null;
+		ArdenValue[] arguments = null;
+		int urgency = DEFAULT_URGENCY;
+		int fieldEnd = nameEnd;
+		while (fieldEnd < end) {
+			int fieldStart = fieldEnd + 1;
+			fieldEnd = indexOf(bytes, fieldStart, end, '\t');
+			if (fieldStart == fieldEnd) {
+				// skip empty fields
+				continue;
+			}
+			int separator = indexOf(bytes, fieldStart, fieldEnd, '=');
+			if (separator == fieldEnd) {
+				throw new IllegalArgumentException("Expected key=value instead of \""
+						+ decode(bytes, fieldStart, fieldEnd) + "\"");
+			}
+			int keyStart = skipWhitespace(bytes, fieldStart, separator);
+			int keyEnd = trimWhitespace(bytes, keyStart, separator);
+			int valueStart = skipWhitespace(bytes, separator + 1, fieldEnd);
+			int valueEnd = trimWhitespace(bytes, valueStart, fieldEnd);
+			if (keyEquals(bytes, keyStart, keyEnd, "eventtime")) {
+				eventTime = parseTime(decode(bytes, valueStart, valueEnd));
+			} else if (keyEquals(bytes, keyStart, keyEnd, "primarytime")) {
+				primaryTime = parseTime(decode(bytes, valueStart, valueEnd));
+			} else if (keyEquals(bytes, keyStart, keyEnd, "urgency")) {
+				urgency = parseUrgency(bytes, valueStart, valueEnd);
+			} else if (keyEquals(bytes, keyStart, keyEnd, "arguments")) {
+				arguments = ConstantParser.parseMultiple(decode(bytes, valueStart, valueEnd));
+			} else {
+				throw new IllegalArgumentException("Unknown key \""
+						+ decode(bytes, keyStart, keyEnd).toLowerCase(Locale.ENGLISH) + "\"");
 			}
 		}
+
+		if (eventTime == null) {
+			eventTime = primaryTime != null ? primaryTime : currentTime;
+		}
+		if (primaryTime == null) {
+			primaryTime = eventTime;
+		}
+		ArdenEvent event = new ArdenEvent(name, primaryTime, eventTime);
+		return new Message(event, arguments, urgency);
+	}
+
+	private static String decode(byte[] bytes, int start, int end) {
+		return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	/** @return the index of the first byte c between start and end, or end */
+	private static int indexOf(byte[] bytes, int start, int end, char c) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == c) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	private static int skipWhitespace(byte[] bytes, int start, int end) {
+		while (start < end && (bytes[start] & 0xff) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private static int trimWhitespace(byte[] bytes, int start, int end) {
+		while (end > start && (bytes[end - 1] & 0xff) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	/** Compares the bytes to the lower case ASCII key, ignoring the case. */
+	private static boolean keyEquals(byte[] bytes, int start, int end, String key) {
+		if (end - start != key.length()) {
+			return false;
+		}
+		for (int i = 0; i < key.length(); i++) {
+			int c = bytes[start + i];
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+			if (c != key.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int parseUrgency(byte[] bytes, int start, int end) {
+		if (start == end) {
+			throw new NumberFormatException("Expected a number as urgency");
+		}
+		int urgency = 0;
+		for (int i = start; i < end; i++) {
+			if (bytes[i] < '0' || bytes[i] > '9') {
+				throw new NumberFormatException("Expected a number instead of \"" + decode(bytes, start, end) + "\"");
+			}
+			// larger values are out of range anyway, but must not overflow
+			urgency = Math.min(urgency * 10 + bytes[i] - '0', 100);
+		}
+		if (urgency < 1 || urgency > 99) {
+			throw new IllegalArgumentException("Urgency must be between 1 and 99");
+		}
+		return urgency;
+	}
+
+	private static long parseTime(String value) throws ConstantParserException {
+		ArdenValue time = ConstantParser.parse(value);
+		if (!(time instanceof ArdenTime)) {
+			throw new IllegalArgumentException("Expected a time instead of \"" + value + "\"");
+		}
+		return ((ArdenTime) time).value;
+	}
+
+	private void submitBatch() {
+		if (engine == null) {
+			// send events to context
+			for (Message message : batch) {
+				context.call(message.event, ArdenDuration.ZERO, message.urgency);
+			}
+			batch.clear();
+			return;
+		}
+
+		// send events with their arguments directly to the engine, after the
+		// calls which did not fit into its queue before
+		for (Message message : batch) {
+			pendingCalls.add(engine.createCall(message.event, message.arguments, message.urgency));
+		}
+		batch.clear();
+		submitPendingCalls();
+	}
+
+	/**
+	 * Adds the pending calls to the engines queue without blocking the
+	 * selector thread. Calls which do not fit stay pending and reading is
+	 * paused until they have been added.
+	 */
+	private void submitPendingCalls() {
+		if (pendingCalls.isEmpty()) {
+			return;
+		}
+		int handled = engine.tryCallAll(pendingCalls);
+		pendingCalls.subList(0, handled).clear();
+	}
+
+	private void updateBackpressure(Selector selector) {
+		boolean overloaded = engine != null
+				&& (!pendingCalls.isEmpty() || engine.getQueueSize() >= maxPendingCalls);
+		if (overloaded == paused) {
+			return;
+		}
+		paused = overloaded;
+		if (verbose) {
+			System.out.println(paused ? "Engine is busy, pausing event server" : "Resuming event server");
+		}
+		for (SelectionKey key : selector.keys()) {
+			if (key.isValid() && key.channel() instanceof SocketChannel) {
+				key.interestOps(paused ? 0 : SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 }
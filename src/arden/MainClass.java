@@ -33,6 +33,8 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -40,6 +42,10 @@ import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,6 +59,8 @@ import arden.compiler.Compiler;
 import arden.compiler.CompilerException;
 import arden.constants.ConstantParser;
 import arden.constants.ConstantParserException;
+import arden.engine.CallQueue;
+import arden.engine.CallQueue.OverloadPolicy;
 import arden.engine.EvokeEngine;
 import arden.runtime.ArdenValue;
 import arden.runtime.BaseExecutionContext;
@@ -113,6 +121,11 @@ public class MainClass {
 			printLogo();
 		}
 
+		if (options.getInvokedynamic() && options.getTarget() < 7) {
+			new MainException("--invokedynamic requires a target of 7 or later.").print();
+			return false;
+		}
+
 		if (options.isClasspath()) {
 			extendClasspath();
 		}
@@ -288,19 +301,86 @@ public class MainClass {
 			}
 		}
 
+		List<CompileTask> tasks = new ArrayList<CompileTask>();
 		for (File file : files) {
+			tasks.add(new CompileTask(file, outputDir));
+		}
+
+		int jobs = options.getJobs();
+		if (jobs <= 0) {
+			jobs = Runtime.getRuntime().availableProcessors();
+		}
+		if (jobs == 1 || tasks.size() <= 1) {
+			for (CompileTask task : tasks) {
+				success &= task.call();
+				task.printOutput();
+			}
+			return success;
+		}
+
+		// each task uses its own compiler, so files can be compiled in parallel
+		ForkJoinPool pool = new ForkJoinPool(jobs);
+		try {
+			List<Future<Boolean>> results = pool.invokeAll(tasks);
+			// report in the order of the input files
+			for (int i = 0; i < tasks.size(); i++) {
+				try {
+					success &= results.get(i).get();
+				} catch (ExecutionException e) {
+					System.err.println("Could not compile " + tasks.get(i).file.getPath() + " :");
+					e.getCause().printStackTrace();
+					success = false;
+				}
+				tasks.get(i).printOutput();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			pool.shutdown();
+		}
+		return success;
+	}
+
+	/**
+	 * Compiles a single MLM file and writes the class file. Messages are
+	 * buffered, so they can be printed in the order of the input files.
+	 */
+	private class CompileTask implements Callable<Boolean> {
+		private final File file;
+		private final File outputDir;
+		private final StringWriter outBuffer = new StringWriter();
+		private final StringWriter errBuffer = new StringWriter();
+
+		public CompileTask(File file, File outputDir) {
+			this.file = file;
+			this.outputDir = outputDir;
+		}
+
+		@Override
+		public Boolean call() {
+			PrintWriter out = new PrintWriter(outBuffer);
+			PrintWriter err = new PrintWriter(errBuffer);
+			try {
+				return compile(out, err);
+			} finally {
+				out.flush();
+				err.flush();
+			}
+		}
+
+		private boolean compile(PrintWriter out, PrintWriter err) {
 			// compile
 			CompiledMlm mlm;
 			if (options.getVerbose()) {
-				System.out.println("Compiling " + file.getPath());
+				out.println("Compiling " + file.getPath());
 			}
 			try {
-				mlm = compileMlm(file);
+				mlm = compileMlm(file, options.getTarget(), options.getInvokedynamic());
 			} catch (MainException e) {
-				e.print();
-				success = false;
+				e.print(err);
 				// skip MLM
-				continue;
+				return false;
 			}
 
 			// get output file name
@@ -309,11 +389,11 @@ public class MainClass {
 			if (outputDir != null) {
 				outputFile = new File(outputDir, outName);
 				if (options.getVerbose()) {
-					System.out.println("Saved to " + outputFile.getPath());
+					out.println("Saved to " + outputFile.getPath());
 				}
 			} else {
 				outputFile = new File(file.getParentFile(), outName);
-				System.err.println(
+				err.println(
 						"Warning: File " + file.getPath() + " compiled, but no output directory given. Assuming "
 								+ outputFile.getPath() + " as output file.");
 			}
@@ -325,24 +405,34 @@ public class MainClass {
 				mlm.saveClassFile(bos);
 				bos.close();
 			} catch (IOException e) {
-				System.err.println("Could not write output file " + outputFile.getPath() + " :");
-				e.printStackTrace();
-				success = false;
+				err.println("Could not write output file " + outputFile.getPath() + " :");
+				e.printStackTrace(err);
+				return false;
 			}
+			return true;
 		}
 
-		return success;
+		public void printOutput() {
+			System.out.print(outBuffer);
+			System.err.print(errBuffer);
+		}
 	}
 
 	public boolean runEngine(List<File> files) {
 		List<MedicalLogicModule> mlms;
+		CallQueue queue;
 		try {
 			mlms = getMlmsFromFiles(files);
+			queue = createCallQueue();
 		} catch (MainException e) {
 			e.print();
 			return false;
 		}
 
+		final BaseExecutionContext context = createExecutionContext();
+		final EvokeEngine engine = new EvokeEngine(context, mlms, options.getWorkers(), queue);
+		context.setEngine(engine);
+
 		// Shut down gracefully on SIGINT
 		final Thread engineThread = Thread.currentThread();
 		Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -350,6 +440,11 @@ public class MainClass {
 			public void run() {
 				if (options.getVerbose()) {
 					System.out.println("Shutting down evoke engine.");
+					System.out.println("Call queue: " + engine.getQueueMetrics());
+					if (context instanceof JDBCExecutionContext) {
+						System.out.println("Connection pool: "
+								+ ((JDBCExecutionContext) context).getConnectionPool().getStatistics());
+					}
 				}
 				engineThread.interrupt();
 				try {
@@ -360,13 +455,10 @@ public class MainClass {
 			}
 		});
 
-		BaseExecutionContext context = createExecutionContext();
-		EvokeEngine engine = new EvokeEngine(context, mlms);
-		context.setEngine(engine);
-
 		// start event server
 		if (options.isPort()) {
-			new EventServer(context, options.getVerbose(), options.getPort()).startServer();
+			new EventServer(context, engine, options.getBacklog(), options.getVerbose(), options.getPort())
+					.startServer();
 		}
 
 		// launch engine loop on main thread -> only exits on interrupt
@@ -391,6 +483,20 @@ public class MainClass {
 		return args.toArray(new ArdenValue[args.size()]);
 	}
 
+	private CallQueue createCallQueue() throws MainException {
+		if (options.getQueuesize() < 0) {
+			throw new MainException("The queue size must not be negative.");
+		}
+		int capacity = options.getQueuesize() == 0 ? Integer.MAX_VALUE : options.getQueuesize();
+		OverloadPolicy policy;
+		try {
+			policy = OverloadPolicy.valueOf(options.getOverload().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new MainException("Unknown overload policy: " + options.getOverload());
+		}
+		return new CallQueue(capacity, policy, CallQueue.PRINT_HANDLER);
+	}
+
 	private BaseExecutionContext createExecutionContext() {
 		if (options.getEnvironment().startsWith("jdbc")) {
 			return new JDBCExecutionContext(options);
@@ -418,7 +524,7 @@ public class MainClass {
 				if (options.getVerbose()) {
 					System.out.println("Compiling " + file.getPath() + " ...");
 				}
-				mlms.add(compileMlm(file));
+				mlms.add(compileMlm(file, options.getTarget(), options.getInvokedynamic()));
 			} else {
 				errors.add("File \"" + file.getPath() + "\" is neither .class nor .mlm file. Can't run such a file.");
 			}
@@ -430,10 +536,18 @@ public class MainClass {
 	}
 
 	public static CompiledMlm compileMlm(File file) throws MainException {
+		return compileMlm(file, Compiler.DEFAULT_TARGET_VERSION, false);
+	}
+
+	public static CompiledMlm compileMlm(File file, int targetVersion, boolean invokeDynamic) throws MainException {
 		CompiledMlm mlm;
 		Compiler compiler = new Compiler();
 		compiler.enableDebugging(file.getPath());
+		if (invokeDynamic) {
+			compiler.enableInvokeDynamic();
+		}
 		try {
+			compiler.setTargetVersion(targetVersion);
 			mlm = compiler.compileMlm(new FileReader(file.getPath()));
 		} catch (CompilerException e) {
 			throw new MainException("Could not compile " + file.getPath(), e);
@@ -441,6 +555,8 @@ public class MainClass {
 			throw new MainException("File not found: " + file.getPath());
 		} catch (IOException e) {
 			throw new MainException("Could not read " + file.getPath(), e);
+		} catch (IllegalArgumentException e) {
+			throw new MainException(e.getMessage());
 		}
 		return mlm;
 	}
@@ -526,6 +642,13 @@ public class MainClass {
 				printStackTrace();
 			}
 		}
+
+		public void print(PrintWriter err) {
+			err.println(getMessage());
+			if (getCause() != null) {
+				printStackTrace(err);
+			}
+		}
 	}
 
 }
@@ -42,19 +42,50 @@ import java.util.List;
  * @author Daniel Grunwald
  */
 public final class ClassFileWriter {
+	/** Major version of Java 5 class files, the oldest supported version */
+	public static final int JAVA_5 = 49;
+	/** Major version of Java 6 class files, the first with stack map frames */
+	public static final int JAVA_6 = 50;
+	/** Major version of Java 7 class files, which are written by default */
+	public static final int JAVA_7 = 51;
+	/** Major version of Java 8 class files, the newest supported version */
+	public static final int JAVA_8 = 52;
+
 	private ConstantPool pool = new ConstantPool();
 
+	private final String className;
+	private final Class<?> superClass;
 	private int this_class;
 	private int super_class;
+	private int majorVersion = JAVA_7;
 
 	/** Creates a new ClassFileWriter for writing the specified class */
 	public ClassFileWriter(String className, Class<?> superClass) {
 		if (className == null)
 			throw new IllegalArgumentException();
-		this_class = pool.getClassByJavaName(className.replace('.', '/'));
+		this.className = className.replace('.', '/');
+		this.superClass = superClass;
+		this_class = pool.getClassByJavaName(this.className);
 		super_class = pool.getClass(superClass);
 	}
 
+	/**
+	 * Sets the major version of the class file, e.g. 51 for Java 7. Stack
+	 * map frames are written for version 50 (Java 6) and above.
+	 */
+	public void setMajorVersion(int majorVersion) {
+		if (majorVersion < JAVA_5)
+			throw new IllegalArgumentException("Class file versions before Java 5 are not supported");
+		if (majorVersion > JAVA_8)
+			throw new IllegalArgumentException("Class file versions after Java 8 are not supported");
+		this.majorVersion = majorVersion;
+	}
+
+	/** Gets the major version of the class file */
+	public int getMajorVersion() {
+		return majorVersion;
+	}
+
 	private String sourceFileName;
 
 	/** Sets the source file name used for the debugger */
@@ -117,21 +148,37 @@ public final class ClassFileWriter {
 		int descriptor_index;
 		MethodWriter writer;
 		AttributeInfo codeAttribute;
+		boolean isInstanceMethod;
+		boolean isConstructor;
+		Class<?>[] parameters;
 
 		MethodInfo(String name, int modifiers, Class<?>[] parameters, Class<?> returnType) {
-			writer = new MethodWriter(pool, (modifiers & Modifier.STATIC) != Modifier.STATIC, parameters.length);
+			isInstanceMethod = (modifiers & Modifier.STATIC) != Modifier.STATIC;
+			isConstructor = name.equals(JAVA_CONSTRUCTOR_NAME);
+			this.parameters = parameters.clone();
+			writer = new MethodWriter(pool, isInstanceMethod, parameters.length);
 			access_flags = (short) modifiers;
 			name_index = pool.getUtf8(name);
 			descriptor_index = pool.getUtf8(ConstantPool.createMethodDescriptor(parameters, returnType));
 			codeAttribute = new AttributeInfo("Code");
 		}
 
+		/** Creates the code attribute, which may add constants to the pool */
+		void createCodeAttribute() {
+			if (codeAttribute.data != null)
+				return;
+			if (majorVersion >= JAVA_6) {
+				writer.enableStackMapTable(new StackMapTable(pool, className, superClass, isInstanceMethod,
+						isConstructor, parameters));
+			}
+			codeAttribute.data = writer.getCodeAttributeData();
+		}
+
 		void save(DataOutput output) throws IOException {
 			output.writeShort(access_flags);
 			output.writeShort(name_index);
 			output.writeShort(descriptor_index);
 			output.writeShort(1); // attributes_count
-			codeAttribute.data = writer.getCodeAttributeData();
 			codeAttribute.save(output);
 		}
 	}
@@ -154,6 +201,15 @@ public final class ClassFileWriter {
 		return createMethod(JAVA_CONSTRUCTOR_NAME, modifiers, parameters, Void.TYPE);
 	}
 
+	/** Gets a reference to a constructor of the class, e.g. to create instances of it */
+	public ConstructorReference getConstructorReference(Class<?>[] parameters) {
+		int stackSize = 0;
+		for (Class<?> parameter : parameters) {
+			stackSize += (parameter == Long.TYPE || parameter == Double.TYPE) ? 2 : 1;
+		}
+		return new ConstructorReference(this_class, pool.createConstructorref(this_class, parameters), stackSize);
+	}
+
 	public MethodWriter createStaticInitializer() {
 		return createMethod(JAVA_STATIC_INITIALIZER_NAME, Modifier.PUBLIC | Modifier.STATIC, new Class<?>[0], Void.TYPE);
 	}
@@ -172,6 +228,16 @@ public final class ClassFileWriter {
 	public void save(DataOutput output) throws IOException {
 		ArrayList<AttributeInfo> attributes = new ArrayList<AttributeInfo>();
 		// attributes must be created before constant pool is saved
+		for (MethodInfo info : methods)
+			info.createCodeAttribute();
+		byte[] bootstrapMethods = pool.getBootstrapMethodsData();
+		if (bootstrapMethods != null) {
+			if (majorVersion < JAVA_7)
+				throw new IllegalStateException("invokedynamic requires a Java 7 class file");
+			AttributeInfo bootstrapMethodsAttribute = new AttributeInfo("BootstrapMethods");
+			bootstrapMethodsAttribute.data = bootstrapMethods;
+			attributes.add(bootstrapMethodsAttribute);
+		}
 		if (sourceFileName != null) {
 			AttributeInfo sourceFile = new AttributeInfo("SourceFile");
 			ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
@@ -185,7 +251,7 @@ public final class ClassFileWriter {
 		// Write the class file
 		output.writeInt(0xCAFEBABE); // magic
 		output.writeShort(0x00); // minor_version
-		output.writeShort(0x32); // major_version
+		output.writeShort(majorVersion); // major_version
 		pool.save(output);
 		output.writeShort(0x0021); // ACC_SUPER | ACC_PUBLIC
 		output.writeShort(this_class);
@@ -35,7 +35,10 @@ import java.io.UTFDataFormatException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Represents the constant pool inside a Java class file.
@@ -54,6 +57,10 @@ public final class ConstantPool {
 	static final byte CONSTANT_Double = 6;
 	static final byte CONSTANT_NameAndType = 12;
 	static final byte CONSTANT_Utf8 = 1;
+	static final byte CONSTANT_MethodHandle = 15;
+	static final byte CONSTANT_InvokeDynamic = 18;
+
+	static final byte REF_invokeStatic = 6;
 
 	static final String JAVA_CONSTRUCTOR_NAME = "<init>";
 
@@ -67,6 +74,12 @@ public final class ConstantPool {
 	private HashMap<Method, Integer> methodref_map = new HashMap<Method, Integer>();
 	private HashMap<NameTypePair, Integer> nameAndType_map = new HashMap<NameTypePair, Integer>();
 	private HashMap<Constructor<?>, Integer> constructor_map = new HashMap<Constructor<?>, Integer>();
+	private HashMap<Method, Integer> methodHandle_map = new HashMap<Method, Integer>();
+	private HashMap<Long, Integer> invokeDynamic_map = new HashMap<Long, Integer>();
+	/** MethodHandle-entries of the bootstrap methods used by InvokeDynamic-entries */
+	private List<Integer> bootstrapMethods = new ArrayList<Integer>();
+	/** Types of the entries, as needed for computing stack map frames */
+	private HashMap<Integer, String> types = new HashMap<Integer, String>();
 	private int elementNumber = 0;
 	private ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
 	private DataOutputStream data = new DataOutputStream(byteOutputStream);
@@ -90,6 +103,18 @@ public final class ConstantPool {
 		return index;
 	}
 
+	/**
+	 * Gets the type of an entry: the internal name for Class-entries, the
+	 * descriptor for Fieldref- and Methodref-entries and the field descriptor
+	 * of the value for constants.
+	 */
+	String getType(int index) {
+		String type = types.get(index);
+		if (type == null)
+			throw new IllegalArgumentException("No type known for constant pool entry " + index);
+		return type;
+	}
+
 	/** Saves the ConstantPool into a .class-file */
 	public void save(DataOutput output) throws IOException {
 		data.flush(); // ensure the DataOutputStream writes everything to the
@@ -110,6 +135,7 @@ public final class ConstantPool {
 			return integer_map.get(value);
 		int index = getNextIndex();
 		integer_map.put(value, index);
+		types.put(index, "I");
 		try {
 			data.writeByte(CONSTANT_Integer);
 			data.writeInt(value);
@@ -131,6 +157,7 @@ public final class ConstantPool {
 			return double_map.get(value);
 		int index = getNextDoubleIndex();
 		double_map.put(value, index);
+		types.put(index, "D");
 		try {
 			data.writeByte(CONSTANT_Double);
 			data.writeDouble(value);
@@ -152,6 +179,7 @@ public final class ConstantPool {
 			return long_map.get(value);
 		int index = getNextDoubleIndex();
 		long_map.put(value, index);
+		types.put(index, "J");
 		try {
 			data.writeByte(CONSTANT_Long);
 			data.writeLong(value);
@@ -198,6 +226,7 @@ public final class ConstantPool {
 		int utf8 = getUtf8(text);
 		int index = getNextIndex();
 		string_map.put(text, index);
+		types.put(index, "Ljava/lang/String;");
 		try {
 			data.writeByte(CONSTANT_String);
 			data.writeShort(utf8);
@@ -262,6 +291,7 @@ public final class ConstantPool {
 		int utf8 = getUtf8(internalJavaName);
 		int index = getNextIndex();
 		class_map.put(internalJavaName, index);
+		types.put(index, internalJavaName);
 		try {
 			data.writeByte(CONSTANT_Class);
 			data.writeShort(utf8);
@@ -292,6 +322,7 @@ public final class ConstantPool {
 	public FieldReference createFieldref(int declaringClass, String name, Class<?> type) {
 		int natRef = getNameAndType(name, createFieldDescriptor(type));
 		int index = getNextIndex();
+		types.put(index, createFieldDescriptor(type));
 		try {
 			data.writeByte(CONSTANT_Fieldref);
 			data.writeShort(declaringClass);
@@ -349,6 +380,7 @@ public final class ConstantPool {
 				.getReturnType()));
 		int index = getNextIndex();
 		methodref_map.put(method, index);
+		types.put(index, createMethodDescriptor(method.getParameterTypes(), method.getReturnType()));
 		try {
 			data.writeByte(CONSTANT_Methodref);
 			data.writeShort(classRef);
@@ -387,6 +419,7 @@ public final class ConstantPool {
 		int natRef = getNameAndType(JAVA_CONSTRUCTOR_NAME, createMethodDescriptor(ctor.getParameterTypes(), Void.TYPE));
 		int index = getNextIndex();
 		constructor_map.put(ctor, index);
+		types.put(index, createMethodDescriptor(ctor.getParameterTypes(), Void.TYPE));
 		try {
 			data.writeByte(CONSTANT_Methodref);
 			data.writeShort(classRef);
@@ -397,6 +430,116 @@ public final class ConstantPool {
 		return index;
 	}
 
+	/**
+	 * Creates a new Method-entry for a constructor of a class, which is not
+	 * loaded (e.g. the class being written).
+	 * 
+	 * @param declaringClass
+	 *            Index of the Class-entry
+	 * @param parameters
+	 *            The parameter types of the constructor
+	 * @return Index of the entry
+	 */
+	public int createConstructorref(int declaringClass, Class<?>[] parameters) {
+		int natRef = getNameAndType(JAVA_CONSTRUCTOR_NAME, createMethodDescriptor(parameters, Void.TYPE));
+		int index = getNextIndex();
+		types.put(index, createMethodDescriptor(parameters, Void.TYPE));
+		try {
+			data.writeByte(CONSTANT_Methodref);
+			data.writeShort(declaringClass);
+			data.writeShort(natRef);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return index;
+	}
+
+	/**
+	 * Finds an existing MethodHandle-entry for a static method or creates a
+	 * new entry.
+	 * 
+	 * @param method
+	 *            The target method.
+	 * @return Index of the MethodHandle-entry.
+	 */
+	public int getMethodHandle(Method method) {
+		if (method == null || !Modifier.isStatic(method.getModifiers()))
+			throw new IllegalArgumentException("Expected static method");
+		if (methodHandle_map.containsKey(method))
+			return methodHandle_map.get(method);
+		int methodRef = getMethodref(method);
+		int index = getNextIndex();
+		methodHandle_map.put(method, index);
+		try {
+			data.writeByte(CONSTANT_MethodHandle);
+			data.writeByte(REF_invokeStatic);
+			data.writeShort(methodRef);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return index;
+	}
+
+	/**
+	 * Finds an existing InvokeDynamic-entry or creates a new entry.
+	 * 
+	 * @param bootstrap
+	 *            The static bootstrap method, which links the call sites.
+	 * @param name
+	 *            The name passed to the bootstrap method
+	 * @param parameters
+	 *            The parameter types of the call site
+	 * @param returnType
+	 *            The return type of the call site
+	 * @return Index of the entry
+	 */
+	public int getInvokeDynamic(Method bootstrap, String name, Class<?>[] parameters, Class<?> returnType) {
+		int methodHandle = getMethodHandle(bootstrap);
+		int bootstrapIndex = bootstrapMethods.indexOf(methodHandle);
+		if (bootstrapIndex < 0) {
+			bootstrapIndex = bootstrapMethods.size();
+			bootstrapMethods.add(methodHandle);
+		}
+		String descriptor = createMethodDescriptor(parameters, returnType);
+		int natRef = getNameAndType(name, descriptor);
+		Long key = ((long) bootstrapIndex << 32) | natRef;
+		if (invokeDynamic_map.containsKey(key))
+			return invokeDynamic_map.get(key);
+		int index = getNextIndex();
+		invokeDynamic_map.put(key, index);
+		types.put(index, descriptor);
+		try {
+			data.writeByte(CONSTANT_InvokeDynamic);
+			data.writeShort(bootstrapIndex);
+			data.writeShort(natRef);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the contents of the BootstrapMethods attribute, or null if there
+	 * are no InvokeDynamic-entries.
+	 */
+	byte[] getBootstrapMethodsData() {
+		if (bootstrapMethods.isEmpty())
+			return null;
+		ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(byteOutputStream);
+		try {
+			data.writeShort(bootstrapMethods.size());
+			for (int methodHandle : bootstrapMethods) {
+				data.writeShort(methodHandle);
+				data.writeShort(0); // num_bootstrap_arguments
+			}
+			data.flush();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return byteOutputStream.toByteArray();
+	}
+
 	/**
 	 * Finds an existing NameAndType-entry or creates a new entry.
 	 * 
@@ -4,6 +4,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 final class ExceptionTable {
 	private final ConstantPool pool;
@@ -21,6 +22,10 @@ final class ExceptionTable {
 		ranges.add(new ExceptionRange(pool.getClass(exception), start, end, handlerBegin));
 	}
 	
+	List<ExceptionRange> getRanges() {
+		return ranges;
+	}
+
 	public byte[] getData() {
 		try {
 			ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -56,6 +56,9 @@ public final class MethodWriter {
 	/** Table of local variables (for use by debuggers) */
 	private LocalVariableTable localVariableTable;
 
+	/** Stack map frames for the type checking verifier */
+	private StackMapTable stackMapTable;
+
 	/** OutputStream: all byte code is written here */
 	private final ByteArrayOutputStream byteCodeOutputStream = new ByteArrayOutputStream();
 
@@ -273,11 +276,16 @@ public final class MethodWriter {
 			} else {
 				data.write(exceptionTable.getData());
 			}
+			byte[] stackMap = null;
+			if (stackMapTable != null)
+				stackMap = stackMapTable.getData(code, numLocals, exceptionTable);
 			int attributesCount = 0;
 			if (lineNumberTable != null)
 				attributesCount++;
 			if (localVariableTable != null)
 				attributesCount++;
+			if (stackMap != null)
+				attributesCount++;
 			data.writeShort(attributesCount); // attributes_count
 			if (lineNumberTable != null) {
 				data.writeShort(lineNumberTable.attributeNameIndex);
@@ -291,6 +299,11 @@ public final class MethodWriter {
 				data.writeInt(table.length);
 				data.write(table);
 			}
+			if (stackMap != null) {
+				data.writeShort(stackMapTable.attributeNameIndex);
+				data.writeInt(stackMap.length);
+				data.write(stackMap);
+			}
 			data.flush();
 			return byteOutputStream.toByteArray();
 		} catch (IOException ex) {
@@ -308,6 +321,14 @@ public final class MethodWriter {
 		localVariableTable = new LocalVariableTable(pool);
 	}
 
+	/**
+	 * Enables the StackMapTable, which is required for class files of version
+	 * 50 and above.
+	 */
+	void enableStackMapTable(StackMapTable stackMapTable) {
+		this.stackMapTable = stackMapTable;
+	}
+
 	/**
 	 * Defines a new local variable. This is not necessary for using variables;
 	 * calling defineLocalVariable just provides additional information about
@@ -640,6 +661,56 @@ public final class MethodWriter {
 		emit(95); // swap
 	}
 
+	/**
+	 * Adds the top two double values on the stack.
+	 *
+	 * Stack: .., x, y => .., x + y
+	 */
+	public void addDouble() {
+		poppush(4, 2);
+		emit(99); // dadd
+	}
+
+	/**
+	 * Subtracts the top two double values on the stack.
+	 *
+	 * Stack: .., x, y => .., x - y
+	 */
+	public void subtractDouble() {
+		poppush(4, 2);
+		emit(103); // dsub
+	}
+
+	/**
+	 * Multiplies the top two double values on the stack.
+	 *
+	 * Stack: .., x, y => .., x * y
+	 */
+	public void multiplyDouble() {
+		poppush(4, 2);
+		emit(107); // dmul
+	}
+
+	/**
+	 * Divides the top two double values on the stack.
+	 *
+	 * Stack: .., x, y => .., x / y
+	 */
+	public void divideDouble() {
+		poppush(4, 2);
+		emit(111); // ddiv
+	}
+
+	/**
+	 * Negates the double value on top of the stack.
+	 *
+	 * Stack: .., x => .., -x
+	 */
+	public void negateDouble() {
+		poppush(2, 2);
+		emit(119); // dneg
+	}
+
 	private void emitJump(int opcode, Label label) {
 		int basePosition = getCurrentPosition();
 		emit(opcode);
@@ -1025,6 +1096,19 @@ public final class MethodWriter {
 		emitUInt16(pool.getMethodref(method));
 	}
 
+	/**
+	 * Calls a dynamic call site, which is linked by the static bootstrap
+	 * method on its first invocation (requires a Java 7 class file).
+	 * 
+	 * Stack: ..[, parameter1, parameter2] => ..[, returnval]
+	 */
+	public void invokeDynamic(Method bootstrap, String name, Class<?>[] parameters, Class<?> returnType) {
+		poppush(getStackSize(parameters), getStackSize(returnType));
+		emit(186); // invokedynamic
+		emitUInt16(pool.getInvokeDynamic(bootstrap, name, parameters, returnType));
+		emitUInt16(0);
+	}
+
 	private boolean isStatic(Member member) {
 		return (member.getModifiers() & Modifier.STATIC) == Modifier.STATIC;
 	}
@@ -1040,6 +1124,18 @@ public final class MethodWriter {
 		emitUInt16(pool.getClass(type));
 	}
 
+	/**
+	 * Creates a new object of the class being written without calling any
+	 * constructor.
+	 * 
+	 * Stack: .. => .., objectref
+	 */
+	public void newObject(ConstructorReference ctor) {
+		poppush(0, 1);
+		emit(187); // new
+		emitUInt16(ctor.classIndex);
+	}
+
 	/**
 	 * Calls the constructor of an object.
 	 * 
@@ -1051,6 +1147,17 @@ public final class MethodWriter {
 		emitUInt16(pool.getConstructor(ctor));
 	}
 
+	/**
+	 * Calls a constructor of the class being written.
+	 * 
+	 * Stack: .., objectref, parameters => ..
+	 */
+	public void invokeConstructor(ConstructorReference ctor) {
+		poppush(1 + ctor.parameterStackSize, 0);
+		emit(183); // invokespecial
+		emitUInt16(ctor.methodIndex);
+	}
+
 	/**
 	 * Creates a new array.
 	 * 
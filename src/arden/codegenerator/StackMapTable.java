@@ -0,0 +1,860 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.codegenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the stack map frames of a method, which are needed by the type
+ * checking verifier for class files of version 50 and above.
+ *
+ * The frames are inferred from the finished byte code by a data-flow analysis
+ * (like the old type inferencing verifier does), so the MethodWriter does not
+ * have to track the types of locals and stack entries while emitting code.
+ */
+final class StackMapTable {
+	private static final String OBJECT_CLASS = "java/lang/Object";
+
+	final int attributeNameIndex;
+	private final ConstantPool pool;
+	private final String thisClass;
+	private final Class<?> superClass;
+	private final boolean isInstanceMethod;
+	private final boolean isConstructor;
+	private final Class<?>[] parameters;
+
+	private byte[] code;
+	/** Frames at the start of basic blocks, null if not yet reached */
+	private Frame[] frames;
+	private boolean[] needsFrame;
+	private final ArrayDeque<Integer> worklist = new ArrayDeque<Integer>();
+	private final ArrayList<Handler> handlers = new ArrayList<Handler>();
+
+	/** A verification type. The kind is the tag used in the class file. */
+	static final class Type {
+		static final int ITEM_TOP = 0;
+		static final int ITEM_INTEGER = 1;
+		static final int ITEM_FLOAT = 2;
+		static final int ITEM_DOUBLE = 3;
+		static final int ITEM_LONG = 4;
+		static final int ITEM_NULL = 5;
+		static final int ITEM_UNINITIALIZED_THIS = 6;
+		static final int ITEM_OBJECT = 7;
+		static final int ITEM_UNINITIALIZED = 8;
+
+		static final Type TOP = new Type(ITEM_TOP, null, 0);
+		static final Type INTEGER = new Type(ITEM_INTEGER, null, 0);
+		static final Type FLOAT = new Type(ITEM_FLOAT, null, 0);
+		static final Type DOUBLE = new Type(ITEM_DOUBLE, null, 0);
+		static final Type LONG = new Type(ITEM_LONG, null, 0);
+		static final Type NULL = new Type(ITEM_NULL, null, 0);
+		static final Type UNINITIALIZED_THIS = new Type(ITEM_UNINITIALIZED_THIS, null, 0);
+
+		final int kind;
+		/** Internal class name of object types */
+		final String name;
+		/** Offset of the 'new' instruction of uninitialized types */
+		final int offset;
+
+		private Type(int kind, String name, int offset) {
+			this.kind = kind;
+			this.name = name;
+			this.offset = offset;
+		}
+
+		static Type object(String internalName) {
+			return new Type(ITEM_OBJECT, internalName, 0);
+		}
+
+		static Type uninitialized(int offset) {
+			return new Type(ITEM_UNINITIALIZED, null, offset);
+		}
+
+		/** Gets the type for the field descriptor starting at the index. */
+		static Type fromDescriptor(String descriptor, int index) {
+			switch (descriptor.charAt(index)) {
+			case 'Z':
+			case 'B':
+			case 'C':
+			case 'S':
+			case 'I':
+				return INTEGER;
+			case 'F':
+				return FLOAT;
+			case 'J':
+				return LONG;
+			case 'D':
+				return DOUBLE;
+			case 'V':
+				return null;
+			case 'L':
+				return object(descriptor.substring(index + 1, descriptor.indexOf(';', index)));
+			case '[':
+				return object(descriptor.substring(index, getDescriptorEnd(descriptor, index)));
+			default:
+				throw new IllegalArgumentException("Invalid descriptor: " + descriptor);
+			}
+		}
+
+		boolean isTwoWords() {
+			return kind == ITEM_DOUBLE || kind == ITEM_LONG;
+		}
+
+		boolean isReference() {
+			return kind == ITEM_OBJECT || kind == ITEM_NULL;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Type))
+				return false;
+			Type t = (Type) o;
+			return kind == t.kind && offset == t.offset && (name == null ? t.name == null : name.equals(t.name));
+		}
+
+		@Override
+		public int hashCode() {
+			return kind * 31 + offset + (name == null ? 0 : name.hashCode());
+		}
+	}
+
+	/** Types of the local variables and the stack entries at a position */
+	private static final class Frame {
+		final Type[] locals;
+		/** Stack entries, long and double values use a single entry */
+		final ArrayList<Type> stack;
+
+		Frame(Type[] locals, ArrayList<Type> stack) {
+			this.locals = locals;
+			this.stack = stack;
+		}
+
+		Frame copy() {
+			return new Frame(locals.clone(), new ArrayList<Type>(stack));
+		}
+
+		void push(Type type) {
+			stack.add(type);
+		}
+
+		Type pop() {
+			if (stack.isEmpty())
+				throw new IllegalStateException("Stack underflow.");
+			return stack.remove(stack.size() - 1);
+		}
+
+		void pop(int count) {
+			for (int i = 0; i < count; i++)
+				pop();
+		}
+
+		Type peek() {
+			return stack.get(stack.size() - 1);
+		}
+
+		void setLocal(int index, Type type) {
+			if (index > 0 && locals[index - 1].isTwoWords())
+				locals[index - 1] = Type.TOP;
+			locals[index] = type;
+			if (type.isTwoWords())
+				locals[index + 1] = Type.TOP;
+		}
+
+		/** Replaces the uninitialized type after its constructor was called. */
+		void initialize(Type uninitialized, Type initialized) {
+			for (int i = 0; i < locals.length; i++) {
+				if (locals[i].equals(uninitialized))
+					locals[i] = initialized;
+			}
+			for (int i = 0; i < stack.size(); i++) {
+				if (stack.get(i).equals(uninitialized))
+					stack.set(i, initialized);
+			}
+		}
+	}
+
+	/** An exception handler and the range of code it covers */
+	private static final class Handler {
+		final int start, end, handler;
+		final Type exceptionType;
+
+		Handler(int start, int end, int handler, Type exceptionType) {
+			this.start = start;
+			this.end = end;
+			this.handler = handler;
+			this.exceptionType = exceptionType;
+		}
+	}
+
+	/**
+	 * @param thisClass
+	 *            Internal name of the class being written
+	 * @param superClass
+	 *            Super class of the class being written, used to merge types
+	 */
+	public StackMapTable(ConstantPool pool, String thisClass, Class<?> superClass, boolean isInstanceMethod,
+			boolean isConstructor, Class<?>[] parameters) {
+		this.pool = pool;
+		this.thisClass = thisClass;
+		this.superClass = superClass;
+		this.isInstanceMethod = isInstanceMethod;
+		this.isConstructor = isConstructor;
+		this.parameters = parameters;
+		attributeNameIndex = pool.getUtf8("StackMapTable");
+	}
+
+	/**
+	 * Computes the frames for the code and returns the content of the
+	 * StackMapTable attribute, or null if the code needs no frames.
+	 */
+	public byte[] getData(byte[] code, int maxLocals, ExceptionTable exceptionTable) {
+		this.code = code;
+		frames = new Frame[code.length];
+		needsFrame = new boolean[code.length];
+
+		if (exceptionTable != null) {
+			for (ExceptionTable.ExceptionRange range : exceptionTable.getRanges()) {
+				Type exceptionType = Type.object(pool.getType(range.catchType));
+				handlers.add(new Handler(range.start.markedPosition, range.end.markedPosition,
+						range.handlerBegin.markedPosition, exceptionType));
+			}
+		}
+
+		Frame initialFrame = createInitialFrame(maxLocals);
+		if (code.length > 0) {
+			findBasicBlocks();
+			frames[0] = initialFrame.copy();
+			worklist.add(0);
+			analyze();
+		}
+
+		try {
+			return writeFrames(initialFrame);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private Frame createInitialFrame(int maxLocals) {
+		ArrayList<Type> locals = new ArrayList<Type>();
+		if (isInstanceMethod)
+			locals.add(isConstructor ? Type.UNINITIALIZED_THIS : Type.object(thisClass));
+		for (Class<?> parameter : parameters) {
+			Type type = Type.fromDescriptor(ConstantPool.createFieldDescriptor(parameter), 0);
+			locals.add(type);
+			if (type.isTwoWords())
+				locals.add(Type.TOP);
+		}
+		Type[] localArray = new Type[Math.max(maxLocals, locals.size())];
+		Arrays.fill(localArray, Type.TOP);
+		for (int i = 0; i < locals.size(); i++)
+			localArray[i] = locals.get(i);
+		return new Frame(localArray, new ArrayList<Type>());
+	}
+
+	/** Finds the positions, which need a frame: jump targets and handlers. */
+	private void findBasicBlocks() {
+		for (Handler handler : handlers)
+			needsFrame[handler.handler] = true;
+		int pc = 0;
+		while (pc < code.length) {
+			int opcode = code[pc] & 0xff;
+			int next = pc + getInstructionLength(pc);
+			if ((opcode >= 153 && opcode <= 167) || opcode == 198 || opcode == 199) {
+				needsFrame[pc + readInt16(pc + 1)] = true;
+			} else if (opcode == 170 || opcode == 171) {
+				for (int target : getSwitchTargets(pc))
+					needsFrame[target] = true;
+			}
+			if (next < code.length && isUnconditional(opcode))
+				needsFrame[next] = true;
+			pc = next;
+		}
+	}
+
+	private static boolean isUnconditional(int opcode) {
+		return opcode == 167 || opcode == 170 || opcode == 171 || (opcode >= 172 && opcode <= 177) || opcode == 191;
+	}
+
+	private void analyze() {
+		while (!worklist.isEmpty()) {
+			int pc = worklist.poll();
+			Frame frame = frames[pc].copy();
+			while (true) {
+				for (Handler handler : handlers) {
+					if (pc >= handler.start && pc < handler.end) {
+						ArrayList<Type> stack = new ArrayList<Type>();
+						stack.add(handler.exceptionType);
+						merge(handler.handler, new Frame(frame.locals.clone(), stack));
+					}
+				}
+				int next = execute(pc, frame);
+				if (next < 0)
+					break;
+				if (needsFrame[next]) {
+					merge(next, frame);
+					break;
+				}
+				pc = next;
+			}
+		}
+		for (int pc = 0; pc < code.length; pc++) {
+			if (needsFrame[pc] && frames[pc] == null)
+				throw new IllegalStateException("Unreachable code at position " + pc);
+		}
+	}
+
+	/** Merges the frame into the frame at the target position. */
+	private void merge(int target, Frame frame) {
+		Frame old = frames[target];
+		if (old == null) {
+			frames[target] = frame.copy();
+			worklist.add(target);
+			return;
+		}
+		if (old.stack.size() != frame.stack.size())
+			throw new IllegalStateException("All paths reaching position " + target
+					+ " must result in the same stack size.");
+		boolean changed = false;
+		for (int i = 0; i < old.locals.length; i++) {
+			Type merged = mergeTypes(old.locals[i], frame.locals[i]);
+			if (!merged.equals(old.locals[i])) {
+				old.locals[i] = merged;
+				changed = true;
+			}
+		}
+		for (int i = 0; i < old.stack.size(); i++) {
+			Type merged = mergeTypes(old.stack.get(i), frame.stack.get(i));
+			if (merged == Type.TOP)
+				throw new IllegalStateException("Incompatible stack entries at position " + target);
+			if (!merged.equals(old.stack.get(i))) {
+				old.stack.set(i, merged);
+				changed = true;
+			}
+		}
+		if (changed && !worklist.contains(target))
+			worklist.add(target);
+	}
+
+	private Type mergeTypes(Type a, Type b) {
+		if (a.equals(b))
+			return a;
+		if (!a.isReference() || !b.isReference())
+			return Type.TOP;
+		if (a.kind == Type.ITEM_NULL)
+			return b;
+		if (b.kind == Type.ITEM_NULL)
+			return a;
+		return Type.object(getCommonSuperClass(a.name, b.name));
+	}
+
+	private String getCommonSuperClass(String a, String b) {
+		if (a.equals(b))
+			return a;
+		if (a.startsWith("[") || b.startsWith("[")) {
+			if (a.startsWith("[") && b.startsWith("[")) {
+				Type elementA = Type.fromDescriptor(a, 1);
+				Type elementB = Type.fromDescriptor(b, 1);
+				if (elementA.kind == Type.ITEM_OBJECT && elementB.kind == Type.ITEM_OBJECT)
+					return "[" + getDescriptor(getCommonSuperClass(elementA.name, elementB.name));
+			}
+			return OBJECT_CLASS;
+		}
+		// interfaces are treated like Object by the verifier
+		List<String> superClassesOfB = getSuperClasses(b);
+		for (String superClassOfA : getSuperClasses(a)) {
+			if (superClassesOfB.contains(superClassOfA))
+				return superClassOfA;
+		}
+		return OBJECT_CLASS;
+	}
+
+	private List<String> getSuperClasses(String internalName) {
+		ArrayList<String> result = new ArrayList<String>();
+		Class<?> c;
+		if (internalName.equals(thisClass)) {
+			result.add(thisClass);
+			c = superClass;
+		} else {
+			try {
+				c = Class.forName(internalName.replace('/', '.'), false, StackMapTable.class.getClassLoader());
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException("Cannot merge types: class " + internalName + " not found", e);
+			}
+		}
+		for (; c != null; c = c.getSuperclass())
+			result.add(ConstantPool.getInternalJavaName(c));
+		if (!result.contains(OBJECT_CLASS))
+			result.add(OBJECT_CLASS);
+		return result;
+	}
+
+	private static String getDescriptor(String internalName) {
+		return internalName.startsWith("[") ? internalName : "L" + internalName + ";";
+	}
+
+	/** Gets the index after the field descriptor starting at the index. */
+	private static int getDescriptorEnd(String descriptor, int index) {
+		while (descriptor.charAt(index) == '[')
+			index++;
+		if (descriptor.charAt(index) == 'L')
+			return descriptor.indexOf(';', index) + 1;
+		return index + 1;
+	}
+
+	/** Pops the arguments of the method descriptor, returns the return type. */
+	private static Type popArguments(Frame frame, String methodDescriptor) {
+		ArrayList<Type> arguments = new ArrayList<Type>();
+		int index = 1;
+		while (methodDescriptor.charAt(index) != ')') {
+			arguments.add(Type.fromDescriptor(methodDescriptor, index));
+			index = getDescriptorEnd(methodDescriptor, index);
+		}
+		frame.pop(arguments.size());
+		return Type.fromDescriptor(methodDescriptor, index + 1);
+	}
+
+	/**
+	 * Applies the instruction at the position to the frame.
+	 *
+	 * @return The position of the next instruction, or -1 if the instruction
+	 *         does not continue with the next instruction.
+	 */
+	private int execute(int pc, Frame frame) {
+		int opcode = code[pc] & 0xff;
+		int next = pc + getInstructionLength(pc);
+		Type type;
+		switch (opcode) {
+		case 0: // nop
+			break;
+		case 1: // aconst_null
+			frame.push(Type.NULL);
+			break;
+		case 2: case 3: case 4: case 5: case 6: case 7: case 8: // iconst_<i>
+		case 16: // bipush
+		case 17: // sipush
+			frame.push(Type.INTEGER);
+			break;
+		case 9: case 10: // lconst_<l>
+			frame.push(Type.LONG);
+			break;
+		case 11: case 12: case 13: // fconst_<f>
+			frame.push(Type.FLOAT);
+			break;
+		case 14: case 15: // dconst_<d>
+			frame.push(Type.DOUBLE);
+			break;
+		case 18: // ldc
+			frame.push(Type.fromDescriptor(pool.getType(code[pc + 1] & 0xff), 0));
+			break;
+		case 19: // ldc_w
+		case 20: // ldc2_w
+			frame.push(Type.fromDescriptor(pool.getType(readUInt16(pc + 1)), 0));
+			break;
+		case 21: case 22: case 23: case 24: case 25: // <t>load
+			load(frame, opcode - 21, code[pc + 1] & 0xff);
+			break;
+		case 26: case 27: case 28: case 29: case 30: case 31: case 32: case 33: case 34: case 35:
+		case 36: case 37: case 38: case 39: case 40: case 41: case 42: case 43: case 44: case 45: // <t>load_<n>
+			load(frame, (opcode - 26) / 4, (opcode - 26) % 4);
+			break;
+		case 50: // aaload
+			frame.pop();
+			type = frame.pop();
+			if (type.kind == Type.ITEM_NULL)
+				frame.push(Type.NULL);
+			else
+				frame.push(Type.fromDescriptor(type.name, 1));
+			break;
+		case 54: case 55: case 56: case 57: case 58: // <t>store
+			frame.setLocal(code[pc + 1] & 0xff, frame.pop());
+			break;
+		case 59: case 60: case 61: case 62: case 63: case 64: case 65: case 66: case 67: case 68:
+		case 69: case 70: case 71: case 72: case 73: case 74: case 75: case 76: case 77: case 78: // <t>store_<n>
+			frame.setLocal((opcode - 59) % 4, frame.pop());
+			break;
+		case 83: // aastore
+			frame.pop(3);
+			break;
+		case 87: // pop
+			frame.pop();
+			break;
+		case 88: // pop2
+			if (!frame.pop().isTwoWords())
+				frame.pop();
+			break;
+		case 89: // dup
+			frame.push(frame.peek());
+			break;
+		case 90: { // dup_x1
+			Type value1 = frame.pop();
+			Type value2 = frame.pop();
+			frame.push(value1);
+			frame.push(value2);
+			frame.push(value1);
+			break;
+		}
+		case 91: { // dup_x2
+			Type value1 = frame.pop();
+			Type value2 = frame.pop();
+			if (value2.isTwoWords()) {
+				frame.push(value1);
+				frame.push(value2);
+			} else {
+				Type value3 = frame.pop();
+				frame.push(value1);
+				frame.push(value3);
+				frame.push(value2);
+			}
+			frame.push(value1);
+			break;
+		}
+		case 92: { // dup2
+			Type value1 = frame.pop();
+			if (value1.isTwoWords()) {
+				frame.push(value1);
+			} else {
+				Type value2 = frame.pop();
+				frame.push(value2);
+				frame.push(value1);
+				frame.push(value2);
+			}
+			frame.push(value1);
+			break;
+		}
+		case 93: { // dup2_x1
+			Type value1 = frame.pop();
+			Type value2 = frame.pop();
+			if (value1.isTwoWords()) {
+				frame.push(value1);
+				frame.push(value2);
+				frame.push(value1);
+			} else {
+				Type value3 = frame.pop();
+				frame.push(value2);
+				frame.push(value1);
+				frame.push(value3);
+				frame.push(value2);
+				frame.push(value1);
+			}
+			break;
+		}
+		case 95: { // swap
+			Type value1 = frame.pop();
+			Type value2 = frame.pop();
+			frame.push(value1);
+			frame.push(value2);
+			break;
+		}
+		case 96: case 97: case 98: case 99: case 100: case 101: case 102: case 103: case 104: case 105:
+		case 106: case 107: case 108: case 109: case 110: case 111: case 112: case 113: case 114: case 115:
+			// <t>add, <t>sub, <t>mul, <t>div, <t>rem
+			frame.pop(2);
+			frame.push(getArithmeticType((opcode - 96) % 4));
+			break;
+		case 116: case 117: case 118: case 119: // <t>neg
+			frame.pop();
+			frame.push(getArithmeticType(opcode - 116));
+			break;
+		case 120: case 121: case 122: case 123: case 124: case 125: // shifts
+		case 126: case 127: case 128: case 129: case 130: case 131: // and, or, xor
+			frame.pop(2);
+			frame.push(opcode % 2 == 0 ? Type.INTEGER : Type.LONG);
+			break;
+		case 132: // iinc
+			break;
+		case 133: case 134: case 135: case 136: case 137: case 138: case 139: case 140:
+		case 141: case 142: case 143: case 144: case 145: case 146: case 147: // conversions
+			frame.pop();
+			frame.push(Type.fromDescriptor("JFDIFDIJDIJFIII", opcode - 133));
+			break;
+		case 148: case 149: case 150: case 151: case 152: // lcmp, fcmp<op>, dcmp<op>
+			frame.pop(2);
+			frame.push(Type.INTEGER);
+			break;
+		case 153: case 154: case 155: case 156: case 157: case 158: // if<cond>
+		case 198: case 199: // ifnull, ifnonnull
+			frame.pop();
+			merge(pc + readInt16(pc + 1), frame);
+			break;
+		case 159: case 160: case 161: case 162: case 163: case 164: case 165: case 166: // if_<t>cmp<cond>
+			frame.pop(2);
+			merge(pc + readInt16(pc + 1), frame);
+			break;
+		case 167: // goto
+			merge(pc + readInt16(pc + 1), frame);
+			return -1;
+		case 170: // tableswitch
+		case 171: // lookupswitch
+			frame.pop();
+			for (int target : getSwitchTargets(pc))
+				merge(target, frame);
+			return -1;
+		case 172: case 173: case 174: case 175: case 176: case 177: // <t>return
+		case 191: // athrow
+			return -1;
+		case 178: // getstatic
+			frame.push(Type.fromDescriptor(pool.getType(readUInt16(pc + 1)), 0));
+			break;
+		case 179: // putstatic
+			frame.pop();
+			break;
+		case 180: // getfield
+			frame.pop();
+			frame.push(Type.fromDescriptor(pool.getType(readUInt16(pc + 1)), 0));
+			break;
+		case 181: // putfield
+			frame.pop(2);
+			break;
+		case 182: // invokevirtual
+		case 183: // invokespecial
+		case 184: // invokestatic
+		case 185: // invokeinterface
+		case 186: { // invokedynamic
+			Type returnType = popArguments(frame, pool.getType(readUInt16(pc + 1)));
+			if (opcode != 184 && opcode != 186) {
+				Type receiver = frame.pop();
+				if (opcode == 183 && receiver.kind == Type.ITEM_UNINITIALIZED_THIS) {
+					frame.initialize(receiver, Type.object(thisClass));
+				} else if (opcode == 183 && receiver.kind == Type.ITEM_UNINITIALIZED) {
+					String className = pool.getType(readUInt16(receiver.offset + 1));
+					frame.initialize(receiver, Type.object(className));
+				}
+			}
+			if (returnType != null)
+				frame.push(returnType);
+			break;
+		}
+		case 187: // new
+			frame.push(Type.uninitialized(pc));
+			break;
+		case 189: // anewarray
+			frame.pop();
+			frame.push(Type.object("[" + getDescriptor(pool.getType(readUInt16(pc + 1)))));
+			break;
+		case 190: // arraylength
+		case 193: // instanceof
+			frame.pop();
+			frame.push(Type.INTEGER);
+			break;
+		case 192: // checkcast
+			frame.pop();
+			frame.push(Type.object(pool.getType(readUInt16(pc + 1))));
+			break;
+		case 196: { // wide
+			int wideOpcode = code[pc + 1] & 0xff;
+			int index = readUInt16(pc + 2);
+			if (wideOpcode >= 21 && wideOpcode <= 25)
+				load(frame, wideOpcode - 21, index);
+			else if (wideOpcode >= 54 && wideOpcode <= 58)
+				frame.setLocal(index, frame.pop());
+			else if (wideOpcode != 132)
+				throw new IllegalStateException("Unsupported wide opcode " + wideOpcode);
+			break;
+		}
+		default:
+			throw new IllegalStateException("Cannot compute stack map frames for opcode " + opcode);
+		}
+		return next;
+	}
+
+	/** Loads a local, the kind is 0 for int, 1 for long ... 4 for reference */
+	private static void load(Frame frame, int kind, int index) {
+		if (kind == 4)
+			frame.push(frame.locals[index]);
+		else
+			frame.push(getArithmeticType(kind));
+	}
+
+	private static Type getArithmeticType(int kind) {
+		switch (kind) {
+		case 0:
+			return Type.INTEGER;
+		case 1:
+			return Type.LONG;
+		case 2:
+			return Type.FLOAT;
+		default:
+			return Type.DOUBLE;
+		}
+	}
+
+	private int getInstructionLength(int pc) {
+		int opcode = code[pc] & 0xff;
+		switch (opcode) {
+		case 16: case 18: case 21: case 22: case 23: case 24: case 25:
+		case 54: case 55: case 56: case 57: case 58: case 169: case 188:
+			return 2;
+		case 17: case 19: case 20: case 132: case 178: case 179: case 180: case 181:
+		case 182: case 183: case 184: case 187: case 189: case 192: case 193: case 198: case 199:
+			return 3;
+		case 197:
+			return 4;
+		case 185: case 186: case 200: case 201:
+			return 5;
+		case 196:
+			return (code[pc + 1] & 0xff) == 132 ? 6 : 4;
+		case 170: {
+			int base = (pc + 4) & ~3;
+			int low = readInt32(base + 4);
+			int high = readInt32(base + 8);
+			return base + 12 + 4 * (high - low + 1) - pc;
+		}
+		case 171: {
+			int base = (pc + 4) & ~3;
+			return base + 8 + 8 * readInt32(base + 4) - pc;
+		}
+		default:
+			if (opcode >= 153 && opcode <= 168)
+				return 3;
+			return 1;
+		}
+	}
+
+	private int[] getSwitchTargets(int pc) {
+		int base = (pc + 4) & ~3;
+		int[] targets;
+		if ((code[pc] & 0xff) == 170) {
+			int count = readInt32(base + 8) - readInt32(base + 4) + 1;
+			targets = new int[count + 1];
+			for (int i = 0; i < count; i++)
+				targets[i + 1] = pc + readInt32(base + 12 + 4 * i);
+		} else {
+			int count = readInt32(base + 4);
+			targets = new int[count + 1];
+			for (int i = 0; i < count; i++)
+				targets[i + 1] = pc + readInt32(base + 12 + 8 * i);
+		}
+		targets[0] = pc + readInt32(base);
+		return targets;
+	}
+
+	private int readUInt16(int index) {
+		return ((code[index] & 0xff) << 8) | (code[index + 1] & 0xff);
+	}
+
+	private int readInt16(int index) {
+		return (short) readUInt16(index);
+	}
+
+	private int readInt32(int index) {
+		return (readUInt16(index) << 16) | readUInt16(index + 2);
+	}
+
+	/** Gets the locals as written in frames: without trailing tops. */
+	private static List<Type> getFrameLocals(Frame frame) {
+		int length = frame.locals.length;
+		while (length > 0 && frame.locals[length - 1] == Type.TOP)
+			length--;
+		ArrayList<Type> result = new ArrayList<Type>();
+		for (int i = 0; i < length; i++) {
+			result.add(frame.locals[i]);
+			if (frame.locals[i].isTwoWords())
+				i++;
+		}
+		return result;
+	}
+
+	private byte[] writeFrames(Frame initialFrame) throws IOException {
+		ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(byteOutputStream);
+		int count = 0;
+		for (int pc = 0; pc < code.length; pc++) {
+			if (needsFrame[pc])
+				count++;
+		}
+		if (count == 0)
+			return null;
+		data.writeShort(count); // number_of_entries
+
+		List<Type> previousLocals = getFrameLocals(initialFrame);
+		int previousPosition = -1;
+		for (int pc = 0; pc < code.length; pc++) {
+			if (!needsFrame[pc])
+				continue;
+			List<Type> locals = getFrameLocals(frames[pc]);
+			List<Type> stack = frames[pc].stack;
+			int offsetDelta = pc - previousPosition - 1;
+			int localsDelta = locals.size() - previousLocals.size();
+			boolean sameLocals = locals.equals(previousLocals);
+			if (stack.isEmpty() && sameLocals) {
+				if (offsetDelta < 64) {
+					data.writeByte(offsetDelta); // same_frame
+				} else {
+					data.writeByte(251); // same_frame_extended
+					data.writeShort(offsetDelta);
+				}
+			} else if (stack.size() == 1 && sameLocals) {
+				if (offsetDelta < 64) {
+					data.writeByte(64 + offsetDelta); // same_locals_1_stack_item_frame
+				} else {
+					data.writeByte(247); // same_locals_1_stack_item_frame_extended
+					data.writeShort(offsetDelta);
+				}
+				writeType(data, stack.get(0));
+			} else if (stack.isEmpty() && localsDelta < 0 && localsDelta >= -3
+					&& previousLocals.subList(0, locals.size()).equals(locals)) {
+				data.writeByte(251 + localsDelta); // chop_frame
+				data.writeShort(offsetDelta);
+			} else if (stack.isEmpty() && localsDelta > 0 && localsDelta <= 3
+					&& locals.subList(0, previousLocals.size()).equals(previousLocals)) {
+				data.writeByte(251 + localsDelta); // append_frame
+				data.writeShort(offsetDelta);
+				for (Type type : locals.subList(previousLocals.size(), locals.size()))
+					writeType(data, type);
+			} else {
+				data.writeByte(255); // full_frame
+				data.writeShort(offsetDelta);
+				data.writeShort(locals.size());
+				for (Type type : locals)
+					writeType(data, type);
+				data.writeShort(stack.size());
+				for (Type type : stack)
+					writeType(data, type);
+			}
+			previousLocals = locals;
+			previousPosition = pc;
+		}
+		data.flush();
+		return byteOutputStream.toByteArray();
+	}
+
+	private void writeType(DataOutputStream data, Type type) throws IOException {
+		data.writeByte(type.kind);
+		if (type.kind == Type.ITEM_OBJECT)
+			data.writeShort(pool.getClassByJavaName(type.name));
+		else if (type.kind == Type.ITEM_UNINITIALIZED)
+			data.writeShort(type.offset);
+	}
+}
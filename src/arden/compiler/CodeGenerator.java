@@ -29,16 +29,21 @@ package arden.compiler;
 
 import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 import arden.codegenerator.ClassFileWriter;
+import arden.codegenerator.ConstructorReference;
 import arden.codegenerator.FieldReference;
 import arden.codegenerator.Label;
 import arden.codegenerator.MethodWriter;
+import arden.compiler.node.Node;
 import arden.compiler.node.TIdentifier;
 import arden.runtime.ArdenNull;
 import arden.runtime.ArdenNumber;
@@ -50,6 +55,9 @@ import arden.runtime.LibraryMetadata;
 import arden.runtime.MaintenanceMetadata;
 import arden.runtime.MedicalLogicModule;
 import arden.runtime.MedicalLogicModuleImplementation;
+import arden.runtime.ObjectMemberAccess;
+import arden.runtime.ObjectType;
+import arden.runtime.StringPattern;
 import arden.runtime.evoke.Trigger;
 
 /**
@@ -64,6 +72,7 @@ final class CodeGenerator {
 	private final HashMap<String, FieldReference> stringLiterals = new HashMap<String, FieldReference>();
 	private final HashMap<Double, FieldReference> numberLiterals = new HashMap<Double, FieldReference>();
 	private final HashMap<Long, FieldReference> timeLiterals = new HashMap<Long, FieldReference>();
+	private final HashMap<String, FieldReference> patternLiterals = new HashMap<String, FieldReference>();
 	private final HashMap<String, Variable> variables = new HashMap<String, Variable>();
 	private int nextFieldIndex;
 	private boolean isFinished;
@@ -71,6 +80,8 @@ final class CodeGenerator {
 	private FieldReference eventTimeField;
 	private FieldReference triggerTimeField;
 	private FieldReference triggerField;
+	// the instance fields holding ArdenValues, which are returned by getValue()
+	private final LinkedHashMap<String, FieldReference> valueFields = new LinkedHashMap<String, FieldReference>();
 
 	private static final String literalPrefix = "$literal";
 
@@ -168,6 +179,75 @@ final class CodeGenerator {
 		}
 	}
 
+	/**
+	 * Gets a reference to the static field that stores the StringPattern
+	 * compiled from the specified MATCHES PATTERN literal.
+	 */
+	public FieldReference getPatternLiteral(String pattern) {
+		try {
+			FieldReference ref = patternLiterals.get(pattern);
+			if (ref == null) {
+				ref = classFileWriter.declareField(literalPrefix + (nextFieldIndex++), StringPattern.class,
+						Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+				patternLiterals.put(pattern, ref);
+				getStaticInitializer().loadStringConstant(pattern);
+
+				getStaticInitializer().invokeStatic(StringPattern.class.getMethod("compile", String.class));
+
+				getStaticInitializer().storeStaticField(ref);
+			}
+			return ref;
+		} catch (SecurityException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Creates a static field that stores the ObjectMemberAccess call site for
+	 * one attribute access. If exactly one of the object types declared so far
+	 * has the attribute, the call site is resolved for that type in advance.
+	 */
+	public FieldReference createObjectMemberAccess(String upperCaseFieldName) {
+		ObjectTypeVariable knownType = null;
+		int knownIndex = -1;
+		for (Variable v : variables.values()) {
+			if (!(v instanceof ObjectTypeVariable))
+				continue;
+			int index = ((ObjectTypeVariable) v).getMemberIndex(upperCaseFieldName);
+			if (index < 0)
+				continue;
+			if (knownType != null) {
+				// several types have this attribute
+				knownType = null;
+				break;
+			}
+			knownType = (ObjectTypeVariable) v;
+			knownIndex = index;
+		}
+		try {
+			FieldReference ref = classFileWriter.declareField(literalPrefix + (nextFieldIndex++),
+					ObjectMemberAccess.class, Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+			MethodWriter init = getStaticInitializer();
+			init.newObject(ObjectMemberAccess.class);
+			init.dup();
+			init.loadStringConstant(upperCaseFieldName);
+			if (knownType != null) {
+				init.loadStaticField(knownType.field);
+				init.loadIntegerConstant(knownIndex);
+				init.invokeConstructor(ObjectMemberAccess.class.getConstructor(String.class, ObjectType.class,
+						Integer.TYPE));
+			} else {
+				init.invokeConstructor(ObjectMemberAccess.class.getConstructor(String.class));
+			}
+			init.storeStaticField(ref);
+			return ref;
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	private final int lineNumberForStaticInitializationSequencePoint;
 
 	public CodeGenerator(String mlmName, int lineNumberForStaticInitializationSequencePoint) {
@@ -184,6 +264,79 @@ final class CodeGenerator {
 		classFileWriter.setSourceFileName(sourceFileName);
 	}
 
+	/** Sets the major version of the class file being produced. */
+	public void setClassFileVersion(int majorVersion) {
+		classFileWriter.setMajorVersion(majorVersion);
+	}
+
+	private boolean isInvokeDynamicEnabled = false;
+
+	/**
+	 * Compiles operators to invokedynamic call sites. Must be called after
+	 * the class file version has been set to Java 7 or later.
+	 */
+	public void enableInvokeDynamic() {
+		if (classFileWriter.getMajorVersion() < ClassFileWriter.JAVA_7)
+			throw new IllegalArgumentException("invokedynamic requires a target version of 7 or later");
+		this.isInvokeDynamicEnabled = true;
+	}
+
+	/** Gets whether operators are compiled to invokedynamic call sites. */
+	public boolean isInvokeDynamicEnabled() {
+		return isInvokeDynamicEnabled;
+	}
+
+	private NumericTypeAnalysis numericTypes;
+
+	/**
+	 * Sets the analysis of numeric expressions, which are then compiled with
+	 * unboxed doubles. May be null to box all values.
+	 */
+	public void setNumericTypes(NumericTypeAnalysis numericTypes) {
+		this.numericTypes = numericTypes;
+	}
+
+	/** Gets whether the expression can be compiled with unboxed doubles. */
+	public boolean isNumeric(Node expr) {
+		return numericTypes != null && numericTypes.isNumeric(expr);
+	}
+
+	private ConstantAnalysis constants;
+	private boolean isCompilingConstant;
+
+	/**
+	 * Computes constant expressions (see {@link ConstantAnalysis}) once in the
+	 * static initializer.
+	 */
+	public void enableConstantFolding() {
+		this.constants = new ConstantAnalysis();
+	}
+
+	/** Gets whether the expression should be loaded via {@link #getConstant(Node)}. */
+	public boolean isFoldableConstant(Node expr) {
+		return constants != null && !isCompilingConstant && constants.isFoldable(expr);
+	}
+
+	/**
+	 * Gets a reference to the static field that stores the value of a
+	 * constant expression. The expression is computed by the static
+	 * initializer.
+	 */
+	public FieldReference getConstant(Node expr) {
+		FieldReference ref = classFileWriter.declareField(literalPrefix + (nextFieldIndex++), ArdenValue.class,
+				Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+		MethodWriter init = getStaticInitializer();
+		// compile the expression itself, not a reference to its field
+		isCompilingConstant = true;
+		try {
+			expr.apply(new ExpressionCompiler(new CompilerContext(this, init, 0)));
+		} finally {
+			isCompilingConstant = false;
+		}
+		init.storeStaticField(ref);
+		return ref;
+	}
+
 	private MethodWriter ctor;
 	private final Label ctorUserCodeLabel = new Label();
 	private final Label ctorInitCodeLabel = new Label();
@@ -225,6 +378,22 @@ final class CodeGenerator {
 		return new CompilerContext(this, ctor, 0);
 	}
 
+	/** Creates the newInstance() method, which calls the constructor. */
+	public void createNewInstance() {
+		Class<?>[] parameters = new Class<?>[] { ExecutionContext.class, MedicalLogicModule.class,
+				ArdenValue[].class, Trigger.class };
+		ConstructorReference ctorReference = classFileWriter.getConstructorReference(parameters);
+		MethodWriter w = classFileWriter.createMethod("newInstance", Modifier.PUBLIC, parameters,
+				MedicalLogicModuleImplementation.class);
+		w.newObject(ctorReference);
+		w.dup();
+		for (int i = 1; i <= parameters.length; i++) {
+			w.loadVariable(i);
+		}
+		w.invokeConstructor(ctorReference);
+		w.returnObjectFromFunction();
+	}
+
 	public CompilerContext createLogic() {
 		MethodWriter w = classFileWriter.createMethod("logic", Modifier.PUBLIC,
 				new Class<?>[] { ExecutionContext.class }, Boolean.TYPE);
@@ -283,52 +452,77 @@ final class CodeGenerator {
 				new Class<?>[]{ String.class }, 
 				ArdenValue.class);
 		try {
-			Label excptBegin = new Label();
-			Label excptEnd = new Label();
-			Label end = new Label();
-			Label secHandler = new Label();
-			Label noSuchFieldHandler = new Label();
-			Label illegalArgHandler = new Label();
-			Label illegalAccHandler = new Label();
-			w.mark(excptBegin);
-			w.loadThis();
-			w.invokeInstance(Object.class.getMethod("getClass"));
-			w.loadVariable(1);
-			w.invokeInstance(Class.class.getMethod("getDeclaredField", String.class));
-			w.dup();
-			w.storeVariable(2);
-			w.loadThis();
-			w.invokeInstance(Field.class.getMethod("get", Object.class));
-			w.checkCast(ArdenValue.class);
-			w.returnObjectFromFunction();
-			w.mark(excptEnd);
-			
-			w.markExceptionHandler(secHandler);
-			w.storeVariable(3);
-			w.jump(end);
-			
-			w.markExceptionHandler(noSuchFieldHandler);
-			w.storeVariable(3);
-			w.jump(end);
-			
-			w.markExceptionHandler(illegalArgHandler);
-			w.storeVariable(3);
-			w.jump(end);
-			
-			w.markExceptionHandler(illegalAccHandler);
-			w.storeVariable(3);
-			w.jump(end);
-			
-			w.mark(end);
+			Label notFound = new Label();
+			if (!valueFields.isEmpty()) {
+				// switch on the hash code of the name, then compare the names
+				// with the same hash code
+				TreeMap<Integer, List<String>> namesByHash = new TreeMap<Integer, List<String>>();
+				for (String name : valueFields.keySet()) {
+					List<String> names = namesByHash.get(name.hashCode());
+					if (names == null) {
+						names = new ArrayList<String>();
+						namesByHash.put(name.hashCode(), names);
+					}
+					names.add(name);
+				}
+				int[] hashes = new int[namesByHash.size()];
+				Label[] cases = new Label[namesByHash.size()];
+				int i = 0;
+				for (int hash : namesByHash.keySet()) {
+					hashes[i] = hash;
+					cases[i] = new Label();
+					i++;
+				}
+
+				w.loadVariable(1);
+				w.invokeInstance(String.class.getMethod("hashCode"));
+				w.lookupSwitch(hashes, cases, notFound);
+				i = 0;
+				for (List<String> names : namesByHash.values()) {
+					w.mark(cases[i++]);
+					for (int j = 0; j < names.size(); j++) {
+						Label next = (j == names.size() - 1) ? notFound : new Label();
+						w.loadVariable(1);
+						w.loadStringConstant(names.get(j));
+						w.invokeInstance(String.class.getMethod("equals", Object.class));
+						w.jumpIfZero(next);
+						w.loadThis();
+						w.loadInstanceField(valueFields.get(names.get(j)));
+						w.returnObjectFromFunction();
+						if (next != notFound)
+							w.mark(next);
+					}
+				}
+			}
+			w.mark(notFound);
 			w.loadNull();
 			w.returnObjectFromFunction();
-			
-			w.addExceptionInfo(excptBegin, excptEnd, noSuchFieldHandler, NoSuchFieldException.class);
-			w.addExceptionInfo(excptBegin, excptEnd, secHandler, SecurityException.class);
-			w.addExceptionInfo(excptBegin, excptEnd, illegalAccHandler, IllegalAccessException.class);
-			w.addExceptionInfo(excptBegin, excptEnd, illegalArgHandler, IllegalArgumentException.class);
-		} catch (SecurityException e) {
+		} catch (NoSuchMethodException e) {
 			throw new RuntimeException(e);
+		}
+	}
+
+	public void createGetValues() {
+		MethodWriter w = classFileWriter.createMethod(
+				"getValues", 
+				Modifier.PUBLIC, 
+				new Class<?>[0], 
+				Map.class);
+		try {
+			w.newObject(LinkedHashMap.class);
+			w.dup();
+			w.invokeConstructor(LinkedHashMap.class.getConstructor());
+			for (Map.Entry<String, FieldReference> entry : valueFields.entrySet()) {
+				if (!MedicalLogicModuleImplementation.isVariable(entry.getKey()))
+					continue;
+				w.dup();
+				w.loadStringConstant(entry.getKey());
+				w.loadThis();
+				w.loadInstanceField(entry.getValue());
+				w.invokeInstance(HashMap.class.getMethod("put", Object.class, Object.class));
+				w.pop();
+			}
+			w.returnObjectFromFunction();
 		} catch (NoSuchMethodException e) {
 			throw new RuntimeException(e);
 		}
@@ -337,6 +531,7 @@ final class CodeGenerator {
 	public FieldReference getNowField() {
 		if (nowField == null) {
 			nowField = classFileWriter.declareField("now", ArdenValue.class, Modifier.PRIVATE);
+			valueFields.put("now", nowField);
 		}
 		return nowField;
 	}
@@ -344,6 +539,7 @@ final class CodeGenerator {
 	public FieldReference getEventTimeField() {
 		if (eventTimeField == null) {
 			eventTimeField = classFileWriter.declareField("eventtime", ArdenValue.class, Modifier.PRIVATE);
+			valueFields.put("eventtime", eventTimeField);
 		}
 		return eventTimeField;
 	}
@@ -351,6 +547,7 @@ final class CodeGenerator {
 	public FieldReference getTriggerTimeField() {
 		if (triggerTimeField == null) {
 			triggerTimeField = classFileWriter.declareField("triggertime", ArdenValue.class, Modifier.PRIVATE);
+			valueFields.put("triggertime", triggerTimeField);
 		}
 		return triggerTimeField;
 	}
@@ -363,7 +560,10 @@ final class CodeGenerator {
 	}
 
 	public FieldReference createField(String name, Class<?> type, int modifiers) {
-		return classFileWriter.declareField(name, type, modifiers);
+		FieldReference f = classFileWriter.declareField(name, type, modifiers);
+		if (ArdenValue.class.isAssignableFrom(type) && !Modifier.isStatic(modifiers))
+			valueFields.put(name, f);
+		return f;
 	}
 
 	private int formatFieldCount;
@@ -382,6 +582,8 @@ final class CodeGenerator {
 	public FieldReference createInitializedField(String name, int modifiers) {
 		FieldReference f = classFileWriter.declareField(name, ArdenValue.class, modifiers);
 		fieldsNeedingInitialization.add(f);
+		if (!Modifier.isStatic(modifiers))
+			valueFields.put(name, f);
 		return f;
 	}
 
@@ -92,7 +92,7 @@ final class ComparisonCompiler extends VisitorBase {
 			op = BinaryOperator.LE;
 		else
 			throw new RuntimeException("Unknown binary_comp_op");
-		expressionCompiler.invokeOperator(op, argument, node.getExprString());
+		expressionCompiler.invokeComparison(op, argument, node.getExprString());
 	}
 
 	@Override
@@ -126,7 +126,7 @@ final class ComparisonCompiler extends VisitorBase {
 		node.getLeft().apply(expressionCompiler);
 		node.getRight().apply(expressionCompiler);
 		// stack: WITHINTO, argument, BEFORE, dur, time
-		context.writer.dup_x2();
+		expressionCompiler.dupBelowLoadedBinaryOperator();
 		// stack: WITHINTO, argument, time, BEFORE, dur, time
 		expressionCompiler.invokeLoadedBinaryOperator();
 		// stack: WITHINTO, argument, time, time2
@@ -148,7 +148,7 @@ final class ComparisonCompiler extends VisitorBase {
 		node.getLeft().apply(expressionCompiler);
 		node.getRight().apply(expressionCompiler);
 		// stack: WITHINTO, argument, AFTER, dur, time
-		context.writer.dup_x2();
+		expressionCompiler.dupBelowLoadedBinaryOperator();
 		// stack: WITHINTO, argument, time, AFTER, dur, time
 		expressionCompiler.invokeLoadedBinaryOperator();
 		// stack: WITHINTO, argument, time, time2
@@ -35,6 +35,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Map;
 
 import arden.MainClass;
 import arden.runtime.ArdenList;
@@ -57,7 +59,9 @@ import arden.runtime.evoke.Trigger;
  * calling loadClassFile().
  * 
  * When createInstance() or run() is called, the compiled bytecode is loaded
- * using the InMemoryClassLoader for execution.
+ * using the InMemoryClassLoader for execution. New instances are created via
+ * the generated newInstance() method of an uninitialized instance, which is
+ * resolved once, so no lock or reflection is needed for each run.
  * 
  * @author Daniel Grunwald, Hannes Flicka
  * 
@@ -66,6 +70,9 @@ public final class CompiledMlm implements MedicalLogicModule {
 	private byte[] data;
 	Class<? extends MedicalLogicModuleImplementation> clazz = null;
 	private MedicalLogicModuleImplementation uninitializedInstance = null;	
+	// resolved on the first call of createInstance()
+	private volatile MedicalLogicModuleImplementation factory = null;
+	private volatile Constructor<? extends MedicalLogicModuleImplementation> constructor = null;
 	private MedicalLogicModuleImplementation initializedInstance = null;
 	private Trigger[] triggers = null;
 	private String mlmname;
@@ -160,13 +167,32 @@ public final class CompiledMlm implements MedicalLogicModule {
 			throw new NullPointerException();
 
 		if (arguments == null)
-			arguments = ArdenList.EMPTY.values;
+			arguments = ArdenList.EMPTY.getElements();
 
 		if (evokingTrigger == null)
 			evokingTrigger = new CallTrigger();
 
+		MedicalLogicModuleImplementation factory = this.factory;
+		if (factory == null) {
+			factory = resolveFactory();
+		}
+		if (constructor == null) {
+			MedicalLogicModuleImplementation instance;
+			try {
+				instance = factory.newInstance(context, this, arguments, evokingTrigger);
+			} catch (RuntimeException e) {
+				// same behavior as Constructor.newInstance()
+				throw new InvocationTargetException(e);
+			}
+			if (instance != null) {
+				return instance;
+			}
+			// compiled by an older version without newInstance() method
+			constructor = getConstructor();
+		}
+
 		try {
-			return getConstructor().newInstance(context, this, arguments, evokingTrigger);
+			return constructor.newInstance(context, this, arguments, evokingTrigger);
 		} catch (IllegalArgumentException e) {
 			throw new RuntimeException(e);
 		} catch (InstantiationException e) {
@@ -176,6 +202,13 @@ public final class CompiledMlm implements MedicalLogicModule {
 		}
 	}
 
+	private synchronized MedicalLogicModuleImplementation resolveFactory() {
+		if (factory == null) {
+			factory = getNonInitializedInstance();
+		}
+		return factory;
+	}
+
 	/**
 	 * Executes the MLM.
 	 * 
@@ -261,4 +294,11 @@ public final class CompiledMlm implements MedicalLogicModule {
 		}
 		return null;
 	}
+
+	public Map<String, ArdenValue> getValues() {
+		if (initializedInstance != null) {
+			return initializedInstance.getValues();
+		}
+		return Collections.emptyMap();
+	}
 }
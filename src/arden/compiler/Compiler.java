@@ -38,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import arden.codegenerator.ClassFileWriter;
 import arden.codegenerator.FieldReference;
 import arden.codegenerator.Label;
 import arden.codegenerator.MethodWriter;
@@ -77,8 +78,14 @@ import arden.runtime.evoke.Trigger;
  * @author Daniel Grunwald
  */
 public final class Compiler {
+	/** The Java version of the class files being produced by default */
+	public static final int DEFAULT_TARGET_VERSION = 7;
+
 	private boolean isDebuggingEnabled = false;
 	private String sourceFileName;
+	private int targetVersion = DEFAULT_TARGET_VERSION;
+	private boolean isInvokeDynamicEnabled = false;
+	private boolean isOptimizationEnabled = true;
 
 	/** Enables debugging for the code being produced. */
 	public void enableDebugging(String sourceFileName) {
@@ -86,6 +93,40 @@ public final class Compiler {
 		this.sourceFileName = sourceFileName;
 	}
 
+	/**
+	 * Compiles operators to invokedynamic call sites, which are specialized
+	 * for the types of the operands they see at runtime (see
+	 * {@link arden.runtime.OperatorCallSite}). Requires a target version of 7
+	 * or later, otherwise compiling fails with an IllegalArgumentException.
+	 */
+	public void enableInvokeDynamic() {
+		this.isInvokeDynamicEnabled = true;
+	}
+
+	/**
+	 * Disables optimizations of the code being produced, i.e. computing
+	 * numeric expressions with unboxed doubles and constant expressions only
+	 * once. The MLMs behave the same, this is meant for comparing the
+	 * generated code.
+	 */
+	public void disableOptimizations() {
+		this.isOptimizationEnabled = false;
+	}
+
+	/**
+	 * Sets the Java version of the class files being produced, e.g. 8 for
+	 * Java 8 class files. The MLMs can only be run on this or a later Java
+	 * version. Supported are Java 5 to 8.
+	 */
+	public void setTargetVersion(int javaVersion) {
+		if (javaVersion < 5)
+			throw new IllegalArgumentException("Target versions before Java 5 are not supported");
+		// class file versions are the Java version + 44
+		if (javaVersion + 44 > ClassFileWriter.JAVA_8)
+			throw new IllegalArgumentException("Target versions after Java 8 are not supported");
+		this.targetVersion = javaVersion;
+	}
+
 	/** Compiles a single MLM given in the input stream. */
 	public CompiledMlm compileMlm(Reader input) throws CompilerException, IOException {
 		List<CompiledMlm> output = compile(input);
@@ -111,6 +152,7 @@ public final class Compiler {
 
 	/** Compiles a list of MLMs given in the syntax tree. */
 	public List<CompiledMlm> compile(Start syntaxTree) throws CompilerException {
+		checkTargetVersion();
 		try {
 			final ArrayList<CompiledMlm> output = new ArrayList<CompiledMlm>();
 			// find all AMlm nodes and compile each individually
@@ -128,6 +170,7 @@ public final class Compiler {
 
 	/** Compiles a single MLMs given in the syntax tree. */
 	public MedicalLogicModule compileMlm(AMlm mlm) throws CompilerException {
+		checkTargetVersion();
 		try {
 			return doCompileMlm(mlm);
 		} catch (RuntimeCompilerException ex) {
@@ -135,6 +178,12 @@ public final class Compiler {
 		}
 	}
 
+	private void checkTargetVersion() {
+		// class files before Java 7 must not contain invokedynamic
+		if (isInvokeDynamicEnabled && targetVersion < 7)
+			throw new IllegalArgumentException("invokedynamic requires a target version of 7 or later");
+	}
+
 	private CompiledMlm doCompileMlm(AMlm mlm) {
 		// use this to print the generated AST
 		// mlm.apply(new PrintTreeVisitor(System.out));
@@ -155,7 +204,16 @@ public final class Compiler {
 				knowledgeCategory.getKnowledgeColon().getLine());
 		if (isDebuggingEnabled)
 			codeGen.enableDebugging(sourceFileName);
+		// class file versions are the Java version + 44, e.g. 51 for Java 7
+		codeGen.setClassFileVersion(targetVersion + 44);
+		if (isInvokeDynamicEnabled)
+			codeGen.enableInvokeDynamic();
+		if (isOptimizationEnabled) {
+			codeGen.setNumericTypes(new NumericTypeAnalysis(knowledge));
+			codeGen.enableConstantFolding();
+		}
 		compileData(codeGen, knowledge.getDataSlot(), metadata.maintenance.getInstitution());
+		codeGen.createNewInstance();
 		compileLogic(codeGen, knowledge.getLogicSlot());
 		compileAction(codeGen, knowledge.getActionSlot());
 		compileEvoke(codeGen, knowledge.getEvokeSlot());
@@ -172,6 +230,7 @@ public final class Compiler {
 
 		// create method to access the MLMs variables
 		codeGen.createGetValue();
+		codeGen.createGetValues();
 
 		// save bytecode to a CompiledMlm wrapper
 		byte[] data;
@@ -0,0 +1,137 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.compiler;
+
+import java.util.HashMap;
+
+import arden.compiler.node.*;
+
+/**
+ * Finds the constant expressions, which only consist of literals and pure
+ * operators. The ExpressionCompiler evaluates such expressions once in the
+ * static initializer and stores the results in static fields, instead of
+ * computing them on every execution.
+ * 
+ * Time literals are constant, but NOW, EVENTTIME, TRIGGERTIME and AGO are
+ * not. Literals without operators are not folded, as they are already stored
+ * in static fields. Lists are never folded, because their elements could be
+ * modified through ArdenList.getElements().
+ */
+final class ConstantAnalysis {
+	private final HashMap<Node, Boolean> constantExpressions = new HashMap<Node, Boolean>();
+
+	/** Gets whether the expression should be computed in the static initializer. */
+	public boolean isFoldable(Node expr) {
+		return !isLiteral(expr) && isConstant(expr);
+	}
+
+	/** Gets whether the expression always evaluates to the same value. */
+	public boolean isConstant(Node expr) {
+		Boolean result = constantExpressions.get(expr);
+		if (result == null) {
+			result = analyze(expr);
+			constantExpressions.put(expr, result);
+		}
+		return result;
+	}
+
+	private static boolean isLiteral(Node expr) {
+		Node inner;
+		while ((inner = NumericTypeAnalysis.getInnerExpression(expr)) != null)
+			expr = inner;
+		return expr instanceof ANumExprFactorAtom || expr instanceof AStringExprFactorAtom
+				|| expr instanceof ATimeExprFactorAtom || expr instanceof ABoolExprFactorAtom
+				|| expr instanceof ANullExprFactorAtom || expr instanceof AParExprFactorAtom;
+	}
+
+	private boolean analyze(Node expr) {
+		Node inner = NumericTypeAnalysis.getInnerExpression(expr);
+		if (inner != null)
+			return isConstant(inner);
+		if (expr instanceof ADurExprAgo)
+			return isConstant(((ADurExprAgo) expr).getExprDuration());
+
+		// lists are not constant: ArdenList.getElements() exposes the backing
+		// array, so a list in a static field could be changed by any execution
+		if (expr instanceof AExsortExpr || expr instanceof ACommaExpr || expr instanceof ASeqExprRange)
+			return false;
+
+		// logic and comparisons
+		if (expr instanceof AOrExprOr)
+			return isConstant(((AOrExprOr) expr).getExprOr()) && isConstant(((AOrExprOr) expr).getExprAnd());
+		if (expr instanceof AAndExprAnd)
+			return isConstant(((AAndExprAnd) expr).getExprAnd()) && isConstant(((AAndExprAnd) expr).getExprNot());
+		if (expr instanceof ANotExprNot)
+			return isConstant(((ANotExprNot) expr).getExprComparison());
+		if (expr instanceof ASimExprComparison)
+			return isConstant(((ASimExprComparison) expr).getFirstString())
+					&& isConstant(((ASimExprComparison) expr).getSecondString());
+
+		// strings, arithmetic, durations and times
+		if (expr instanceof AOrExprString)
+			return isConstant(((AOrExprString) expr).getExprString())
+					&& isConstant(((AOrExprString) expr).getExprPlus());
+		if (expr instanceof APlusExprPlus)
+			return isConstant(((APlusExprPlus) expr).getExprPlus()) && isConstant(((APlusExprPlus) expr).getExprTimes());
+		if (expr instanceof AMinusExprPlus)
+			return isConstant(((AMinusExprPlus) expr).getExprPlus())
+					&& isConstant(((AMinusExprPlus) expr).getExprTimes());
+		if (expr instanceof APlustExprPlus)
+			return isConstant(((APlustExprPlus) expr).getExprTimes());
+		if (expr instanceof AMintExprPlus)
+			return isConstant(((AMintExprPlus) expr).getExprTimes());
+		if (expr instanceof ATpowExprTimes)
+			return isConstant(((ATpowExprTimes) expr).getExprTimes())
+					&& isConstant(((ATpowExprTimes) expr).getExprPower());
+		if (expr instanceof ADpowExprTimes)
+			return isConstant(((ADpowExprTimes) expr).getExprTimes())
+					&& isConstant(((ADpowExprTimes) expr).getExprPower());
+		if (expr instanceof AExpExprPower)
+			return isConstant(((AExpExprPower) expr).getBase()) && isConstant(((AExpExprPower) expr).getExp());
+		if (expr instanceof ABeforeExprBefore)
+			return isConstant(((ABeforeExprBefore) expr).getExprDuration())
+					&& isConstant(((ABeforeExprBefore) expr).getExprAgo());
+		if (expr instanceof AAfterExprBefore)
+			return isConstant(((AAfterExprBefore) expr).getExprDuration())
+					&& isConstant(((AAfterExprBefore) expr).getExprAgo());
+		if (expr instanceof AFromExprBefore)
+			return isConstant(((AFromExprBefore) expr).getExprDuration())
+					&& isConstant(((AFromExprBefore) expr).getExprAgo());
+		if (expr instanceof AExprDuration)
+			return isConstant(((AExprDuration) expr).getExprFunction());
+
+		// literals
+		if (expr instanceof ATimeExprFactorAtom) {
+			PTimeValue time = ((ATimeExprFactorAtom) expr).getTimeValue();
+			return time instanceof AIdtTimeValue || time instanceof AIdatTimeValue;
+		}
+		return expr instanceof ANumExprFactorAtom || expr instanceof AStringExprFactorAtom
+				|| expr instanceof ABoolExprFactorAtom || expr instanceof ANullExprFactorAtom
+				|| expr instanceof AParExprFactorAtom;
+	}
+}
@@ -48,6 +48,11 @@ class DataVariable extends Variable {
 		this.field = field;
 	}
 
+	@Override
+	public boolean isReadable() {
+		return true;
+	}
+
 	@Override
 	public void loadValue(CompilerContext context, Token errorPosition) {
 		context.writer.loadThis();
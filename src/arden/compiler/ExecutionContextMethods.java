@@ -39,7 +39,7 @@ import arden.runtime.evoke.Trigger;
 
 /** Contains references to the methods from the ExecutionContext class */
 final class ExecutionContextMethods {
-	public static final Method createQuery;
+	public static final Method createQuery, createQueryWithParameters;
 	public static final Method getMessage, getMessageAs, getDestination, getDestinationAs, getEvent;
 	public static final Method findModule, findModules, findInterface;
 	public static final Method write, call, callEvent;
@@ -48,6 +48,8 @@ final class ExecutionContextMethods {
 	static {
 		try {
 			createQuery = ExecutionContext.class.getMethod("createQuery", MedicalLogicModule.class, String.class);
+			createQueryWithParameters = ExecutionContext.class.getMethod("createQuery", MedicalLogicModule.class,
+					String.class, String[].class, ArdenValue[].class);
 
 			getMessage = ExecutionContext.class.getMethod("getMessage", MedicalLogicModule.class, String.class);
 			getMessageAs = ExecutionContext.class.getMethod("getMessageAs", MedicalLogicModule.class, String.class, ObjectType.class);
@@ -27,10 +27,14 @@
 
 package arden.compiler;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Stack;
 
 import arden.codegenerator.Label;
 import arden.compiler.node.*;
@@ -41,7 +45,10 @@ import arden.runtime.ArdenObject;
 import arden.runtime.ArdenValue;
 import arden.runtime.BinaryOperator;
 import arden.runtime.ExpressionHelpers;
+import arden.runtime.ObjectMemberAccess;
 import arden.runtime.ObjectType;
+import arden.runtime.OperatorCallSite;
+import arden.runtime.StringPattern;
 import arden.runtime.TernaryOperator;
 import arden.runtime.UnaryOperator;
 
@@ -86,9 +93,29 @@ final class ExpressionCompiler extends VisitorBase {
 		}
 	}
 
-	public void loadOperator(TernaryOperator operator) {
+	/** Bootstrap method of the operator call sites, if invokedynamic is enabled */
+	private static final Method operatorBootstrap;
+
+	static {
 		try {
-			Field field = TernaryOperator.class.getField(operator.toString());
+			operatorBootstrap = OperatorCallSite.class.getMethod("bootstrap", MethodHandles.Lookup.class,
+					String.class, MethodType.class);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Names of the operators whose operands are being loaded (for invokedynamic) */
+	private final Stack<String> loadedOperators = new Stack<String>();
+
+	private void loadOperator(Class<?> operatorClass, String name) {
+		if (context.codeGenerator.isInvokeDynamicEnabled()) {
+			// the call site is created when the operator is invoked
+			loadedOperators.push(name);
+			return;
+		}
+		try {
+			Field field = operatorClass.getField(name);
 			context.writer.loadStaticField(field);
 		} catch (SecurityException e) {
 			throw new RuntimeException(e);
@@ -97,9 +124,15 @@ final class ExpressionCompiler extends VisitorBase {
 		}
 	}
 
-	public void invokeLoadedTernaryOperator() {
+	private void invokeLoadedOperator(Class<?> operatorClass, int operandCount) {
+		Class<?>[] operands = new Class<?>[operandCount];
+		Arrays.fill(operands, ArdenValue.class);
+		if (context.codeGenerator.isInvokeDynamicEnabled()) {
+			context.writer.invokeDynamic(operatorBootstrap, loadedOperators.pop(), operands, ArdenValue.class);
+			return;
+		}
 		try {
-			Method run = TernaryOperator.class.getMethod("run", ArdenValue.class, ArdenValue.class, ArdenValue.class);
+			Method run = operatorClass.getMethod("run", operands);
 			context.writer.invokeInstance(run);
 		} catch (SecurityException e) {
 			throw new RuntimeException(e);
@@ -108,6 +141,27 @@ final class ExpressionCompiler extends VisitorBase {
 		}
 	}
 
+	/**
+	 * Duplicates the value on top of the stack and inserts it below the
+	 * operands of the loaded binary operator.
+	 * 
+	 * Stack: .., operator, lhs, rhs => .., rhs, operator, lhs, rhs
+	 */
+	public void dupBelowLoadedBinaryOperator() {
+		if (context.codeGenerator.isInvokeDynamicEnabled())
+			context.writer.dup_x1(); // the operator is not on the stack
+		else
+			context.writer.dup_x2();
+	}
+
+	public void loadOperator(TernaryOperator operator) {
+		loadOperator(TernaryOperator.class, operator.toString());
+	}
+
+	public void invokeLoadedTernaryOperator() {
+		invokeLoadedOperator(TernaryOperator.class, 3);
+	}
+
 	public void invokeOperator(TernaryOperator operator, Switchable arg1, Switchable arg2, Switchable arg3) {
 		loadOperator(operator);
 		arg1.apply(this);
@@ -117,25 +171,11 @@ final class ExpressionCompiler extends VisitorBase {
 	}
 
 	public void loadOperator(BinaryOperator operator) {
-		try {
-			Field field = BinaryOperator.class.getField(operator.toString());
-			context.writer.loadStaticField(field);
-		} catch (SecurityException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchFieldException e) {
-			throw new RuntimeException(e);
-		}
+		loadOperator(BinaryOperator.class, operator.toString());
 	}
 
 	public void invokeLoadedBinaryOperator() {
-		try {
-			Method run = BinaryOperator.class.getMethod("run", ArdenValue.class, ArdenValue.class);
-			context.writer.invokeInstance(run);
-		} catch (SecurityException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchMethodException e) {
-			throw new RuntimeException(e);
-		}
+		invokeLoadedOperator(BinaryOperator.class, 2);
 	}
 
 	public void invokeOperator(BinaryOperator operator, Switchable lhs, Switchable rhs) {
@@ -146,25 +186,11 @@ final class ExpressionCompiler extends VisitorBase {
 	}
 
 	public void loadOperator(UnaryOperator operator) {
-		try {
-			Field field = UnaryOperator.class.getField(operator.toString());
-			context.writer.loadStaticField(field);
-		} catch (SecurityException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchFieldException e) {
-			throw new RuntimeException(e);
-		}
+		loadOperator(UnaryOperator.class, operator.toString());
 	}
 
 	public void invokeLoadedUnaryOperator() {
-		try {
-			Method run = UnaryOperator.class.getMethod("run", ArdenValue.class);
-			context.writer.invokeInstance(run);
-		} catch (SecurityException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchMethodException e) {
-			throw new RuntimeException(e);
-		}
+		invokeLoadedOperator(UnaryOperator.class, 1);
 	}
 
 	public void invokeOperator(UnaryOperator operator, Switchable arg) {
@@ -173,6 +199,113 @@ final class ExpressionCompiler extends VisitorBase {
 		invokeLoadedUnaryOperator();
 	}
 
+	/**
+	 * Compiles a comparison. If both operands are numeric expressions (see
+	 * {@link NumericTypeAnalysis}), they are compared as doubles.
+	 */
+	public void invokeComparison(BinaryOperator operator, Switchable lhs, Switchable rhs) {
+		if (lhs instanceof Node && rhs instanceof Node && context.codeGenerator.isNumeric((Node) lhs)
+				&& context.codeGenerator.isNumeric((Node) rhs)) {
+			compileNumber((Node) lhs);
+			compileNumber((Node) rhs);
+			String name;
+			if (operator == BinaryOperator.EQ)
+				name = "numberEquals";
+			else if (operator == BinaryOperator.NE)
+				name = "numberNotEquals";
+			else if (operator == BinaryOperator.LT)
+				name = "numberLessThan";
+			else if (operator == BinaryOperator.LE)
+				name = "numberLessOrEqual";
+			else if (operator == BinaryOperator.GT)
+				name = "numberGreaterThan";
+			else if (operator == BinaryOperator.GE)
+				name = "numberGreaterOrEqual";
+			else
+				throw new IllegalArgumentException("Not a comparison: " + operator);
+			context.writer.invokeStatic(getMethod(name, Double.TYPE, Double.TYPE));
+		} else {
+			invokeOperator(operator, lhs, rhs);
+		}
+	}
+
+	/**
+	 * Loads the value of a constant expression (see {@link ConstantAnalysis})
+	 * from its static field. Returns false, if the expression is not constant
+	 * or constant folding is disabled.
+	 */
+	private boolean loadFoldedConstant(Node expr) {
+		if (!context.codeGenerator.isFoldableConstant(expr))
+			return false;
+		context.writer.loadStaticField(context.codeGenerator.getConstant(expr));
+		return true;
+	}
+
+	/**
+	 * Compiles a numeric expression (see {@link NumericTypeAnalysis}) with
+	 * doubles and creates the ArdenNumber for its result. Returns false, if
+	 * the expression is not numeric.
+	 */
+	private boolean compileNumericExpression(Node expr) {
+		if (!context.codeGenerator.isNumeric(expr))
+			return false;
+		compileNumber(expr);
+		context.writer.invokeStatic(getMethod("toNumber", Double.TYPE));
+		return true;
+	}
+
+	/**
+	 * Pushes the value of a numeric expression as double onto the evaluation
+	 * stack, NaN for null. Like ArdenNumber.create, infinite results of the
+	 * arithmetic operators become null.
+	 */
+	private void compileNumber(Node expr) {
+		Node inner;
+		while ((inner = NumericTypeAnalysis.getInnerExpression(expr)) != null)
+			expr = inner;
+
+		if (expr instanceof APlusExprPlus) {
+			compileNumber(((APlusExprPlus) expr).getExprPlus());
+			compileNumber(((APlusExprPlus) expr).getExprTimes());
+			context.writer.addDouble();
+			checkFinite();
+		} else if (expr instanceof AMinusExprPlus) {
+			compileNumber(((AMinusExprPlus) expr).getExprPlus());
+			compileNumber(((AMinusExprPlus) expr).getExprTimes());
+			context.writer.subtractDouble();
+			checkFinite();
+		} else if (expr instanceof APlustExprPlus) {
+			compileNumber(((APlustExprPlus) expr).getExprTimes());
+		} else if (expr instanceof AMintExprPlus) {
+			compileNumber(((AMintExprPlus) expr).getExprTimes());
+			context.writer.negateDouble();
+		} else if (expr instanceof ATpowExprTimes) {
+			compileNumber(((ATpowExprTimes) expr).getExprTimes());
+			compileNumber(((ATpowExprTimes) expr).getExprPower());
+			context.writer.multiplyDouble();
+			checkFinite();
+		} else if (expr instanceof ADpowExprTimes) {
+			compileNumber(((ADpowExprTimes) expr).getExprTimes());
+			compileNumber(((ADpowExprTimes) expr).getExprPower());
+			context.writer.divideDouble();
+			checkFinite();
+		} else if (expr instanceof ANumExprFactorAtom) {
+			context.writer.loadDoubleConstant(ParseHelpers.getLiteralDoubleValue(((ANumExprFactorAtom) expr)
+					.getNumberLiteral()));
+		} else if (NumericTypeAnalysis.getCountArgument(expr) != null) {
+			NumericTypeAnalysis.getCountArgument(expr).apply(this);
+			context.writer.invokeStatic(getMethod("countElements", ArdenValue.class));
+		} else {
+			// numeric variable
+			expr.apply(this);
+			context.writer.invokeStatic(getMethod("toDouble", ArdenValue.class));
+		}
+	}
+
+	private void checkFinite() {
+		context.writer.invokeStatic(getMethod("checkFinite", Double.TYPE));
+	}
+
 	// expr =
 	// {sort} expr_sort
 	// | {exsort} expr comma expr_sort
@@ -186,6 +319,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseAExsortExpr(AExsortExpr node) {
 		// expr = {exsort} expr comma expr_sort
+		if (loadFoldedConstant(node))
+			return;
 		node.getExpr().apply(this);
 		node.getExprSort().apply(this);
 		context.writer.invokeStatic(getMethod("binaryComma", ArdenValue.class, ArdenValue.class));
@@ -194,6 +329,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseACommaExpr(ACommaExpr node) {
 		// expr = {comma} comma expr_sort;
+		if (loadFoldedConstant(node))
+			return;
 		node.getExprSort().apply(this);
 		context.writer.invokeStatic(getMethod("unaryComma", ArdenValue.class));
 	}
@@ -277,6 +414,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseASeqExprRange(ASeqExprRange node) {
 		// expr_range = {seq} [this_or]:expr_or seqto [next_or]:expr_or
+		if (loadFoldedConstant(node))
+			return;
 		node.getThisOr().apply(this);
 		node.getNextOr().apply(this);
 		context.writer.invokeStatic(getMethod("seqto", ArdenValue.class, ArdenValue.class));
@@ -288,6 +427,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseAOrExprOr(AOrExprOr node) {
 		// expr_or = {or} expr_or or expr_and
+		if (loadFoldedConstant(node))
+			return;
 		invokeOperator(BinaryOperator.OR, node.getExprOr(), node.getExprAnd());
 	}
 
@@ -303,6 +444,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseAAndExprAnd(AAndExprAnd node) {
 		// expr_and = {and} expr_and and expr_not
+		if (loadFoldedConstant(node))
+			return;
 		invokeOperator(BinaryOperator.AND, node.getExprAnd(), node.getExprNot());
 	}
 
@@ -318,6 +461,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseANotExprNot(ANotExprNot node) {
 		// expr_not = {not} not expr_comparison
+		if (loadFoldedConstant(node))
+			return;
 		invokeOperator(UnaryOperator.NOT, node.getExprComparison());
 	}
 
@@ -356,6 +501,8 @@ final class ExpressionCompiler extends VisitorBase {
 	public void caseASimExprComparison(ASimExprComparison node) {
 		// expr_comparison = [first_string]:expr_string simple_comp_op
 		// [second_string]:expr_string
+		if (loadFoldedConstant(node))
+			return;
 		BinaryOperator op;
 		PSimpleCompOp compOp = node.getSimpleCompOp();
 		if (compOp instanceof AEqSimpleCompOp || compOp instanceof AEqsSimpleCompOp)
@@ -372,7 +519,7 @@ final class ExpressionCompiler extends VisitorBase {
 			op = BinaryOperator.LT;
 		else
 			throw new RuntimeCompilerException("Unsupported comparison operator: " + compOp.toString());
-		invokeOperator(op, node.getFirstString(), node.getSecondString());
+		invokeComparison(op, node.getFirstString(), node.getSecondString());
 	}
 
 	@Override
@@ -437,8 +584,19 @@ final class ExpressionCompiler extends VisitorBase {
 		// expr_comparison = {match} [first_string]:expr_string matches pattern
 		// [second_string]:expr_string;
 		node.getFirstString().apply(this);
-		node.getSecondString().apply(this);
-		context.writer.invokeStatic(getMethod("matchesPattern", ArdenValue.class, ArdenValue.class));
+		Node pattern = node.getSecondString();
+		Node inner;
+		while ((inner = NumericTypeAnalysis.getInnerExpression(pattern)) != null)
+			pattern = inner;
+		if (pattern instanceof AStringExprFactorAtom) {
+			// compile the pattern only once
+			String text = ParseHelpers.getLiteralStringValue(((AStringExprFactorAtom) pattern).getStringLiteral());
+			context.writer.loadStaticField(context.codeGenerator.getPatternLiteral(text));
+			context.writer.invokeStatic(getMethod("matchesPattern", ArdenValue.class, StringPattern.class));
+		} else {
+			node.getSecondString().apply(this);
+			context.writer.invokeStatic(getMethod("matchesPattern", ArdenValue.class, ArdenValue.class));
+		}
 	}
 
 	// expr_string =
@@ -457,6 +615,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseAOrExprString(AOrExprString node) {
 		// expr_string = expr_string logor expr_plus
+		if (loadFoldedConstant(node))
+			return;
 		node.getExprString().apply(this);
 		node.getExprPlus().apply(this);
 		context.writer.invokeStatic(getMethod("concat", ArdenValue.class, ArdenValue.class));
@@ -541,24 +701,40 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseAPlusExprPlus(APlusExprPlus node) {
 		// expr_plus = {plus} expr_plus plus expr_times
+		if (loadFoldedConstant(node))
+			return;
+		if (compileNumericExpression(node))
+			return;
 		invokeOperator(BinaryOperator.ADD, node.getExprPlus(), node.getExprTimes());
 	}
 
 	@Override
 	public void caseAMinusExprPlus(AMinusExprPlus node) {
 		// expr_plus = {minus} expr_plus minus expr_times
+		if (loadFoldedConstant(node))
+			return;
+		if (compileNumericExpression(node))
+			return;
 		invokeOperator(BinaryOperator.SUB, node.getExprPlus(), node.getExprTimes());
 	}
 
 	@Override
 	public void caseAPlustExprPlus(APlustExprPlus node) {
 		// expr_plus = {plust} plus expr_times
+		if (loadFoldedConstant(node))
+			return;
+		if (compileNumericExpression(node))
+			return;
 		invokeOperator(UnaryOperator.PLUS, node.getExprTimes());
 	}
 
 	@Override
 	public void caseAMintExprPlus(AMintExprPlus node) {
 		// expr_plus = {mint} minus expr_times
+		if (loadFoldedConstant(node))
+			return;
+		if (compileNumericExpression(node))
+			return;
 		invokeOperator(UnaryOperator.MINUS, node.getExprTimes());
 	}
 
@@ -575,12 +751,20 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseATpowExprTimes(ATpowExprTimes node) {
 		// expr_times = {tpow} expr_times times expr_power
+		if (loadFoldedConstant(node))
+			return;
+		if (compileNumericExpression(node))
+			return;
 		invokeOperator(BinaryOperator.MUL, node.getExprTimes(), node.getExprPower());
 	}
 
 	@Override
 	public void caseADpowExprTimes(ADpowExprTimes node) {
 		// expr_times = {dpow} expr_times div expr_power
+		if (loadFoldedConstant(node))
+			return;
+		if (compileNumericExpression(node))
+			return;
 		invokeOperator(BinaryOperator.DIV, node.getExprTimes(), node.getExprPower());
 	}
 
@@ -597,6 +781,8 @@ final class ExpressionCompiler extends VisitorBase {
 		// expr_power = {exp} [base]:expr_function dexp [exp]:expr_function
 		// Exponent (second arguement) must be an expression that evaluates to a
 		// scalar number
+		if (loadFoldedConstant(node))
+			return;
 		invokeOperator(BinaryOperator.POW, node.getBase(), node.getExp());
 	}
 
@@ -614,12 +800,16 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseABeforeExprBefore(ABeforeExprBefore node) {
 		// expr_before = {before} expr_duration before expr_ago
+		if (loadFoldedConstant(node))
+			return;
 		invokeOperator(BinaryOperator.BEFORE, node.getExprDuration(), node.getExprAgo());
 	}
 
 	@Override
 	public void caseAAfterExprBefore(AAfterExprBefore node) {
 		// expr_before = {after} expr_duration after expr_ago
+		if (loadFoldedConstant(node))
+			return;
 		invokeOperator(BinaryOperator.AFTER, node.getExprDuration(), node.getExprAgo());
 	}
 
@@ -627,6 +817,8 @@ final class ExpressionCompiler extends VisitorBase {
 	public void caseAFromExprBefore(AFromExprBefore node) {
 		// expr_before = {from} expr_duration from expr_ago
 		// FROM and AFTER both do the same (duration + time)
+		if (loadFoldedConstant(node))
+			return;
 		invokeOperator(BinaryOperator.AFTER, node.getExprDuration(), node.getExprAgo());
 	}
 
@@ -659,6 +851,8 @@ final class ExpressionCompiler extends VisitorBase {
 	// expr_duration = expr_function duration_op;
 	@Override
 	public void caseAExprDuration(AExprDuration node) {
+		if (loadFoldedConstant(node))
+			return;
 		node.getExprFunction().apply(this);
 		PDurationOp durOp = node.getDurationOp();
 		compileDurationOp(durOp);
@@ -814,9 +1008,14 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseADotExprFactor(ADotExprFactor node) {
 		// expr_factor = {dot} expr_factor dot identifier
+		String fieldName = node.getIdentifier().getText().toUpperCase(Locale.ENGLISH);
+		context.writer.loadStaticField(context.codeGenerator.createObjectMemberAccess(fieldName));
 		node.getExprFactor().apply(this);
-		context.writer.loadStringConstant(node.getIdentifier().getText().toUpperCase(Locale.ENGLISH));
-		context.writer.invokeStatic(Compiler.getRuntimeHelper("getObjectMember", ArdenValue.class, String.class));
+		try {
+			context.writer.invokeInstance(ObjectMemberAccess.class.getMethod("get", ArdenValue.class));
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	// expr_factor_atom =
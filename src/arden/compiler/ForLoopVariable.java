@@ -43,6 +43,11 @@ final class ForLoopVariable extends Variable {
 		this.variableIndex = variableIndex;
 	}
 
+	@Override
+	public boolean isReadable() {
+		return true;
+	}
+
 	@Override
 	public void loadValue(CompilerContext context, Token errorPosition) {
 		context.writer.loadVariable(variableIndex);
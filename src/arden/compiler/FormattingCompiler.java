@@ -36,7 +36,6 @@ import arden.codegenerator.FieldReference;
 import arden.codegenerator.Label;
 import arden.codegenerator.MethodWriter;
 import arden.compiler.node.Token;
-import arden.runtime.ArdenList;
 import arden.runtime.ArdenNull;
 import arden.runtime.ArdenString;
 import arden.runtime.ArdenValue;
@@ -66,7 +65,7 @@ final class FormattingCompiler {
 	 */
 	public void run(CompilerContext context) {
 		// we'll emit code in the form:
-		// ArdenValue[] values = ExpressionHelpers.unaryComma(inputData).values;
+		// ArdenValue[] values = ExpressionHelpers.unaryComma(inputData).getElements();
 		// new ArdenString(new StringBuilder().append(...).toString())
 
 		this.context = context;
@@ -74,7 +73,7 @@ final class FormattingCompiler {
 			// convert ArdenValue on stack to ArdenList
 			context.writer.invokeStatic(ExpressionCompiler.getMethod("unaryComma", ArdenValue.class));
 			// fetch the values inside the list
-			context.writer.loadInstanceField(ArdenList.class.getField("values"));
+			context.writer.invokeInstance(ArdenValue.class.getMethod("getElements"));
 			// store the ArdenValue[] in a variable
 			this.valuesVariable = context.allocateVariable();
 			context.writer.storeVariable(valuesVariable);
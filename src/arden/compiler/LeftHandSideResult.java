@@ -38,6 +38,7 @@ import arden.compiler.node.TIdentifier;
 import arden.compiler.node.TNow;
 import arden.compiler.node.Token;
 import arden.runtime.ArdenValue;
+import arden.runtime.ObjectMemberAccess;
 import arden.runtime.UnaryOperator;
 
 /**
@@ -111,18 +112,30 @@ final class LeftHandSideObjectMember extends LeftHandSideResult {
 	@Override
 	public void assign(CompilerContext context, Switchable expr) {
 		context.writer.sequencePoint(getPosition().getLine());
+		context.writer.loadStaticField(context.codeGenerator.createObjectMemberAccess(getFieldName()));
 		target.loadValue(context);
-		context.writer.loadStringConstant(identifier.getText().toUpperCase(Locale.ENGLISH));
 		expr.apply(new ExpressionCompiler(context));
-		context.writer.invokeStatic(Compiler.getRuntimeHelper("setObjectMember", ArdenValue.class, String.class,
-				ArdenValue.class));
+		try {
+			context.writer.invokeInstance(ObjectMemberAccess.class.getMethod("set", ArdenValue.class,
+					ArdenValue.class));
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	@Override
 	public void loadValue(CompilerContext context) {
+		context.writer.loadStaticField(context.codeGenerator.createObjectMemberAccess(getFieldName()));
 		target.loadValue(context);
-		context.writer.loadStringConstant(identifier.getText().toUpperCase(Locale.ENGLISH));
-		context.writer.invokeStatic(Compiler.getRuntimeHelper("getObjectMember", ArdenValue.class, String.class));
+		try {
+			context.writer.invokeInstance(ObjectMemberAccess.class.getMethod("get", ArdenValue.class));
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private String getFieldName() {
+		return identifier.getText().toUpperCase(Locale.ENGLISH);
 	}
 }
 
@@ -66,6 +66,11 @@ final class MessageVariable extends Variable {
 		}
 	}
 	
+	@Override
+	public boolean isReadable() {
+		return true;
+	}
+
 	@Override
 	public void loadValue(CompilerContext context, Token errorPosition) {
 		context.writer.loadThis();
@@ -0,0 +1,236 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import arden.compiler.analysis.DepthFirstAdapter;
+import arden.compiler.node.*;
+
+/**
+ * Finds the expressions, which always evaluate to a number or null without a
+ * primary time. The ExpressionCompiler computes these expressions with
+ * primitive doubles (NaN stands for null) and only creates an ArdenNumber for
+ * the result.
+ * 
+ * Numeric expressions are number literals, COUNT OF, numeric variables and
+ * the arithmetic operators +, -, * and / applied to numeric expressions. A
+ * variable is numeric if it is only read and assigned in simple assignments
+ * (x := expr) of numeric expressions. As variables are initialized to null,
+ * such a variable always holds a number or null without primary time.
+ */
+final class NumericTypeAnalysis {
+	/** Variables with their assigned expressions, null if not numeric */
+	private final HashMap<String, List<PExpr>> variables = new HashMap<String, List<PExpr>>();
+	private final Set<String> numericVariables = new HashSet<String>();
+	private final HashMap<Node, Boolean> numericExpressions = new HashMap<Node, Boolean>();
+	private boolean isFinished = false;
+
+	/** Analyzes the variables in the knowledge category of an MLM. */
+	public NumericTypeAnalysis(Node knowledge) {
+		knowledge.apply(new DepthFirstAdapter() {
+			@Override
+			public void caseTIdentifier(TIdentifier node) {
+				addOccurrence(node);
+			}
+		});
+		for (String name : variables.keySet()) {
+			if (variables.get(name) != null)
+				numericVariables.add(name);
+		}
+		// start with all candidates, remove variables with a non-numeric
+		// assignment until all assignments are numeric
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (String name : new ArrayList<String>(numericVariables)) {
+				for (PExpr expr : variables.get(name)) {
+					if (!isNumeric(expr)) {
+						numericVariables.remove(name);
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		isFinished = true;
+	}
+
+	private void addOccurrence(TIdentifier identifier) {
+		String name = identifier.getText().toLowerCase(Locale.ENGLISH);
+		if (!variables.containsKey(name))
+			variables.put(name, new ArrayList<PExpr>());
+		List<PExpr> assignments = variables.get(name);
+		if (assignments == null)
+			return;
+
+		Node parent = identifier.parent();
+		if (parent instanceof AIdExprFactorAtom)
+			return; // the variable is read
+		PExpr assigned = null;
+		if (parent instanceof AIdIdentifierOrObjectRef)
+			assigned = getAssignedExpression((AIdIdentifierOrObjectRef) parent);
+		if (assigned != null)
+			assignments.add(assigned);
+		else
+			variables.put(name, null); // any other use
+	}
+
+	/** Gets the expression in a simple assignment to the identifier, or null. */
+	private static PExpr getAssignedExpression(AIdIdentifierOrObjectRef identifier) {
+		Node becomes = identifier.parent();
+		if (!(becomes instanceof AIdIdentifierBecomes) && !(becomes instanceof ALetIdentifierBecomes))
+			return null;
+		Node assignment = becomes.parent();
+		if (assignment instanceof AIdexLogicAssignment)
+			return ((AIdexLogicAssignment) assignment).getExpr();
+		if (assignment instanceof AAssign1ActionStatement)
+			return ((AAssign1ActionStatement) assignment).getExpr();
+		if (assignment instanceof AIphrDataAssignment) {
+			PDataAssignPhrase phrase = ((AIphrDataAssignment) assignment).getDataAssignPhrase();
+			if (phrase instanceof AExprDataAssignPhrase)
+				return ((AExprDataAssignPhrase) phrase).getExpr();
+		}
+		return null;
+	}
+
+	/** Gets whether the variable always holds a number or null. */
+	public boolean isNumericVariable(String name) {
+		return numericVariables.contains(name.toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Gets whether the expression always evaluates to a number or null
+	 * without primary time.
+	 */
+	public boolean isNumeric(Node expr) {
+		if (!isFinished)
+			return analyze(expr);
+		Boolean result = numericExpressions.get(expr);
+		if (result == null) {
+			result = analyze(expr);
+			numericExpressions.put(expr, result);
+		}
+		return result;
+	}
+
+	private boolean analyze(Node expr) {
+		Node inner = getInnerExpression(expr);
+		if (inner != null)
+			return isNumeric(inner);
+
+		// arithmetic
+		if (expr instanceof APlusExprPlus)
+			return isNumeric(((APlusExprPlus) expr).getExprPlus()) && isNumeric(((APlusExprPlus) expr).getExprTimes());
+		if (expr instanceof AMinusExprPlus)
+			return isNumeric(((AMinusExprPlus) expr).getExprPlus())
+					&& isNumeric(((AMinusExprPlus) expr).getExprTimes());
+		if (expr instanceof APlustExprPlus)
+			return isNumeric(((APlustExprPlus) expr).getExprTimes());
+		if (expr instanceof AMintExprPlus)
+			return isNumeric(((AMintExprPlus) expr).getExprTimes());
+		if (expr instanceof ATpowExprTimes)
+			return isNumeric(((ATpowExprTimes) expr).getExprTimes())
+					&& isNumeric(((ATpowExprTimes) expr).getExprPower());
+		if (expr instanceof ADpowExprTimes)
+			return isNumeric(((ADpowExprTimes) expr).getExprTimes())
+					&& isNumeric(((ADpowExprTimes) expr).getExprPower());
+
+		// leaves
+		if (expr instanceof ANumExprFactorAtom)
+			return true;
+		if (expr instanceof AIdExprFactorAtom)
+			return isNumericVariable(((AIdExprFactorAtom) expr).getIdentifier().getText());
+		return getCountArgument(expr) != null;
+	}
+
+	/**
+	 * Gets the inner expression of an expression, which only consists of
+	 * another expression (e.g. parentheses), or null for other expressions.
+	 */
+	static Node getInnerExpression(Node expr) {
+		if (expr instanceof ASortExpr)
+			return ((ASortExpr) expr).getExprSort();
+		if (expr instanceof AWhereExprSort)
+			return ((AWhereExprSort) expr).getExprWhere();
+		if (expr instanceof ARangeExprWhere)
+			return ((ARangeExprWhere) expr).getExprRange();
+		if (expr instanceof AOrExprRange)
+			return ((AOrExprRange) expr).getExprOr();
+		if (expr instanceof AAndExprOr)
+			return ((AAndExprOr) expr).getExprAnd();
+		if (expr instanceof ANotExprAnd)
+			return ((ANotExprAnd) expr).getExprNot();
+		if (expr instanceof ACompExprNot)
+			return ((ACompExprNot) expr).getExprComparison();
+		if (expr instanceof AStrExprComparison)
+			return ((AStrExprComparison) expr).getExprString();
+		if (expr instanceof APlusExprString)
+			return ((APlusExprString) expr).getExprPlus();
+		if (expr instanceof ATimesExprPlus)
+			return ((ATimesExprPlus) expr).getExprTimes();
+		if (expr instanceof APowerExprTimes)
+			return ((APowerExprTimes) expr).getExprPower();
+		if (expr instanceof ABeforeExprPower)
+			return ((ABeforeExprPower) expr).getExprBefore();
+		if (expr instanceof AAgoExprBefore)
+			return ((AAgoExprBefore) expr).getExprAgo();
+		if (expr instanceof AFuncExprAgo)
+			return ((AFuncExprAgo) expr).getExprFunction();
+		if (expr instanceof AExprExprFunction)
+			return ((AExprExprFunction) expr).getExprFactor();
+		if (expr instanceof AExpfExprFactor)
+			return ((AExpfExprFactor) expr).getExprFactorAtom();
+		if (expr instanceof AExpExprFactorAtom)
+			return ((AExpExprFactorAtom) expr).getExpr();
+		return null;
+	}
+
+	/** Gets the argument of a COUNT OF expression, or null for other expressions. */
+	static PExprFunction getCountArgument(Node expr) {
+		POfFuncOp op;
+		PExprFunction argument;
+		if (expr instanceof AOfexprExprFunction) {
+			op = ((AOfexprExprFunction) expr).getOfFuncOp();
+			argument = ((AOfexprExprFunction) expr).getExprFunction();
+		} else if (expr instanceof AOfofexprExprFunction) {
+			op = ((AOfofexprExprFunction) expr).getOfFuncOp();
+			argument = ((AOfofexprExprFunction) expr).getExprFunction();
+		} else {
+			return null;
+		}
+		if (op instanceof AOfrOfFuncOp && ((AOfrOfFuncOp) op).getOfReadFuncOp() instanceof ACntOfReadFuncOp)
+			return argument;
+		return null;
+	}
+}
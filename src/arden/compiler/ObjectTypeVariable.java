@@ -29,6 +29,7 @@ package arden.compiler;
 
 import java.lang.reflect.Modifier;
 import java.util.LinkedList;
+import java.util.List;
 
 import arden.codegenerator.FieldReference;
 import arden.codegenerator.MethodWriter;
@@ -46,10 +47,23 @@ import arden.runtime.ObjectType;
  */
 public class ObjectTypeVariable extends Variable {
 	final FieldReference field;
+	private final List<String> memberNames;
 
-	public ObjectTypeVariable(TIdentifier name, FieldReference field) {
+	public ObjectTypeVariable(TIdentifier name, FieldReference field, List<String> memberNames) {
 		super(name);
 		this.field = field;
+		this.memberNames = memberNames;
+	}
+
+	/** Gets the index of the member in ObjectType.fieldNames, or -1. */
+	public int getMemberIndex(String upperCaseName) {
+		int index = 0;
+		for (String memberName : memberNames) {
+			if (memberName.equalsIgnoreCase(upperCaseName))
+				return index;
+			index++;
+		}
+		return -1;
 	}
 
 	/**
@@ -62,10 +76,10 @@ public class ObjectTypeVariable extends Variable {
 
 		FieldReference mlmField = codeGen.createField(ident.getText(), ObjectType.class, Modifier.PRIVATE
 				| Modifier.STATIC | Modifier.FINAL);
-		codeGen.addVariable(new ObjectTypeVariable(ident, mlmField));
+		LinkedList<String> list = getAttributeNames(attributeList);
+		codeGen.addVariable(new ObjectTypeVariable(ident, mlmField, list));
 
 		MethodWriter init = codeGen.getStaticInitializer();
-		LinkedList<String> list = getAttributeNames(attributeList);
 
 		// emit: mlmField = new ObjectType(name, new String[] { fieldNames });
 		init.newObject(ObjectType.class);
@@ -143,7 +143,7 @@ final class ParseHelpers {
 		int timezonePos = ArdenTime.isoDateTimeLength;
 		if(timezonePos < parsableText.length()) {
 			// has timezone
-			format = ArdenTime.isoDateTimeFormatWithGmtTimeZone;
+			format = ArdenTime.getIsoDateTimeFormatWithGmtTimeZone();
 			switch (parsableText.charAt(timezonePos)) {
 			case 'Z':
 				// 2000-01-01T00:00:00Z -> 2000-01-01T00:00:00ZGMT-00:00
@@ -159,7 +159,7 @@ final class ParseHelpers {
 			}
 		} else {
 			// no timezone
-			format = ArdenTime.isoDateTimeFormat;
+			format = ArdenTime.getIsoDateTimeFormat();
 		}
 		
 		Date date;
@@ -173,7 +173,7 @@ final class ParseHelpers {
 
 	public static long parseIsoDate(TIsoDate date) {
 		try {
-			return ArdenTime.isoDateFormat.parse(date.getText()).getTime();
+			return ArdenTime.getIsoDateFormat().parse(date.getText()).getTime();
 		} catch (ParseException e) {
 			throw new RuntimeCompilerException(e.getMessage());
 		}
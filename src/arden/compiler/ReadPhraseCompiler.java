@@ -27,11 +27,16 @@
 
 package arden.compiler;
 
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
 import arden.codegenerator.Label;
 import arden.compiler.node.*;
 import arden.runtime.ArdenValue;
 import arden.runtime.BinaryOperator;
 import arden.runtime.DatabaseQuery;
+import arden.runtime.MappingParameter;
 
 /**
  * Compiler for READ phrases.
@@ -227,10 +232,42 @@ final class ReadPhraseCompiler extends VisitorBase {
 	// mapping_factor = l_brc data_mapping r_brc;
 	@Override
 	public void caseAMappingFactor(AMappingFactor node) {
+		String mapping = node.getDataMapping().getText();
+		// parameters are variables of the MLM, named as :variable in the mapping
+		Map<String, Variable> parameters = new LinkedHashMap<String, Variable>();
+		for (MappingParameter parameter : MappingParameter.find(mapping)) {
+			Variable variable = context.codeGenerator.getVariable(parameter.name);
+			if (variable != null && variable.isReadable()) {
+				parameters.put(parameter.name.toLowerCase(Locale.ENGLISH), variable);
+			}
+		}
+
 		context.writer.loadVariable(context.executionContextVariable);
 		context.writer.loadVariable(context.selfMLMVariable);
-		context.writer.loadStringConstant(node.getDataMapping().getText());
-		context.writer.invokeInstance(ExecutionContextMethods.createQuery);
+		context.writer.loadStringConstant(mapping);
+		if (parameters.isEmpty()) {
+			context.writer.invokeInstance(ExecutionContextMethods.createQuery);
+			return;
+		}
+		context.writer.loadIntegerConstant(parameters.size());
+		context.writer.newArray(String.class);
+		int index = 0;
+		for (String name : parameters.keySet()) {
+			context.writer.dup();
+			context.writer.loadIntegerConstant(index++);
+			context.writer.loadStringConstant(name);
+			context.writer.storeObjectToArray();
+		}
+		context.writer.loadIntegerConstant(parameters.size());
+		context.writer.newArray(ArdenValue.class);
+		index = 0;
+		for (Variable variable : parameters.values()) {
+			context.writer.dup();
+			context.writer.loadIntegerConstant(index++);
+			variable.loadValue(context, node.getDataMapping());
+			context.writer.storeObjectToArray();
+		}
+		context.writer.invokeInstance(ExecutionContextMethods.createQueryWithParameters);
 	}
 
 	/** Adds the temporalCompOp to the DatabaseQuery on the evaluation stack */
@@ -262,7 +299,7 @@ final class ReadPhraseCompiler extends VisitorBase {
 				durationExpr.apply(expressionCompiler);
 				timeExpr.apply(expressionCompiler);
 				// stack: query, argument, BEFORE, dur, time
-				context.writer.dup_x2();
+				expressionCompiler.dupBelowLoadedBinaryOperator();
 				// stack: query, argument, time, BEFORE, dur, time
 				expressionCompiler.invokeLoadedBinaryOperator();
 				// stack: query, argument, time, time2
@@ -279,7 +316,7 @@ final class ReadPhraseCompiler extends VisitorBase {
 				node.getLeft().apply(expressionCompiler);
 				node.getRight().apply(expressionCompiler);
 				// stack: query, argument, AFTER, dur, time
-				context.writer.dup_x2();
+				expressionCompiler.dupBelowLoadedBinaryOperator();
 				// stack: query, argument, time, AFTER, dur, time
 				expressionCompiler.invokeLoadedBinaryOperator();
 				// stack: query, argument, time, time2
@@ -60,6 +60,11 @@ abstract class Variable {
 		throw new RuntimeCompilerException(errorPosition, "The variable '" + name + "' cannot be read from.");
 	}
 
+	/** Gets whether {@link #loadValue(CompilerContext, Token)} can be used. */
+	public boolean isReadable() {
+		return false;
+	}
+
 	/**
 	 * Emits the instructions to save a value to the variable.
 	 * 
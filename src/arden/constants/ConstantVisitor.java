@@ -111,7 +111,7 @@ class ConstantVisitor extends DepthFirstAdapter {
 		int timezonePos = ArdenTime.isoDateTimeLength;
 		if (timezonePos < parsableText.length()) {
 			// has timezone
-			format = ArdenTime.isoDateTimeFormatWithGmtTimeZone;
+			format = ArdenTime.getIsoDateTimeFormatWithGmtTimeZone();
 			switch (parsableText.charAt(timezonePos)) {
 			case 'Z':
 				// 2000-01-01T00:00:00Z -> 2000-01-01T00:00:00GMT-00:00
@@ -127,7 +127,7 @@ class ConstantVisitor extends DepthFirstAdapter {
 			}
 		} else {
 			// no timezone
-			format = ArdenTime.isoDateTimeFormat;
+			format = ArdenTime.getIsoDateTimeFormat();
 		}
 
 		Date date;
@@ -141,7 +141,7 @@ class ConstantVisitor extends DepthFirstAdapter {
 
 	private static long parseIsoDate(TArdenDate isoDate) throws ConstantParserException {
 		try {
-			return ArdenTime.isoDateFormat.parse(isoDate.getText()).getTime();
+			return ArdenTime.getIsoDateFormat().parse(isoDate.getText()).getTime();
 		} catch (ParseException e) {
 			throw new ConstantParserException(isoDate, e.getMessage());
 		}
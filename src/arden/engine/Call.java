@@ -2,13 +2,24 @@ package arden.engine;
 
 public abstract class Call implements Runnable, Comparable<Call> {
 	private final int priority;
+	// set by the CallQueue, when the call is added
+	long queuedNanos;
 
 	public Call(int priority) {
 		this.priority = priority;
 	}
 
+	int getPriority() {
+		return priority;
+	}
+
+	/** @return the urgency from 1 (low urgency) to 99 (high urgency) */
+	int getUrgency() {
+		return priority;
+	}
+
 	@Override
 	public int compareTo(Call other) {
 		return priority - other.priority;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,532 @@
+package arden.engine;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * The thread-safe queue of calls, which are waiting for execution. Calls are
+ * taken in the order of their priority (see {@link Call#compareTo(Call)}),
+ * calls with the same priority in the order they were added.
+ * </p>
+ * <p>
+ * The queue may be bounded. Calls which are added via {@link #submit(Call)}
+ * while the queue is full are handled according to the
+ * {@link OverloadPolicy}. Calls which are added via {@link #add(Call)} are
+ * always accepted, even if this exceeds the capacity. The evoke engine uses
+ * this for calls from its own threads, which must never block, as no other
+ * thread would take calls from the queue. Threads which must not block either
+ * can use {@link #trySubmitAll(List)} and submit the remaining calls later.
+ * </p>
+ * <p>
+ * The queue counts the added and taken calls and measures how long calls have
+ * been waiting. See {@link #getMetrics()}.
+ * </p>
+ */
+public class CallQueue extends AbstractQueue<Call> {
+	/** What to do with calls, which are submitted while the queue is full. */
+	public enum OverloadPolicy {
+		/** Wait until there is space in the queue. */
+		BLOCK,
+		/**
+		 * Drop the call with the lowest urgency. Calls of MLMs are dropped
+		 * before event calls, and of calls with the same urgency the latest
+		 * one is dropped. This may be the submitted call itself.
+		 */
+		DROP_LOWEST,
+		/**
+		 * Drop event calls, which are equal to an already waiting call. Other
+		 * calls wait until there is space in the queue.
+		 */
+		COALESCE,
+		/** Reject the submitted call. */
+		REJECT
+	}
+
+	/** Is informed about calls, which are not run because of an overload. */
+	public interface OverloadHandler {
+		/**
+		 * Called for each call, which has been dropped or rejected. Not called
+		 * for coalesced event calls.
+		 */
+		void overloaded(Call call);
+	}
+
+	/** Prints dropped and rejected calls to stderr. */
+	public static final OverloadHandler PRINT_HANDLER = new OverloadHandler() {
+		@Override
+		public void overloaded(Call call) {
+			System.err.println("Call queue is full, skipping " + call);
+		}
+	};
+
+	// urgencies up to these values are in the same band
+	private static final int[] URGENCY_BANDS = { 33, 66, 99 };
+
+	private final int capacity;
+	private final OverloadPolicy policy;
+	private final OverloadHandler handler;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	// calls by their priority, each in the order they were added
+	private final TreeMap<Integer, ArrayDeque<Call>> callsByPriority = new TreeMap<>();
+	private int size = 0;
+
+	private long enqueued = 0;
+	private long dequeued = 0;
+	private long dropped = 0;
+	private long coalesced = 0;
+	private long rejected = 0;
+	private final long[] waitCount = new long[URGENCY_BANDS.length];
+	private final long[] waitNanos = new long[URGENCY_BANDS.length];
+	private final long[] maxWaitNanos = new long[URGENCY_BANDS.length];
+
+	/** Creates an unbounded queue. */
+	public CallQueue() {
+		this(Integer.MAX_VALUE, OverloadPolicy.BLOCK, PRINT_HANDLER);
+	}
+
+	/**
+	 * @param capacity
+	 *            the number of calls, at which the queue is full
+	 * @param policy
+	 *            what to do with calls, which are submitted while the queue is
+	 *            full
+	 * @param handler
+	 *            is informed about dropped or rejected calls
+	 */
+	public CallQueue(int capacity, OverloadPolicy policy, OverloadHandler handler) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The queue must have a capacity of at least one call");
+		}
+		this.capacity = capacity;
+		this.policy = policy;
+		this.handler = handler;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public OverloadPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Adds the call. If the queue is full, the call is handled according to
+	 * the {@link OverloadPolicy}.
+	 *
+	 * @return whether the call has been added to the queue
+	 */
+	public boolean submit(Call call) {
+		Call overloaded = null;
+		lock.lock();
+		try {
+			while (size >= capacity && overloaded == null) {
+				if (policy == OverloadPolicy.COALESCE && call instanceof EventCall) {
+					if (containsDuplicate((EventCall) call)) {
+						coalesced++;
+						return false;
+					}
+				}
+
+				if (policy == OverloadPolicy.DROP_LOWEST) {
+					overloaded = dropLowest(call);
+				} else if (policy == OverloadPolicy.REJECT) {
+					overloaded = call;
+					rejected++;
+				} else {
+					// BLOCK or COALESCE without a duplicate
+					try {
+						notFull.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						overloaded = call;
+						rejected++;
+					}
+				}
+			}
+			if (overloaded == null) {
+				insert(call);
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (overloaded != null) {
+			handler.overloaded(overloaded);
+		}
+		return overloaded != call;
+	}
+
+	/**
+	 * Submits the calls in their order while taking the lock only once. Calls
+	 * are handled according to the {@link OverloadPolicy}, but instead of
+	 * waiting for space in the queue, this stops at the first call which
+	 * would have to wait.
+	 *
+	 * @return the number of calls from the start of the list, which have been
+	 *         handled, i.e. added, dropped, coalesced or rejected. The other
+	 *         calls have to be submitted again later.
+	 */
+	public int trySubmitAll(List<? extends Call> calls) {
+		List<Call> overloaded = null;
+		int handled = 0;
+		lock.lock();
+		try {
+			for (Call call : calls) {
+				if (size >= capacity) {
+					Call overloadedCall;
+					if (policy == OverloadPolicy.COALESCE && call instanceof EventCall
+							&& containsDuplicate((EventCall) call)) {
+						coalesced++;
+						overloadedCall = null;
+					} else if (policy == OverloadPolicy.DROP_LOWEST) {
+						overloadedCall = dropLowest(call);
+					} else if (policy == OverloadPolicy.REJECT) {
+						overloadedCall = call;
+						rejected++;
+					} else {
+						// BLOCK or COALESCE without a duplicate
+						break;
+					}
+					if (overloadedCall != null) {
+						if (overloaded == null) {
+							overloaded = new ArrayList<>();
+						}
+						overloaded.add(overloadedCall);
+					}
+				} else {
+					insert(call);
+				}
+				handled++;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (overloaded != null) {
+			for (Call call : overloaded) {
+				handler.overloaded(call);
+			}
+		}
+		return handled;
+	}
+
+	/**
+	 * Drops the lowest of the waiting calls and the given call. If that is a
+	 * waiting call, the given call is added instead.
+	 *
+	 * @return the dropped call
+	 */
+	private Call dropLowest(Call call) {
+		dropped++;
+		Call lowest = findLowest();
+		if (!isLower(lowest, call)) {
+			return call;
+		}
+		ArrayDeque<Call> samePriority = callsByPriority.get(lowest.getPriority());
+		samePriority.removeLastOccurrence(lowest);
+		if (samePriority.isEmpty()) {
+			callsByPriority.remove(lowest.getPriority());
+		}
+		size--;
+		insert(call);
+		return lowest;
+	}
+
+	/** @return the waiting call, which is dropped first */
+	private Call findLowest() {
+		Call lowest = null;
+		for (ArrayDeque<Call> samePriority : callsByPriority.values()) {
+			// only the latest MLM call and the latest event call of each
+			// priority are candidates
+			boolean mlmCallSeen = false;
+			boolean eventCallSeen = false;
+			Iterator<Call> calls = samePriority.descendingIterator();
+			while (calls.hasNext() && !(mlmCallSeen && eventCallSeen)) {
+				Call waiting = calls.next();
+				if (waiting instanceof EventCall) {
+					if (eventCallSeen) {
+						continue;
+					}
+					eventCallSeen = true;
+				} else {
+					if (mlmCallSeen) {
+						continue;
+					}
+					mlmCallSeen = true;
+				}
+				if (lowest == null || isLower(waiting, lowest)) {
+					lowest = waiting;
+				}
+			}
+		}
+		return lowest;
+	}
+
+	/** @return whether call a is dropped before call b */
+	private static boolean isLower(Call a, Call b) {
+		boolean eventA = a instanceof EventCall;
+		boolean eventB = b instanceof EventCall;
+		if (eventA != eventB) {
+			return eventB;
+		}
+		return a.getUrgency() < b.getUrgency();
+	}
+
+	private boolean containsDuplicate(EventCall call) {
+		ArrayDeque<Call> samePriority = callsByPriority.get(call.getPriority());
+		if (samePriority != null) {
+			for (Call waiting : samePriority) {
+				if (waiting instanceof EventCall && call.isDuplicateOf((EventCall) waiting)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/** Adds the call, even if the queue is full. */
+	@Override
+	public boolean offer(Call call) {
+		lock.lock();
+		try {
+			insert(call);
+		} finally {
+			lock.unlock();
+		}
+		return true;
+	}
+
+	/** Adds all calls at once, even if the queue is full. */
+	@Override
+	public boolean addAll(Collection<? extends Call> calls) {
+		lock.lock();
+		try {
+			for (Call call : calls) {
+				insert(call);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return !calls.isEmpty();
+	}
+
+	private void insert(Call call) {
+		ArrayDeque<Call> samePriority = callsByPriority.get(call.getPriority());
+		if (samePriority == null) {
+			samePriority = new ArrayDeque<>();
+			callsByPriority.put(call.getPriority(), samePriority);
+		}
+		call.queuedNanos = System.nanoTime();
+		samePriority.addLast(call);
+		size++;
+		enqueued++;
+		notEmpty.signal();
+	}
+
+	@Override
+	public Call poll() {
+		lock.lock();
+		try {
+			return size == 0 ? null : extract();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Waits until a call is available and removes it from the queue. */
+	public Call take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (size == 0) {
+				notEmpty.await();
+			}
+			return extract();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Call extract() {
+		Map.Entry<Integer, ArrayDeque<Call>> first = callsByPriority.firstEntry();
+		Call call = first.getValue().pollFirst();
+		if (first.getValue().isEmpty()) {
+			callsByPriority.remove(first.getKey());
+		}
+		size--;
+		dequeued++;
+		if (size < capacity) {
+			notFull.signal();
+		}
+
+		long waited = System.nanoTime() - call.queuedNanos;
+		int band = getBand(call.getUrgency());
+		waitCount[band]++;
+		waitNanos[band] += waited;
+		maxWaitNanos[band] = Math.max(maxWaitNanos[band], waited);
+		return call;
+	}
+
+	private static int getBand(int urgency) {
+		for (int band = 0; band < URGENCY_BANDS.length - 1; band++) {
+			if (urgency <= URGENCY_BANDS[band]) {
+				return band;
+			}
+		}
+		return URGENCY_BANDS.length - 1;
+	}
+
+	@Override
+	public Call peek() {
+		lock.lock();
+		try {
+			return size == 0 ? null : callsByPriority.firstEntry().getValue().peekFirst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Iterates over a snapshot of the waiting calls in the order of the queue. */
+	@Override
+	public Iterator<Call> iterator() {
+		List<Call> snapshot = new ArrayList<>();
+		lock.lock();
+		try {
+			for (ArrayDeque<Call> samePriority : callsByPriority.values()) {
+				snapshot.addAll(samePriority);
+			}
+		} finally {
+			lock.unlock();
+		}
+		final Iterator<Call> iterator = snapshot.iterator();
+		return new Iterator<Call>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Call next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/** @return the current counters and waiting times of this queue */
+	public Metrics getMetrics() {
+		lock.lock();
+		try {
+			return new Metrics(this);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A snapshot of the counters of a {@link CallQueue}. Rates can be computed
+	 * from two snapshots.
+	 */
+	public static final class Metrics {
+		/** The upper urgency of each band, which wait times are measured for. */
+		public static final int[] URGENCY_BANDS = CallQueue.URGENCY_BANDS.clone();
+
+		public final long nanoTime;
+		public final int depth;
+		public final long enqueued;
+		public final long dequeued;
+		public final long dropped;
+		public final long coalesced;
+		public final long rejected;
+		private final long[] waitCount;
+		private final long[] waitNanos;
+		private final long[] maxWaitNanos;
+
+		private Metrics(CallQueue queue) {
+			nanoTime = System.nanoTime();
+			depth = queue.size;
+			enqueued = queue.enqueued;
+			dequeued = queue.dequeued;
+			dropped = queue.dropped;
+			coalesced = queue.coalesced;
+			rejected = queue.rejected;
+			waitCount = queue.waitCount.clone();
+			waitNanos = queue.waitNanos.clone();
+			maxWaitNanos = queue.maxWaitNanos.clone();
+		}
+
+		/** @return the added calls per second since the earlier snapshot */
+		public double getEnqueueRate(Metrics since) {
+			return perSecond(enqueued - since.enqueued, since);
+		}
+
+		/** @return the taken calls per second since the earlier snapshot */
+		public double getDequeueRate(Metrics since) {
+			return perSecond(dequeued - since.dequeued, since);
+		}
+
+		private double perSecond(long count, Metrics since) {
+			long nanos = nanoTime - since.nanoTime;
+			return nanos <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+		}
+
+		/** @return the number of taken calls in the urgency band */
+		public long getTakenCalls(int band) {
+			return waitCount[band];
+		}
+
+		/** @return the average time calls in the urgency band have waited */
+		public double getAverageWaitMillis(int band) {
+			return waitCount[band] == 0 ? 0 : waitNanos[band] / (double) waitCount[band] / 1000000;
+		}
+
+		/** @return the longest time a call in the urgency band has waited */
+		public double getMaxWaitMillis(int band) {
+			return maxWaitNanos[band] / 1000000.0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("depth: ").append(depth);
+			builder.append(", enqueued: ").append(enqueued);
+			builder.append(", dequeued: ").append(dequeued);
+			builder.append(", dropped: ").append(dropped);
+			builder.append(", coalesced: ").append(coalesced);
+			builder.append(", rejected: ").append(rejected);
+			int lowest = 1;
+			for (int band = 0; band < URGENCY_BANDS.length; band++) {
+				builder.append(String.format(", urgency %d-%d waited avg %.1f ms max %.1f ms", lowest,
+						URGENCY_BANDS[band], getAverageWaitMillis(band), getMaxWaitMillis(band)));
+				lowest = URGENCY_BANDS[band] + 1;
+			}
+			return builder.toString();
+		}
+	}
+}
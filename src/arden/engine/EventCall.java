@@ -1,28 +1,87 @@
 package arden.engine;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collection;
 
 import arden.runtime.ArdenDuration;
 import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
 import arden.runtime.MedicalLogicModule;
 import arden.runtime.evoke.Trigger;
 
 public final class EventCall extends Call {
 	private final ArdenEvent event;
+	private final ArdenValue[] arguments;
+	private final int urgency;
 	private final ExecutionContext context;
 	private final Iterable<MedicalLogicModule> mlms;
+	private final EventIndex index;
+	private final Collection<Trigger> changedTriggers;
 
 	public EventCall(ExecutionContext context, Iterable<MedicalLogicModule> mlms, ArdenEvent event, int urgency) {
+		this(context, mlms, null, event, null, urgency, null);
+	}
+
+	/**
+	 * @param index
+	 *            only the triggers, which depend on the event, are looked up
+	 *            in this index.
+	 * @param arguments
+	 *            the arguments for MLMs, which are directly evoked by the
+	 *            event. May be null.
+	 * @param changedTriggers
+	 *            triggers whose next run time may have changed because of
+	 *            the event are added to this collection.
+	 */
+	public EventCall(ExecutionContext context, EventIndex index, ArdenEvent event, ArdenValue[] arguments,
+			int urgency, Collection<Trigger> changedTriggers) {
+		this(context, null, index, event, arguments, urgency, changedTriggers);
+	}
+
+	private EventCall(ExecutionContext context, Iterable<MedicalLogicModule> mlms, EventIndex index,
+			ArdenEvent event, ArdenValue[] arguments, int urgency, Collection<Trigger> changedTriggers) {
 		// handle events before MlmCalls (highest priority/urgency is 99)
 		super(99 + urgency);
+		this.urgency = urgency;
 		this.context = context;
 		this.mlms = mlms;
+		this.index = index;
 		this.event = event;
+		this.arguments = arguments;
+		this.changedTriggers = changedTriggers;
+	}
+
+	@Override
+	int getUrgency() {
+		return urgency;
+	}
+
+	/**
+	 * @return whether both calls would have the same effect, i.e. they call
+	 *         the same event at the same time with the same arguments.
+	 */
+	boolean isDuplicateOf(EventCall other) {
+		return event.equals(other.event) && event.eventTime == other.event.eventTime
+				&& event.primaryTime == other.event.primaryTime && urgency == other.urgency
+				&& Arrays.equals(arguments, other.arguments) && index == other.index && mlms == other.mlms;
+	}
+
+	@Override
+	public String toString() {
+		return "call of " + event;
 	}
 
 	@Override
 	public void run() {
+		if (index != null) {
+			for (EventIndex.Entry entry : index.lookup(event)) {
+				runTrigger(entry.mlm, entry.trigger);
+			}
+			return;
+		}
+
 		// schedule event for all triggers and call directly triggered MLMs
 		for (MedicalLogicModule mlm : mlms) {
 			Trigger[] triggers;
@@ -35,11 +94,17 @@ public final class EventCall extends Call {
 			}
 
 			for (Trigger trigger : triggers) {
-				trigger.scheduleEvent(event);
-				if (trigger.runOnEvent(event)) {
-					context.call(mlm, null, ArdenDuration.ZERO, trigger, mlm.getPriority());
-				}
+				runTrigger(mlm, trigger);
 			}
 		}
 	}
+
+	private void runTrigger(MedicalLogicModule mlm, Trigger trigger) {
+		if (trigger.scheduleEvent(event) && changedTriggers != null) {
+			changedTriggers.add(trigger);
+		}
+		if (trigger.runOnEvent(event)) {
+			context.call(mlm, arguments, ArdenDuration.ZERO, trigger, mlm.getPriority());
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package arden.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import arden.runtime.ArdenEvent;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.Trigger;
+
+/**
+ * <p>
+ * An index from event names to the evoke triggers, which depend on these
+ * events (see {@link Trigger#getEvents()}). Looking up an event only returns
+ * the triggers of interested MLMs instead of all triggers of all MLMs.
+ * </p>
+ * <p>
+ * Events are equal if their names are equal ignoring case (see
+ * {@link ArdenEvent#equals(Object)}), so the lower case name is used as key.
+ * Subclasses of {@link ArdenEvent} may compare differently. Triggers which
+ * depend on such events are returned for every lookup, and looking up such
+ * an event returns all triggers (a full scan).
+ * </p>
+ */
+public final class EventIndex {
+	static final class Entry {
+		final MedicalLogicModule mlm;
+		final Trigger trigger;
+
+		Entry(MedicalLogicModule mlm, Trigger trigger) {
+			this.mlm = mlm;
+			this.trigger = trigger;
+		}
+	}
+
+	private final Map<String, List<Entry>> entriesByName = new HashMap<>();
+	// triggers, which must be checked for every event
+	private final List<Entry> unindexedEntries = new ArrayList<>();
+	private final List<Entry> allEntries = new ArrayList<>();
+	private final AtomicLong indexHits = new AtomicLong();
+	private final AtomicLong fullScans = new AtomicLong();
+
+	private static String getKey(ArdenEvent event) {
+		if (event.getClass() != ArdenEvent.class) {
+			return null;
+		}
+		return event.name.toLowerCase(Locale.ENGLISH);
+	}
+
+	/** Adds the triggers of the MLM. Not thread-safe in regard to lookups. */
+	void add(MedicalLogicModule mlm, Trigger[] triggers) {
+		for (Trigger trigger : triggers) {
+			Entry entry = new Entry(mlm, trigger);
+			allEntries.add(entry);
+
+			Set<String> keys = new HashSet<>();
+			for (ArdenEvent event : trigger.getEvents()) {
+				String key = getKey(event);
+				if (key == null) {
+					keys = null;
+					break;
+				}
+				keys.add(key);
+			}
+
+			if (keys == null) {
+				unindexedEntries.add(entry);
+				continue;
+			}
+			for (String key : keys) {
+				List<Entry> entries = entriesByName.get(key);
+				if (entries == null) {
+					entries = new ArrayList<>();
+					entriesByName.put(key, entries);
+				}
+				entries.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * @return the triggers (and their MLMs), which may run or create a
+	 *         schedule for the event.
+	 */
+	List<Entry> lookup(ArdenEvent event) {
+		String key = getKey(event);
+		if (key == null) {
+			fullScans.incrementAndGet();
+			return allEntries;
+		}
+		indexHits.incrementAndGet();
+
+		List<Entry> entries = entriesByName.get(key);
+		if (entries == null) {
+			entries = Collections.emptyList();
+		}
+		if (unindexedEntries.isEmpty()) {
+			return entries;
+		}
+		List<Entry> result = new ArrayList<>(entries.size() + unindexedEntries.size());
+		result.addAll(entries);
+		result.addAll(unindexedEntries);
+		return result;
+	}
+
+	/** @return the number of lookups, which were answered by the index */
+	public long getIndexHits() {
+		return indexHits.get();
+	}
+
+	/** @return the number of lookups, which had to check all triggers */
+	public long getFullScans() {
+		return fullScans.get();
+	}
+}
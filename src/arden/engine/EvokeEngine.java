@@ -2,13 +2,18 @@ package arden.engine;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import arden.runtime.ArdenEvent;
 import arden.runtime.ArdenRunnable;
@@ -30,40 +35,127 @@ import arden.runtime.evoke.Trigger;
  * Threads can communicate with the engines scheduling loop via a message queue.
  * Messages are {@link EventCall}s or {@link MlmCall}s. EventCalls are handled
  * first as they only add new MlmCalls to the queue, then MlmCalls are handled
- * in order of their priority/urgency.
+ * in order of their priority/urgency. The queue may be bounded, see
+ * {@link CallQueue}.
  * </p>
  * <p>
  * MlmCalls or EventCalls may trigger other MLMs after a delay, so the engine
  * uses each MLMs {@link Trigger#getNextRunTime()} method to check when it
  * should run next. Delayed calls are added to the the queue after their delay
- * has passed, via a {@link ScheduledExecutorService}.
+ * has passed, via a {@link TimingWheel}. The next run time is only requested
+ * again for triggers, which may have changed, i.e. after they have been run or
+ * after an event has been scheduled for them (see
+ * {@link Trigger#scheduleEvent(ArdenEvent)}).
+ * </p>
+ * <p>
+ * Each trigger has at most one entry in the timing wheel, for its earliest
+ * pending run time. As requesting the next run time consumes it, later run
+ * times are kept with the entry. When a trigger's next run time moves earlier,
+ * its entry is cancelled and scheduled again. After it has fired, the entry is
+ * replaced by one for the next pending run time. Equal run times of the same
+ * trigger only run the MLM once.
+ * </p>
+ * <p>
+ * By default all calls are run on the engines thread. If more than one worker
+ * is requested, additional threads take calls from the same queue, so
+ * unrelated MLMs run in parallel. Calls to the same MLM are never run
+ * concurrently, but are queued until the previous call to that MLM has
+ * finished. EventCalls and the scheduling of triggers change the state of
+ * the triggers, so they are still run one at a time.
  * </p>
  */
 public class EvokeEngine implements Runnable {
 	// thread-safe queue of calls which are waiting for execution
-	private final PriorityBlockingQueue<Call> calls = new PriorityBlockingQueue<>(11);
-	private final ScheduledExecutorService delayer = Executors.newScheduledThreadPool(1);
+	private final CallQueue calls;
+	private final TimingWheel delayer;
+	// whether the current thread is one of the engines threads
+	private final ThreadLocal<Boolean> isWorker = new ThreadLocal<Boolean>() {
+		@Override
+		protected Boolean initialValue() {
+			return false;
+		}
+	};
 	private final ExecutionContext context;
 	private final List<MedicalLogicModule> mlms;
+	private final int workers;
+	// MLMs which are currently running, mapped to their waiting calls
+	private final Map<ArdenRunnable, Queue<Call>> runningMlms = new HashMap<>();
+	// guards the triggers state (EventCalls and scheduling)
+	private final Object triggerLock = new Object();
+	// the MLMs of all evoke triggers
+	private final Map<Trigger, MedicalLogicModule> triggerMlms = new IdentityHashMap<>();
+	// triggers whose next run time may have changed since they were scheduled
+	private final Set<Trigger> changedTriggers = Collections
+			.newSetFromMap(new IdentityHashMap<Trigger, Boolean>());
+	// the pending run times of the evoke triggers
+	private final Map<Trigger, ScheduledTrigger> scheduledTriggers = new IdentityHashMap<>();
+	// the evoke triggers by the events they depend on
+	private final EventIndex eventIndex = new EventIndex();
+	private boolean triggersInitialized = false;
 
 	public EvokeEngine(ExecutionContext context, List<MedicalLogicModule> mlms) {
+		this(context, mlms, 1);
+	}
+
+	/**
+	 * @param workers
+	 *            the number of threads which run calls, including the thread
+	 *            which calls {@link #run()}. Use 1 to run all calls on the
+	 *            engines thread.
+	 */
+	public EvokeEngine(ExecutionContext context, List<MedicalLogicModule> mlms, int workers) {
+		this(context, mlms, workers, new CallQueue());
+	}
+
+	/**
+	 * @param workers
+	 *            the number of threads which run calls, including the thread
+	 *            which calls {@link #run()}. Use 1 to run all calls on the
+	 *            engines thread.
+	 * @param calls
+	 *            the queue for waiting calls. Its overload policy is applied
+	 *            to calls from other threads than the engines.
+	 */
+	public EvokeEngine(ExecutionContext context, List<MedicalLogicModule> mlms, int workers, CallQueue calls) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("The engine needs at least one worker");
+		}
 		this.mlms = mlms;
 		this.context = context;
+		this.workers = workers;
+		this.calls = calls;
+		this.delayer = new TimingWheel(calls);
 	}
 
 	/** @see {@link ExecutionContext#findModules(ArdenEvent)} */
 	public MedicalLogicModule[] findModules(ArdenEvent event) throws InvocationTargetException {
+		synchronized (triggerLock) {
+			initializeTriggers();
+		}
 		List<MedicalLogicModule> foundModules = new ArrayList<>();
-		for (MedicalLogicModule mlm : mlms) {
-			for (Trigger trigger : mlm.getTriggers(context)) {
-				if (trigger.runOnEvent(event)) {
-					foundModules.add(mlm);
-				}
+		for (EventIndex.Entry entry : eventIndex.lookup(event)) {
+			if (entry.trigger.runOnEvent(event)) {
+				foundModules.add(entry.mlm);
 			}
 		}
 		return foundModules.toArray(new MedicalLogicModule[foundModules.size()]);
 	}
 
+	/** @return the number of calls, which are waiting to be run */
+	public int getQueueSize() {
+		return calls.size();
+	}
+
+	/** @return the current counters and waiting times of the call queue */
+	public CallQueue.Metrics getQueueMetrics() {
+		return calls.getMetrics();
+	}
+
+	/** @return the index, which is used to find the triggers for events */
+	public EventIndex getEventIndex() {
+		return eventIndex;
+	}
+
 	/**
 	 * Call an event after a delay.
 	 * 
@@ -77,25 +169,69 @@ public class EvokeEngine implements Runnable {
 	 *            used to decide in which order to evaluate events
 	 */
 	public void call(ArdenEvent event, long delay, int urgency) {
+		call(event, null, delay, urgency);
+	}
+
+	/**
+	 * Call an event with arguments after a delay.
+	 * 
+	 * @param event
+	 *            the event, which will be called "as is" without changing the
+	 *            eventtime
+	 * @param arguments
+	 *            the arguments for MLMs, which are directly evoked by the
+	 *            event. May be null.
+	 * @param delay
+	 *            the delay in milliseconds
+	 * @param urgency
+	 *            a number from 1 (low urgency) to 99 (high urgency), which is
+	 *            used to decide in which order to evaluate events
+	 */
+	public void call(ArdenEvent event, ArdenValue[] arguments, long delay, int urgency) {
 		/*
 		 * Checking the evoke statements may require running the data slot,
 		 * which should not run concurrent to other (possibly data changing)
 		 * MLMs. Therefore add an EventCall to calls, so it is run on the
 		 * engines thread.
 		 */
-		final EventCall call = new EventCall(context, mlms, event, urgency);
+		EventCall call = new EventCall(context, eventIndex, event, arguments, urgency, changedTriggers);
 		if (delay <= 0) {
 			// run event as soon as possible
-			calls.add(call);
+			enqueue(call);
 		} else {
 			// add the event call after the delay has passed
-			delayer.schedule(new Runnable() {
-				@Override
-				public void run() {
-					calls.add(call);
-				}
-			}, delay, TimeUnit.MILLISECONDS);
+			delayer.schedule(call, delay);
+		}
+	}
+
+	/**
+	 * Creates a call of the event, which can be added to the queue via
+	 * {@link #tryCallAll(List)}.
+	 * 
+	 * @see #call(ArdenEvent, ArdenValue[], long, int)
+	 */
+	public Call createCall(ArdenEvent event, ArdenValue[] arguments, int urgency) {
+		return new EventCall(context, eventIndex, event, arguments, urgency, changedTriggers);
+	}
+
+	/**
+	 * Adds the calls to the queue at once without blocking. If the queue is
+	 * full, its overload policy is applied, but instead of waiting for space
+	 * this stops at the first call which would have to wait.
+	 * 
+	 * @param calls
+	 *            calls, which have been created by
+	 *            {@link #createCall(ArdenEvent, ArdenValue[], int)}
+	 * @return the number of calls from the start of the list, which have been
+	 *         handled. The other calls have to be passed again later.
+	 */
+	public int tryCallAll(List<? extends Call> calls) {
+		if (isWorker.get()) {
+			// never block the engines own threads
+			this.calls.addAll(calls);
+			return calls.size();
 		}
+		return this.calls.trySubmitAll(calls);
 	}
 
 	/**
@@ -115,27 +251,64 @@ public class EvokeEngine implements Runnable {
 	 *            used to decide in which order to evaluate MLMs.
 	 */
 	public void call(ArdenRunnable mlm, ArdenValue[] arguments, long delay, Trigger evokingTrigger, int urgency) {
-		final MlmCall call = new MlmCall(context, mlm, arguments, evokingTrigger, urgency);
+		MlmCall call = new MlmCall(context, mlm, arguments, evokingTrigger, urgency);
 		if (delay <= 0) {
 			// run MLM as soon as possible
-			calls.add(call);
+			enqueue(call);
 		} else {
 			// add the call after the delay has passed
-			delayer.schedule(new Runnable() {
-				@Override
-				public void run() {
-					calls.add(call);
-				}
-			}, delay, TimeUnit.MILLISECONDS);
+			delayer.schedule(call, delay);
 		}
 	}
 
 	@Override
 	public void run() {
 		// initialize schedule for fixed time triggers
-		scheduleTriggers();
+		synchronized (triggerLock) {
+			initializeTriggers();
+			scheduleTriggers();
+		}
+
+		// add delayed calls to the queue, when they are due
+		Thread delayerThread = new Thread(delayer, "EvokeEngine delayer");
+		delayerThread.setDaemon(true);
+		delayerThread.start();
+
+		// start additional workers, this thread is the first worker
+		ExecutorService workerPool = null;
+		if (workers > 1) {
+			workerPool = Executors.newFixedThreadPool(workers - 1);
+			for (int i = 1; i < workers; i++) {
+				workerPool.execute(new Runnable() {
+					@Override
+					public void run() {
+						processCalls();
+					}
+				});
+			}
+		}
+
+		// the scheduling loop -> only exits on interrupt
+		processCalls();
+
+		// stop workers and cancel all delayed tasks
+		if (workerPool != null) {
+			workerPool.shutdownNow();
+		}
+		delayerThread.interrupt();
+	}
 
-		// the scheduling loop
+	private void enqueue(Call call) {
+		if (isWorker.get()) {
+			// never block the engines own threads, they have to empty the queue
+			calls.add(call);
+		} else {
+			calls.submit(call);
+		}
+	}
+
+	private void processCalls() {
+		isWorker.set(true);
 		while (!Thread.currentThread().isInterrupted()) {
 			// wait for calls
 			Call call;
@@ -146,46 +319,149 @@ public class EvokeEngine implements Runnable {
 				break;
 			}
 
-			// execute MlmCall or EventCall on this thread
-			call.run();
+			if (call instanceof MlmCall) {
+				runSerialized((MlmCall) call);
+			} else {
+				// EventCalls change the triggers state
+				synchronized (triggerLock) {
+					call.run();
+				}
+			}
 
 			// check for MLMs which may now be triggered
-			scheduleTriggers();
+			synchronized (triggerLock) {
+				scheduleTriggers();
+			}
+		}
+	}
+
+	/**
+	 * Runs the call on this thread, unless its MLM is already running on
+	 * another worker. In that case the call is queued and will be run by that
+	 * worker, after the current call has finished.
+	 */
+	private void runSerialized(MlmCall call) {
+		ArdenRunnable mlm = call.getRunnable();
+		synchronized (runningMlms) {
+			Queue<Call> waitingCalls = runningMlms.get(mlm);
+			if (waitingCalls != null) {
+				waitingCalls.add(call);
+				return;
+			}
+			runningMlms.put(mlm, new PriorityQueue<Call>(3));
 		}
 
-		// cancel all delayed tasks
-		delayer.shutdownNow();
+		Call next = call;
+		while (next != null) {
+			try {
+				next.run();
+			} catch (RuntimeException e) {
+				// print error and skip this call, so the waiting calls still run
+				e.printStackTrace();
+			}
+			triggerRun(((MlmCall) next).getTrigger());
+			synchronized (runningMlms) {
+				// waiting calls are run in the order of their priority/urgency
+				next = runningMlms.get(mlm).poll();
+				if (next == null) {
+					runningMlms.remove(mlm);
+				}
+			}
+		}
+	}
+
+	private void initializeTriggers() {
+		if (triggersInitialized) {
+			return;
+		}
+		triggersInitialized = true;
+		for (MedicalLogicModule mlm : mlms) {
+			Trigger[] triggers;
+			try {
+				triggers = mlm.getTriggers(context);
+			} catch (InvocationTargetException e) {
+				// print error and skip this MLM
+				e.printStackTrace();
+				continue;
+			}
+			for (Trigger trigger : triggers) {
+				triggerMlms.put(trigger, mlm);
+				changedTriggers.add(trigger);
+			}
+			eventIndex.add(mlm, triggers);
+		}
+	}
+
+	private void triggerRun(Trigger trigger) {
+		synchronized (triggerLock) {
+			// only evoke triggers are scheduled, calls from other MLMs are not
+			if (triggerMlms.containsKey(trigger)) {
+				changedTriggers.add(trigger);
+			}
+		}
+	}
+
+	/** The pending run times of a trigger and its entry in the timing wheel */
+	private static final class ScheduledTrigger {
+		// times in milliseconds since 1.1.1970
+		final SortedSet<Long> runTimes = new TreeSet<>();
+		TimingWheel.Timeout timeout;
+		long scheduledTime;
 	}
 
 	private void scheduleTriggers() {
-		// schedule MLMs by looking at their triggers getNextRunTime() method
-		Schedule schedule = Schedule.create(context, mlms);
+		if (changedTriggers.isEmpty()) {
+			return;
+		}
 
 		ArdenTime currentTime = context.getCurrentTime();
-		for (Entry<ArdenTime, Queue<Call>> entry : schedule.entrySet()) {
-			ArdenTime nextRuntime = entry.getKey();
-			final Queue<Call> triggeredMlms = entry.getValue();
-			final long delay = nextRuntime.value - currentTime.value;
-
-			if (delay <= 0) {
-				// run MLMs as soon as possible
-				calls.addAll(triggeredMlms);
-			} else {
-				// add the calls after the delay has passed
-				delayer.schedule(new Runnable() {
-					@Override
-					public void run() {
-						/*
-						 * PriorityBlockingQueue.addAll() is not atomic, i.e.
-						 * the first MLM has a high chance to run before all
-						 * other MLMs are added. The MLMs are already sorted by
-						 * their priority, so this is not a problem.
-						 */
-						calls.addAll(triggeredMlms);
-					}
-				}, delay, TimeUnit.MILLISECONDS);
+		List<Call> dueCalls = new ArrayList<>();
+		for (Trigger trigger : changedTriggers) {
+			MedicalLogicModule mlm = triggerMlms.get(trigger);
+			ScheduledTrigger scheduled = scheduledTriggers.get(trigger);
+			if (scheduled == null) {
+				scheduled = new ScheduledTrigger();
+			} else if (scheduled.timeout != null && !scheduled.timeout.isPending()) {
+				// the entry has fired, its call is queued or has been run
+				scheduled.runTimes.remove(scheduled.scheduledTime);
+				scheduled.timeout = null;
+			}
+
+			// consumes the next run time, see Trigger.getNextRunTime()
+			ArdenTime nextRuntime = trigger.getNextRunTime();
+			if (nextRuntime != null) {
+				if (nextRuntime.value <= currentTime.value) {
+					// run MLM as soon as possible
+					dueCalls.add(new MlmCall(context, mlm, null, trigger, (int) mlm.getPriority()));
+				} else {
+					scheduled.runTimes.add(nextRuntime.value);
+				}
+			}
 
+			if (scheduled.runTimes.isEmpty()) {
+				scheduledTriggers.remove(trigger);
+				continue;
 			}
+			scheduledTriggers.put(trigger, scheduled);
+			long earliest = scheduled.runTimes.first();
+			if (scheduled.timeout != null) {
+				if (earliest == scheduled.scheduledTime) {
+					continue;
+				}
+				// the next run time has moved earlier -> replace the entry
+				if (!scheduled.timeout.cancel()) {
+					// fired in the meantime
+					scheduled.runTimes.remove(scheduled.scheduledTime);
+				}
+			}
+			MlmCall call = new MlmCall(context, mlm, null, trigger, (int) mlm.getPriority());
+			scheduled.timeout = delayer.schedule(call, earliest - currentTime.value);
+			scheduled.scheduledTime = earliest;
+		}
+		changedTriggers.clear();
+
+		if (!dueCalls.isEmpty()) {
+			calls.addAll(dueCalls);
 		}
 	}
 }
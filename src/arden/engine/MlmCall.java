@@ -5,6 +5,7 @@ import java.lang.reflect.InvocationTargetException;
 import arden.runtime.ArdenRunnable;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
 import arden.runtime.evoke.Trigger;
 
 public final class MlmCall extends Call {
@@ -21,6 +22,24 @@ public final class MlmCall extends Call {
 		this.trigger = trigger;
 	}
 
+	/** The MLM or interface, that will be run by this call. */
+	ArdenRunnable getRunnable() {
+		return runnable;
+	}
+
+	/** The trigger, that will be given to the MLM. */
+	Trigger getTrigger() {
+		return trigger;
+	}
+
+	@Override
+	public String toString() {
+		if (runnable instanceof MedicalLogicModule) {
+			return "call of MLM " + ((MedicalLogicModule) runnable).getName();
+		}
+		return "call of " + runnable;
+	}
+
 	@Override
 	public void run() {
 		// run MLM now
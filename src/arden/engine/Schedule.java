@@ -32,18 +32,27 @@ public class Schedule extends TreeMap<ArdenTime, Queue<Call>> {
 				continue;
 			}
 			for (Trigger trigger : triggers) {
-				ArdenTime nextRuntime = trigger.getNextRunTime();
-				if (nextRuntime != null) {
-					// scheduled
-					MlmCall call = new MlmCall(context, mlm, null, trigger, (int) mlm.getPriority());
-					schedule.add(nextRuntime, call);
-				}
+				schedule.add(context, mlm, trigger);
 			}
 		}
 
 		return schedule;
 	}
 
+	/**
+	 * Adds a call of the MLM at the triggers next run time, if it has one.
+	 * This changes the state of the trigger (see
+	 * {@link Trigger#getNextRunTime()}).
+	 */
+	public void add(ExecutionContext context, MedicalLogicModule mlm, Trigger trigger) {
+		ArdenTime nextRuntime = trigger.getNextRunTime();
+		if (nextRuntime != null) {
+			// scheduled
+			MlmCall call = new MlmCall(context, mlm, null, trigger, (int) mlm.getPriority());
+			add(nextRuntime, call);
+		}
+	}
+
 	public void add(ArdenTime nextRunTime, Call call) {
 		// put MLMs which should run at the same time into groups
 		Queue<Call> scheduleGroup = get(nextRunTime);
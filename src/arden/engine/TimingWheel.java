@@ -0,0 +1,335 @@
+package arden.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * A hashed hierarchical timing wheel, which holds delayed {@link Call}s until
+ * they are due and then adds them to a target queue.
+ * </p>
+ * <p>
+ * Time is divided into ticks of a fixed length. The first wheel has a slot for
+ * each of the next 256 ticks, every further wheel has 64 slots, each covering
+ * a whole rotation of the wheel below. With the default tick of 10
+ * milliseconds the six wheels cover delays from milliseconds to decades. Calls
+ * are inserted into the slot of their due tick in O(1). When a wheel
+ * completes a rotation, the next slot of the wheel above is cascaded, i.e. its
+ * calls are distributed into the lower wheels. All calls in a slot of the
+ * first wheel are due at the same tick and are added to the target queue in
+ * bulk.
+ * </p>
+ * <p>
+ * The wheel is advanced either by calling {@link #advance(long)} or by running
+ * it on its own thread via {@link #run()}. Ticks, at which no calls are due
+ * and no slot is cascaded, are skipped, so the thread only wakes up when
+ * there is something to do.
+ * </p>
+ */
+public class TimingWheel implements Runnable {
+	public static final long DEFAULT_TICK_MILLIS = 10;
+
+	private static final int ROOT_BITS = 8;
+	private static final int LEVEL_BITS = 6;
+	private static final int LEVELS = 6;
+	private static final int ROOT_MASK = (1 << ROOT_BITS) - 1;
+	private static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+	// delays (in ticks) which are longer than this are re-cascaded
+	private static final long MAX_DELTA = 1L << shift(LEVELS);
+
+	private final Collection<? super Call> target;
+	private final long tickMillis;
+	private final long startMillis;
+	// the heads of the doubly linked lists in each slot
+	private final Timeout[][] wheels = new Timeout[LEVELS][];
+	// the next tick, which will be processed
+	private long currentTick = 0;
+	private int size = 0;
+	// the tick, until which the wheels thread waits, or Long.MIN_VALUE if it
+	// doesn't wait
+	private long wakeupTick = Long.MIN_VALUE;
+
+	/**
+	 * A handle for calls, which have been added to the wheel. Can be used to
+	 * cancel the calls before they are due.
+	 */
+	public final class Timeout {
+		private final long dueTick;
+		private final Collection<? extends Call> calls;
+		private Timeout previous;
+		private Timeout next;
+		private int level = -1;
+		private int slot;
+
+		private Timeout(long dueTick, Collection<? extends Call> calls) {
+			this.dueTick = dueTick;
+			this.calls = calls;
+		}
+
+		/** @return true if the calls are neither due nor cancelled yet */
+		public boolean isPending() {
+			synchronized (TimingWheel.this) {
+				return level >= 0;
+			}
+		}
+
+		/**
+		 * Removes the calls from the wheel in O(1).
+		 *
+		 * @return false if the calls are already due or have been cancelled
+		 */
+		public boolean cancel() {
+			synchronized (TimingWheel.this) {
+				if (level < 0) {
+					return false;
+				}
+				unlink(this);
+				size--;
+				return true;
+			}
+		}
+	}
+
+	public TimingWheel(Collection<? super Call> target) {
+		this(target, DEFAULT_TICK_MILLIS, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param target
+	 *            the queue, to which calls are added once they are due
+	 * @param tickMillis
+	 *            the precision of the wheel in milliseconds
+	 * @param startMillis
+	 *            the time of the first tick
+	 */
+	public TimingWheel(Collection<? super Call> target, long tickMillis, long startMillis) {
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException("A tick must be at least one millisecond");
+		}
+		this.target = target;
+		this.tickMillis = tickMillis;
+		this.startMillis = startMillis;
+		wheels[0] = new Timeout[1 << ROOT_BITS];
+		for (int level = 1; level < LEVELS; level++) {
+			wheels[level] = new Timeout[1 << LEVEL_BITS];
+		}
+	}
+
+	private static int shift(int level) {
+		return level == 0 ? 0 : ROOT_BITS + (level - 1) * LEVEL_BITS;
+	}
+
+	/** Add the call to the target after the delay (in milliseconds). */
+	public Timeout schedule(Call call, long delay) {
+		return scheduleAt(Collections.singletonList(call), System.currentTimeMillis() + delay);
+	}
+
+	/** Add the calls to the target after the delay (in milliseconds). */
+	public Timeout schedule(Collection<? extends Call> calls, long delay) {
+		return scheduleAt(calls, System.currentTimeMillis() + delay);
+	}
+
+	/**
+	 * Add the calls to the target at the given time (in milliseconds since
+	 * 1.1.1970). They are never added before that time, but may be added up
+	 * to one tick later.
+	 */
+	public synchronized Timeout scheduleAt(Collection<? extends Call> calls, long dueMillis) {
+		// round up, so calls never run early
+		long dueTick = (dueMillis - startMillis + tickMillis - 1) / tickMillis;
+		Timeout timeout = new Timeout(dueTick, calls);
+		insert(timeout);
+		size++;
+		if (dueTick < wakeupTick) {
+			// wake up the wheels thread, which waits for a later tick or
+			// while the wheel is empty
+			notifyAll();
+		}
+		return timeout;
+	}
+
+	/** @return the number of pending schedules (not calls) in the wheel */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Processes all ticks up to the given time and adds the due calls to the
+	 * target.
+	 *
+	 * @param nowMillis
+	 *            the current time in milliseconds since 1.1.1970
+	 */
+	public void advance(long nowMillis) {
+		List<Call> dueCalls = expire(nowMillis);
+		if (!dueCalls.isEmpty()) {
+			// one bulk insert instead of one task per delayed call
+			target.addAll(dueCalls);
+		}
+	}
+
+	private synchronized List<Call> expire(long nowMillis) {
+		List<Call> dueCalls = Collections.emptyList();
+		if (nowMillis < startMillis) {
+			return dueCalls;
+		}
+		long lastTick = (nowMillis - startMillis) / tickMillis;
+		while (currentTick <= lastTick) {
+			if (size == 0) {
+				// nothing to cascade or expire, skip the empty ticks
+				currentTick = lastTick + 1;
+				break;
+			}
+
+			int index = (int) (currentTick & ROOT_MASK);
+			if (index != 0 && wheels[0][index] == null) {
+				// skip the ticks, at which nothing happens
+				currentTick = Math.min(nextTick(), lastTick + 1);
+				continue;
+			}
+			if (index == 0) {
+				// first wheel completed a rotation -> cascade the wheels above
+				for (int level = 1; level < LEVELS; level++) {
+					int slot = (int) ((currentTick >> shift(level)) & LEVEL_MASK);
+					cascade(level, slot);
+					if (slot != 0) {
+						break;
+					}
+				}
+			}
+			currentTick++;
+
+			Timeout timeout = wheels[0][index];
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				unlink(timeout);
+				size--;
+				if (dueCalls.isEmpty()) {
+					dueCalls = new ArrayList<>();
+				}
+				dueCalls.addAll(timeout.calls);
+				timeout = next;
+			}
+		}
+		return dueCalls;
+	}
+
+	/**
+	 * @return the next tick, at which calls are due or a non-empty slot of the
+	 *         wheels above the first one is cascaded, or Long.MAX_VALUE
+	 */
+	private long nextTick() {
+		long next = Long.MAX_VALUE;
+		for (int ticks = 0; ticks <= ROOT_MASK; ticks++) {
+			if (wheels[0][(int) ((currentTick + ticks) & ROOT_MASK)] != null) {
+				next = currentTick + ticks;
+				break;
+			}
+		}
+		for (int level = 1; level < LEVELS; level++) {
+			// slots are cascaded when their first tick is processed, so a slot
+			// of the current rotation has been cascaded already
+			long rotation = (currentTick + (1L << shift(level)) - 1) >> shift(level);
+			for (int rotations = 0; rotations <= LEVEL_MASK; rotations++) {
+				long tick = (rotation + rotations) << shift(level);
+				if (tick >= next) {
+					break;
+				}
+				if (wheels[level][(int) ((rotation + rotations) & LEVEL_MASK)] != null) {
+					next = tick;
+					break;
+				}
+			}
+		}
+		return next;
+	}
+
+	private void cascade(int level, int slot) {
+		Timeout timeout = wheels[level][slot];
+		wheels[level][slot] = null;
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			timeout.previous = null;
+			timeout.next = null;
+			insert(timeout);
+			timeout = next;
+		}
+	}
+
+	private void insert(Timeout timeout) {
+		long delta = timeout.dueTick - currentTick;
+		long slotTick = timeout.dueTick;
+		int level = 0;
+		if (delta < 0) {
+			// already due -> expire with the next tick
+			slotTick = currentTick;
+		} else {
+			if (delta >= MAX_DELTA) {
+				// put into the last slot, and insert again when it is cascaded
+				delta = MAX_DELTA - 1;
+				slotTick = currentTick + delta;
+			}
+			while (level < LEVELS - 1 && delta >= 1L << shift(level + 1)) {
+				level++;
+			}
+		}
+		int mask = level == 0 ? ROOT_MASK : LEVEL_MASK;
+		int slot = (int) ((slotTick >> shift(level)) & mask);
+
+		Timeout head = wheels[level][slot];
+		timeout.level = level;
+		timeout.slot = slot;
+		timeout.previous = null;
+		timeout.next = head;
+		if (head != null) {
+			head.previous = timeout;
+		}
+		wheels[level][slot] = timeout;
+	}
+
+	private void unlink(Timeout timeout) {
+		if (timeout.previous == null) {
+			wheels[timeout.level][timeout.slot] = timeout.next;
+		} else {
+			timeout.previous.next = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.previous = null;
+		timeout.next = null;
+		timeout.level = -1;
+	}
+
+	/**
+	 * Advances the wheel whenever calls are due or have to be cascaded, until
+	 * the thread is interrupted.
+	 */
+	@Override
+	public void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				advance(System.currentTimeMillis());
+				synchronized (this) {
+					wakeupTick = size == 0 ? Long.MAX_VALUE : nextTick();
+					try {
+						if (wakeupTick == Long.MAX_VALUE) {
+							wait();
+						} else {
+							long delay = startMillis + wakeupTick * tickMillis - System.currentTimeMillis();
+							if (delay > 0) {
+								wait(delay);
+							}
+						}
+					} finally {
+						wakeupTick = Long.MIN_VALUE;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// shutting down
+		}
+	}
+}
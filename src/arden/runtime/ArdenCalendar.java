@@ -0,0 +1,273 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Calendar computations in the default time zone that neither allocate nor
+ * share mutable state, so they can be used by MLMs running concurrently.
+ * Dates are computed in the proleptic Gregorian calendar from the number of
+ * days since 1970-01-01.
+ * <p>
+ * Wall clock times that are skipped or repeated by a daylight saving time
+ * transition are interpreted as standard time, like GregorianCalendar does.
+ * </p>
+ */
+final class ArdenCalendar {
+	static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+	/** Read once, like the time zone of the formatters previously used. */
+	private static final TimeZone zone = TimeZone.getDefault();
+
+	private ArdenCalendar() {
+	}
+
+	/** Converts UTC milliseconds to milliseconds in local wall clock time. */
+	static long toLocalMillis(long utcMillis) {
+		return utcMillis + zone.getOffset(utcMillis);
+	}
+
+	/** Converts milliseconds in local wall clock time to UTC milliseconds. */
+	static long toUtcMillis(long localMillis) {
+		int before = zone.getOffset(localMillis - MILLIS_PER_DAY);
+		int after = zone.getOffset(localMillis + MILLIS_PER_DAY);
+		if (before == after)
+			return localMillis - before;
+		/*
+		 * There is a transition nearby. It takes place at the wall clock time
+		 * of the transition instant in the new offset; earlier wall clock
+		 * times still use the old offset.
+		 */
+		if (zone.getOffset(localMillis - after) == after)
+			return localMillis - after;
+		else
+			return localMillis - before;
+	}
+
+	static long floorDiv(long x, long y) {
+		long q = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0))
+			q--;
+		return q;
+	}
+
+	/** Returns the days since 1970-01-01 of the given date (month is 1-12). */
+	static long toEpochDay(long year, int month, int day) {
+		// algorithm by Howard Hinnant, "days_from_civil"
+		long y = month <= 2 ? year - 1 : year;
+		long era = floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * Returns the date of the given epoch day, packed as
+	 * <code>year * 10000 + month * 100 + day</code> (month is 1-12).
+	 */
+	private static long toDate(long epochDay) {
+		// algorithm by Howard Hinnant, "civil_from_days"
+		long z = epochDay + 719468;
+		long era = floorDiv(z, 146097);
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		long month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		return year * 10000 + month * 100 + day;
+	}
+
+	private static long getYear(long date) {
+		return floorDiv(date, 10000);
+	}
+
+	private static int getMonth(long date) {
+		return (int) ((date - getYear(date) * 10000) / 100);
+	}
+
+	private static int getDay(long date) {
+		return (int) (date - getYear(date) * 10000 - getMonth(date) * 100);
+	}
+
+	static int lengthOfMonth(long year, int month) {
+		switch (month) {
+		case 2:
+			boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+			return leap ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Returns a calendar field of the given time. Supports the YEAR, MONTH
+	 * (zero-based), DAY_OF_MONTH, HOUR_OF_DAY, MINUTE, SECOND and MILLISECOND
+	 * constants of {@link Calendar}.
+	 */
+	static int get(long utcMillis, int field) {
+		long local = toLocalMillis(utcMillis);
+		long epochDay = floorDiv(local, MILLIS_PER_DAY);
+		int millisOfDay = (int) (local - epochDay * MILLIS_PER_DAY);
+		switch (field) {
+		case Calendar.YEAR:
+			return (int) getYear(toDate(epochDay));
+		case Calendar.MONTH:
+			return getMonth(toDate(epochDay)) - 1;
+		case Calendar.DAY_OF_MONTH:
+			return getDay(toDate(epochDay));
+		case Calendar.HOUR_OF_DAY:
+			return millisOfDay / (60 * 60 * 1000);
+		case Calendar.MINUTE:
+			return millisOfDay / (60 * 1000) % 60;
+		case Calendar.SECOND:
+			return millisOfDay / 1000 % 60;
+		case Calendar.MILLISECOND:
+			return millisOfDay % 1000;
+		default:
+			throw new IllegalArgumentException("Unsupported calendar field: " + field);
+		}
+	}
+
+	/**
+	 * Adds whole months, keeping the time of day. The day of month is limited
+	 * to the length of the resulting month (Jan 31 + 1 month = Feb 28/29).
+	 */
+	static long addMonths(long utcMillis, int months) {
+		if (months == 0)
+			return utcMillis;
+		long local = toLocalMillis(utcMillis);
+		long epochDay = floorDiv(local, MILLIS_PER_DAY);
+		long millisOfDay = local - epochDay * MILLIS_PER_DAY;
+		long date = toDate(epochDay);
+		long totalMonths = getYear(date) * 12 + (getMonth(date) - 1) + months;
+		long year = floorDiv(totalMonths, 12);
+		int month = (int) (totalMonths - year * 12) + 1;
+		int day = Math.min(getDay(date), lengthOfMonth(year, month));
+		return toUtcMillis(toEpochDay(year, month, day) * MILLIS_PER_DAY + millisOfDay);
+	}
+
+	/** Returns the first millisecond of the local day containing the time. */
+	static long getStartOfDay(long utcMillis) {
+		long epochDay = floorDiv(toLocalMillis(utcMillis), MILLIS_PER_DAY);
+		return toUtcMillis(epochDay * MILLIS_PER_DAY);
+	}
+
+	/** Returns the last millisecond of the local day containing the time. */
+	static long getEndOfDay(long utcMillis) {
+		long epochDay = floorDiv(toLocalMillis(utcMillis), MILLIS_PER_DAY);
+		return toUtcMillis((epochDay + 1) * MILLIS_PER_DAY - 1);
+	}
+
+	/**
+	 * Appends the time in the format yyyy-MM-dd'T'HH:mm:ss, followed by .SSS
+	 * if withMillis is set.
+	 */
+	static void appendIsoDateTime(StringBuilder b, long utcMillis, boolean withMillis) {
+		long local = toLocalMillis(utcMillis);
+		long epochDay = floorDiv(local, MILLIS_PER_DAY);
+		int millisOfDay = (int) (local - epochDay * MILLIS_PER_DAY);
+		long date = toDate(epochDay);
+		long year = getYear(date);
+		if (year < 0) {
+			b.append('-');
+			year = -year;
+		}
+		appendPadded(b, year, 4);
+		b.append('-');
+		appendPadded(b, getMonth(date), 2);
+		b.append('-');
+		appendPadded(b, getDay(date), 2);
+		b.append('T');
+		appendPadded(b, millisOfDay / (60 * 60 * 1000), 2);
+		b.append(':');
+		appendPadded(b, millisOfDay / (60 * 1000) % 60, 2);
+		b.append(':');
+		appendPadded(b, millisOfDay / 1000 % 60, 2);
+		if (withMillis) {
+			b.append('.');
+			appendPadded(b, millisOfDay % 1000, 3);
+		}
+	}
+
+	private static final String[] MONTH_NAMES = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep",
+			"Oct", "Nov", "Dec" };
+
+	/**
+	 * Appends the time for the %t format with a precision of 2 or more:
+	 * MMM d yyyy for the day, followed by the hour (HHh), the minutes (HH:mm),
+	 * the seconds (HH:mm:ss) or the milliseconds (HH:mm:ss.SSS).
+	 */
+	static void appendFormattedTime(StringBuilder b, long utcMillis, int precision) {
+		long local = toLocalMillis(utcMillis);
+		long epochDay = floorDiv(local, MILLIS_PER_DAY);
+		int millisOfDay = (int) (local - epochDay * MILLIS_PER_DAY);
+		long date = toDate(epochDay);
+		b.append(MONTH_NAMES[getMonth(date) - 1]);
+		b.append(' ');
+		b.append(getDay(date));
+		b.append(' ');
+		b.append(getYear(date));
+		if (precision < 3)
+			return;
+		b.append(' ');
+		if (precision == 3) {
+			b.append(millisOfDay / (60 * 60 * 1000));
+			b.append('h');
+			return;
+		}
+		appendPadded(b, millisOfDay / (60 * 60 * 1000), 2);
+		b.append(':');
+		appendPadded(b, millisOfDay / (60 * 1000) % 60, 2);
+		if (precision == 4)
+			return;
+		b.append(':');
+		appendPadded(b, millisOfDay / 1000 % 60, 2);
+		if (precision == 5)
+			return;
+		b.append('.');
+		appendPadded(b, millisOfDay % 1000, 3);
+	}
+
+	private static void appendPadded(StringBuilder b, long value, int digits) {
+		for (long limit = 10; digits > 1; digits--, limit *= 10) {
+			if (value < limit)
+				b.append('0');
+		}
+		b.append(value);
+	}
+}
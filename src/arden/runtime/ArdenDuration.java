@@ -105,7 +105,9 @@ public final class ArdenDuration extends ArdenValue {
 
 	@Override
 	public int hashCode() {
-		return new Double(toSeconds()).hashCode();
+		double seconds = toSeconds();
+		// 0.0 and -0.0 are equal, so they must have the same hash code
+		return seconds == 0 ? 0 : new Double(seconds).hashCode();
 	}
 
 	@Override
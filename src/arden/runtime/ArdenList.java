@@ -27,20 +27,69 @@
 
 package arden.runtime;
 
-public final class ArdenList extends ArdenValue {
+/**
+ * A sequence of Arden values. Subclasses may store their elements in a more
+ * compact form and create the ArdenValue[] only when it is requested through
+ * {@link #getElements()}.
+ */
+public class ArdenList extends ArdenValue {
 	public final static ArdenList EMPTY = new ArdenList(new ArdenValue[0]);
 
+	/**
+	 * The elements of a list created from an array. MLMs compiled by older
+	 * versions read this field directly, so it stays public. It is null for
+	 * subclasses that store their elements differently.
+	 * 
+	 * @deprecated Use {@link #getElements()} instead.
+	 */
+	@Deprecated
 	public final ArdenValue[] values;
+	/** Built when IS IN searches this list more than once. */
+	private volatile MembershipIndex membershipIndex;
+	private volatile boolean searched;
+	/** Set if the elements can't be hashed, so no index is built. */
+	private volatile boolean unhashable;
 
 	public ArdenList(ArdenValue[] values) {
 		this.values = values;
 	}
-	
+
+	/** Constructor for subclasses that override getElements(). */
+	protected ArdenList() {
+		this.values = null;
+	}
+
+	/** Returns the number of elements in this list. */
+	public int size() {
+		return getElements().length;
+	}
+
+	/**
+	 * Returns the hash index over the elements for a search with the given
+	 * number of lookups, or null if the list should be searched linearly.
+	 */
+	MembershipIndex getMembershipIndex(int lookups) {
+		MembershipIndex index = membershipIndex;
+		if (index == null && !unhashable && size() >= MembershipIndex.MIN_SIZE) {
+			// a single search is faster without building the index
+			if (lookups > 1 || searched) {
+				index = MembershipIndex.create(getElements());
+				if (index == null) {
+					unhashable = true;
+				}
+				membershipIndex = index;
+			}
+			searched = true;
+		}
+		return index;
+	}
+
 	@Override
 	public ArdenValue setTime(long newPrimaryTime) {
-		ArdenValue[] newValues = new ArdenValue[values.length];
-		for (int i = 0; i < values.length; i++)
-			newValues[i] = values[i].setTime(newPrimaryTime);
+		ArdenValue[] elements = getElements();
+		ArdenValue[] newValues = new ArdenValue[elements.length];
+		for (int i = 0; i < elements.length; i++)
+			newValues[i] = elements[i].setTime(newPrimaryTime);
 		return new ArdenList(newValues);
 	}
 	
@@ -51,6 +100,7 @@ public final class ArdenList extends ArdenValue {
 
 	@Override
 	public String toString() {
+		ArdenValue[] values = getElements();
 		StringBuilder b = new StringBuilder();
 		b.append('(');
 		if (values.length == 1) {
@@ -71,11 +121,12 @@ public final class ArdenList extends ArdenValue {
 	public boolean equals(Object obj) {
 		if (!(obj instanceof ArdenList))
 			return false;
-		ArdenList list = (ArdenList) obj;
-		if (list.values.length != values.length)
+		ArdenValue[] values = getElements();
+		ArdenValue[] other = ((ArdenList) obj).getElements();
+		if (other.length != values.length)
 			return false;
 		for (int i = 0; i < values.length; i++) {
-			if (!values[i].equals(list.values[i]))
+			if (!values[i].equals(other[i]))
 				return false;
 		}
 		return true;
@@ -84,7 +135,7 @@ public final class ArdenList extends ArdenValue {
 	@Override
 	public int hashCode() {
 		int result = 1;
-		for (ArdenValue val : values) {
+		for (ArdenValue val : getElements()) {
 			result *= 27;
 			result += val.hashCode();
 		}
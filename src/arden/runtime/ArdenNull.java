@@ -49,7 +49,7 @@ public final class ArdenNull extends ArdenValue {
 
 	@Override
 	public ArdenValue[] getElements() {
-		return ArdenList.EMPTY.values;
+		return ArdenList.EMPTY.getElements();
 	}
 
 	@Override
@@ -76,7 +76,8 @@ public final class ArdenNumber extends ArdenValue {
 
 	@Override
 	public int hashCode() {
-		return new Double(value).hashCode();
+		// 0.0 and -0.0 are equal, so they must have the same hash code
+		return value == 0 ? 0 : new Double(value).hashCode();
 	}
 
 	@Override
@@ -31,7 +31,6 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.GregorianCalendar;
 
 public final class ArdenTime extends ArdenValue {
 	/** Number of milliseconds since 1.1.1970, midnight GMT */
@@ -55,19 +54,72 @@ public final class ArdenTime extends ArdenValue {
 		return new ArdenTime(value, newPrimaryTime);
 	}
 
+	public static final int isoDateTimeLength = 19;
+
+	/**
+	 * Formats shared by all threads. SimpleDateFormat is not thread-safe, so
+	 * these must not be used concurrently.
+	 * 
+	 * @deprecated Use {@link #getIsoDateTimeFormat()} and the similar methods,
+	 *             which return a separate instance for each thread.
+	 */
+	@Deprecated
 	public static final DateFormat isoDateTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+	/** @deprecated Use {@link #getIsoDateTimeFormatWithMillis()} instead. */
+	@Deprecated
 	public static final DateFormat isoDateTimeFormatWithMillis = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+	/** @deprecated Use {@link #getIsoDateTimeFormatWithGmtTimeZone()} instead. */
+	@Deprecated
 	public static final DateFormat isoDateTimeFormatWithGmtTimeZone = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssz");
+	/** @deprecated Use {@link #getIsoDateFormat()} instead. */
+	@Deprecated
 	public static final DateFormat isoDateFormat = new SimpleDateFormat("yyyy-MM-dd");
-	public static final int isoDateTimeLength = 19;
+
+	/*
+	 * DateFormat instances are not thread-safe, so every thread gets its own.
+	 * They are only needed for parsing, toString() does not use them.
+	 */
+	private static final ThreadLocal<DateFormat> localIsoDateTimeFormat = createFormat("yyyy-MM-dd'T'HH:mm:ss");
+	private static final ThreadLocal<DateFormat> localIsoDateTimeFormatWithMillis =
+			createFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+	private static final ThreadLocal<DateFormat> localIsoDateTimeFormatWithGmtTimeZone =
+			createFormat("yyyy-MM-dd'T'HH:mm:ssz");
+	private static final ThreadLocal<DateFormat> localIsoDateFormat = createFormat("yyyy-MM-dd");
+
+	private static ThreadLocal<DateFormat> createFormat(final String pattern) {
+		return new ThreadLocal<DateFormat>() {
+			@Override
+			protected DateFormat initialValue() {
+				return new SimpleDateFormat(pattern);
+			}
+		};
+	}
+
+	/** Returns the format yyyy-MM-dd'T'HH:mm:ss for the current thread. */
+	public static DateFormat getIsoDateTimeFormat() {
+		return localIsoDateTimeFormat.get();
+	}
+
+	/** Returns the format yyyy-MM-dd'T'HH:mm:ss.SSS for the current thread. */
+	public static DateFormat getIsoDateTimeFormatWithMillis() {
+		return localIsoDateTimeFormatWithMillis.get();
+	}
+
+	/** Returns the format yyyy-MM-dd'T'HH:mm:ssz for the current thread. */
+	public static DateFormat getIsoDateTimeFormatWithGmtTimeZone() {
+		return localIsoDateTimeFormatWithGmtTimeZone.get();
+	}
+
+	/** Returns the format yyyy-MM-dd for the current thread. */
+	public static DateFormat getIsoDateFormat() {
+		return localIsoDateFormat.get();
+	}
 
 	@Override
 	public String toString() {
-		if (value % 1000 != 0) {
-			return isoDateTimeFormatWithMillis.format(new Date(value));
-		} else {
-			return isoDateTimeFormat.format(new Date(value));
-		}
+		StringBuilder b = new StringBuilder(23);
+		ArdenCalendar.appendIsoDateTime(b, value, value % 1000 != 0);
+		return b.toString();
 	}
 
 	@Override
@@ -96,10 +148,8 @@ public final class ArdenTime extends ArdenValue {
 
 	private long addMonths(double months) {
 		int wholeMonths = (int) months;
-		GregorianCalendar c = new GregorianCalendar();
-		c.setTimeInMillis(value);
-		c.add(GregorianCalendar.MONTH, wholeMonths);
-		return c.getTimeInMillis() + (long) ((months - wholeMonths) * 1000 * ArdenDuration.SECONDS_PER_MONTH);
+		return ArdenCalendar.addMonths(value, wholeMonths)
+				+ (long) ((months - wholeMonths) * 1000 * ArdenDuration.SECONDS_PER_MONTH);
 	}
 
 	public long add(ArdenDuration dur) {
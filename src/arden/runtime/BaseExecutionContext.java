@@ -73,7 +73,7 @@ public class BaseExecutionContext extends ExecutionContext {
 	}
 
 	@Override
-	public MedicalLogicModule findModule(String name, String institution) {
+	public synchronized MedicalLogicModule findModule(String name, String institution) {
 		if (!name.matches("[a-zA-Z0-9\\-_]+")) {
 			throw new RuntimeException("Malformed module name: " + name);
 		}
@@ -130,7 +130,12 @@ public abstract class BinaryOperator {
 		};
 	};
 
-	public static final BinaryOperator ADD = new BinaryOperator("ADD") {
+	public static final BinaryOperator ADD = new ArithmeticOperator("ADD") {
+		@Override
+		public double runNumbers(double lhs, double rhs) {
+			return lhs + rhs;
+		}
+
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -154,7 +159,12 @@ public abstract class BinaryOperator {
 		};
 	};
 
-	public static final BinaryOperator SUB = new BinaryOperator("SUB") {
+	public static final BinaryOperator SUB = new ArithmeticOperator("SUB") {
+		@Override
+		public double runNumbers(double lhs, double rhs) {
+			return lhs - rhs;
+		}
+
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -179,7 +189,12 @@ public abstract class BinaryOperator {
 		};
 	};
 
-	public static final BinaryOperator MUL = new BinaryOperator("MUL") {
+	public static final BinaryOperator MUL = new ArithmeticOperator("MUL") {
+		@Override
+		public double runNumbers(double lhs, double rhs) {
+			return lhs * rhs;
+		}
+
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -200,7 +215,12 @@ public abstract class BinaryOperator {
 		};
 	};
 
-	public static final BinaryOperator DIV = new BinaryOperator("DIV") {
+	public static final BinaryOperator DIV = new ArithmeticOperator("DIV") {
+		@Override
+		public double runNumbers(double lhs, double rhs) {
+			return lhs / rhs;
+		}
+
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -312,30 +332,35 @@ public abstract class BinaryOperator {
 
 	/** Implements the list logic for running the operator. */
 	public final ArdenValue run(ArdenValue lhs, ArdenValue rhs) {
+		if (this instanceof ArithmeticOperator && (lhs instanceof NumberList || rhs instanceof NumberList)) {
+			ArdenValue result = ((ArithmeticOperator) this).runNumberLists(lhs, rhs);
+			if (result != null)
+				return result;
+		}
 		if (lhs instanceof ArdenList) {
-			ArdenList leftList = (ArdenList) lhs;
+			ArdenValue[] left = lhs.getElements();
 			if (rhs instanceof ArdenList) {
-				ArdenList rightList = (ArdenList) rhs;
-				if (leftList.values.length != rightList.values.length)
+				ArdenValue[] right = rhs.getElements();
+				if (left.length != right.length)
 					return ArdenNull.INSTANCE;
-				ArdenValue[] results = new ArdenValue[leftList.values.length];
+				ArdenValue[] results = new ArdenValue[left.length];
 				for (int i = 0; i < results.length; i++) {
-					results[i] = runElement(leftList.values[i], rightList.values[i]);
+					results[i] = runElement(left[i], right[i]);
 				}
 				return new ArdenList(results);
 			} else {
-				ArdenValue[] results = new ArdenValue[leftList.values.length];
+				ArdenValue[] results = new ArdenValue[left.length];
 				for (int i = 0; i < results.length; i++) {
-					results[i] = runElement(leftList.values[i], rhs);
+					results[i] = runElement(left[i], rhs);
 				}
 				return new ArdenList(results);
 			}
 		} else {
 			if (rhs instanceof ArdenList) {
-				ArdenList rightList = (ArdenList) rhs;
-				ArdenValue[] results = new ArdenValue[rightList.values.length];
+				ArdenValue[] right = rhs.getElements();
+				ArdenValue[] results = new ArdenValue[right.length];
 				for (int i = 0; i < results.length; i++) {
-					results[i] = runElement(lhs, rightList.values[i]);
+					results[i] = runElement(lhs, right[i]);
 				}
 				return new ArdenList(results);
 			} else {
@@ -348,4 +373,50 @@ public abstract class BinaryOperator {
 	public String toString() {
 		return name;
 	}
+
+	/**
+	 * Operator that works on two numbers. Lists stored as primitive arrays are
+	 * combined without creating an ArdenNumber per element.
+	 */
+	private static abstract class ArithmeticOperator extends BinaryOperator {
+		public ArithmeticOperator(String name) {
+			super(name);
+		}
+
+		public abstract double runNumbers(double lhs, double rhs);
+
+		/**
+		 * Runs the operator on NumberList/ArdenNumber operands. Returns null if
+		 * the operands or the result don't fit into a NumberList; the caller
+		 * then uses the general list logic.
+		 */
+		ArdenValue runNumberLists(ArdenValue lhs, ArdenValue rhs) {
+			if (!(lhs instanceof NumberList || lhs instanceof ArdenNumber)
+					|| !(rhs instanceof NumberList || rhs instanceof ArdenNumber))
+				return null;
+			NumberList leftList = lhs instanceof NumberList ? (NumberList) lhs : null;
+			NumberList rightList = rhs instanceof NumberList ? (NumberList) rhs : null;
+			int size = leftList != null ? leftList.size() : rightList.size();
+			if (leftList != null && rightList != null && rightList.size() != size)
+				return ArdenNull.INSTANCE;
+			boolean hasTimes = (leftList != null ? leftList.hasPrimaryTimes() : lhs.primaryTime != ArdenValue.NOPRIMARYTIME)
+					|| (rightList != null ? rightList.hasPrimaryTimes() : rhs.primaryTime != ArdenValue.NOPRIMARYTIME);
+			double[] numbers = new double[size];
+			long[] primaryTimes = hasTimes ? new long[size] : null;
+			for (int i = 0; i < size; i++) {
+				double left = leftList != null ? leftList.getNumber(i) : ((ArdenNumber) lhs).value;
+				double right = rightList != null ? rightList.getNumber(i) : ((ArdenNumber) rhs).value;
+				double result = runNumbers(left, right);
+				if (Double.isNaN(result) || Double.isInfinite(result))
+					return null; // result contains null
+				numbers[i] = result;
+				if (hasTimes) {
+					long leftTime = leftList != null ? leftList.getPrimaryTime(i) : lhs.primaryTime;
+					long rightTime = rightList != null ? rightList.getPrimaryTime(i) : rhs.primaryTime;
+					primaryTimes[i] = combinePrimaryTime(leftTime, rightTime);
+				}
+			}
+			return new NumberList(numbers, primaryTimes);
+		}
+	}
 }
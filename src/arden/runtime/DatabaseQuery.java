@@ -39,7 +39,7 @@ package arden.runtime;
  */
 public abstract class DatabaseQuery {
 	/** The database query that always returns an empty result (0 columns) */
-	public static final DatabaseQuery NULL = new MemoryQuery(ArdenList.EMPTY.values);
+	public static final DatabaseQuery NULL = new MemoryQuery(ArdenList.EMPTY.getElements());
 
 	/**
 	 * Executes the query.
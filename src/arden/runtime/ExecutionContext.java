@@ -63,6 +63,25 @@ public abstract class ExecutionContext {
 		return DatabaseQuery.NULL;
 	}
 
+	/**
+	 * Creates a database query using a mapping clause, which contains
+	 * parameters (see {@link MappingParameter}). The compiler calls this
+	 * method instead of {@link #createQuery(MedicalLogicModule, String)} if
+	 * the mapping refers to variables of the MLM. The default implementation
+	 * ignores the parameters.
+	 * 
+	 * @param parameterNames
+	 *            The names of the variables, which are used as parameters in
+	 *            the mapping, in lower case and without duplicates.
+	 * 
+	 * @param parameters
+	 *            The values of these variables.
+	 */
+	public DatabaseQuery createQuery(MedicalLogicModule mlm, String mapping, String[] parameterNames,
+			ArdenValue[] parameters) {
+		return createQuery(mlm, mapping);
+	}
+
 	/**
 	 * Gets a value that represents a message, as part of a <code>MESSAGE</code>
 	 * statement.
@@ -30,10 +30,9 @@ package arden.runtime;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Comparator;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
-import java.util.regex.Pattern;
 
 import arden.runtime.evoke.AfterTrigger;
 import arden.runtime.evoke.CyclicTrigger;
@@ -66,8 +65,8 @@ public final class ExpressionHelpers {
 
 	/** implements the "x,y" operator */
 	public static ArdenList binaryComma(ArdenValue lhs, ArdenValue rhs) {
-		ArdenValue[] left = unaryComma(lhs).values;
-		ArdenValue[] right = unaryComma(rhs).values;
+		ArdenValue[] left = unaryComma(lhs).getElements();
+		ArdenValue[] right = unaryComma(rhs).getElements();
 		ArdenValue[] result = new ArdenValue[left.length + right.length];
 		System.arraycopy(left, 0, result, 0, left.length);
 		System.arraycopy(right, 0, result, left.length, right.length);
@@ -77,14 +76,15 @@ public final class ExpressionHelpers {
 	/** helper for sorting operators and operators which uses sorted data in their algorithms */
 	private static ArdenValue sort(ArdenValue inputVal, Comparator<ArdenValue> comparator) {
 		ArdenList input = unaryComma(inputVal);
-		if (input.values.length == 0)
+		ArdenValue[] values = input.getElements();
+		if (values.length == 0)
 			return input;
 		// check whether all elements are comparable (also checks whether list
 		// is already sorted):
-		ArdenValue lastElement = input.values[0];
+		ArdenValue lastElement = values[0];
 		boolean alreadySorted = true;
-		for (int i = 1; i < input.values.length; i++) {
-			ArdenValue thisElement = input.values[i];
+		for (int i = 1; i < values.length; i++) {
+			ArdenValue thisElement = values[i];
 			int r = comparator.compare(lastElement, thisElement);
 			if (r == Integer.MIN_VALUE) {
 				// list contains non-ordered element types or invalid comparison
@@ -96,7 +96,7 @@ public final class ExpressionHelpers {
 		}
 		if (alreadySorted)
 			return input;
-		ArdenValue[] result = input.values.clone();
+		ArdenValue[] result = values.clone();
 		Arrays.sort(result, comparator);
 		return new ArdenList(result);
 	}
@@ -162,22 +162,28 @@ public final class ExpressionHelpers {
 	/** implements the SORT TIME operator */
 	public static ArdenValue sortByTime(ArdenValue inputVal) {
 		ArdenList input = unaryComma(inputVal);
-		if (input.values.length == 0)
+		if (input.size() == 0)
 			return input;
-		// check whether all elements have a primary time:
-		for (ArdenValue val : input.values) {
-			if (val.primaryTime == ArdenValue.NOPRIMARYTIME)
-				return ArdenNull.INSTANCE;
-		}
-		ArdenValue[] result = input.values.clone();
+		if (!hasPrimaryTimes(input.getElements()))
+			return ArdenNull.INSTANCE;
+		ArdenValue[] result = input.getElements().clone();
 		Arrays.sort(result, timeComparator);
 		return new ArdenList(result);
 	}
 
+	/** checks whether all elements have a primary time */
+	private static boolean hasPrimaryTimes(ArdenValue[] values) {
+		for (ArdenValue val : values) {
+			if (val.primaryTime == ArdenValue.NOPRIMARYTIME)
+				return false;
+		}
+		return true;
+	}
+
 	/** implements the WHERE operator */
 	public static ArdenValue where(ArdenValue sequence, ArdenValue condition) {
 		if (condition instanceof ArdenList) {
-			ArdenValue[] conditionValues = ((ArdenList) condition).values;
+			ArdenValue[] conditionValues = ((ArdenList) condition).getElements();
 			int numTrue = 0;
 			for (ArdenValue cond : conditionValues) {
 				if (cond.isTrue())
@@ -185,7 +191,7 @@ public final class ExpressionHelpers {
 			}
 			ArdenValue[] result = new ArdenValue[numTrue];
 			if (sequence instanceof ArdenList) {
-				ArdenValue[] sequenceValues = ((ArdenList) sequence).values;
+				ArdenValue[] sequenceValues = ((ArdenList) sequence).getElements();
 				if (conditionValues.length != sequenceValues.length)
 					return ArdenNull.INSTANCE;
 				int pos = 0;
@@ -208,7 +214,74 @@ public final class ExpressionHelpers {
 
 	/** implements the COUNT OF operator */
 	public static ArdenValue count(ArdenValue sequence) {
-		return new ArdenNumber(unaryComma(sequence).values.length);
+		return new ArdenNumber(countElements(sequence));
+	}
+
+	/** implements the COUNT OF operator for unboxed numeric expressions */
+	public static double countElements(ArdenValue sequence) {
+		if (sequence instanceof ArdenList)
+			return ((ArdenList) sequence).getElements().length;
+		return 1;
+	}
+
+	/*
+	 * Helpers for unboxed numeric expressions, see NumericTypeAnalysis. Such
+	 * expressions are computed with doubles, NaN represents null.
+	 */
+
+	/** Gets the value of a number or NaN for null. */
+	public static double toDouble(ArdenValue value) {
+		if (value instanceof ArdenNumber)
+			return ((ArdenNumber) value).value;
+		return Double.NaN;
+	}
+
+	/** Converts an infinite result to NaN, as ArdenNumber.create does. */
+	public static double checkFinite(double value) {
+		if (Double.isInfinite(value))
+			return Double.NaN;
+		return value;
+	}
+
+	/** Creates a number without primary time or null for NaN. */
+	public static ArdenValue toNumber(double value) {
+		return ArdenNumber.create(value, ArdenValue.NOPRIMARYTIME);
+	}
+
+	public static ArdenValue numberEquals(double lhs, double rhs) {
+		if (Double.isNaN(lhs) || Double.isNaN(rhs))
+			return ArdenNull.INSTANCE;
+		return ArdenBoolean.create(lhs == rhs, ArdenValue.NOPRIMARYTIME);
+	}
+
+	public static ArdenValue numberNotEquals(double lhs, double rhs) {
+		if (Double.isNaN(lhs) || Double.isNaN(rhs))
+			return ArdenNull.INSTANCE;
+		return ArdenBoolean.create(lhs != rhs, ArdenValue.NOPRIMARYTIME);
+	}
+
+	public static ArdenValue numberLessThan(double lhs, double rhs) {
+		if (Double.isNaN(lhs) || Double.isNaN(rhs))
+			return ArdenNull.INSTANCE;
+		return ArdenBoolean.create(lhs < rhs, ArdenValue.NOPRIMARYTIME);
+	}
+
+	public static ArdenValue numberLessOrEqual(double lhs, double rhs) {
+		if (Double.isNaN(lhs) || Double.isNaN(rhs))
+			return ArdenNull.INSTANCE;
+		return ArdenBoolean.create(lhs <= rhs, ArdenValue.NOPRIMARYTIME);
+	}
+
+	public static ArdenValue numberGreaterThan(double lhs, double rhs) {
+		if (Double.isNaN(lhs) || Double.isNaN(rhs))
+			return ArdenNull.INSTANCE;
+		return ArdenBoolean.create(lhs > rhs, ArdenValue.NOPRIMARYTIME);
+	}
+
+	public static ArdenValue numberGreaterOrEqual(double lhs, double rhs) {
+		if (Double.isNaN(lhs) || Double.isNaN(rhs))
+			return ArdenNull.INSTANCE;
+		return ArdenBoolean.create(lhs >= rhs, ArdenValue.NOPRIMARYTIME);
 	}
 
 	static long getCommonTime(ArdenValue[] items) {
@@ -225,8 +298,8 @@ public final class ExpressionHelpers {
 	/** implements the EXIST operator */
 	public static ArdenValue exist(ArdenValue sequence) {
 		ArdenList input = unaryComma(sequence);
-		long primaryTime = getCommonTime(input.values);
-		for (ArdenValue val : input.values) {
+		long primaryTime = getCommonTime(input.getElements());
+		for (ArdenValue val : input.getElements()) {
 			if (!(val instanceof ArdenNull))
 				return ArdenBoolean.create(true, primaryTime);
 		}
@@ -236,55 +309,93 @@ public final class ExpressionHelpers {
 	/** implements the SUM operator */
 	public static ArdenValue sum(ArdenValue sequence) {
 		ArdenList input = unaryComma(sequence);
-		if (input.values.length == 0)
+		if (input.size() == 0)
 			return ArdenNumber.ZERO;
-		ArdenValue val = input.values[0];
-		for (int i = 1; i < input.values.length; i++) {
-			val = BinaryOperator.ADD.runElement(val, input.values[i]);
+		if (input instanceof NumberList) {
+			NumberList numbers = (NumberList) input;
+			double sum = numbers.getNumber(0);
+			for (int i = 1; i < numbers.size(); i++)
+				sum += numbers.getNumber(i);
+			return ArdenNumber.create(sum, numbers.getCommonTime());
+		}
+		ArdenValue[] values = input.getElements();
+		ArdenValue val = values[0];
+		for (int i = 1; i < values.length; i++) {
+			val = BinaryOperator.ADD.runElement(val, values[i]);
 		}
 		return val;
 	}
 
 	/** implements the MEDIAN operator */
 	public static ArdenValue median(ArdenValue sequence) {
-		// sort by data and time
-		ArdenValue sorted = sort(sequence, dataAndTimeComparator);
-		if (!(sorted instanceof ArdenList))
-			return sorted; // error during sorting
-		ArdenValue[] values = ((ArdenList) sorted).values;
+		ArdenValue[] values = unaryComma(sequence).getElements();
+		if (!isOrdered(values))
+			return ArdenNull.INSTANCE;
+		// select the element(s) in the middle of the list sorted by data and time
 		if (values.length == 0) {
 			return ArdenNull.INSTANCE;
 		} else if ((values.length % 2) == 1) {
-			ArdenValue median = values[values.length / 2];
-			// get the element with the same value but the latest primary time by going towards the end
-			for(int i = values.length / 2; i < values.length; i++) {
-				if(values[i].compareTo(median) == 0) 
-					median = values[i];
-				else
-					break;
-			}
-			return median;
+			int median = Selection.select(values, values.length / 2, dataAndTimeComparator);
+			// use the element with the same value but the latest primary time
+			return values[latestEqual(values, median, -1)];
 		} else {
-			ArdenValue leftMedian = values[values.length / 2 - 1];
-			ArdenValue rightMedian = values[values.length / 2];
-			for(int i = values.length / 2 + 1; i < values.length; i++) {
-				if(values[i].compareTo(rightMedian) == 0) {
-					if(leftMedian.compareTo(rightMedian) == 0)
-						leftMedian = rightMedian;
-					rightMedian = values[i];
-				} else {
-					break;
-				}
+			int leftMedian = Selection.select(values, values.length / 2 - 1, dataAndTimeComparator);
+			int rightMedian = Selection.select(values, values.length / 2, dataAndTimeComparator);
+			if (values[leftMedian].compareTo(values[rightMedian]) == 0) {
+				// use the two elements with the same value and the latest primary times
+				rightMedian = latestEqual(values, rightMedian, -1);
+				leftMedian = latestEqual(values, leftMedian, rightMedian);
+			} else {
+				rightMedian = latestEqual(values, rightMedian, -1);
 			}
-			return average(binaryComma(leftMedian, rightMedian));
+			return average(binaryComma(values[leftMedian], values[rightMedian]));
+		}
+	}
+
+	/**
+	 * Returns whether all elements can be compared with each other. Like
+	 * sort(), this only checks neighbouring elements, which is sufficient
+	 * because only elements of the same type are comparable.
+	 */
+	private static boolean isOrdered(ArdenValue[] values) {
+		for (int i = 1; i < values.length; i++) {
+			if (values[i - 1].compareTo(values[i]) == Integer.MIN_VALUE)
+				return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the element that is equal to values[index] and
+	 * would be sorted last by dataAndTimeComparator (using the position for
+	 * elements with the same primary time, like a stable sort). The element at
+	 * the excluded index is skipped.
+	 */
+	private static int latestEqual(ArdenValue[] values, int index, int excluded) {
+		int latest = index;
+		for (int i = 0; i < values.length; i++) {
+			if (i == excluded || values[i].compareTo(values[index]) != 0)
+				continue;
+			if (values[i].primaryTime > values[latest].primaryTime
+					|| (values[i].primaryTime == values[latest].primaryTime && i > latest))
+				latest = i;
+		}
+		return latest;
 	}
 
 	/** implements the AVERAGE operator */
 	public static ArdenValue average(ArdenValue sequence) {
-		ArdenValue[] values = unaryComma(sequence).values;
-		if (values.length == 0)
+		ArdenList input = unaryComma(sequence);
+		if (input.size() == 0)
 			return ArdenNull.INSTANCE;
+		if (input instanceof NumberList) {
+			NumberList numbers = (NumberList) input;
+			double sum = 0;
+			for (int i = 0; i < numbers.size(); i++)
+				sum += numbers.getNumber(i);
+			return ArdenNumber.create(sum / numbers.size(), numbers.getCommonTime());
+		}
+		ArdenValue[] values = input.getElements();
 		if (values[0] instanceof ArdenNumber) {
 			double sum = 0;
 			for (ArdenValue element : values) {
@@ -326,9 +437,23 @@ public final class ExpressionHelpers {
 
 	/** implements the VARIANCE operator */
 	public static ArdenValue variance(ArdenValue sequence) {
-		ArdenValue[] values = unaryComma(sequence).values;
-		if (values.length < 2)
+		ArdenList input = unaryComma(sequence);
+		if (input.size() < 2)
 			return ArdenNull.INSTANCE;
+		if (input instanceof NumberList) {
+			NumberList numbers = (NumberList) input;
+			double sum = 0;
+			for (int i = 0; i < numbers.size(); i++)
+				sum += numbers.getNumber(i);
+			double avg = sum / numbers.size();
+			double diffsum = 0;
+			for (int i = 0; i < numbers.size(); i++) {
+				double diff = avg - numbers.getNumber(i);
+				diffsum += diff * diff;
+			}
+			return ArdenNumber.create(diffsum / (numbers.size() - 1), numbers.getCommonTime());
+		}
+		ArdenValue[] values = input.getElements();
 		double sum = 0;
 		for (ArdenValue element : values) {
 			if (!(element instanceof ArdenNumber))
@@ -348,19 +473,30 @@ public final class ExpressionHelpers {
 
 	/** implements the IS IN operator */
 	public static ArdenValue isIn(ArdenValue lhs, ArdenValue rhs) {
-		ArdenValue[] list = unaryComma(rhs).values;
+		ArdenList rightList = unaryComma(rhs);
+		ArdenValue[] list = rightList.getElements();
 		if (lhs instanceof ArdenList) {
-			ArdenValue[] left = ((ArdenList) lhs).values;
+			ArdenValue[] left = ((ArdenList) lhs).getElements();
+			MembershipIndex index = rightList.getMembershipIndex(left.length);
 			ArdenValue[] result = new ArdenValue[left.length];
 			for (int i = 0; i < left.length; i++)
-				result[i] = isIn(left[i], list);
+				result[i] = isIn(left[i], list, index);
 			return new ArdenList(result);
 		} else {
-			return isIn(lhs, list);
+			return isIn(lhs, list, rightList.getMembershipIndex(1));
 		}
 	}
 
-	private static ArdenBoolean isIn(ArdenValue lhs, ArdenValue[] list) {
+	private static ArdenBoolean isIn(ArdenValue lhs, ArdenValue[] list, MembershipIndex index) {
+		if (index != null && MembershipIndex.isHashable(lhs)) {
+			ArdenValue val = index.getFirstOccurrence(lhs);
+			if (val == null)
+				return ArdenBoolean.FALSE;
+			else if (val.primaryTime == lhs.primaryTime)
+				return ArdenBoolean.create(true, val.primaryTime);
+			else
+				return ArdenBoolean.TRUE;
+		}
 		for (ArdenValue val : list) {
 			if (lhs.equals(val)) {
 				if (val.primaryTime == lhs.primaryTime)
@@ -385,15 +521,15 @@ public final class ExpressionHelpers {
 			return ArdenNull.INSTANCE;
 		if (lowerInt > upperInt)
 			return ArdenList.EMPTY;
-		ArdenValue[] result = new ArdenValue[upperInt - lowerInt + 1];
+		double[] result = new double[upperInt - lowerInt + 1];
 		for (int i = 0; i < result.length; i++)
-			result[i] = new ArdenNumber(lowerInt + i);
-		return new ArdenList(result);
+			result[i] = lowerInt + i;
+		return new NumberList(result, null);
 	}
 
 	/** implements the REVERSE operator */
 	public static ArdenValue reverse(ArdenValue input) {
-		ArdenValue[] inputs = unaryComma(input).values;
+		ArdenValue[] inputs = unaryComma(input).getElements();
 		ArdenValue[] result = new ArdenValue[inputs.length];
 		for (int i = 0; i < result.length; i++)
 			result[i] = inputs[inputs.length - i - 1];
@@ -402,7 +538,7 @@ public final class ExpressionHelpers {
 
 	/** implements the INCREASE operator */
 	public static ArdenValue increase(ArdenValue input) {
-		ArdenValue[] inputs = unaryComma(input).values;
+		ArdenValue[] inputs = unaryComma(input).getElements();
 		if (inputs.length == 0)
 			return ArdenNull.INSTANCE;
 		if (!(inputs[0] instanceof ArdenNumber || inputs[0] instanceof ArdenDuration || inputs[0] instanceof ArdenTime))
@@ -418,7 +554,7 @@ public final class ExpressionHelpers {
 
 	/** implements the PERCENT INCREASE operator */
 	public static ArdenValue percentIncrease(ArdenValue input) {
-		ArdenValue[] inputs = unaryComma(input).values;
+		ArdenValue[] inputs = unaryComma(input).getElements();
 		if (inputs.length == 0)
 			return ArdenNull.INSTANCE;
 		if (!(inputs[0] instanceof ArdenNumber || inputs[0] instanceof ArdenDuration))
@@ -436,7 +572,7 @@ public final class ExpressionHelpers {
 	
 	/** implements the INTERVAL operator */
 	public static ArdenValue interval(ArdenValue input) {
-		ArdenValue[] inputs = unaryComma(input).values;
+		ArdenValue[] inputs = unaryComma(input).getElements();
 		if (inputs.length == 0)
 			return ArdenNull.INSTANCE;
 		ArdenValue[] outputs = new ArdenValue[inputs.length - 1];
@@ -452,9 +588,12 @@ public final class ExpressionHelpers {
 
 	/** implements the SLOPE operator */
 	public static ArdenValue slope(ArdenValue input) {
-		ArdenValue[] inputs = unaryComma(input).values;
-		if (inputs.length < 2)
+		ArdenList list = unaryComma(input);
+		if (list.size() < 2)
 			return ArdenNull.INSTANCE;
+		if (list instanceof NumberList)
+			return slope((NumberList) list);
+		ArdenValue[] inputs = list.getElements();
 		// linear regression through (x=primaryTime/y=value) points
 		double avgX = 0;
 		double avgY = 0;
@@ -477,10 +616,35 @@ public final class ExpressionHelpers {
 		return ArdenNumber.create(z / n, ArdenValue.NOPRIMARYTIME);
 	}
 
+	/** SLOPE operator for lists stored as primitive arrays */
+	private static ArdenValue slope(NumberList inputs) {
+		if (!inputs.hasPrimaryTimes())
+			return ArdenNull.INSTANCE;
+		double avgX = 0;
+		double avgY = 0;
+		for (int i = 0; i < inputs.size(); i++) {
+			if (inputs.getPrimaryTime(i) == ArdenValue.NOPRIMARYTIME)
+				return ArdenNull.INSTANCE;
+			avgX += inputs.getPrimaryTime(i) / 86000000.0; // x in days
+			avgY += inputs.getNumber(i);
+		}
+		avgX /= inputs.size();
+		avgY /= inputs.size();
+		double z = 0;
+		double n = 0;
+		for (int i = 0; i < inputs.size(); i++) {
+			double x = inputs.getPrimaryTime(i) / 86000000.0;
+			double y = inputs.getNumber(i);
+			z += (x - avgX) * (y - avgY);
+			n += (x - avgX) * (x - avgX);
+		}
+		return ArdenNumber.create(z / n, ArdenValue.NOPRIMARYTIME);
+	}
+
 	/** Implements the IS LIST operator. */
 	public static ArdenBoolean isList(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			return ArdenBoolean.create(true, getCommonTime(((ArdenList) input).values));
+			return ArdenBoolean.create(true, getCommonTime(((ArdenList) input).getElements()));
 		} else {
 			return ArdenBoolean.create(false, input.primaryTime);
 		}
@@ -488,7 +652,7 @@ public final class ExpressionHelpers {
 
 	/** Implements the FIRST aggregation operator. */
 	public static ArdenValue first(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		if (arr.length == 0)
 			return ArdenNull.INSTANCE;
 		else
@@ -497,7 +661,7 @@ public final class ExpressionHelpers {
 
 	/** Implements the LAST aggregation operator. */
 	public static ArdenValue last(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		if (arr.length == 0)
 			return ArdenNull.INSTANCE;
 		else
@@ -507,26 +671,26 @@ public final class ExpressionHelpers {
 	/** Implements the FIRST transformation operator. */
 	public static ArdenValue first(ArdenValue input, int numberOfElements) {
 		ArdenList inputList = unaryComma(input);
-		if (numberOfElements >= inputList.values.length)
+		if (numberOfElements >= inputList.getElements().length)
 			return inputList;
 		ArdenValue[] result = new ArdenValue[numberOfElements];
-		System.arraycopy(inputList.values, 0, result, 0, numberOfElements);
+		System.arraycopy(inputList.getElements(), 0, result, 0, numberOfElements);
 		return new ArdenList(result);
 	}
 
 	/** Implements the LAST transformation operator. */
 	public static ArdenValue last(ArdenValue input, int numberOfElements) {
 		ArdenList inputList = unaryComma(input);
-		if (numberOfElements >= inputList.values.length)
+		if (numberOfElements >= inputList.getElements().length)
 			return inputList;
 		ArdenValue[] result = new ArdenValue[numberOfElements];
-		System.arraycopy(inputList.values, inputList.values.length - numberOfElements, result, 0, numberOfElements);
+		System.arraycopy(inputList.getElements(), inputList.getElements().length - numberOfElements, result, 0, numberOfElements);
 		return new ArdenList(result);
 	}
 
 	/** Implements the INDEX MINIMUM aggregation operator. */
 	public static ArdenValue indexMinimum(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		if (arr.length == 0)
 			return ArdenNull.INSTANCE;
 		int min = 0;
@@ -542,10 +706,8 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX MINIMUM transformation operator. */
 	public static ArdenValue indexMinimum(ArdenValue input, int numberOfElements) {
-		ArdenValue[] arr = unaryComma(input).values;
-		// sort the input by values and equal values by time (reverse order)
-		ArdenValue sortedInput = sort(input, dataAndReverseTimeComparator);
-		if (!(sortedInput instanceof ArdenList))
+		ArdenValue[] arr = unaryComma(input).getElements();
+		if (!isOrdered(arr))
 			return ArdenNull.INSTANCE;
 		if (numberOfElements > arr.length)
 			numberOfElements = arr.length;
@@ -553,13 +715,13 @@ public final class ExpressionHelpers {
 			return ArdenList.EMPTY;
 		ArdenValue[] output = new ArdenValue[numberOfElements];
 		/*
-		 * The array is sorted, thus pivot=arr[nrElements-1] ensures that
-		 * <nrElements> elements are smaller than the pivot or are equal and
-		 * have a later primary time. In other words, the pivot is the greatest
-		 * element in the returned list or has a earlier primary time than equal
-		 * elements.
+		 * If the input was sorted by values and equal values by time (reverse
+		 * order), pivot=sorted[nrElements-1] ensures that <nrElements>
+		 * elements are smaller than the pivot or are equal and have a later
+		 * primary time. In other words, the pivot is the greatest element in
+		 * the returned list or has a earlier primary time than equal elements.
 		 */
-		ArdenValue pivot = ((ArdenList) sortedInput).values[numberOfElements - 1];
+		ArdenValue pivot = arr[Selection.select(arr, numberOfElements - 1, dataAndReverseTimeComparator)];
 		int pos = 0;
 		for (int i = 0; i < arr.length; i++) {
 			if (dataAndReverseTimeComparator.compare(arr[i], pivot) <= 0) {
@@ -575,7 +737,7 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX MAXIMUM aggregation operator. */
 	public static ArdenValue indexMaximum(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		if (arr.length == 0)
 			return ArdenNull.INSTANCE;
 		int max = 0;
@@ -591,10 +753,8 @@ public final class ExpressionHelpers {
 	
 	/** Implements the INDEX MAXIMUM transformation operator. */
 	public static ArdenValue indexMaximum(ArdenValue input, int numberOfElements) {
-		ArdenValue[] arr = unaryComma(input).values;
-		// sort the input by values and equal values by time
-		ArdenValue sortedInput = sort(input, dataAndTimeComparator);
-		if (!(sortedInput instanceof ArdenList))
+		ArdenValue[] arr = unaryComma(input).getElements();
+		if (!isOrdered(arr))
 			return ArdenNull.INSTANCE;
 		if (numberOfElements > arr.length)
 			numberOfElements = arr.length;
@@ -602,13 +762,13 @@ public final class ExpressionHelpers {
 			return ArdenList.EMPTY;
 		ArdenValue[] output = new ArdenValue[numberOfElements];
 		/*
-		 * The array is sorted, thus pivot=arr[arr.length-nrElements] ensures
-		 * that <nrElements> elements are greater than the pivot or are equal
-		 * and have a later primary time. In other words, the pivot is the
-		 * smallest element in the returned list or has a earlier primary time
-		 * than equal elements.
+		 * If the input was sorted by values and equal values by time,
+		 * pivot=sorted[arr.length-nrElements] ensures that <nrElements>
+		 * elements are greater than the pivot or are equal and have a later
+		 * primary time. In other words, the pivot is the smallest element in
+		 * the returned list or has a earlier primary time than equal elements.
 		 */
-		ArdenValue pivot = ((ArdenList)sortedInput).values[arr.length - numberOfElements];
+		ArdenValue pivot = arr[Selection.select(arr, arr.length - numberOfElements, dataAndTimeComparator)];
 		int pos = 0;
 		for (int i = 0; i < arr.length; i++) {
 			if (dataAndTimeComparator.compare(arr[i], pivot) >= 0) {
@@ -624,7 +784,7 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX EARLIEST aggregation operator. */
 	public static ArdenValue indexEarliest(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		if (arr.length == 0 || arr[0].primaryTime == ArdenValue.NOPRIMARYTIME)
 			return ArdenNull.INSTANCE;
 		int best = 0;
@@ -639,19 +799,18 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX EARLIEST transformation operator. */
 	public static ArdenValue indexEarliest(ArdenValue input, int numberOfElements) {
-		ArdenValue[] arr = unaryComma(input).values;
-		ArdenValue sortedInput = sortByTime(input);
-		if (!(sortedInput instanceof ArdenList))
+		ArdenValue[] arr = unaryComma(input).getElements();
+		if (!hasPrimaryTimes(arr))
 			return ArdenNull.INSTANCE;
 		if (numberOfElements > arr.length)
 			numberOfElements = arr.length;
 		if (numberOfElements == 0)
 			return ArdenList.EMPTY;
 		ArdenValue[] output = new ArdenValue[numberOfElements];
-		ArdenValue pivot = ((ArdenList) sortedInput).values[numberOfElements - 1];
+		long pivotTime = Selection.selectPrimaryTime(arr, numberOfElements - 1);
 		int pos = 0;
 		for (int i = 0; i < arr.length; i++) {
-			if (arr[i].primaryTime <= pivot.primaryTime) {
+			if (arr[i].primaryTime <= pivotTime) {
 				output[pos++] = ArdenNumber.create(i + 1, ArdenValue.NOPRIMARYTIME);
 				if (pos == numberOfElements)
 					break;
@@ -664,7 +823,7 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX LATEST aggregation operator. */
 	public static ArdenValue indexLatest(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		if (arr.length == 0 || arr[0].primaryTime == ArdenValue.NOPRIMARYTIME)
 			return ArdenNull.INSTANCE;
 		int best = 0;
@@ -679,19 +838,18 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX LATEST transformation operator. */
 	public static ArdenValue indexLatest(ArdenValue input, int numberOfElements) {
-		ArdenValue[] arr = unaryComma(input).values;
-		ArdenValue sortedInput = sortByTime(input);
-		if (!(sortedInput instanceof ArdenList))
+		ArdenValue[] arr = unaryComma(input).getElements();
+		if (!hasPrimaryTimes(arr))
 			return ArdenNull.INSTANCE;
 		if (numberOfElements > arr.length)
 			numberOfElements = arr.length;
 		if (numberOfElements == 0)
 			return ArdenList.EMPTY;
 		ArdenValue[] output = new ArdenValue[numberOfElements];
-		ArdenValue pivot = ((ArdenList) sortedInput).values[arr.length - numberOfElements];
+		long pivotTime = Selection.selectPrimaryTime(arr, arr.length - numberOfElements);
 		int pos = 0;
 		for (int i = 0; i < arr.length; i++) {
-			if (arr[i].primaryTime >= pivot.primaryTime) {
+			if (arr[i].primaryTime >= pivotTime) {
 				output[pos++] = ArdenNumber.create(i + 1, ArdenValue.NOPRIMARYTIME);
 				if (pos == numberOfElements)
 					break;
@@ -704,7 +862,7 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX NEAREST operator. */
 	public static ArdenValue indexNearest(ArdenValue time, ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		if (arr.length == 0 || arr[0].primaryTime == ArdenValue.NOPRIMARYTIME || !(time instanceof ArdenTime))
 			return ArdenNull.INSTANCE;
 		long inputTime = ((ArdenTime) time).value;
@@ -724,9 +882,9 @@ public final class ExpressionHelpers {
 
 	/** implements the [] (element) operator */
 	public static ArdenValue elementAt(ArdenValue list, ArdenValue index) {
-		ArdenValue[] values = unaryComma(list).values;
+		ArdenValue[] values = unaryComma(list).getElements();
 		if (index instanceof ArdenList) {
-			ArdenValue[] indices = ((ArdenList) index).values;
+			ArdenValue[] indices = ((ArdenList) index).getElements();
 			ArdenValue[] result = new ArdenValue[indices.length];
 			for (int i = 0; i < indices.length; i++) {
 				int val = RuntimeHelpers.getPrimitiveIntegerValue(indices[i]);
@@ -747,9 +905,9 @@ public final class ExpressionHelpers {
 	/** implements the ANY operator */
 	public static ArdenValue any(ArdenValue sequence) {
 		ArdenList input = unaryComma(sequence);
-		long primaryTime = getCommonTime(input.values);
+		long primaryTime = getCommonTime(input.getElements());
 		boolean allFalse = true;
-		for (ArdenValue val : input.values) {
+		for (ArdenValue val : input.getElements()) {
 			if (val.isTrue())
 				return ArdenBoolean.create(true, primaryTime);
 			allFalse &= val.isFalse();
@@ -763,9 +921,9 @@ public final class ExpressionHelpers {
 	/** implements the ALL operator */
 	public static ArdenValue all(ArdenValue sequence) {
 		ArdenList input = unaryComma(sequence);
-		long primaryTime = getCommonTime(input.values);
+		long primaryTime = getCommonTime(input.getElements());
 		boolean allTrue = true;
-		for (ArdenValue val : input.values) {
+		for (ArdenValue val : input.getElements()) {
 			if (val.isFalse())
 				return ArdenBoolean.create(false, primaryTime);
 			allTrue &= val.isTrue();
@@ -792,7 +950,7 @@ public final class ExpressionHelpers {
 	
 	public static ArdenValue createDuration(ArdenValue val, double multiplier, boolean isMonths) {
 		if (val instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) val).values;
+			ArdenValue[] inputs = ((ArdenList) val).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = createDuration(inputs[i], multiplier, isMonths);
@@ -825,16 +983,14 @@ public final class ExpressionHelpers {
 	
 	public static ArdenValue extractTimeComponent(ArdenValue time, int component) {
 		if (time instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) time).values;
+			ArdenValue[] inputs = ((ArdenList) time).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = extractTimeComponent(inputs[i], component);
 			return new ArdenList(results);
 		} else if (time instanceof ArdenTime) {
-			GregorianCalendar c = new GregorianCalendar();
-			c.setTimeInMillis(((ArdenTime) time).value);
-			int val = c.get(component);
-			if (component == GregorianCalendar.MONTH)
+			int val = ArdenCalendar.get(((ArdenTime) time).value, component);
+			if (component == Calendar.MONTH)
 				val++;
 			return ArdenNumber.create(val, time.primaryTime);
 		} else {
@@ -858,7 +1014,7 @@ public final class ExpressionHelpers {
 	/** implements the STRING... operator */
 	public static ArdenString joinString(ArdenValue input) {
 		StringBuilder b = new StringBuilder();
-		for (ArdenValue val : unaryComma(input).values) {
+		for (ArdenValue val : unaryComma(input).getElements()) {
 			b.append(toString(val));
 		}
 		return new ArdenString(b.toString());
@@ -867,7 +1023,7 @@ public final class ExpressionHelpers {
 	/** implements the EXTRACT CHARACTERS operator */
 	public static ArdenList extractCharacters(ArdenValue input) {
 		ArrayList<String> strings = new ArrayList<String>();
-		for (ArdenValue val : unaryComma(input).values) {
+		for (ArdenValue val : unaryComma(input).getElements()) {
 			String txt = toString(val);
 			for (int i = 0; i < txt.length(); i++)
 				strings.add(txt.substring(i, i + 1));
@@ -881,7 +1037,7 @@ public final class ExpressionHelpers {
 	/** implements the TRIM operator */
 	public static ArdenValue trim(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -898,7 +1054,7 @@ public final class ExpressionHelpers {
 	/** implements the TRIM LEFT operator */
 	public static ArdenValue trimLeft(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -919,7 +1075,7 @@ public final class ExpressionHelpers {
 	/** implements the TRIM RIGHT operator */
 	public static ArdenValue trimRight(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -940,7 +1096,7 @@ public final class ExpressionHelpers {
 	/** implements the LENGTH OF operator */
 	public static ArdenValue length(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -958,7 +1114,7 @@ public final class ExpressionHelpers {
 	/** implements the UPPERCASE operator */
 	public static ArdenValue toUpperCase(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -976,7 +1132,7 @@ public final class ExpressionHelpers {
 	/** implements the LOWERCASE operator */
 	public static ArdenValue toLowerCase(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -993,17 +1149,23 @@ public final class ExpressionHelpers {
 
 	/** implements the MATCHES PATTERN operator */
 	public static ArdenValue matchesPattern(ArdenValue lhs, ArdenValue rhs) {
-		Pattern pattern = createPattern(rhs);
+		if (!(rhs instanceof ArdenString))
+			return ArdenNull.INSTANCE;
+		return matchesPattern(lhs, StringPattern.get(((ArdenString) rhs).value));
+	}
+
+	/** implements the MATCHES PATTERN operator for patterns known at compile time */
+	public static ArdenValue matchesPattern(ArdenValue lhs, StringPattern pattern) {
 		if (lhs instanceof ArdenString) {
 			String input = ((ArdenString) lhs).value;
-			return pattern.matcher(input).matches() ? ArdenBoolean.TRUE : ArdenBoolean.FALSE;
+			return pattern.matches(input) ? ArdenBoolean.TRUE : ArdenBoolean.FALSE;
 		} else if (lhs instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) lhs).values;
+			ArdenValue[] inputs = ((ArdenList) lhs).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++) {
 				if (inputs[i] instanceof ArdenString) {
 					String input = ((ArdenString) inputs[i]).value;
-					results[i] = pattern.matcher(input).matches() ? ArdenBoolean.TRUE : ArdenBoolean.FALSE;
+					results[i] = pattern.matches(input) ? ArdenBoolean.TRUE : ArdenBoolean.FALSE;
 				} else {
 					results[i] = ArdenNull.INSTANCE;
 				}
@@ -1014,39 +1176,6 @@ public final class ExpressionHelpers {
 		}
 	}
 
-	/** helper for MATCHES PATTERN implementation */
-	private static Pattern createPattern(ArdenValue rhs) {
-		if (rhs instanceof ArdenString) {
-			String pattern = ((ArdenString) rhs).value;
-			StringBuilder regex = new StringBuilder();
-			int processingEndOffset = 0;
-			regex.append('^');
-			for (int i = 0; i < pattern.length(); i++) {
-				char c = pattern.charAt(i);
-				if (c == '_' || c == '%') {
-					if (processingEndOffset < i)
-						regex.append(Pattern.quote(pattern.substring(processingEndOffset, i)));
-					regex.append('.');
-					if (c == '%')
-						regex.append('*');
-					processingEndOffset = i + 1;
-				} else if (c == '\\') {
-					if (processingEndOffset < i)
-						regex.append(Pattern.quote(pattern.substring(processingEndOffset, i)));
-					processingEndOffset = i + 1; // don't output the \ itself
-					i++; // skip processing the character after the \, thus
-					// copying it to the output escaped
-				}
-			}
-			if (processingEndOffset < pattern.length())
-				regex.append(Pattern.quote(pattern.substring(processingEndOffset, pattern.length())));
-			regex.append('$');
-			return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-		} else {
-			return null;
-		}
-	}
-
 	/** CLONE operator implementation */
 	public static ArdenValue cloneObjects(ArdenValue input) {
 		return cloneObjects(input, new HashMap<ArdenObject, ArdenObject>());
@@ -1054,7 +1183,7 @@ public final class ExpressionHelpers {
 
 	private static ArdenValue cloneObjects(ArdenValue input, HashMap<ArdenObject, ArdenObject> objectMap) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) input).values;
+			ArdenValue[] inputs = ((ArdenList) input).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = cloneObjects(inputs[i], objectMap);
@@ -1082,7 +1211,7 @@ public final class ExpressionHelpers {
 			type = ((ArdenObject) input).type;
 		} else if (input instanceof ArdenList) {
 			// if all objects in list have the same type, get that type
-			ArdenValue[] inputs = ((ArdenList) input).values;
+			ArdenValue[] inputs = ((ArdenList) input).getElements();
 			if (inputs.length == 0 || !(inputs[0] instanceof ArdenObject))
 				return ArdenNull.INSTANCE;
 			type = ((ArdenObject) inputs[0]).type;
@@ -1104,7 +1233,7 @@ public final class ExpressionHelpers {
 	/** IS <Object-Type> operator implementation */
 	public static ArdenValue isObjectType(ArdenValue input, ObjectType type) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) input).values;
+			ArdenValue[] inputs = ((ArdenList) input).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = isObjectType(inputs[i], type);
@@ -0,0 +1,86 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A parameter in a mapping clause. Parameters are written as a colon followed
+ * by the name of a variable, e.g.
+ * <code>READ {select value from labs where patient = :patient_id}</code>.
+ * The compiler passes the values of these variables to
+ * {@link ExecutionContext#createQuery(MedicalLogicModule, String, String[], ArdenValue[])}.
+ * 
+ * Colons within single or double quotes, after another colon or after a
+ * letter or digit do not start a parameter, so <code>'10:30'</code> or
+ * <code>value::int</code> are left alone.
+ */
+public final class MappingParameter {
+	/** The name of the variable as written in the mapping. */
+	public final String name;
+	/** The index of the colon in the mapping. */
+	public final int start;
+	/** The index after the last character of the name. */
+	public final int end;
+
+	private MappingParameter(String name, int start, int end) {
+		this.name = name;
+		this.start = start;
+		this.end = end;
+	}
+
+	/** Finds the parameters in the order they occur in the mapping. */
+	public static List<MappingParameter> find(String mapping) {
+		List<MappingParameter> parameters = new ArrayList<MappingParameter>();
+		char quote = 0;
+		for (int i = 0; i < mapping.length(); i++) {
+			char c = mapping.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == ':' && (i == 0 || !isPartOfWord(mapping.charAt(i - 1)) && mapping.charAt(i - 1) != ':')
+					&& i + 1 < mapping.length() && Character.isLetter(mapping.charAt(i + 1))) {
+				int end = i + 2;
+				while (end < mapping.length() && isPartOfWord(mapping.charAt(end))) {
+					end++;
+				}
+				parameters.add(new MappingParameter(mapping.substring(i + 1, end), i, end));
+				i = end - 1;
+			}
+		}
+		return parameters;
+	}
+
+	private static boolean isPartOfWord(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+}
@@ -28,6 +28,7 @@
 package arden.runtime;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
 
 import arden.runtime.evoke.Trigger;
 
@@ -77,4 +78,12 @@ public interface MedicalLogicModule extends ArdenRunnable {
 	 *         initialized.
 	 */
 	ArdenValue getValue(String name);
+
+	/**
+	 * Gets the values of all variables declared in a Medical Logic Module.
+	 * 
+	 * @return The variable values by their names. Empty if the MLM has not
+	 *         been run yet.
+	 */
+	Map<String, ArdenValue> getValues();
 }
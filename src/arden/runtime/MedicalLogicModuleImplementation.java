@@ -27,6 +27,11 @@
 
 package arden.runtime;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import arden.runtime.evoke.Trigger;
 
 /**
@@ -41,6 +46,19 @@ public abstract class MedicalLogicModuleImplementation {
 	// arguments, Trigger evokingTrigger)
 	// None of the arguments may be null.
 
+	/**
+	 * Creates a new instance of the same class, i.e. calls the constructor
+	 * above. This avoids looking up the constructor via reflection.
+	 * (not declared abstract to stay downwards compatible with existing MLMs)
+	 * 
+	 * @return The new instance or null, if the MLM has been compiled without
+	 *         this method.
+	 */
+	public MedicalLogicModuleImplementation newInstance(ExecutionContext context, MedicalLogicModule self,
+			ArdenValue[] arguments, Trigger evokingTrigger) {
+		return null;
+	}
+
 	/** Executes the logic block. */
 	public abstract boolean logic(ExecutionContext context);
 
@@ -91,4 +109,36 @@ public abstract class MedicalLogicModuleImplementation {
 	public ArdenValue getValue(String name) {
 		return ArdenNull.INSTANCE;
 	}
+
+	/**
+	 * Gets all variables that are declared in the Medical Logic Module. This
+	 * method should be overridden by the MLMs ByteCode. (not declared
+	 * abstract to stay downwards compatible with existing MLMs)
+	 * 
+	 * @return The variable values by their names, without the values of NOW,
+	 *         EVENTTIME and TRIGGERTIME.
+	 */
+	public Map<String, ArdenValue> getValues() {
+		Map<String, ArdenValue> values = new LinkedHashMap<String, ArdenValue>();
+		for (Field field : getClass().getDeclaredFields()) {
+			if (ArdenValue.class.isAssignableFrom(field.getType()) && !Modifier.isStatic(field.getModifiers())
+					&& isVariable(field.getName())) {
+				try {
+					field.setAccessible(true);
+					values.put(field.getName(), (ArdenValue) field.get(this));
+				} catch (IllegalAccessException e) {
+					// skip inaccessible fields
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Returns whether the field of an MLM holds a variable, i.e. it is not one
+	 * of the fields for NOW, EVENTTIME and TRIGGERTIME.
+	 */
+	public static boolean isVariable(String fieldName) {
+		return !"now".equals(fieldName) && !"eventtime".equals(fieldName) && !"triggertime".equals(fieldName);
+	}
 }
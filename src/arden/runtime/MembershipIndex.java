@@ -0,0 +1,74 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.util.HashMap;
+
+/**
+ * Hash table over the elements of a list, used by the IS IN operator instead
+ * of comparing the left-hand side with every element.
+ */
+final class MembershipIndex {
+	/** Lists with fewer elements are searched linearly. */
+	static final int MIN_SIZE = 16;
+
+	/** Maps each distinct element to its first occurrence in the list. */
+	private final HashMap<ArdenValue, ArdenValue> firstOccurrences;
+
+	private MembershipIndex(HashMap<ArdenValue, ArdenValue> firstOccurrences) {
+		this.firstOccurrences = firstOccurrences;
+	}
+
+	/**
+	 * Creates the index, or returns null if the list contains values whose
+	 * hashCode() is not consistent with equals().
+	 */
+	static MembershipIndex create(ArdenValue[] values) {
+		HashMap<ArdenValue, ArdenValue> firstOccurrences = new HashMap<ArdenValue, ArdenValue>(values.length * 2);
+		for (ArdenValue val : values) {
+			if (!isHashable(val))
+				return null;
+			if (!firstOccurrences.containsKey(val))
+				firstOccurrences.put(val, val);
+		}
+		return new MembershipIndex(firstOccurrences);
+	}
+
+	/**
+	 * Returns whether equals() and hashCode() of the value agree. Events are
+	 * compared case-insensitively but hashed case-sensitively.
+	 */
+	static boolean isHashable(ArdenValue val) {
+		return !(val instanceof ArdenEvent);
+	}
+
+	/** Returns the first element equal to val, or null. */
+	ArdenValue getFirstOccurrence(ArdenValue val) {
+		return firstOccurrences.get(val);
+	}
+}
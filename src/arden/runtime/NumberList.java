@@ -0,0 +1,109 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.util.Arrays;
+
+/**
+ * List of numbers that stores its values and primary times in primitive
+ * arrays. The ArdenNumber instances are only created when
+ * {@link #getElements()} is called, so aggregation operators working on the
+ * arrays directly never box the values.
+ * 
+ * All values must be finite; producers fall back to a plain ArdenList when a
+ * result would contain null.
+ */
+public final class NumberList extends ArdenList {
+	private final double[] numbers;
+	/** The primary times of the elements, or null if none of them has one. */
+	private final long[] primaryTimes;
+	private volatile ArdenValue[] elements;
+
+	public NumberList(double[] numbers, long[] primaryTimes) {
+		if (primaryTimes != null && primaryTimes.length != numbers.length)
+			throw new IllegalArgumentException("primaryTimes.length != numbers.length");
+		this.numbers = numbers;
+		this.primaryTimes = primaryTimes;
+	}
+
+	@Override
+	public int size() {
+		return numbers.length;
+	}
+
+	public double getNumber(int index) {
+		return numbers[index];
+	}
+
+	public long getPrimaryTime(int index) {
+		return primaryTimes != null ? primaryTimes[index] : NOPRIMARYTIME;
+	}
+
+	/** Returns the primary times of the elements, or null. Must not be modified. */
+	long[] getPrimaryTimes() {
+		return primaryTimes;
+	}
+
+	/** Returns whether primary times are stored for the elements. */
+	public boolean hasPrimaryTimes() {
+		return primaryTimes != null;
+	}
+
+	/** Returns the primary time shared by all elements, or NOPRIMARYTIME. */
+	public long getCommonTime() {
+		if (primaryTimes == null || primaryTimes.length == 0)
+			return NOPRIMARYTIME;
+		long time = primaryTimes[0];
+		for (int i = 1; i < primaryTimes.length; i++) {
+			if (primaryTimes[i] != time)
+				return NOPRIMARYTIME;
+		}
+		return time;
+	}
+
+	@Override
+	public ArdenValue setTime(long newPrimaryTime) {
+		if (newPrimaryTime == NOPRIMARYTIME)
+			return new NumberList(numbers, null);
+		long[] newTimes = new long[numbers.length];
+		Arrays.fill(newTimes, newPrimaryTime);
+		return new NumberList(numbers, newTimes);
+	}
+
+	@Override
+	public ArdenValue[] getElements() {
+		ArdenValue[] result = elements;
+		if (result == null) {
+			result = new ArdenValue[numbers.length];
+			for (int i = 0; i < result.length; i++)
+				result[i] = ArdenNumber.create(numbers[i], getPrimaryTime(i));
+			elements = result;
+		}
+		return result;
+	}
+}
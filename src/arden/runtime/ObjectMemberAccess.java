@@ -0,0 +1,105 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+/**
+ * Call site for reading or writing an object attribute ("obj.field"). The
+ * field index is cached for the last object type seen, so walking a list of
+ * objects of the same type only looks up the field name once.
+ */
+public final class ObjectMemberAccess {
+	private final String upperCaseFieldName;
+	private volatile Resolution resolution;
+
+	/** Field index of the attribute in an object type. */
+	private static final class Resolution {
+		final ObjectType type;
+		final int index;
+
+		Resolution(ObjectType type, int index) {
+			this.type = type;
+			this.index = index;
+		}
+	}
+
+	public ObjectMemberAccess(String upperCaseFieldName) {
+		this.upperCaseFieldName = upperCaseFieldName;
+	}
+
+	/**
+	 * Creates a call site for an attribute whose object type was already known
+	 * to the compiler.
+	 */
+	public ObjectMemberAccess(String upperCaseFieldName, ObjectType type, int index) {
+		this.upperCaseFieldName = upperCaseFieldName;
+		this.resolution = new Resolution(type, index);
+	}
+
+	private int getFieldIndex(ObjectType type) {
+		Resolution r = resolution;
+		if (r == null || r.type != type) {
+			r = new Resolution(type, type.getFieldIndex(upperCaseFieldName));
+			resolution = r;
+		}
+		return r.index;
+	}
+
+	/** Implements the same logic as RuntimeHelpers.getObjectMember() */
+	public ArdenValue get(ArdenValue objref) {
+		if (objref instanceof ArdenObject) {
+			ArdenObject obj = (ArdenObject) objref;
+			int index = getFieldIndex(obj.type);
+			if (index < 0)
+				return ArdenNull.INSTANCE;
+			else
+				return obj.fields[index];
+		} else if (objref instanceof ArdenList) {
+			ArdenValue[] inputs = objref.getElements();
+			ArdenValue[] results = new ArdenValue[inputs.length];
+			for (int i = 0; i < inputs.length; i++)
+				results[i] = get(inputs[i]);
+			return new ArdenList(results);
+		} else {
+			return ArdenNull.INSTANCE;
+		}
+	}
+
+	/** Implements the same logic as RuntimeHelpers.setObjectMember() */
+	public void set(ArdenValue objref, ArdenValue newValue) {
+		if (objref instanceof ArdenObject) {
+			ArdenObject obj = (ArdenObject) objref;
+			int index = getFieldIndex(obj.type);
+			if (index >= 0)
+				obj.fields[index] = newValue;
+		} else if (objref instanceof ArdenList) {
+			for (ArdenValue listEntry : objref.getElements()) {
+				set(listEntry, newValue);
+			}
+		}
+	}
+}
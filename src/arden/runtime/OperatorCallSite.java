@@ -0,0 +1,175 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Locale;
+
+/**
+ * Call site of an operator in an MLM, which has been compiled with
+ * invokedynamic (see arden.compiler.Compiler.enableInvokeDynamic()).
+ * 
+ * The call site is an inline cache: for each combination of operand classes
+ * it sees, it links a path guarded by a check of the classes. Lists are passed
+ * to the run() method of the operator, other values to runElement() or to a
+ * typed implementation in {@link OperatorFastPaths}. After
+ * {@value #MAX_CACHED_TYPES} combinations, the call site always calls run().
+ */
+public final class OperatorCallSite extends MutableCallSite {
+	static final int MAX_CACHED_TYPES = 4;
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private final String name;
+	private final MethodHandle run;
+	private final MethodHandle runElement;
+	private final MethodHandle classCheck;
+	private final Object operator;
+	private int cachedTypes = 0;
+
+	private OperatorCallSite(String name, MethodType type) throws ReflectiveOperationException {
+		super(type);
+		this.name = name;
+		Class<?> operatorClass;
+		switch (type.parameterCount()) {
+		case 1:
+			operatorClass = UnaryOperator.class;
+			break;
+		case 2:
+			operatorClass = BinaryOperator.class;
+			break;
+		case 3:
+			operatorClass = TernaryOperator.class;
+			break;
+		default:
+			throw new IllegalArgumentException("Operators have one to three operands");
+		}
+		operator = operatorClass.getField(name).get(null);
+		run = LOOKUP.findVirtual(operatorClass, "run", type).bindTo(operator);
+		runElement = LOOKUP.findVirtual(operatorClass, "runElement", type).bindTo(operator);
+		classCheck = LOOKUP.findStatic(OperatorCallSite.class, "hasClasses",
+				type.changeReturnType(Boolean.TYPE).insertParameterTypes(0, getClassTypes(type.parameterCount())));
+		setTarget(LOOKUP.findVirtual(OperatorCallSite.class, "fallback", type).bindTo(this));
+	}
+
+	/**
+	 * The bootstrap method of the call sites.
+	 * 
+	 * @param name
+	 *            the name of the operator field, e.g. "ADD"
+	 * @param type
+	 *            the type of the run() method of the operator
+	 */
+	public static CallSite bootstrap(MethodHandles.Lookup caller, String name, MethodType type)
+			throws ReflectiveOperationException {
+		return new OperatorCallSite(name, type);
+	}
+
+	private static Class<?>[] getClassTypes(int count) {
+		Class<?>[] types = new Class<?>[count];
+		for (int i = 0; i < count; i++) {
+			types[i] = Class.class;
+		}
+		return types;
+	}
+
+	/** Links a path for the classes of the arguments. */
+	private synchronized void link(ArdenValue... args) {
+		if (cachedTypes >= MAX_CACHED_TYPES) {
+			// megamorphic, don't grow the chain of guards any further
+			setTarget(run);
+			return;
+		}
+		Class<?>[] classes = new Class<?>[args.length];
+		boolean isGeneric = false;
+		for (int i = 0; i < args.length; i++) {
+			classes[i] = getClass(args[i]);
+			// some operands are optional and may be null
+			isGeneric |= args[i] instanceof ArdenList || args[i] == null;
+		}
+		MethodHandle path;
+		if (isGeneric) {
+			path = run;
+		} else {
+			path = findFastPath(classes);
+			if (path == null)
+				path = runElement;
+		}
+		MethodHandle test = MethodHandles.insertArguments(classCheck, 0, (Object[]) classes);
+		setTarget(MethodHandles.guardWithTest(test, path, getTarget()));
+		cachedTypes++;
+	}
+
+	private MethodHandle findFastPath(Class<?>[] classes) {
+		try {
+			MethodHandle fastPath = LOOKUP.findStatic(OperatorFastPaths.class, name.toLowerCase(Locale.ENGLISH),
+					MethodType.methodType(ArdenValue.class, classes));
+			return fastPath.asType(type());
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private ArdenValue fallback(ArdenValue val) {
+		link(val);
+		return ((UnaryOperator) operator).run(val);
+	}
+
+	private ArdenValue fallback(ArdenValue lhs, ArdenValue rhs) {
+		link(lhs, rhs);
+		return ((BinaryOperator) operator).run(lhs, rhs);
+	}
+
+	private ArdenValue fallback(ArdenValue arg1, ArdenValue arg2, ArdenValue arg3) {
+		link(arg1, arg2, arg3);
+		return ((TernaryOperator) operator).run(arg1, arg2, arg3);
+	}
+
+	private static Class<?> getClass(ArdenValue val) {
+		return val != null ? val.getClass() : null;
+	}
+
+	private static boolean hasClasses(Class<?> class1, ArdenValue val) {
+		return getClass(val) == class1;
+	}
+
+	private static boolean hasClasses(Class<?> class1, Class<?> class2, ArdenValue lhs, ArdenValue rhs) {
+		return getClass(lhs) == class1 && getClass(rhs) == class2;
+	}
+
+	private static boolean hasClasses(Class<?> class1, Class<?> class2, Class<?> class3, ArdenValue arg1,
+			ArdenValue arg2, ArdenValue arg3) {
+		return getClass(arg1) == class1 && getClass(arg2) == class2 && getClass(arg3) == class3;
+	}
+}
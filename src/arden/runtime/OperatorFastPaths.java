@@ -0,0 +1,128 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+/**
+ * Implementations of operators for common combinations of operand types. They
+ * are linked by {@link OperatorCallSite} after a check of the operand classes
+ * and avoid the type checks of the general implementation.
+ * 
+ * A method is found by the lower case name of the operator and the classes of
+ * its operands. It must return the same value as the runElement() method of
+ * the operator.
+ */
+final class OperatorFastPaths {
+	private OperatorFastPaths() {
+	}
+
+	static ArdenValue add(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenNumber.create(lhs.value + rhs.value, newTime);
+	}
+
+	static ArdenValue sub(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenNumber.create(lhs.value - rhs.value, newTime);
+	}
+
+	static ArdenValue mul(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenNumber.create(lhs.value * rhs.value, newTime);
+	}
+
+	static ArdenValue div(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenNumber.create(lhs.value / rhs.value, newTime);
+	}
+
+	// the comparisons are written like ArdenNumber.compareTo(), which treats
+	// NaN as equal to every number
+
+	static ArdenValue eq(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenBoolean.create(lhs.value == rhs.value, newTime);
+	}
+
+	static ArdenValue ne(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenBoolean.create(lhs.value != rhs.value, newTime);
+	}
+
+	static ArdenValue lt(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenBoolean.create(lhs.value < rhs.value, newTime);
+	}
+
+	static ArdenValue le(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenBoolean.create(!(lhs.value > rhs.value), newTime);
+	}
+
+	static ArdenValue gt(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenBoolean.create(lhs.value > rhs.value, newTime);
+	}
+
+	static ArdenValue ge(ArdenNumber lhs, ArdenNumber rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenBoolean.create(!(lhs.value < rhs.value), newTime);
+	}
+
+	static ArdenValue add(ArdenTime lhs, ArdenDuration rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return new ArdenTime(lhs.add(rhs), newTime);
+	}
+
+	static ArdenValue sub(ArdenTime lhs, ArdenDuration rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return new ArdenTime(lhs.subtract(rhs), newTime);
+	}
+
+	static ArdenValue sub(ArdenTime lhs, ArdenTime rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return ArdenDuration.seconds((lhs.value - rhs.value) / 1000.0, newTime);
+	}
+
+	static ArdenValue after(ArdenDuration lhs, ArdenTime rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return new ArdenTime(rhs.add(lhs), newTime);
+	}
+
+	static ArdenValue before(ArdenDuration lhs, ArdenTime rhs) {
+		long newTime = BinaryOperator.combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
+		return new ArdenTime(rhs.subtract(lhs), newTime);
+	}
+
+	static ArdenValue minus(ArdenNumber val) {
+		return ArdenNumber.create(-val.value, val.primaryTime);
+	}
+
+	static ArdenValue not(ArdenBoolean val) {
+		return ArdenBoolean.create(!val.value, val.primaryTime);
+	}
+}
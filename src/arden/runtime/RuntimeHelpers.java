@@ -28,13 +28,10 @@
 package arden.runtime;
 
 import java.lang.reflect.InvocationTargetException;
-import java.text.DateFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.List;
 
 import arden.runtime.evoke.CallTrigger;
@@ -142,27 +139,15 @@ public final class RuntimeHelpers {
 		if (val instanceof ArdenTime) {
 			long time = ((ArdenTime) val).value;
 			switch (precision) {
-			case 0: {
-				GregorianCalendar c = new GregorianCalendar();
-				c.setTimeInMillis(time);
-				return Integer.toString(c.get(Calendar.YEAR));
-			}
-			case 1: {
-				GregorianCalendar c = new GregorianCalendar();
-				c.setTimeInMillis(time);
-				return Integer.toString(c.get(Calendar.YEAR)) + "-" + Integer.toString(c.get(Calendar.MONTH) + 1);
-			}
-			case 2:
-				return DateFormat.getDateInstance(DateFormat.MEDIUM).format(new Date(time));
-			case 3:
-				GregorianCalendar c = new GregorianCalendar();
-				c.setTimeInMillis(time);
-				return DateFormat.getDateInstance(DateFormat.MEDIUM).format(new Date(time)) + " "
-						+ Integer.toString(c.get(Calendar.HOUR_OF_DAY)) + "h";
-			case 4:
-				return DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT).format(new Date(time));
+			case 0:
+				return Integer.toString(ArdenCalendar.get(time, Calendar.YEAR));
+			case 1:
+				return Integer.toString(ArdenCalendar.get(time, Calendar.YEAR)) + "-"
+						+ Integer.toString(ArdenCalendar.get(time, Calendar.MONTH) + 1);
 			default:
-				return DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.LONG).format(new Date(time));
+				StringBuilder b = new StringBuilder(24);
+				ArdenCalendar.appendFormattedTime(b, time, precision);
+				return b.toString();
 			}
 		} else {
 			return ExpressionHelpers.toString(val);
@@ -187,13 +172,7 @@ public final class RuntimeHelpers {
 
 	public static ArdenValue getStartOfDay(ArdenValue time) {
 		if (time instanceof ArdenTime) {
-			GregorianCalendar c = new GregorianCalendar();
-			c.setTimeInMillis(((ArdenTime) time).value);
-			c.set(Calendar.HOUR_OF_DAY, 0);
-			c.set(Calendar.MINUTE, 0);
-			c.set(Calendar.SECOND, 0);
-			c.set(Calendar.MILLISECOND, 0);
-			return new ArdenTime(c.getTimeInMillis(), time.primaryTime);
+			return new ArdenTime(ArdenCalendar.getStartOfDay(((ArdenTime) time).value), time.primaryTime);
 		} else {
 			return ArdenNull.create(time.primaryTime);
 		}
@@ -201,13 +180,7 @@ public final class RuntimeHelpers {
 
 	public static ArdenValue getEndOfDay(ArdenValue time) {
 		if (time instanceof ArdenTime) {
-			GregorianCalendar c = new GregorianCalendar();
-			c.setTimeInMillis(((ArdenTime) time).value);
-			c.set(Calendar.HOUR_OF_DAY, 23);
-			c.set(Calendar.MINUTE, 59);
-			c.set(Calendar.SECOND, 59);
-			c.set(Calendar.MILLISECOND, 999);
-			return new ArdenTime(c.getTimeInMillis(), time.primaryTime);
+			return new ArdenTime(ArdenCalendar.getEndOfDay(((ArdenTime) time).value), time.primaryTime);
 		} else {
 			return ArdenNull.create(time.primaryTime);
 		}
@@ -296,7 +269,7 @@ public final class RuntimeHelpers {
 		int shortestListLength = Integer.MAX_VALUE;
 		for (ArdenValue input : inputs) {
 			if (input instanceof ArdenList)
-				shortestListLength = Math.min(shortestListLength, ((ArdenList) input).values.length);
+				shortestListLength = Math.min(shortestListLength, ((ArdenList) input).getElements().length);
 			else
 				allInputsAreLists = false;
 		}
@@ -305,7 +278,7 @@ public final class RuntimeHelpers {
 			for (int i = 0; i < results.length; i++) {
 				ArdenObject obj = new ArdenObject(type);
 				for (int j = 0; j < inputs.length && j < obj.fields.length; j++)
-					obj.fields[j] = ((ArdenList) inputs[j]).values[i];
+					obj.fields[j] = ((ArdenList) inputs[j]).getElements()[i];
 				results[i] = obj;
 			}
 			return new ArdenList(results);
@@ -326,7 +299,7 @@ public final class RuntimeHelpers {
 			else
 				return obj.fields[index];
 		} else if (objref instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) objref).values;
+			ArdenValue[] inputs = ((ArdenList) objref).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = getObjectMember(inputs[i], upperCaseFieldName);
@@ -343,7 +316,7 @@ public final class RuntimeHelpers {
 			if (index >= 0)
 				obj.fields[index] = newValue;
 		} else if (objref instanceof ArdenList) {
-			for (ArdenValue listEntry : ((ArdenList) objref).values) {
+			for (ArdenValue listEntry : ((ArdenList) objref).getElements()) {
 				setObjectMember(listEntry, upperCaseFieldName, newValue);
 			}
 		}
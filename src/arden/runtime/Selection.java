@@ -0,0 +1,120 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.util.Comparator;
+
+/**
+ * Selection of the k-th smallest element in expected linear time
+ * (quickselect), used by operators that only need a single element of the
+ * sorted list.
+ */
+final class Selection {
+	private Selection() {
+	}
+
+	/**
+	 * Returns the index of the element that would be at position k if values
+	 * was sorted with a stable sort using the given comparator. All elements
+	 * must be comparable.
+	 */
+	static int select(ArdenValue[] values, int k, Comparator<ArdenValue> comparator) {
+		int[] indices = new int[values.length];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = i;
+		int lo = 0;
+		int hi = indices.length - 1;
+		while (lo < hi) {
+			int pivot = indices[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			do {
+				while (compare(values, indices[i], pivot, comparator) < 0)
+					i++;
+				while (compare(values, pivot, indices[j], comparator) < 0)
+					j--;
+				if (i <= j) {
+					int tmp = indices[i];
+					indices[i] = indices[j];
+					indices[j] = tmp;
+					i++;
+					j--;
+				}
+			} while (i <= j);
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				break;
+		}
+		return indices[k];
+	}
+
+	/** Compares by value and then by position, which is what a stable sort does. */
+	private static int compare(ArdenValue[] values, int a, int b, Comparator<ArdenValue> comparator) {
+		int r = comparator.compare(values[a], values[b]);
+		if (r != 0)
+			return r;
+		return a < b ? -1 : (a > b ? 1 : 0);
+	}
+
+	/** Returns the k-th smallest primary time of the values. */
+	static long selectPrimaryTime(ArdenValue[] values, int k) {
+		long[] times = new long[values.length];
+		for (int i = 0; i < times.length; i++)
+			times[i] = values[i].primaryTime;
+		int lo = 0;
+		int hi = times.length - 1;
+		while (lo < hi) {
+			long pivot = times[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			do {
+				while (times[i] < pivot)
+					i++;
+				while (pivot < times[j])
+					j--;
+				if (i <= j) {
+					long tmp = times[i];
+					times[i] = times[j];
+					times[j] = tmp;
+					i++;
+					j--;
+				}
+			} while (i <= j);
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				break;
+		}
+		return times[k];
+	}
+}
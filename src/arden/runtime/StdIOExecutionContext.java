@@ -6,7 +6,10 @@ import arden.CommandLineOptions;
 import arden.constants.ConstantParser;
 import arden.constants.ConstantParserException;
 
-/** Reads and prints queries from/to StdIO. */
+/**
+ * Reads and prints queries from/to StdIO. Queries are synchronized, so the
+ * prompts of MLMs running on different engine workers do not interleave.
+ */
 public class StdIOExecutionContext extends BaseExecutionContext {
 	private Scanner sc = new Scanner(System.in);
 	private boolean verbose;
@@ -18,7 +21,7 @@ public class StdIOExecutionContext extends BaseExecutionContext {
 	}
 
 	@Override
-	public DatabaseQuery createQuery(MedicalLogicModule mlm, String mapping) {
+	public synchronized DatabaseQuery createQuery(MedicalLogicModule mlm, String mapping) {
 		System.out.println(
 				"Query mapping: \"" + mapping + "\". Enter result as " + "Arden Syntax constant (Strings in quotes)");
 		System.out.print(PROMPT_SIGN);
@@ -0,0 +1,188 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled pattern of the MATCHES PATTERN operator. '%' matches any number
+ * of characters, '_' a single character and '\' escapes the following
+ * character. Matching ignores the case of ASCII letters.
+ * 
+ * Patterns which are only a text with '%' at the beginning and/or end (e.g.
+ * "%sepsis%") are matched without regular expressions.
+ */
+public final class StringPattern {
+	private static final int EXACT = 0;
+	private static final int PREFIX = 1;
+	private static final int SUFFIX = 2;
+	private static final int CONTAINS = 3;
+	private static final int REGEX = 4;
+
+	/** The number of dynamic patterns kept by {@link #get(String)} */
+	private static final int CACHE_SIZE = 256;
+	private static final int CACHE_SEGMENTS = 16;
+	private static final LruCache[] cache = new LruCache[CACHE_SEGMENTS];
+
+	static {
+		for (int i = 0; i < CACHE_SEGMENTS; i++)
+			cache[i] = new LruCache(CACHE_SIZE / CACHE_SEGMENTS);
+	}
+
+	/** A segment of the cache, the least recently used pattern is removed */
+	private static final class LruCache extends LinkedHashMap<String, StringPattern> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+
+		LruCache(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, StringPattern> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	private final int kind;
+	private final String text;
+	private final Pattern regex;
+
+	private StringPattern(int kind, String text, Pattern regex) {
+		this.kind = kind;
+		this.text = text;
+		this.regex = regex;
+	}
+
+	/**
+	 * Gets the compiled pattern from a cache of recently used patterns, or
+	 * compiles it. Used for patterns, which are not known at compile time.
+	 */
+	public static StringPattern get(String pattern) {
+		LruCache segment = cache[(pattern.hashCode() & 0x7fffffff) % CACHE_SEGMENTS];
+		StringPattern result;
+		synchronized (segment) {
+			result = segment.get(pattern);
+		}
+		if (result == null) {
+			result = compile(pattern);
+			synchronized (segment) {
+				segment.put(pattern, result);
+			}
+		}
+		return result;
+	}
+
+	/** Compiles a pattern. */
+	public static StringPattern compile(String pattern) {
+		boolean startsWithAny = pattern.startsWith("%");
+		boolean endsWithAny = pattern.length() > 1 && pattern.endsWith("%");
+		String text = pattern.substring(startsWithAny ? 1 : 0, pattern.length() - (endsWithAny ? 1 : 0));
+		if (text.indexOf('%') < 0 && text.indexOf('_') < 0 && text.indexOf('\\') < 0) {
+			if (startsWithAny && endsWithAny)
+				return new StringPattern(CONTAINS, text, null);
+			else if (startsWithAny)
+				return new StringPattern(SUFFIX, text, null);
+			else if (endsWithAny)
+				return new StringPattern(PREFIX, text, null);
+			else
+				return new StringPattern(EXACT, text, null);
+		}
+		return new StringPattern(REGEX, null, createRegex(pattern));
+	}
+
+	private static Pattern createRegex(String pattern) {
+		StringBuilder regex = new StringBuilder();
+		int processingEndOffset = 0;
+		regex.append('^');
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '_' || c == '%') {
+				if (processingEndOffset < i)
+					regex.append(Pattern.quote(pattern.substring(processingEndOffset, i)));
+				regex.append('.');
+				if (c == '%')
+					regex.append('*');
+				processingEndOffset = i + 1;
+			} else if (c == '\\') {
+				if (processingEndOffset < i)
+					regex.append(Pattern.quote(pattern.substring(processingEndOffset, i)));
+				processingEndOffset = i + 1; // don't output the \ itself
+				i++; // skip processing the character after the \, thus
+				// copying it to the output escaped
+			}
+		}
+		if (processingEndOffset < pattern.length())
+			regex.append(Pattern.quote(pattern.substring(processingEndOffset, pattern.length())));
+		regex.append('$');
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	}
+
+	/** Gets whether the whole input matches the pattern. */
+	public boolean matches(String input) {
+		switch (kind) {
+		case EXACT:
+			return input.length() == text.length() && regionMatches(input, 0);
+		case PREFIX:
+			return input.length() >= text.length() && regionMatches(input, 0);
+		case SUFFIX:
+			return input.length() >= text.length() && regionMatches(input, input.length() - text.length());
+		case CONTAINS:
+			for (int i = 0; i <= input.length() - text.length(); i++) {
+				if (regionMatches(input, i))
+					return true;
+			}
+			return false;
+		default:
+			return regex.matcher(input).matches();
+		}
+	}
+
+	/**
+	 * Compares the text with the input at the offset like the regular
+	 * expression would: only the case of ASCII letters is ignored.
+	 */
+	private boolean regionMatches(String input, int offset) {
+		for (int i = 0; i < text.length(); i++) {
+			char a = text.charAt(i);
+			char b = input.charAt(offset + i);
+			if (a != b && toLowerAscii(a) != toLowerAscii(b))
+				return false;
+		}
+		return true;
+	}
+
+	private static char toLowerAscii(char c) {
+		if (c >= 'A' && c <= 'Z')
+			return (char) (c + ('a' - 'A'));
+		return c;
+	}
+}
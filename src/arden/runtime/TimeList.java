@@ -0,0 +1,84 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime;
+
+import java.util.Arrays;
+
+/**
+ * List of times that stores its values and primary times in primitive
+ * arrays. The ArdenTime instances are only created when
+ * {@link #getElements()} is called.
+ */
+public final class TimeList extends ArdenList {
+	/** Number of milliseconds since 1.1.1970, midnight GMT */
+	private final long[] times;
+	/** The primary times of the elements, or null if none of them has one. */
+	private final long[] primaryTimes;
+	private volatile ArdenValue[] elements;
+
+	public TimeList(long[] times, long[] primaryTimes) {
+		if (primaryTimes != null && primaryTimes.length != times.length)
+			throw new IllegalArgumentException("primaryTimes.length != times.length");
+		this.times = times;
+		this.primaryTimes = primaryTimes;
+	}
+
+	@Override
+	public int size() {
+		return times.length;
+	}
+
+	public long getTime(int index) {
+		return times[index];
+	}
+
+	public long getPrimaryTime(int index) {
+		return primaryTimes != null ? primaryTimes[index] : NOPRIMARYTIME;
+	}
+
+	@Override
+	public ArdenValue setTime(long newPrimaryTime) {
+		if (newPrimaryTime == NOPRIMARYTIME)
+			return new TimeList(times, null);
+		long[] newTimes = new long[times.length];
+		Arrays.fill(newTimes, newPrimaryTime);
+		return new TimeList(times, newTimes);
+	}
+
+	@Override
+	public ArdenValue[] getElements() {
+		ArdenValue[] result = elements;
+		if (result == null) {
+			result = new ArdenValue[times.length];
+			for (int i = 0; i < result.length; i++)
+				result[i] = new ArdenTime(times[i], getPrimaryTime(i));
+			elements = result;
+		}
+		return result;
+	}
+}
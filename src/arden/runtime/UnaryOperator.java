@@ -80,6 +80,17 @@ public abstract class UnaryOperator {
 	};
 
 	public static final UnaryOperator TIME = new UnaryOperator("TIME") {
+		@Override
+		protected ArdenValue runList(ArdenList list) {
+			// the primary times of a NumberList can be shared with the result
+			if (list instanceof NumberList) {
+				long[] primaryTimes = ((NumberList) list).getPrimaryTimes();
+				if (primaryTimes != null && !containsNoPrimaryTime(primaryTimes))
+					return new TimeList(primaryTimes, primaryTimes);
+			}
+			return null;
+		}
+
 		@Override
 		public ArdenValue runElement(ArdenValue val) {
 			if(val instanceof ArdenObject) {
@@ -281,13 +292,32 @@ public abstract class UnaryOperator {
 		this.name = name;
 	}
 
+	/**
+	 * Runs the operator on a whole list. Returns null if the list needs to be
+	 * processed element by element.
+	 */
+	protected ArdenValue runList(ArdenList list) {
+		return null;
+	}
+
+	private static boolean containsNoPrimaryTime(long[] primaryTimes) {
+		for (long time : primaryTimes) {
+			if (time == ArdenValue.NOPRIMARYTIME)
+				return true;
+		}
+		return false;
+	}
+
 	/** Implements the list logic for running the operator. */
 	public final ArdenValue run(ArdenValue val) {
 		if (val instanceof ArdenList) {
-			ArdenList inputList = (ArdenList) val;
-			ArdenValue[] results = new ArdenValue[inputList.values.length];
+			ArdenValue result = runList((ArdenList) val);
+			if (result != null)
+				return result;
+			ArdenValue[] inputs = val.getElements();
+			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < results.length; i++) {
-				results[i] = runElement(inputList.values[i]);
+				results[i] = runElement(inputs[i]);
 			}
 			return new ArdenList(results);
 		} else {
@@ -43,13 +43,20 @@ public final class AfterTrigger implements Trigger {
 	}
 
 	@Override
-	public void scheduleEvent(ArdenEvent event) {
-		target.scheduleEvent(event);
+	public boolean scheduleEvent(ArdenEvent event) {
+		boolean changed = target.scheduleEvent(event);
 		if (target.runOnEvent(event)) {
 			// trigger in 'duration' after eventtime
 			long triggerTime = new ArdenTime(event.eventTime).add(duration);
 			additionalSchedules.add(new ArdenTime(triggerTime));
+			changed = true;
 		}
+		return changed;
+	}
+
+	@Override
+	public ArdenEvent[] getEvents() {
+		return target.getEvents();
 	}
 
 	@Override
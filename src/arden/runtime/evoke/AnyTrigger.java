@@ -1,5 +1,6 @@
 package arden.runtime.evoke;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -42,10 +43,24 @@ public final class AnyTrigger implements Trigger {
 	}
 
 	@Override
-	public void scheduleEvent(ArdenEvent event) {
+	public boolean scheduleEvent(ArdenEvent event) {
+		boolean changed = false;
 		for (Trigger trigger : triggers) {
-			trigger.scheduleEvent(event);
+			// schedule for all triggers, even if one has already changed
+			if (trigger.scheduleEvent(event)) {
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public ArdenEvent[] getEvents() {
+		List<ArdenEvent> events = new ArrayList<>();
+		for (Trigger trigger : triggers) {
+			events.addAll(Arrays.asList(trigger.getEvents()));
 		}
+		return events.toArray(new ArdenEvent[events.size()]);
 	}
 
 	public ArdenEvent getTriggeringEvent() {
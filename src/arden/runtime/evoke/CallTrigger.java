@@ -36,8 +36,13 @@ public final class CallTrigger implements Trigger {
 	}
 
 	@Override
-	public void scheduleEvent(ArdenEvent event) {
+	public boolean scheduleEvent(ArdenEvent event) {
+		return false;
+	}
 
+	@Override
+	public ArdenEvent[] getEvents() {
+		return new ArdenEvent[0];
 	}
 
 	@Override
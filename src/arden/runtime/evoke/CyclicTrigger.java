@@ -67,8 +67,8 @@ public final class CyclicTrigger implements Trigger {
 	}
 
 	@Override
-	public void scheduleEvent(ArdenEvent event) {
-		starting.scheduleEvent(event);
+	public boolean scheduleEvent(ArdenEvent event) {
+		boolean changed = starting.scheduleEvent(event);
 		if (starting.runOnEvent(event)) {
 			ArdenEvent startEvent = starting.getTriggeringEvent();
 
@@ -76,7 +76,14 @@ public final class CyclicTrigger implements Trigger {
 			ArdenTime end = new ArdenTime(startTime.add(length));
 			ScheduledCycle cycle = new ScheduledCycle(startTime, end);
 			scheduledCycles.add(cycle);
+			changed = true;
 		}
+		return changed;
+	}
+
+	@Override
+	public ArdenEvent[] getEvents() {
+		return starting.getEvents();
 	}
 
 	public ArdenEvent getTriggeringEvent() {
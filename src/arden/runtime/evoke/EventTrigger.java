@@ -25,9 +25,16 @@ public final class EventTrigger implements Trigger {
 	}
 
 	@Override
-	public void scheduleEvent(ArdenEvent event) {
+	public boolean scheduleEvent(ArdenEvent event) {
 		// saves primarytime and eventtime
 		triggeringEvent = this.event.equals(event) ? event : null;
+		// the event runs the MLM directly, but does not schedule it
+		return false;
+	}
+
+	@Override
+	public ArdenEvent[] getEvents() {
+		return new ArdenEvent[] { event };
 	}
 
 	@Override
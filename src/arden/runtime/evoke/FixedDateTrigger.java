@@ -27,8 +27,13 @@ public final class FixedDateTrigger implements Trigger {
 	}
 
 	@Override
-	public void scheduleEvent(ArdenEvent event) {
+	public boolean scheduleEvent(ArdenEvent event) {
+		return false;
+	}
 
+	@Override
+	public ArdenEvent[] getEvents() {
+		return new ArdenEvent[0];
 	}
 
 	public ArdenEvent getTriggeringEvent() {
@@ -63,8 +63,27 @@ public interface Trigger {
 	 * 
 	 * @param event
 	 *            The event for which the trigger may create a schedule.
+	 * @return Whether {@link #getNextRunTime()} may return a different time
+	 *         than before the event was scheduled. The evoke engine only asks
+	 *         triggers for their next run time if it may have changed.
 	 */
-	public void scheduleEvent(ArdenEvent event);
+	public boolean scheduleEvent(ArdenEvent event);
+
+	/**
+	 * The events, which this trigger depends on. For all other events
+	 * {@link #runOnEvent(ArdenEvent)} returns false and
+	 * {@link #scheduleEvent(ArdenEvent)} does not create a schedule, so the
+	 * evoke engine can skip the trigger.
+	 * 
+	 * <p>
+	 * E.g. the trigger <code>10 SECONDS AFTER TIME OF an_event</code> returns
+	 * <code>an_event</code>.
+	 * </p>
+	 * 
+	 * @return The events, or an empty array if the trigger does not depend on
+	 *         any events.
+	 */
+	public ArdenEvent[] getEvents();
 
 	/**
 	 * @return The event that caused the trigger to be triggered, or null if no
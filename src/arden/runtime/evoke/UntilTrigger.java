@@ -27,8 +27,13 @@ public final class UntilTrigger implements Trigger {
 	}
 
 	@Override
-	public void scheduleEvent(ArdenEvent event) {
-		cycle.scheduleEvent(event);
+	public boolean scheduleEvent(ArdenEvent event) {
+		return cycle.scheduleEvent(event);
+	}
+
+	@Override
+	public ArdenEvent[] getEvents() {
+		return cycle.getEvents();
 	}
 
 	public ArdenEvent getTriggeringEvent() {
@@ -0,0 +1,449 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime.jdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A thread-safe pool of JDBC connections to one database URL. Each query
+ * borrows a connection with {@link #acquire()} and gives it back with
+ * {@link #release(Connection)}, so MLMs which run at the same time don't share
+ * a connection.
+ * </p>
+ * <p>
+ * At most <code>maxSize</code> connections are open at once. Connections are
+ * opened when they are needed. Idle connections are reused most recently used
+ * first and closed when they have not been used for the idle timeout. Before
+ * an idle connection is handed out it is checked with the validation query.
+ * </p>
+ * <p>
+ * Each connection may have a cache of prepared statements, see
+ * {@link #getStatementCache(Connection)}.
+ * </p>
+ * <p>
+ * The pool counts the borrowed connections and measures how long
+ * {@link #acquire()} has waited. See {@link #getStatistics()}.
+ * </p>
+ */
+public class ConnectionPool {
+	private final String url;
+	private final int maxSize;
+	private final String validationQuery;
+	private final long idleTimeoutNanos;
+	private final long acquireTimeoutNanos;
+	private final int statementCacheSize;
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private final Condition available = lock.newCondition();
+	// most recently used first
+	private final ArrayDeque<IdleConnection> idle = new ArrayDeque<>();
+	// the statement caches of the open connections
+	private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<>();
+	private int active = 0;
+	private int opening = 0;
+	private boolean closed = false;
+
+	private long acquired = 0;
+	private long created = 0;
+	private long evicted = 0;
+	private long invalid = 0;
+	private long timeouts = 0;
+	private long waitNanos = 0;
+	private long maxWaitNanos = 0;
+
+	private static final class IdleConnection {
+		final Connection connection;
+		final long releasedNanos;
+
+		IdleConnection(Connection connection, long releasedNanos) {
+			this.connection = connection;
+			this.releasedNanos = releasedNanos;
+		}
+	}
+
+	/**
+	 * @param url
+	 *            the JDBC URL, which is passed to
+	 *            {@link DriverManager#getConnection(String)}
+	 * @param maxSize
+	 *            the maximum number of open connections
+	 * @param validationQuery
+	 *            the SQL statement, which checks an idle connection before it
+	 *            is reused, or null to only check whether it is closed
+	 * @param idleTimeoutMillis
+	 *            the time after which unused connections are closed, 0 to
+	 *            keep them open
+	 * @param acquireTimeoutMillis
+	 *            how long {@link #acquire()} waits for a connection, 0 to wait
+	 *            without limit
+	 */
+	public ConnectionPool(String url, int maxSize, String validationQuery, long idleTimeoutMillis,
+			long acquireTimeoutMillis) {
+		this(url, maxSize, validationQuery, idleTimeoutMillis, acquireTimeoutMillis, 0);
+	}
+
+	/**
+	 * @param statementCacheSize
+	 *            the maximum number of prepared statements, which are kept
+	 *            open per connection, 0 to not cache statements
+	 * @see #ConnectionPool(String, int, String, long, long)
+	 */
+	public ConnectionPool(String url, int maxSize, String validationQuery, long idleTimeoutMillis,
+			long acquireTimeoutMillis, int statementCacheSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("The pool must have a size of at least one connection");
+		}
+		if (idleTimeoutMillis < 0 || acquireTimeoutMillis < 0) {
+			throw new IllegalArgumentException("Timeouts must not be negative");
+		}
+		if (statementCacheSize < 0) {
+			throw new IllegalArgumentException("The statement cache size must not be negative");
+		}
+		this.url = url;
+		this.maxSize = maxSize;
+		this.validationQuery = validationQuery;
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+		this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Borrows a connection. Waits until a connection is released if
+	 * <code>maxSize</code> connections are already borrowed.
+	 *
+	 * @throws SQLTimeoutException
+	 *             if no connection has become available within the acquire
+	 *             timeout
+	 * @throws SQLException
+	 *             if a new connection could not be opened, the pool has been
+	 *             closed or the thread has been interrupted while waiting
+	 */
+	public Connection acquire() throws SQLException {
+		long start = System.nanoTime();
+		while (true) {
+			Connection connection;
+			boolean open;
+			List<Connection> expired = null;
+			lock.lock();
+			try {
+				expired = evictExpired(System.nanoTime());
+				long remaining = acquireTimeoutNanos - (System.nanoTime() - start);
+				while (!closed && idle.isEmpty() && active + opening >= maxSize) {
+					if (acquireTimeoutNanos == 0) {
+						available.await();
+					} else if (remaining > 0) {
+						remaining = available.awaitNanos(remaining);
+					} else {
+						timeouts++;
+						throw new SQLTimeoutException("No connection available after "
+								+ TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos) + " ms");
+					}
+				}
+				if (closed) {
+					throw new SQLException("The connection pool has been closed");
+				}
+				open = idle.isEmpty();
+				if (open) {
+					connection = null;
+					opening++;
+				} else {
+					connection = idle.pollFirst().connection;
+					active++;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for a connection", e);
+			} finally {
+				lock.unlock();
+				closeAll(expired);
+			}
+
+			if (open) {
+				return open(start);
+			}
+			if (isValid(connection)) {
+				acquired(start);
+				return connection;
+			}
+			// discard the broken connection and try again
+			lock.lock();
+			try {
+				active--;
+				invalid++;
+				statementCaches.remove(connection);
+				available.signal();
+			} finally {
+				lock.unlock();
+			}
+			closeQuietly(connection);
+		}
+	}
+
+	private Connection open(long start) throws SQLException {
+		Connection connection = null;
+		try {
+			connection = DriverManager.getConnection(url);
+		} finally {
+			lock.lock();
+			try {
+				opening--;
+				if (connection != null) {
+					// count it as active before the lock is released, so no
+					// other thread opens a connection in its place
+					active++;
+					created++;
+				} else {
+					available.signal();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		acquired(start);
+		return connection;
+	}
+
+	private void acquired(long start) {
+		long waited = System.nanoTime() - start;
+		lock.lock();
+		try {
+			acquired++;
+			waitNanos += waited;
+			maxWaitNanos = Math.max(maxWaitNanos, waited);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean isValid(Connection connection) {
+		try {
+			if (connection.isClosed()) {
+				return false;
+			}
+			if (validationQuery != null) {
+				Statement stmt = connection.createStatement();
+				try {
+					stmt.execute(validationQuery);
+				} finally {
+					stmt.close();
+				}
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gives a connection, which has been borrowed with {@link #acquire()},
+	 * back to the pool. Closed connections and connections released after the
+	 * pool has been closed are not reused.
+	 */
+	public void release(Connection connection) {
+		boolean reuse;
+		try {
+			reuse = !connection.isClosed();
+		} catch (SQLException e) {
+			reuse = false;
+		}
+		List<Connection> expired;
+		lock.lock();
+		try {
+			active--;
+			reuse &= !closed;
+			long now = System.nanoTime();
+			if (reuse) {
+				idle.addFirst(new IdleConnection(connection, now));
+			} else {
+				statementCaches.remove(connection);
+			}
+			available.signal();
+			expired = evictExpired(now);
+		} finally {
+			lock.unlock();
+		}
+		if (!reuse) {
+			closeQuietly(connection);
+		}
+		closeAll(expired);
+	}
+
+	// must be called while holding the lock, the connections must be closed
+	// after releasing it
+	private List<Connection> evictExpired(long now) {
+		List<Connection> expired = null;
+		while (idleTimeoutNanos > 0 && !idle.isEmpty() && now - idle.peekLast().releasedNanos > idleTimeoutNanos) {
+			if (expired == null) {
+				expired = new ArrayList<>();
+			}
+			Connection connection = idle.pollLast().connection;
+			statementCaches.remove(connection);
+			expired.add(connection);
+			evicted++;
+		}
+		return expired;
+	}
+
+	/**
+	 * Gets the cache of prepared statements of a borrowed connection. Only the
+	 * thread, which has borrowed the connection, may use the cache, and only
+	 * until it releases the connection. The statements are closed together
+	 * with the connection.
+	 * 
+	 * @return the cache, or null if statements are not cached
+	 */
+	StatementCache getStatementCache(Connection connection) {
+		if (statementCacheSize == 0) {
+			return null;
+		}
+		lock.lock();
+		try {
+			StatementCache cache = statementCaches.get(connection);
+			if (cache == null) {
+				cache = new StatementCache(connection, statementCacheSize);
+				statementCaches.put(connection, cache);
+			}
+			return cache;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the idle connections. Borrowed connections are closed when they
+	 * are released. Later calls to {@link #acquire()} fail.
+	 */
+	public void close() {
+		List<Connection> connections = new ArrayList<>();
+		lock.lock();
+		try {
+			closed = true;
+			for (IdleConnection connection : idle) {
+				connections.add(connection.connection);
+			}
+			idle.clear();
+			statementCaches.clear();
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		closeAll(connections);
+	}
+
+	private static void closeAll(List<Connection> connections) {
+		if (connections != null) {
+			for (Connection connection : connections) {
+				closeQuietly(connection);
+			}
+		}
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// the connection is discarded anyway
+		}
+	}
+
+	/** @return the current counters and waiting times of this pool */
+	public Statistics getStatistics() {
+		lock.lock();
+		try {
+			return new Statistics(this);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** A snapshot of the counters of a {@link ConnectionPool}. */
+	public static final class Statistics {
+		/** The number of borrowed connections. */
+		public final int active;
+		/** The number of open connections, which are not borrowed. */
+		public final int idle;
+		public final long acquired;
+		public final long created;
+		/** The number of connections closed because of the idle timeout. */
+		public final long evicted;
+		/** The number of connections closed because they failed validation. */
+		public final long invalid;
+		public final long timeouts;
+		private final long waitNanos;
+		private final long maxWaitNanos;
+
+		private Statistics(ConnectionPool pool) {
+			active = pool.active;
+			idle = pool.idle.size();
+			acquired = pool.acquired;
+			created = pool.created;
+			evicted = pool.evicted;
+			invalid = pool.invalid;
+			timeouts = pool.timeouts;
+			waitNanos = pool.waitNanos;
+			maxWaitNanos = pool.maxWaitNanos;
+		}
+
+		/** @return the average time {@link ConnectionPool#acquire()} has taken */
+		public double getAverageWaitMillis() {
+			return acquired == 0 ? 0 : waitNanos / (double) acquired / 1000000;
+		}
+
+		/** @return the longest time {@link ConnectionPool#acquire()} has taken */
+		public double getMaxWaitMillis() {
+			return maxWaitNanos / 1000000.0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("active: %d, idle: %d, acquired: %d, created: %d, evicted: %d, invalid: %d, "
+					+ "timeouts: %d, waited avg %.1f ms max %.1f ms", active, idle, acquired, created, evicted,
+					invalid, timeouts, getAverageWaitMillis(), getMaxWaitMillis());
+		}
+	}
+}
@@ -27,10 +27,10 @@
 
 package arden.runtime.jdbc;
 
-import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
 
 import arden.CommandLineOptions;
 import arden.runtime.ArdenString;
@@ -40,7 +40,9 @@ import arden.runtime.MedicalLogicModule;
 import arden.runtime.StdIOExecutionContext;
 
 public class JDBCExecutionContext extends StdIOExecutionContext {
-	private Connection connection = null;	
+	private ConnectionPool pool = null;
+	private String timeColumn = null;
+	private int fetchSize;
 	
 	public void loadDatabaseDriver(String className) {
 		try {
@@ -69,14 +71,23 @@ public class JDBCExecutionContext extends StdIOExecutionContext {
 		if (options.isDbdriver()) {
 			loadDatabaseDriver(options.getDbdriver());
 		}
+		if (options.isDbtimecolumn()) {
+			timeColumn = options.getDbtimecolumn();
+		}
+		fetchSize = options.getDbfetchsize();
 		
 		// handle environment option
 		if (options.getEnvironment() != null) {
 			String environment = options.getEnvironment();			
+			pool = new ConnectionPool(environment, options.getDbpoolsize(),
+					options.isDbvalidation() ? options.getDbvalidation() : null,
+					TimeUnit.SECONDS.toMillis(options.getDbidletimeout()),
+					TimeUnit.SECONDS.toMillis(options.getDbtimeout()), options.getDbstatementcache());
+			// open the first connection now, so a wrong URL is reported early
 			try {
-				connection = DriverManager.getConnection(environment);
+				pool.release(pool.acquire());
 			} catch (SQLException e) {
-				e.printStackTrace();				
+				e.printStackTrace();
 			}
 		} else {
 			throw new RuntimeException("No JDBC URL given. Can't connect.");
@@ -89,7 +100,9 @@ public class JDBCExecutionContext extends StdIOExecutionContext {
 		if (destString != null && ("database".equalsIgnoreCase(destString) || "query".equalsIgnoreCase(destString))) {
 			String msgString = ArdenString.getStringFromValue(message);
 			// execute query:
-			new JDBCQuery(msgString, connection).execute();
+			JDBCQuery query = new JDBCQuery(msgString, pool);
+			query.setCacheStatement(false);
+			query.execute();
 		} else {
 			super.write(message, destination, urgency);
 		}
@@ -97,7 +110,20 @@ public class JDBCExecutionContext extends StdIOExecutionContext {
 	
 	@Override
 	public DatabaseQuery createQuery(MedicalLogicModule mlm, String mapping) {
-		return new JDBCQuery(mapping, connection);
-	}	
+		return createQuery(mlm, mapping, new String[0], new ArdenValue[0]);
+	}
+
+	@Override
+	public DatabaseQuery createQuery(MedicalLogicModule mlm, String mapping, String[] parameterNames,
+			ArdenValue[] parameters) {
+		JDBCQuery query = new JDBCQuery(mapping, pool, timeColumn, parameterNames, parameters);
+		query.setFetchSize(fetchSize);
+		return query;
+	}
+
+	/** @return the pool, from which queries borrow their connections */
+	public ConnectionPool getConnectionPool() {
+		return pool;
+	}
 	
 }
@@ -28,13 +28,21 @@
 package arden.runtime.jdbc;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
 import arden.runtime.ArdenBoolean;
 import arden.runtime.ArdenList;
@@ -44,16 +52,370 @@ import arden.runtime.ArdenString;
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.DatabaseQuery;
+import arden.runtime.MappingParameter;
+import arden.runtime.MemoryQuery;
 
+/**
+ * A query, which runs the mapping as SQL statement.
+ * 
+ * Parameters of the mapping are bound to the placeholders of a prepared
+ * statement. Mappings with several statements or DDL statements can't be
+ * prepared with parameters, they are run as plain statements.
+ * 
+ * If the mapping is a single <code>SELECT</code> statement, time constraints
+ * (<code>WHERE it OCCURRED ...</code>) and aggregations are evaluated by the
+ * database where possible. The SQL statement of the mapping becomes a subquery
+ * of a statement, which adds the constraints and aggregations. Otherwise they
+ * are applied to the results in memory.
+ * 
+ * Time constraints and the selection of the earliest or latest rows require
+ * the name of the column with the time of each row. If the results of the
+ * mapping have this column, they are sorted by time, and the time of each row
+ * becomes the primary time of its values. If the database rejects a rewritten
+ * statement, the constraint or aggregation is applied in memory as well.
+ */
 public class JDBCQuery extends DatabaseQuery {
+	private static final String[] NO_PARAMETER_NAMES = new String[0];
+	// whole numbers up to this value are exactly representable as doubles
+	private static final double MAX_EXACT_LONG = 1L << 53;
+	// a single SELECT statement, which may be used as a subquery
+	private static final Pattern SELECT_STATEMENT = Pattern.compile("select\\s[^;]*", Pattern.CASE_INSENSITIVE);
+	// statements, which can't have parameters and are not worth caching
+	private static final Pattern DDL_STATEMENT = Pattern.compile(
+			"(create|drop|alter|truncate|rename|comment|grant|revoke)\\b.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	/** A constraint on the time column and its equivalent in memory. */
+	private enum TimeConstraint {
+		WITHIN_TO("$time between ? and ?") {
+			@Override
+			DatabaseQuery inMemory(DatabaseQuery query, ArdenTime[] times) {
+				return query.occursWithinTo(times[0], times[1]);
+			}
+		},
+		NOT_WITHIN_TO("not ($time between ? and ?)") {
+			@Override
+			DatabaseQuery inMemory(DatabaseQuery query, ArdenTime[] times) {
+				return query.occursNotWithinTo(times[0], times[1]);
+			}
+		},
+		BEFORE("$time < ?") {
+			@Override
+			DatabaseQuery inMemory(DatabaseQuery query, ArdenTime[] times) {
+				return query.occursBefore(times[0]);
+			}
+		},
+		NOT_BEFORE("$time >= ?") {
+			@Override
+			DatabaseQuery inMemory(DatabaseQuery query, ArdenTime[] times) {
+				return query.occursNotBefore(times[0]);
+			}
+		},
+		AFTER("$time > ?") {
+			@Override
+			DatabaseQuery inMemory(DatabaseQuery query, ArdenTime[] times) {
+				return query.occursAfter(times[0]);
+			}
+		},
+		NOT_AFTER("$time <= ?") {
+			@Override
+			DatabaseQuery inMemory(DatabaseQuery query, ArdenTime[] times) {
+				return query.occursNotAfter(times[0]);
+			}
+		},
+		AT("$time = ?") {
+			@Override
+			DatabaseQuery inMemory(DatabaseQuery query, ArdenTime[] times) {
+				return query.occursAt(times[0]);
+			}
+		},
+		NOT_AT("$time <> ?") {
+			@Override
+			DatabaseQuery inMemory(DatabaseQuery query, ArdenTime[] times) {
+				return query.occursNotAt(times[0]);
+			}
+		};
+
+		final String condition;
+
+		private TimeConstraint(String condition) {
+			this.condition = condition;
+		}
+
+		abstract DatabaseQuery inMemory(DatabaseQuery query, ArdenTime[] times);
+	}
+
 	private Connection connection;
+	private ConnectionPool pool;
 	private String mapping;
+	private String[] parameterNames = NO_PARAMETER_NAMES;
+	private ArdenValue[] parameters = ArdenList.EMPTY.getElements();
+	private String timeColumn;
+	private int fetchSize;
+	private boolean cacheStatement = true;
+	// SQL conditions on the time column, which is $time until the name of the
+	// column in the results is known, and the values for their placeholders
+	private List<String> conditions = Collections.emptyList();
+	private List<ArdenValue> conditionValues = Collections.emptyList();
+	private SqlAggregation aggregation;
+	// the query, which has been constrained or aggregated to get this one,
+	// and the last constraint, which are needed to evaluate it in memory
+	private JDBCQuery parent;
+	private TimeConstraint constraint;
+	private ArdenTime[] constraintTimes;
+	// the columns of the results of the mapping, once they have been described
+	private SqlAggregation.Columns columns;
 
 	public JDBCQuery(String mapping, Connection connection) {
 		this.mapping = mapping;
 		this.connection = connection;
 	}
 
+	/**
+	 * Creates a query, which borrows a connection from the pool each time it
+	 * is executed.
+	 */
+	public JDBCQuery(String mapping, ConnectionPool pool) {
+		this.mapping = mapping;
+		this.pool = pool;
+	}
+
+	/**
+	 * Creates a query with parameters. Each <code>:name</code> in the mapping,
+	 * which is one of the parameter names, is bound to the value of that
+	 * parameter.
+	 * 
+	 * @see MappingParameter
+	 */
+	public JDBCQuery(String mapping, ConnectionPool pool, String[] parameterNames, ArdenValue[] parameters) {
+		this(mapping, pool);
+		this.parameterNames = parameterNames;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Creates a query with parameters, which adds time constraints to the SQL
+	 * statement.
+	 * 
+	 * @param timeColumn
+	 *            the name of the column with the time of each row, or null if
+	 *            it is not known
+	 */
+	public JDBCQuery(String mapping, ConnectionPool pool, String timeColumn, String[] parameterNames,
+			ArdenValue[] parameters) {
+		this(mapping, pool, parameterNames, parameters);
+		this.timeColumn = timeColumn;
+	}
+
+	/** Creates a query, which constrains or aggregates the parent query. */
+	private JDBCQuery(JDBCQuery parent) {
+		this.connection = parent.connection;
+		this.pool = parent.pool;
+		this.mapping = parent.mapping;
+		this.parameterNames = parent.parameterNames;
+		this.parameters = parent.parameters;
+		this.timeColumn = parent.timeColumn;
+		this.fetchSize = parent.fetchSize;
+		this.cacheStatement = parent.cacheStatement;
+		this.conditions = parent.conditions;
+		this.conditionValues = parent.conditionValues;
+		this.columns = parent.columns;
+		this.parent = parent;
+	}
+
+	/**
+	 * Sets the number of rows, which the driver should fetch from the database
+	 * at once. The conversion of the results also expects this many rows.
+	 * 
+	 * @param fetchSize
+	 *            the number of rows, or 0 to use the default of the driver
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Sets whether the prepared statement is kept in the statement cache of
+	 * the connection. Statements, which are only run once, e.g. the messages
+	 * of <code>WRITE ... AT "database"</code>, should not replace the
+	 * statements of the mappings in the cache.
+	 */
+	public void setCacheStatement(boolean cacheStatement) {
+		this.cacheStatement = cacheStatement;
+	}
+
+	/** @return whether the SQL statement can be used as a subquery */
+	private boolean canRewrite() {
+		return aggregation == null && SELECT_STATEMENT.matcher(mapping.trim()).matches();
+	}
+
+	private DatabaseQuery constrainTime(TimeConstraint constraint, ArdenTime... times) {
+		JDBCQuery query = new JDBCQuery(this);
+		query.conditions = new ArrayList<String>(conditions);
+		query.conditions.add(constraint.condition);
+		query.conditionValues = new ArrayList<ArdenValue>(conditionValues);
+		query.conditionValues.addAll(Arrays.asList(times));
+		query.constraint = constraint;
+		query.constraintTimes = times;
+		return query;
+	}
+
+	private DatabaseQuery aggregate(SqlAggregation aggregation) {
+		JDBCQuery query = new JDBCQuery(this);
+		query.aggregation = aggregation;
+		return query;
+	}
+
+	@Override
+	public DatabaseQuery occursWithinTo(ArdenTime start, ArdenTime end) {
+		if (timeColumn == null || !canRewrite()) {
+			return super.occursWithinTo(start, end);
+		}
+		// like IS WITHIN ... TO, this does not depend on the order of the times
+		return constrainTime(TimeConstraint.WITHIN_TO, earlier(start, end), later(start, end));
+	}
+
+	@Override
+	public DatabaseQuery occursNotWithinTo(ArdenTime start, ArdenTime end) {
+		if (timeColumn == null || !canRewrite()) {
+			return super.occursNotWithinTo(start, end);
+		}
+		return constrainTime(TimeConstraint.NOT_WITHIN_TO, earlier(start, end), later(start, end));
+	}
+
+	private static ArdenTime earlier(ArdenTime a, ArdenTime b) {
+		return a.value <= b.value ? a : b;
+	}
+
+	private static ArdenTime later(ArdenTime a, ArdenTime b) {
+		return a.value <= b.value ? b : a;
+	}
+
+	@Override
+	public DatabaseQuery occursBefore(ArdenTime time) {
+		if (timeColumn == null || !canRewrite()) {
+			return super.occursBefore(time);
+		}
+		return constrainTime(TimeConstraint.BEFORE, time);
+	}
+
+	@Override
+	public DatabaseQuery occursNotBefore(ArdenTime time) {
+		if (timeColumn == null || !canRewrite()) {
+			return super.occursNotBefore(time);
+		}
+		return constrainTime(TimeConstraint.NOT_BEFORE, time);
+	}
+
+	@Override
+	public DatabaseQuery occursAfter(ArdenTime time) {
+		if (timeColumn == null || !canRewrite()) {
+			return super.occursAfter(time);
+		}
+		return constrainTime(TimeConstraint.AFTER, time);
+	}
+
+	@Override
+	public DatabaseQuery occursNotAfter(ArdenTime time) {
+		if (timeColumn == null || !canRewrite()) {
+			return super.occursNotAfter(time);
+		}
+		return constrainTime(TimeConstraint.NOT_AFTER, time);
+	}
+
+	@Override
+	public DatabaseQuery occursAt(ArdenTime time) {
+		if (timeColumn == null || !canRewrite()) {
+			return super.occursAt(time);
+		}
+		return constrainTime(TimeConstraint.AT, time);
+	}
+
+	@Override
+	public DatabaseQuery occursNotAt(ArdenTime time) {
+		if (timeColumn == null || !canRewrite()) {
+			return super.occursNotAt(time);
+		}
+		return constrainTime(TimeConstraint.NOT_AT, time);
+	}
+
+	@Override
+	public DatabaseQuery count() {
+		return canRewrite() ? aggregate(SqlAggregation.COUNT) : super.count();
+	}
+
+	@Override
+	public DatabaseQuery exist() {
+		return canRewrite() ? aggregate(SqlAggregation.EXIST) : super.exist();
+	}
+
+	@Override
+	public DatabaseQuery sum() {
+		return canRewrite() ? aggregate(SqlAggregation.SUM) : super.sum();
+	}
+
+	@Override
+	public DatabaseQuery average() {
+		return canRewrite() ? aggregate(SqlAggregation.AVERAGE) : super.average();
+	}
+
+	/** @return whether the earliest or latest rows can be selected in SQL */
+	private boolean canSelectRows(int numberOfElements) {
+		// a maximum of 0 rows would mean no limit
+		return timeColumn != null && canRewrite() && numberOfElements > 0;
+	}
+
+	@Override
+	public DatabaseQuery first() {
+		return canSelectRows(1) ? aggregate(SqlAggregation.selectRows(false, false, 1, true)) : super.first();
+	}
+
+	@Override
+	public DatabaseQuery first(int numberOfElements) {
+		if (!canSelectRows(numberOfElements)) {
+			return super.first(numberOfElements);
+		}
+		return aggregate(SqlAggregation.selectRows(false, false, numberOfElements, false));
+	}
+
+	@Override
+	public DatabaseQuery last() {
+		return canSelectRows(1) ? aggregate(SqlAggregation.selectRows(true, false, 1, true)) : super.last();
+	}
+
+	@Override
+	public DatabaseQuery last(int numberOfElements) {
+		if (!canSelectRows(numberOfElements)) {
+			return super.last(numberOfElements);
+		}
+		return aggregate(SqlAggregation.selectRows(true, false, numberOfElements, false));
+	}
+
+	@Override
+	public DatabaseQuery earliest() {
+		return canSelectRows(1) ? aggregate(SqlAggregation.selectRows(false, true, 1, true)) : super.earliest();
+	}
+
+	@Override
+	public DatabaseQuery earliest(int numberOfElements) {
+		if (!canSelectRows(numberOfElements)) {
+			return super.earliest(numberOfElements);
+		}
+		return aggregate(SqlAggregation.selectRows(false, true, numberOfElements, false));
+	}
+
+	@Override
+	public DatabaseQuery latest() {
+		return canSelectRows(1) ? aggregate(SqlAggregation.selectRows(true, true, 1, true)) : super.latest();
+	}
+
+	@Override
+	public DatabaseQuery latest(int numberOfElements) {
+		if (!canSelectRows(numberOfElements)) {
+			return super.latest(numberOfElements);
+		}
+		return aggregate(SqlAggregation.selectRows(true, true, numberOfElements, false));
+	}
+
 	public static ArdenValue objectToArdenValue(Object o) {
 		if (o == null) {
 			return ArdenNull.INSTANCE;
@@ -73,49 +435,296 @@ public class JDBCQuery extends DatabaseQuery {
 		}
 	}
 
+	/** Converts the results to one list per column. */
 	public static ArdenValue[] resultSetToArdenValues(ResultSet results) throws SQLException {
-		int columnCount = results.getMetaData().getColumnCount();
+		return ResultSetConverter.convert(results, null, 0);
+	}
 
-		List<List<ArdenValue>> resultTable = new ArrayList<List<ArdenValue>>(columnCount);
-		for (int column = 0; column < columnCount; column++) {
-			resultTable.add(new LinkedList<ArdenValue>());
+	/**
+	 * Replaces the parameters in the mapping with JDBC placeholders.
+	 * 
+	 * @param bound
+	 *            receives the values for the placeholders in their order
+	 * @return the SQL statement
+	 */
+	public static String bindParameters(String mapping, String[] parameterNames, ArdenValue[] parameters,
+			List<ArdenValue> bound) {
+		if (parameterNames.length == 0) {
+			return mapping;
 		}
+		StringBuilder sql = new StringBuilder(mapping.length());
+		int copied = 0;
+		for (MappingParameter parameter : MappingParameter.find(mapping)) {
+			String name = parameter.name.toLowerCase(Locale.ENGLISH);
+			for (int i = 0; i < parameterNames.length; i++) {
+				if (parameterNames[i].equals(name)) {
+					sql.append(mapping, copied, parameter.start).append('?');
+					copied = parameter.end;
+					bound.add(parameters[i]);
+					break;
+				}
+			}
+		}
+		sql.append(mapping, copied, mapping.length());
+		return sql.toString();
+	}
 
-		while (results.next()) {
-			for (int column = 0; column < columnCount; column++) {
-				Object o = results.getObject(column + 1);
-				resultTable.get(column).add(objectToArdenValue(o));
+	/**
+	 * @return whether the mapping is a single statement, which can be run as a
+	 *         prepared statement with parameters
+	 */
+	static boolean isParameterizable(String mapping) {
+		String sql = mapping.trim();
+		if (DDL_STATEMENT.matcher(sql).matches()) {
+			return false;
+		}
+		// look for a semicolon outside of quotes, which is followed by
+		// another statement
+		char quote = 0;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == ';' && sql.substring(i + 1).trim().length() > 0) {
+				return false;
 			}
 		}
+		return true;
+	}
 
-		List<ArdenList> ardenResult = new LinkedList<ArdenList>();
-		for (int column = 0; column < columnCount; column++) {
-			// convert every column to ArdenList
-			ArdenValue[] values = resultTable.get(column).toArray(new ArdenValue[0]);
-			ardenResult.add(new ArdenList(values));
+	private static void setParameter(PreparedStatement stmt, int index, ArdenValue value) throws SQLException {
+		if (value instanceof ArdenNumber) {
+			double number = ((ArdenNumber) value).value;
+			// bind whole numbers as integers, so they match integer columns
+			if (number == Math.rint(number) && Math.abs(number) <= MAX_EXACT_LONG) {
+				stmt.setLong(index, (long) number);
+			} else {
+				stmt.setDouble(index, number);
+			}
+		} else if (value instanceof ArdenString) {
+			stmt.setString(index, ((ArdenString) value).value);
+		} else if (value instanceof ArdenBoolean) {
+			stmt.setBoolean(index, ((ArdenBoolean) value).value);
+		} else if (value instanceof ArdenTime) {
+			stmt.setTimestamp(index, new Timestamp(((ArdenTime) value).value));
+		} else if (value instanceof ArdenNull) {
+			stmt.setNull(index, Types.NULL);
+		} else {
+			stmt.setString(index, value.toString());
 		}
-		return ardenResult.toArray(new ArdenList[0]);
 	}
 
+	/** Converts the results of the SQL statement. */
+	ArdenValue[] convert(ResultSet results) throws SQLException {
+		return ResultSetConverter.convert(results, timeColumn, fetchSize);
+	}
+
+	private interface ResultReader {
+		ArdenValue[] read(ResultSet results) throws SQLException;
+	}
+
+	private final ResultReader converter = new ResultReader() {
+		@Override
+		public ArdenValue[] read(ResultSet results) throws SQLException {
+			return convert(results);
+		}
+	};
+
 	@Override
 	public ArdenValue[] execute() {
 		try {
-			Statement stmt = connection.createStatement();
-
-			boolean resultSetAvailable = stmt.execute(mapping);
-			if (resultSetAvailable) {
-				return resultSetToArdenValues(stmt.getResultSet());
+			ArdenValue[] result = executeSql();
+			if (result != null) {
+				return result;
 			}
 		} catch (SQLException e) {
-			System.out.println("SQL Exception");
-			while (e != null) {
-				System.out.println("    State:   " + e.getSQLState());
-				System.out.println("    Message: " + e.getMessage());
-				System.out.println("    Error:   " + e.getErrorCode());
-				e = e.getNextException();
+			if (parent == null) {
+				printException(e);
+				return ArdenList.EMPTY.getElements();
+			}
+			// the database doesn't support the rewritten statement, e.g. an
+			// ORDER BY in a subquery, so it is evaluated in memory instead
+		}
+		// evaluate the last constraint or aggregation in memory, the parent
+		// query may still be evaluated by the database
+		DatabaseQuery results = new MemoryQuery(parent.execute());
+		if (aggregation != null) {
+			return aggregation.inMemory(results).execute();
+		}
+		return constraint.inMemory(results, constraintTimes).execute();
+	}
+
+	private static void printException(SQLException e) {
+		System.out.println("SQL Exception");
+		while (e != null) {
+			System.out.println("    State:   " + e.getSQLState());
+			System.out.println("    Message: " + e.getMessage());
+			System.out.println("    Error:   " + e.getErrorCode());
+			e = e.getNextException();
+		}
+	}
+
+	/**
+	 * Runs the query as one SQL statement. The mapping is only rewritten if
+	 * there are constraints or an aggregation, the results of a plain mapping
+	 * are sorted by time while they are converted.
+	 * 
+	 * @return the results, or null if the constraints or the aggregation can't
+	 *         be expressed in SQL for the columns of the mapping
+	 */
+	private ArdenValue[] executeSql() throws SQLException {
+		List<ArdenValue> bound = new ArrayList<ArdenValue>(parameters.length + conditionValues.size());
+		// several statements or DDL are run as written, like before parameters
+		// were supported
+		boolean parameterizable = isParameterizable(mapping);
+		String sql = parameterizable ? bindParameters(mapping, parameterNames, parameters, bound) : mapping;
+		Connection connection = pool != null ? pool.acquire() : this.connection;
+		try {
+			StatementCache cache = pool != null && cacheStatement ? pool.getStatementCache(connection) : null;
+			if (conditions.isEmpty() && aggregation == null) {
+				if (!parameterizable || (cache == null && bound.isEmpty())) {
+					return runStatement(connection, sql, fetchSize, converter);
+				}
+				return run(connection, cache, sql, bound, fetchSize, 0, converter);
+			}
+			final SqlAggregation.Columns columns = describe(connection, cache, sql);
+			if (columns == null) {
+				return null;
+			}
+			if (!conditions.isEmpty()) {
+				if (columns.time < 0) {
+					return null;
+				}
+				String time = columns.getQuotedName(columns.time);
+				StringBuilder constrained = new StringBuilder("select * from (").append(sql).append(") arden_query");
+				for (int i = 0; i < conditions.size(); i++) {
+					constrained.append(i == 0 ? " where " : " and ").append(conditions.get(i).replace("$time", time));
+				}
+				sql = constrained.toString();
+				bound.addAll(conditionValues);
+			}
+			if (aggregation == null) {
+				return run(connection, cache, sql, bound, fetchSize, 0, converter);
+			}
+			sql = aggregation.toSql(sql, columns);
+			if (sql == null) {
+				return null;
+			}
+			return run(connection, cache, sql, bound, fetchSize, aggregation.getMaxRows(), new ResultReader() {
+				@Override
+				public ArdenValue[] read(ResultSet results) throws SQLException {
+					return aggregation.read(results, columns, JDBCQuery.this);
+				}
+			});
+		} finally {
+			if (pool != null) {
+				pool.release(connection);
+			}
+		}
+	}
+
+	private static ArdenValue[] run(Connection connection, StatementCache cache, String sql, List<ArdenValue> bound,
+			int fetchSize, int maxRows, ResultReader reader) throws SQLException {
+		PreparedStatement stmt = cache != null ? cache.prepare(sql) : connection.prepareStatement(sql);
+		boolean failed = true;
+		try {
+			for (int i = 0; i < bound.size(); i++) {
+				setParameter(stmt, i + 1, bound.get(i));
+			}
+			if (fetchSize > 0) {
+				stmt.setFetchSize(fetchSize);
+			}
+			// cached statements may have been limited before
+			stmt.setMaxRows(maxRows);
+			ArdenValue[] result = ArdenList.EMPTY.getElements();
+			if (stmt.execute()) {
+				ResultSet results = stmt.getResultSet();
+				try {
+					result = reader.read(results);
+				} finally {
+					results.close();
+				}
+			}
+			failed = false;
+			return result;
+		} finally {
+			if (cache == null) {
+				stmt.close();
+			} else if (failed) {
+				cache.remove(sql);
+			} else {
+				stmt.clearParameters();
+			}
+		}
+	}
+
+	/** Runs SQL without parameters as a plain statement. */
+	private static ArdenValue[] runStatement(Connection connection, String sql, int fetchSize, ResultReader reader)
+			throws SQLException {
+		Statement stmt = connection.createStatement();
+		try {
+			if (fetchSize > 0) {
+				stmt.setFetchSize(fetchSize);
+			}
+			// the results of the first statement, which returns rows
+			boolean isResultSet = stmt.execute(sql);
+			while (isResultSet || stmt.getUpdateCount() != -1) {
+				if (isResultSet) {
+					ResultSet results = stmt.getResultSet();
+					try {
+						return reader.read(results);
+					} finally {
+						results.close();
+					}
+				}
+				isResultSet = stmt.getMoreResults();
+			}
+			return ArdenList.EMPTY.getElements();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/** @return the columns of the results of the SQL statement, or null if unknown */
+	private SqlAggregation.Columns describe(Connection connection, StatementCache cache, String sql)
+			throws SQLException {
+		SqlAggregation.Columns columns = this.columns;
+		if (columns == null && cache != null) {
+			columns = cache.getColumns(sql);
+		}
+		if (columns == null) {
+			// some drivers can't describe statements, which have been executed
+			// before, so a new one is prepared
+			PreparedStatement stmt = connection.prepareStatement(sql);
+			try {
+				ResultSetMetaData metaData = stmt.getMetaData();
+				if (metaData == null) {
+					return null;
+				}
+				String[] names = new String[metaData.getColumnCount()];
+				int[] types = new int[names.length];
+				for (int i = 0; i < names.length; i++) {
+					names[i] = metaData.getColumnLabel(i + 1);
+					types[i] = metaData.getColumnType(i + 1);
+				}
+				String quote = connection.getMetaData().getIdentifierQuoteString();
+				// a space means that identifiers can't be quoted
+				columns = new SqlAggregation.Columns(names, types, quote == null ? "" : quote.trim());
+			} catch (SQLFeatureNotSupportedException e) {
+				return null;
+			} finally {
+				stmt.close();
+			}
+			if (cache != null) {
+				cache.putColumns(sql, columns);
 			}
 		}
-		return ArdenList.EMPTY.values;
+		this.columns = columns;
+		return columns.withTime(timeColumn);
 	}
 
 }
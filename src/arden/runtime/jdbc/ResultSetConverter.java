@@ -0,0 +1,474 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+import arden.runtime.ArdenBoolean;
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNull;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.NumberList;
+import arden.runtime.TimeList;
+
+/**
+ * Converts the rows of a result set to one list per column. Each column is
+ * read into an array for its SQL type, which grows with the number of rows. Columns of numbers or times without null values become
+ * {@link NumberList}s or {@link TimeList}s, which don't box their elements.
+ * 
+ * If the results have the time column, its values become the primary times of
+ * the other values in the same row, and the time column itself is not
+ * returned as a list unless it is the only column. The rows are then sorted
+ * by time, rows without a time come first.
+ */
+final class ResultSetConverter {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private ResultSetConverter() {
+	}
+
+	static boolean isNumeric(int sqlType) {
+		switch (sqlType) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.REAL:
+		case Types.FLOAT:
+		case Types.DOUBLE:
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param timeColumn
+	 *            the name of the column with the time of each row, or null
+	 * @param fetchSize
+	 *            the expected number of rows, or 0 if not known
+	 */
+	static ArdenValue[] convert(ResultSet results, String timeColumn, int fetchSize) throws SQLException {
+		ResultSetMetaData metaData = results.getMetaData();
+		int columnCount = metaData.getColumnCount();
+		int time = -1;
+		for (int i = 0; i < columnCount && timeColumn != null && columnCount > 1; i++) {
+			if (metaData.getColumnLabel(i + 1).equalsIgnoreCase(timeColumn)) {
+				time = i;
+				break;
+			}
+		}
+
+		int capacity = fetchSize > 0 ? fetchSize : DEFAULT_CAPACITY;
+		Column[] columns = new Column[time >= 0 ? columnCount - 1 : columnCount];
+		int[] indexes = new int[columns.length];
+		for (int i = 0, column = 0; column < columnCount; column++) {
+			if (column != time) {
+				columns[i] = createColumn(metaData.getColumnType(column + 1), capacity);
+				indexes[i++] = column + 1;
+			}
+		}
+		long[] primaryTimes = time >= 0 ? new long[capacity] : null;
+
+		int rows = 0;
+		while (results.next()) {
+			if (rows == capacity) {
+				capacity *= 2;
+				for (Column column : columns) {
+					column.grow(capacity);
+				}
+				if (primaryTimes != null) {
+					primaryTimes = Arrays.copyOf(primaryTimes, capacity);
+				}
+			}
+			long primaryTime = ArdenValue.NOPRIMARYTIME;
+			if (primaryTimes != null) {
+				Timestamp timestamp = results.getTimestamp(time + 1);
+				if (timestamp != null) {
+					primaryTime = timestamp.getTime();
+				}
+				primaryTimes[rows] = primaryTime;
+			}
+			for (int i = 0; i < columns.length; i++) {
+				columns[i].read(results, indexes[i], rows, primaryTime);
+			}
+			rows++;
+		}
+
+		if (primaryTimes != null) {
+			int[] order = sortByTime(primaryTimes, rows);
+			if (order != null) {
+				long[] sorted = new long[rows];
+				for (int i = 0; i < rows; i++) {
+					sorted[i] = primaryTimes[order[i]];
+				}
+				primaryTimes = sorted;
+				for (Column column : columns) {
+					column.reorder(order);
+				}
+			} else if (primaryTimes.length != rows) {
+				primaryTimes = Arrays.copyOf(primaryTimes, rows);
+			}
+		}
+		ArdenValue[] lists = new ArdenValue[columns.length];
+		for (int i = 0; i < lists.length; i++) {
+			lists[i] = columns[i].toList(rows, primaryTimes);
+		}
+		return lists;
+	}
+
+	/**
+	 * @return the rows in the order of their times, or null if they are
+	 *         sorted already
+	 */
+	private static int[] sortByTime(final long[] primaryTimes, int rows) {
+		int row = 1;
+		while (row < rows && primaryTimes[row - 1] <= primaryTimes[row]) {
+			row++;
+		}
+		if (row >= rows) {
+			return null;
+		}
+		Integer[] rowsByTime = new Integer[rows];
+		for (int i = 0; i < rows; i++) {
+			rowsByTime[i] = i;
+		}
+		// the sort is stable, so rows with the same time keep their order
+		Arrays.sort(rowsByTime, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				long timeA = primaryTimes[a];
+				long timeB = primaryTimes[b];
+				return timeA < timeB ? -1 : (timeA == timeB ? 0 : 1);
+			}
+		});
+		int[] order = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			order[i] = rowsByTime[i];
+		}
+		return order;
+	}
+
+	private static Column createColumn(int sqlType, int capacity) {
+		if (isNumeric(sqlType)) {
+			return new NumberColumn(capacity);
+		}
+		switch (sqlType) {
+		case Types.DATE:
+		case Types.TIME:
+		case Types.TIMESTAMP:
+			return new TimeColumn(capacity);
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+			return new StringColumn(capacity);
+		case Types.BOOLEAN:
+		case Types.BIT:
+			return new BooleanColumn(capacity);
+		default:
+			return new ValueColumn(capacity);
+		}
+	}
+
+	/** The values of one column, which have been read so far. */
+	private static abstract class Column {
+		/** Reads the value of the current row. */
+		abstract void read(ResultSet results, int index, int row, long primaryTime) throws SQLException;
+
+		abstract void grow(int capacity);
+
+		/** Moves the value of the row order[i] to row i. */
+		abstract void reorder(int[] order);
+
+		/**
+		 * @param primaryTimes
+		 *            the primary time of each row, or null
+		 */
+		abstract ArdenList toList(int rows, long[] primaryTimes);
+	}
+
+	/**
+	 * A column stored in a primitive array. Some drivers, e.g. SQLite, let any
+	 * column hold values of any type, so values that don't match the declared
+	 * type are converted by {@link JDBCQuery#objectToArdenValue(Object)} and
+	 * kept separately.
+	 */
+	private static abstract class PrimitiveColumn extends Column {
+		// the values that don't match the column type, or null if there are none
+		private ArdenValue[] others;
+
+		final void setOther(int row, int capacity, Object value, long primaryTime) {
+			if (others == null) {
+				others = new ArdenValue[capacity];
+			}
+			others[row] = createValue(value, primaryTime);
+		}
+
+		final ArdenValue getOther(int row) {
+			return others != null ? others[row] : null;
+		}
+
+		void grow(int capacity) {
+			if (others != null) {
+				others = Arrays.copyOf(others, capacity);
+			}
+		}
+
+		void reorder(int[] order) {
+			if (others != null) {
+				ArdenValue[] sorted = new ArdenValue[order.length];
+				for (int i = 0; i < order.length; i++) {
+					sorted[i] = others[order[i]];
+				}
+				others = sorted;
+			}
+		}
+	}
+
+	private static final class NumberColumn extends PrimitiveColumn {
+		// null values are stored as NaN
+		private double[] numbers;
+		private boolean hasNulls;
+
+		NumberColumn(int capacity) {
+			numbers = new double[capacity];
+		}
+
+		@Override
+		void read(ResultSet results, int index, int row, long primaryTime) throws SQLException {
+			Object value = results.getObject(index);
+			double number = Double.NaN;
+			if (value instanceof Number) {
+				number = ((Number) value).doubleValue();
+			} else if (value != null) {
+				setOther(row, numbers.length, value, primaryTime);
+			}
+			if (Double.isNaN(number) || Double.isInfinite(number)) {
+				number = Double.NaN;
+				hasNulls = true;
+			}
+			numbers[row] = number;
+		}
+
+		@Override
+		void grow(int capacity) {
+			super.grow(capacity);
+			numbers = Arrays.copyOf(numbers, capacity);
+		}
+
+		@Override
+		void reorder(int[] order) {
+			super.reorder(order);
+			double[] sorted = new double[order.length];
+			for (int i = 0; i < order.length; i++) {
+				sorted[i] = numbers[order[i]];
+			}
+			numbers = sorted;
+		}
+
+		@Override
+		ArdenList toList(int rows, long[] primaryTimes) {
+			if (!hasNulls) {
+				return new NumberList(numbers.length == rows ? numbers : Arrays.copyOf(numbers, rows), primaryTimes);
+			}
+			ArdenValue[] values = new ArdenValue[rows];
+			for (int i = 0; i < rows; i++) {
+				values[i] = getOther(i);
+				if (values[i] == null) {
+					// NaN becomes null
+					values[i] = ArdenNumber.create(numbers[i], getPrimaryTime(primaryTimes, i));
+				}
+			}
+			return new ArdenList(values);
+		}
+	}
+
+	private static final class TimeColumn extends PrimitiveColumn {
+		private long[] times;
+		// the rows with null values, or null if there are none
+		private boolean[] nulls;
+
+		TimeColumn(int capacity) {
+			times = new long[capacity];
+		}
+
+		@Override
+		void read(ResultSet results, int index, int row, long primaryTime) throws SQLException {
+			Object value = results.getObject(index);
+			if (value instanceof Date) {
+				times[row] = ((Date) value).getTime();
+			} else if (value instanceof Number) {
+				// times stored as numbers, the driver knows how to convert them
+				times[row] = results.getTimestamp(index).getTime();
+			} else {
+				if (value != null) {
+					setOther(row, times.length, value, primaryTime);
+				}
+				if (nulls == null) {
+					nulls = new boolean[times.length];
+				}
+				nulls[row] = true;
+			}
+		}
+
+		@Override
+		void grow(int capacity) {
+			super.grow(capacity);
+			times = Arrays.copyOf(times, capacity);
+			if (nulls != null) {
+				nulls = Arrays.copyOf(nulls, capacity);
+			}
+		}
+
+		@Override
+		void reorder(int[] order) {
+			super.reorder(order);
+			long[] sortedTimes = new long[order.length];
+			boolean[] sortedNulls = nulls != null ? new boolean[order.length] : null;
+			for (int i = 0; i < order.length; i++) {
+				sortedTimes[i] = times[order[i]];
+				if (nulls != null) {
+					sortedNulls[i] = nulls[order[i]];
+				}
+			}
+			times = sortedTimes;
+			nulls = sortedNulls;
+		}
+
+		@Override
+		ArdenList toList(int rows, long[] primaryTimes) {
+			if (nulls == null) {
+				return new TimeList(times.length == rows ? times : Arrays.copyOf(times, rows), primaryTimes);
+			}
+			ArdenValue[] values = new ArdenValue[rows];
+			for (int i = 0; i < rows; i++) {
+				long primaryTime = getPrimaryTime(primaryTimes, i);
+				if (!nulls[i]) {
+					values[i] = new ArdenTime(times[i], primaryTime);
+				} else if (getOther(i) != null) {
+					values[i] = getOther(i);
+				} else {
+					values[i] = ArdenNull.create(primaryTime);
+				}
+			}
+			return new ArdenList(values);
+		}
+	}
+
+	/** Columns of other types, whose values are created while reading. */
+	private static class ValueColumn extends Column {
+		private ArdenValue[] values;
+
+		ValueColumn(int capacity) {
+			values = new ArdenValue[capacity];
+		}
+
+		@Override
+		final void read(ResultSet results, int index, int row, long primaryTime) throws SQLException {
+			values[row] = readValue(results.getObject(index), primaryTime);
+		}
+
+		ArdenValue readValue(Object value, long primaryTime) {
+			return createValue(value, primaryTime);
+		}
+
+		@Override
+		final void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		final void reorder(int[] order) {
+			ArdenValue[] sorted = new ArdenValue[order.length];
+			for (int i = 0; i < order.length; i++) {
+				sorted[i] = values[order[i]];
+			}
+			values = sorted;
+		}
+
+		@Override
+		final ArdenList toList(int rows, long[] primaryTimes) {
+			return new ArdenList(values.length == rows ? values : Arrays.copyOf(values, rows));
+		}
+	}
+
+	private static final class StringColumn extends ValueColumn {
+		StringColumn(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		ArdenValue readValue(Object value, long primaryTime) {
+			if (value instanceof String) {
+				return new ArdenString((String) value, primaryTime);
+			}
+			return createValue(value, primaryTime);
+		}
+	}
+
+	private static final class BooleanColumn extends ValueColumn {
+		BooleanColumn(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		ArdenValue readValue(Object value, long primaryTime) {
+			if (value instanceof Boolean) {
+				return ArdenBoolean.create((Boolean) value, primaryTime);
+			} else if (value instanceof Number) {
+				// drivers without a boolean type store 0 and 1
+				return ArdenBoolean.create(((Number) value).doubleValue() != 0, primaryTime);
+			}
+			return createValue(value, primaryTime);
+		}
+	}
+
+	private static ArdenValue createValue(Object value, long primaryTime) {
+		ArdenValue result = JDBCQuery.objectToArdenValue(value);
+		return primaryTime != ArdenValue.NOPRIMARYTIME ? result.setTime(primaryTime) : result;
+	}
+
+	private static long getPrimaryTime(long[] primaryTimes, int row) {
+		return primaryTimes != null ? primaryTimes[row] : ArdenValue.NOPRIMARYTIME;
+	}
+}
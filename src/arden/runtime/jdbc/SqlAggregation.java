@@ -0,0 +1,387 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.runtime.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import arden.runtime.ArdenBoolean;
+import arden.runtime.ArdenNull;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenValue;
+import arden.runtime.DatabaseQuery;
+
+/**
+ * An aggregation of a {@link JDBCQuery}, which is evaluated by the database.
+ * The SQL statement of the query is used as a subquery of the aggregating
+ * statement.
+ * 
+ * Like the aggregations of {@link DatabaseQuery}, each column is aggregated on
+ * its own. If the aggregation can't be expressed in SQL for the columns of the
+ * query, it is applied to the results in memory.
+ */
+abstract class SqlAggregation {
+	/** The columns of the query, which is aggregated. */
+	static final class Columns {
+		private final String[] names;
+		private final int[] types;
+		private final String quote;
+		/** The index of the time column, or -1. */
+		final int time;
+
+		Columns(String[] names, int[] types, String quote) {
+			this(names, types, quote, -1);
+		}
+
+		private Columns(String[] names, int[] types, String quote, int time) {
+			this.names = names;
+			this.types = types;
+			this.quote = quote;
+			this.time = time;
+		}
+
+		/** @return the same columns, of which the named one has the time of each row */
+		Columns withTime(String timeColumn) {
+			for (int i = 0; i < names.length && timeColumn != null; i++) {
+				if (names[i].equalsIgnoreCase(timeColumn)) {
+					return new Columns(names, types, quote, i);
+				}
+			}
+			return this;
+		}
+
+		int size() {
+			return names.length;
+		}
+
+		String getQuotedName(int column) {
+			return quote + names[column].replace(quote, quote + quote) + quote;
+		}
+
+		boolean isNumeric(int column) {
+			return ResultSetConverter.isNumeric(types[column]);
+		}
+
+		/**
+		 * @return whether the column has values of the query rather than the
+		 *         primary times of the other columns
+		 */
+		boolean isValue(int column) {
+			return column != time || names.length == 1;
+		}
+
+		/** @return the number of columns with values */
+		int getValueCount() {
+			return time >= 0 && names.length > 1 ? names.length - 1 : names.length;
+		}
+	}
+
+	/** @return whether the aggregation needs the column with the time of each row */
+	abstract boolean needsTime();
+
+	/**
+	 * @return the aggregating SQL statement, or null if the aggregation can't
+	 *         be expressed in SQL for these columns
+	 */
+	abstract String toSql(String query, Columns columns);
+
+	/** @return the maximum number of rows of the aggregating statement, or 0 */
+	int getMaxRows() {
+		return 0;
+	}
+
+	/**
+	 * Converts the results of the aggregating statement.
+	 * 
+	 * @param query
+	 *            the aggregated query, which converts rows of its results
+	 */
+	abstract ArdenValue[] read(ResultSet results, Columns columns, JDBCQuery query) throws SQLException;
+
+	/** Applies the aggregation to the results of the query in memory. */
+	abstract DatabaseQuery inMemory(DatabaseQuery results);
+
+	static final SqlAggregation COUNT = new SqlAggregation() {
+		@Override
+		boolean needsTime() {
+			return false;
+		}
+
+		@Override
+		String toSql(String query, Columns columns) {
+			return "select count(*) from (" + query + ") arden_query";
+		}
+
+		@Override
+		ArdenValue[] read(ResultSet results, Columns columns, JDBCQuery query) throws SQLException {
+			results.next();
+			ArdenValue count = new ArdenNumber(results.getLong(1));
+			ArdenValue[] values = new ArdenValue[columns.getValueCount()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = count;
+			}
+			return values;
+		}
+
+		@Override
+		DatabaseQuery inMemory(DatabaseQuery results) {
+			return results.count();
+		}
+	};
+
+	/**
+	 * Aggregations, which compute one value per column from aggregate
+	 * functions. The primary time of the results is the time of the rows if
+	 * all rows have the same time.
+	 */
+	private static abstract class FunctionAggregation extends SqlAggregation {
+		@Override
+		boolean needsTime() {
+			return false;
+		}
+
+		/** @return the aggregate functions of the column, or null */
+		abstract String getFunctions(String column, Columns columns, int index);
+
+		/** Converts the results of the functions of one column. */
+		abstract ArdenValue read(ResultSet results, int offset, long rows, long primaryTime) throws SQLException;
+
+		/** The number of the aggregate functions per column. */
+		abstract int getFunctionCount();
+
+		@Override
+		String toSql(String query, Columns columns) {
+			StringBuilder sql = new StringBuilder("select count(*)");
+			if (columns.time >= 0) {
+				String time = columns.getQuotedName(columns.time);
+				sql.append(", count(").append(time).append("), min(").append(time).append("), max(").append(time)
+						.append(")");
+			}
+			for (int i = 0; i < columns.size(); i++) {
+				if (!columns.isValue(i)) {
+					continue;
+				}
+				String functions = getFunctions(columns.getQuotedName(i), columns, i);
+				if (functions == null) {
+					return null;
+				}
+				sql.append(", ").append(functions);
+			}
+			return sql.append(" from (").append(query).append(") arden_query").toString();
+		}
+
+		@Override
+		ArdenValue[] read(ResultSet results, Columns columns, JDBCQuery query) throws SQLException {
+			results.next();
+			long rows = results.getLong(1);
+			int offset = 2;
+			long primaryTime = ArdenValue.NOPRIMARYTIME;
+			if (columns.time >= 0) {
+				long timedRows = results.getLong(2);
+				Timestamp earliest = results.getTimestamp(3);
+				Timestamp latest = results.getTimestamp(4);
+				if (rows > 0 && timedRows == rows && earliest != null && earliest.equals(latest)) {
+					primaryTime = earliest.getTime();
+				}
+				offset = 5;
+			}
+			ArdenValue[] values = new ArdenValue[columns.getValueCount()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = read(results, offset, rows, primaryTime);
+				offset += getFunctionCount();
+			}
+			return values;
+		}
+	}
+
+	static final SqlAggregation EXIST = new FunctionAggregation() {
+		@Override
+		String getFunctions(String column, Columns columns, int index) {
+			return "count(" + column + ")";
+		}
+
+		@Override
+		int getFunctionCount() {
+			return 1;
+		}
+
+		@Override
+		ArdenValue read(ResultSet results, int offset, long rows, long primaryTime) throws SQLException {
+			return ArdenBoolean.create(results.getLong(offset) > 0, primaryTime);
+		}
+
+		@Override
+		DatabaseQuery inMemory(DatabaseQuery results) {
+			return results.exist();
+		}
+	};
+
+	/** SUM and AVERAGE, which are computed from the sum of numeric columns. */
+	private static abstract class SumAggregation extends FunctionAggregation {
+		@Override
+		String getFunctions(String column, Columns columns, int index) {
+			if (!columns.isNumeric(index)) {
+				return null;
+			}
+			return "sum(" + column + "), count(" + column + ")";
+		}
+
+		@Override
+		int getFunctionCount() {
+			return 2;
+		}
+
+		@Override
+		ArdenValue read(ResultSet results, int offset, long rows, long primaryTime) throws SQLException {
+			double sum = results.getDouble(offset);
+			long numbers = results.getLong(offset + 1);
+			if (numbers < rows) {
+				// like in Arden, a null value makes the result null
+				return ArdenNull.INSTANCE;
+			}
+			return read(sum, rows, primaryTime);
+		}
+
+		abstract ArdenValue read(double sum, long rows, long primaryTime);
+	}
+
+	static final SqlAggregation SUM = new SumAggregation() {
+		@Override
+		ArdenValue read(double sum, long rows, long primaryTime) {
+			return rows == 0 ? ArdenNumber.ZERO : ArdenNumber.create(sum, primaryTime);
+		}
+
+		@Override
+		DatabaseQuery inMemory(DatabaseQuery results) {
+			return results.sum();
+		}
+	};
+
+	static final SqlAggregation AVERAGE = new SumAggregation() {
+		@Override
+		ArdenValue read(double sum, long rows, long primaryTime) {
+			return rows == 0 ? ArdenNull.INSTANCE : ArdenNumber.create(sum / rows, primaryTime);
+		}
+
+		@Override
+		DatabaseQuery inMemory(DatabaseQuery results) {
+			return results.average();
+		}
+	};
+
+	/**
+	 * FIRST, LAST, EARLIEST and LATEST, which select the earliest or latest
+	 * rows by the time column. The results of the query are sorted by this
+	 * column, so FIRST and EARLIEST as well as LAST and LATEST select the same
+	 * rows.
+	 * 
+	 * The number of rows is limited by the statement instead of the SQL, since
+	 * the syntax for this differs between databases. The converted rows are
+	 * sorted by time again.
+	 */
+	private static final class RowAggregation extends SqlAggregation {
+		private final boolean latest;
+		// whether the operator was EARLIEST or LATEST rather than FIRST or LAST
+		private final boolean byTime;
+		private final int numberOfElements;
+		// whether one element instead of a list is returned per column
+		private final boolean single;
+
+		RowAggregation(boolean latest, boolean byTime, int numberOfElements, boolean single) {
+			this.latest = latest;
+			this.byTime = byTime;
+			this.numberOfElements = numberOfElements;
+			this.single = single;
+		}
+
+		@Override
+		boolean needsTime() {
+			return true;
+		}
+
+		@Override
+		String toSql(String query, Columns columns) {
+			if (columns.time < 0) {
+				return null;
+			}
+			String time = columns.getQuotedName(columns.time);
+			return "select * from (" + query + ") arden_query order by " + time + (latest ? " desc" : "");
+		}
+
+		@Override
+		int getMaxRows() {
+			return numberOfElements;
+		}
+
+		@Override
+		ArdenValue[] read(ResultSet results, Columns columns, JDBCQuery query) throws SQLException {
+			ArdenValue[] lists = query.convert(results);
+			if (!single) {
+				return lists;
+			}
+			ArdenValue[] values = new ArdenValue[lists.length];
+			for (int i = 0; i < values.length; i++) {
+				ArdenValue[] elements = lists[i].getElements();
+				values[i] = elements.length == 0 ? ArdenNull.INSTANCE : elements[0];
+			}
+			return values;
+		}
+
+		@Override
+		DatabaseQuery inMemory(DatabaseQuery results) {
+			if (byTime) {
+				if (single) {
+					return latest ? results.latest() : results.earliest();
+				}
+				return latest ? results.latest(numberOfElements) : results.earliest(numberOfElements);
+			}
+			if (single) {
+				return latest ? results.last() : results.first();
+			}
+			return latest ? results.last(numberOfElements) : results.first(numberOfElements);
+		}
+	}
+
+	/**
+	 * Selects the earliest or latest rows.
+	 * 
+	 * @param latest
+	 *            whether the latest rows are selected, otherwise the earliest
+	 * @param byTime
+	 *            whether the operator is EARLIEST or LATEST rather than FIRST
+	 *            or LAST, which matters only if the aggregation is applied in
+	 *            memory
+	 * @param single
+	 *            whether only one element instead of a list is returned per
+	 *            column
+	 */
+	static SqlAggregation selectRows(boolean latest, boolean byTime, int numberOfElements, boolean single) {
+		return new RowAggregation(latest, byTime, numberOfElements, single);
+	}
+}
@@ -0,0 +1,105 @@
+package arden.tests.benchmark;
+
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenValue;
+import arden.runtime.evoke.CallTrigger;
+import arden.runtime.evoke.Trigger;
+import arden.tests.implementation.ImplementationTest;
+import arden.tests.implementation.TestContext;
+
+/**
+ * Measures the bytes allocated per run of the example MLMs and of a loop of
+ * arithmetic, compiled with and without optimizations (see
+ * {@link Compiler#disableOptimizations()}).
+ * <p>
+ * Run with: <code>java arden.tests.benchmark.AllocationBenchmark [runs]</code>
+ * </p>
+ */
+public class AllocationBenchmark {
+	private static final String[] EXAMPLES = { "x3.1.mlm", "x3.2.mlm", "x3.3.mlm", "x3.4.mlm", "x3.5.mlm",
+			"x3.6.mlm", "x3.7.mlm", "x3.8.mlm" };
+
+	private static final String ARITHMETIC = "maintenance: title: Arithmetic;; mlmname: arithmetic;;"
+			+ " arden: Version 2.5;; version: 1.00;; institution: test;; author: test;; specialist: ;;"
+			+ " date: 2015-01-01;; validation: testing;;"
+			+ " library: purpose: ;; explanation: ;; keywords: ;; citations: ;;"
+			+ " knowledge: type: data-driven;; data: weight := 70; height := 1.75;; evoke: ;;"
+			+ " logic: i := 0; total := 0;"
+			+ " while i < 100 do"
+			+ "   i := i + 1; total := total + weight / (height * height) * i - (i - 1) / 2;"
+			+ " enddo;"
+			+ " conclude total > 1000;; action: return total;; end:";
+
+	private static final Trigger TRIGGER = new CallTrigger();
+
+	public static void main(String[] args) throws Exception {
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+
+		System.out.println(String.format("%-12s %14s %14s %8s", "MLM", "boxed B/run", "unboxed B/run", "change"));
+		for (String name : EXAMPLES) {
+			print(name, measure(threads, compileExample(name, false), name, runs),
+					measure(threads, compileExample(name, true), name, runs));
+		}
+		print("arithmetic", measure(threads, compileArithmetic(false), "arithmetic", runs),
+				measure(threads, compileArithmetic(true), "arithmetic", runs));
+	}
+
+	private static CompiledMlm compileExample(String name, boolean optimize) throws Exception {
+		Compiler compiler = new Compiler();
+		if (!optimize) {
+			compiler.disableOptimizations();
+		}
+		return compiler.compileMlm(new InputStreamReader(ImplementationTest.class.getResourceAsStream(name)));
+	}
+
+	private static CompiledMlm compileArithmetic(boolean optimize) throws Exception {
+		Compiler compiler = new Compiler();
+		if (!optimize) {
+			compiler.disableOptimizations();
+		}
+		return compiler.compileMlm(new StringReader(ARITHMETIC));
+	}
+
+	private static ArdenValue[] getArguments(String name) {
+		if (!name.equals("x3.8.mlm")) {
+			return null;
+		}
+		ArdenValue[] arguments = new ArdenValue[4];
+		for (int i = 0; i < arguments.length; i++) {
+			arguments[i] = new ArdenList(new ArdenValue[] { new ArdenString("a1"), new ArdenString("a2"),
+					new ArdenString("a3") });
+		}
+		return arguments;
+	}
+
+	/** @return the average number of bytes allocated per run */
+	private static long measure(com.sun.management.ThreadMXBean threads, CompiledMlm mlm, String name, int runs)
+			throws Exception {
+		ArdenValue[] arguments = getArguments(name);
+		// warm up, so the JIT compiler has optimized the MLM
+		for (int i = 0; i < runs; i++) {
+			mlm.run(new TestContext(), arguments, TRIGGER);
+		}
+
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < runs; i++) {
+			mlm.run(new TestContext(), arguments, TRIGGER);
+		}
+		return (threads.getThreadAllocatedBytes(thread) - before) / runs;
+	}
+
+	private static void print(String name, long boxed, long unboxed) {
+		System.out.println(String.format("%-12s %,14d %,14d %7.1f%%", name, boxed, unboxed, 100.0 * (unboxed - boxed)
+				/ boxed));
+	}
+}
@@ -0,0 +1,116 @@
+package arden.tests.benchmark;
+
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.MedicalLogicModuleImplementation;
+import arden.runtime.evoke.CallTrigger;
+import arden.runtime.evoke.Trigger;
+
+/**
+ * Measures the throughput of {@link CompiledMlm#run} for a small MLM, compared
+ * to the previous way of creating instances (a synchronized reflective
+ * constructor lookup on every run), with one and with several threads.
+ * <p>
+ * Run with: <code>java arden.tests.benchmark.CompiledMlmBenchmark [seconds]</code>
+ * </p>
+ */
+public class CompiledMlmBenchmark {
+	private static final String MLM = "maintenance: title: Benchmark;; mlmname: benchmark;; arden: Version 2.5;;"
+			+ " version: 1.00;; institution: test;; author: test;; specialist: ;; date: 2015-01-01;;"
+			+ " validation: testing;;"
+			+ " library: purpose: ;; explanation: ;; keywords: ;; citations: ;;"
+			+ " knowledge: type: data-driven;; data: x := 1; y := 2;; evoke: ;;"
+			+ " logic: z := x + y; conclude z > 2;; action: return z;; end:";
+
+	private static final ExecutionContext CONTEXT = new ExecutionContext() {
+	};
+
+	private interface Runner {
+		void run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final long seconds = args.length > 0 ? Long.parseLong(args[0]) : 3;
+		final CompiledMlm mlm = new Compiler().compileMlm(new StringReader(MLM));
+		final Class<? extends MedicalLogicModuleImplementation> clazz = mlm.createInstance(CONTEXT, null, null)
+				.getClass();
+		final Object lock = new Object();
+		final Trigger trigger = new CallTrigger();
+
+		Runner reflection = new Runner() {
+			@Override
+			public void run() throws Exception {
+				Constructor<? extends MedicalLogicModuleImplementation> ctor;
+				synchronized (lock) {
+					ctor = clazz.getConstructor(ExecutionContext.class, MedicalLogicModule.class,
+							ArdenValue[].class, Trigger.class);
+				}
+				MedicalLogicModuleImplementation instance = ctor.newInstance(CONTEXT, mlm, new ArdenValue[0],
+						trigger);
+				if (instance.logic(CONTEXT)) {
+					instance.action(CONTEXT);
+				}
+			}
+		};
+		Runner factory = new Runner() {
+			@Override
+			public void run() throws Exception {
+				mlm.run(CONTEXT, null, trigger);
+			}
+		};
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int round = 1; round <= 2; round++) {
+			System.out.println("Round " + round + ":");
+			for (int threads : new int[] { 1, Math.max(2, processors) }) {
+				print("reflective constructor", threads, measure(reflection, threads, seconds));
+				print("CompiledMlm.run", threads, measure(factory, threads, seconds));
+			}
+			System.out.println();
+		}
+	}
+
+	private static long measure(final Runner runner, int threads, long seconds) throws Exception {
+		final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Long>> results = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					long runs = 0;
+					while (System.nanoTime() < end) {
+						for (int j = 0; j < 1000; j++) {
+							runner.run();
+						}
+						runs += 1000;
+					}
+					return runs;
+				}
+			}));
+		}
+		long total = 0;
+		for (Future<Long> result : results) {
+			total += result.get();
+		}
+		executor.shutdown();
+		return total / seconds;
+	}
+
+	private static void print(String name, int threads, long runsPerSecond) {
+		System.out.println(String.format("  %-24s %2d thread(s): %,12d runs/s", name, threads, runsPerSecond));
+	}
+}
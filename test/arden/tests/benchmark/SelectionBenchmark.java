@@ -0,0 +1,94 @@
+// arden2bytecode
+// Copyright (c) 2010, Daniel Grunwald
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without modification, are
+// permitted provided that the following conditions are met:
+//
+// - Redistributions of source code must retain the above copyright notice, this list
+//   of conditions and the following disclaimer.
+//
+// - Redistributions in binary form must reproduce the above copyright notice, this list
+//   of conditions and the following disclaimer in the documentation and/or other materials
+//   provided with the distribution.
+//
+// - Neither the name of the owner nor the names of its contributors may be used to
+//   endorse or promote products derived from this software without specific prior written
+//   permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS &AS IS& AND ANY EXPRESS
+// OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+// AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+// CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+// DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+// IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+// OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package arden.tests.benchmark;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExpressionHelpers;
+
+/**
+ * Measures <code>MEDIAN</code> and <code>MINIMUM 10 FROM</code> (via
+ * {@link ExpressionHelpers#indexMinimum(ArdenValue, int)}) for lists of 1,000
+ * to 1,000,000 numbers and compares them with sorting a copy of the list,
+ * which is what both operators used to do.
+ * <p>
+ * Run with: <code>java -Xmx1g arden.tests.benchmark.SelectionBenchmark [rounds]</code>
+ * </p>
+ */
+public class SelectionBenchmark {
+	private static final Comparator<ArdenValue> DATA_AND_TIME = new Comparator<ArdenValue>() {
+		@Override
+		public int compare(ArdenValue o1, ArdenValue o2) {
+			int r = o1.compareTo(o2);
+			if (r != 0)
+				return r;
+			return Long.valueOf(o1.primaryTime).compareTo(o2.primaryTime);
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		Random random = new Random(42);
+		for (int round = 1; round <= rounds; round++) {
+			System.out.println("Round " + round + ":");
+			System.out.println(String.format("  %9s %12s %12s %12s", "elements", "sort", "median", "minimum 10"));
+			for (int size = 1000; size <= 1000000; size *= 10) {
+				ArdenValue[] values = new ArdenValue[size];
+				for (int i = 0; i < size; i++)
+					values[i] = ArdenNumber.create(random.nextInt(size), i * 1000L);
+				ArdenList list = new ArdenList(values);
+				int repetitions = Math.max(1, 1000000 / size);
+
+				long start = System.nanoTime();
+				for (int i = 0; i < repetitions; i++)
+					Arrays.sort(values.clone(), DATA_AND_TIME);
+				long sort = (System.nanoTime() - start) / repetitions;
+
+				start = System.nanoTime();
+				for (int i = 0; i < repetitions; i++)
+					ExpressionHelpers.median(list);
+				long median = (System.nanoTime() - start) / repetitions;
+
+				start = System.nanoTime();
+				for (int i = 0; i < repetitions; i++)
+					ExpressionHelpers.indexMinimum(list, 10);
+				long minimum = (System.nanoTime() - start) / repetitions;
+
+				System.out.println(String.format("  %9d %9d us %9d us %9d us", size,
+						TimeUnit.NANOSECONDS.toMicros(sort), TimeUnit.NANOSECONDS.toMicros(median),
+						TimeUnit.NANOSECONDS.toMicros(minimum)));
+			}
+		}
+	}
+}
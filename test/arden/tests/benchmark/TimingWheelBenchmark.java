@@ -0,0 +1,117 @@
+package arden.tests.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import arden.engine.Call;
+import arden.engine.TimingWheel;
+import arden.engine.TimingWheel.Timeout;
+
+/**
+ * Compares the {@link TimingWheel} with the previously used
+ * {@link ScheduledThreadPoolExecutor} (one Runnable per delayed call) for
+ * 1,000,000 pending <code>AFTER</code>/<code>EVERY</code> triggers with delays
+ * between one second and 30 days. Measures the time to schedule and cancel
+ * all calls and the heap used while they are pending.
+ * <p>
+ * Run with: <code>java -Xmx2g arden.tests.benchmark.TimingWheelBenchmark [calls]</code>
+ * </p>
+ */
+public class TimingWheelBenchmark {
+	private static final long MAX_DELAY = 30L * 24 * 60 * 60 * 1000;
+
+	private static final class NoopCall extends Call {
+		NoopCall(int priority) {
+			super(priority);
+		}
+
+		@Override
+		public void run() {
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Random random = new Random(42);
+		List<Call> calls = new ArrayList<>(count);
+		long[] delays = new long[count];
+		for (int i = 0; i < count; i++) {
+			calls.add(new NoopCall(random.nextInt(99) + 1));
+			delays[i] = 1000 + (long) (random.nextDouble() * MAX_DELAY);
+		}
+
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("Round " + round + ", " + count + " delayed calls:");
+			benchmarkExecutor(calls, delays);
+			benchmarkWheel(calls, delays);
+			System.out.println();
+		}
+	}
+
+	private static void benchmarkExecutor(List<Call> calls, long[] delays) {
+		final PriorityBlockingQueue<Call> queue = new PriorityBlockingQueue<>(11);
+		ScheduledThreadPoolExecutor delayer = new ScheduledThreadPoolExecutor(1);
+		delayer.setRemoveOnCancelPolicy(true);
+		List<ScheduledFuture<?>> futures = new ArrayList<>(calls.size());
+
+		long heapBefore = usedHeap();
+		long start = System.nanoTime();
+		for (int i = 0; i < calls.size(); i++) {
+			final Call call = calls.get(i);
+			futures.add(delayer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					queue.add(call);
+				}
+			}, delays[i], TimeUnit.MILLISECONDS));
+		}
+		long scheduled = System.nanoTime();
+		long heap = usedHeap() - heapBefore;
+		for (ScheduledFuture<?> future : futures) {
+			future.cancel(false);
+		}
+		long cancelled = System.nanoTime();
+		delayer.shutdownNow();
+
+		print("ScheduledExecutorService", scheduled - start, cancelled - scheduled, heap);
+	}
+
+	private static void benchmarkWheel(List<Call> calls, long[] delays) {
+		PriorityBlockingQueue<Call> queue = new PriorityBlockingQueue<>(11);
+		TimingWheel delayer = new TimingWheel(queue);
+		List<Timeout> timeouts = new ArrayList<>(calls.size());
+
+		long heapBefore = usedHeap();
+		long start = System.nanoTime();
+		for (int i = 0; i < calls.size(); i++) {
+			timeouts.add(delayer.schedule(calls.get(i), delays[i]));
+		}
+		long scheduled = System.nanoTime();
+		long heap = usedHeap() - heapBefore;
+		for (Timeout timeout : timeouts) {
+			timeout.cancel();
+		}
+		long cancelled = System.nanoTime();
+
+		print("TimingWheel", scheduled - start, cancelled - scheduled, heap);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void print(String name, long scheduleNanos, long cancelNanos, long heapBytes) {
+		System.out.println(String.format("  %-26s schedule: %6d ms, cancel: %6d ms, heap: %5d MB", name,
+				TimeUnit.NANOSECONDS.toMillis(scheduleNanos), TimeUnit.NANOSECONDS.toMillis(cancelNanos),
+				heapBytes / (1024 * 1024)));
+	}
+}
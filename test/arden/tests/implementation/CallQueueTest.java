@@ -0,0 +1,185 @@
+package arden.tests.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.engine.Call;
+import arden.engine.CallQueue;
+import arden.engine.CallQueue.OverloadHandler;
+import arden.engine.CallQueue.OverloadPolicy;
+import arden.engine.EventCall;
+import arden.runtime.ArdenEvent;
+import arden.runtime.MedicalLogicModule;
+
+public class CallQueueTest extends ImplementationTest {
+	private final List<Call> overloaded = new ArrayList<>();
+	private final OverloadHandler handler = new OverloadHandler() {
+		@Override
+		public void overloaded(Call call) {
+			overloaded.add(call);
+		}
+	};
+
+	private static class NamedCall extends Call {
+		private final String name;
+
+		NamedCall(String name, int priority) {
+			super(priority);
+			this.name = name;
+		}
+
+		@Override
+		public void run() {
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static List<Call> drain(CallQueue queue) {
+		List<Call> calls = new ArrayList<>();
+		Call call;
+		while ((call = queue.poll()) != null) {
+			calls.add(call);
+		}
+		return calls;
+	}
+
+	@Test
+	public void testOrderByPriorityThenInsertion() throws Exception {
+		CallQueue queue = new CallQueue();
+		Call a = new NamedCall("a", 50);
+		Call b = new NamedCall("b", 10);
+		Call c = new NamedCall("c", 50);
+		Call d = new NamedCall("d", 10);
+		queue.submit(a);
+		queue.submit(b);
+		queue.addAll(Arrays.asList(c, d));
+		Assert.assertEquals(Arrays.asList(b, d, a, c), drain(queue));
+	}
+
+	@Test
+	public void testDropLowest() throws Exception {
+		CallQueue queue = new CallQueue(2, OverloadPolicy.DROP_LOWEST, handler);
+		Call low = new NamedCall("low", 10);
+		Call high = new NamedCall("high", 80);
+		Call middle = new NamedCall("middle", 50);
+		Call higher = new NamedCall("higher", 90);
+		Call lowest = new NamedCall("lowest", 5);
+		Assert.assertTrue(queue.submit(low));
+		Assert.assertTrue(queue.submit(high));
+		Assert.assertTrue(queue.submit(middle));
+		Assert.assertTrue(queue.submit(higher));
+		Assert.assertFalse(queue.submit(lowest));
+
+		Assert.assertEquals(Arrays.asList(low, middle, lowest), overloaded);
+		Assert.assertEquals(Arrays.asList(high, higher), drain(queue));
+		Assert.assertEquals(3, queue.getMetrics().dropped);
+	}
+
+	@Test
+	public void testDropMlmCallsBeforeEvents() throws Exception {
+		CallQueue queue = new CallQueue(2, OverloadPolicy.DROP_LOWEST, handler);
+		List<MedicalLogicModule> mlms = new ArrayList<>();
+		TestContext context = new TestContext();
+		Call event = new EventCall(context, mlms, new ArdenEvent("admission", 1000), 10);
+		Call urgent = new NamedCall("urgent", 90);
+		Call other = new NamedCall("other", 50);
+		Call discharge = new EventCall(context, mlms, new ArdenEvent("discharge", 1000), 5);
+		Assert.assertTrue(queue.submit(event));
+		Assert.assertTrue(queue.submit(urgent));
+		// the event is kept, although its urgency is lower
+		Assert.assertFalse(queue.submit(other));
+		Assert.assertTrue(queue.submit(discharge));
+
+		Assert.assertEquals(Arrays.asList(other, urgent), overloaded);
+		Assert.assertEquals(2, queue.size());
+		Assert.assertFalse(queue.contains(urgent));
+	}
+
+	@Test
+	public void testReject() throws Exception {
+		CallQueue queue = new CallQueue(1, OverloadPolicy.REJECT, handler);
+		Call accepted = new NamedCall("accepted", 50);
+		Call rejected = new NamedCall("rejected", 10);
+		Assert.assertTrue(queue.submit(accepted));
+		Assert.assertFalse(queue.submit(rejected));
+
+		Assert.assertEquals(Arrays.asList(rejected), overloaded);
+		Assert.assertEquals(1, queue.getMetrics().rejected);
+
+		// calls from the engine itself are never rejected
+		Assert.assertTrue(queue.add(rejected));
+		Assert.assertEquals(2, queue.size());
+	}
+
+	@Test
+	public void testCoalesceDuplicateEvents() throws Exception {
+		CallQueue queue = new CallQueue(1, OverloadPolicy.COALESCE, handler);
+		List<MedicalLogicModule> mlms = new ArrayList<>();
+		TestContext context = new TestContext();
+		Call event = new EventCall(context, mlms, new ArdenEvent("admission", 1000), 50);
+		Call duplicate = new EventCall(context, mlms, new ArdenEvent("Admission", 1000), 50);
+		Assert.assertTrue(queue.submit(event));
+		Assert.assertFalse(queue.submit(duplicate));
+		Assert.assertEquals(1, queue.getMetrics().coalesced);
+		Assert.assertTrue(overloaded.isEmpty());
+		Assert.assertEquals(Arrays.asList(event), drain(queue));
+	}
+
+	@Test
+	public void testBlockUntilTaken() throws Exception {
+		final CallQueue queue = new CallQueue(1, OverloadPolicy.BLOCK, handler);
+		Call first = new NamedCall("first", 50);
+		final Call second = new NamedCall("second", 50);
+		queue.submit(first);
+
+		final CountDownLatch submitted = new CountDownLatch(1);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				queue.submit(second);
+				submitted.countDown();
+			}
+		};
+		producer.start();
+
+		Assert.assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+		Assert.assertSame(first, queue.take());
+		Assert.assertTrue(submitted.await(5, TimeUnit.SECONDS));
+		Assert.assertSame(second, queue.take());
+
+		CallQueue.Metrics metrics = queue.getMetrics();
+		Assert.assertEquals(0, metrics.depth);
+		Assert.assertEquals(2, metrics.enqueued);
+		Assert.assertEquals(2, metrics.dequeued);
+		Assert.assertEquals(2, metrics.getTakenCalls(1));
+		Assert.assertTrue(metrics.getMaxWaitMillis(1) >= 100);
+	}
+
+	@Test
+	public void testTrySubmitAllStopsWhenFull() throws Exception {
+		CallQueue queue = new CallQueue(2, OverloadPolicy.BLOCK, handler);
+		Call first = new NamedCall("first", 50);
+		Call second = new NamedCall("second", 50);
+		Call third = new NamedCall("third", 50);
+		Assert.assertEquals(2, queue.trySubmitAll(Arrays.asList(first, second, third)));
+		Assert.assertEquals(Arrays.asList(first, second), drain(queue));
+		Assert.assertEquals(1, queue.trySubmitAll(Arrays.asList(third)));
+		Assert.assertTrue(overloaded.isEmpty());
+
+		// other policies handle all calls
+		CallQueue rejecting = new CallQueue(1, OverloadPolicy.REJECT, handler);
+		Assert.assertEquals(3, rejecting.trySubmitAll(Arrays.asList(first, second, third)));
+		Assert.assertEquals(Arrays.asList(second, third), overloaded);
+		Assert.assertEquals(Arrays.asList(first), drain(rejecting));
+	}
+}
@@ -0,0 +1,252 @@
+package arden.tests.implementation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import arden.runtime.jdbc.ConnectionPool;
+
+public class ConnectionPoolTest extends ImplementationTest {
+	private static final String URL = "jdbc:pooltest:";
+
+	/** Opens connections, which only support closing and executing "ok". */
+	private static class FakeDriver implements Driver {
+		@Override
+		public Connection connect(String url, Properties info) throws SQLException {
+			if (!acceptsURL(url)) {
+				return null;
+			}
+			return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { Connection.class }, new FakeConnection());
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return url.startsWith(URL);
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+	}
+
+	private static class FakeConnection implements InvocationHandler {
+		boolean closed = false;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				closed = true;
+				return null;
+			case "isClosed":
+				return closed;
+			case "createStatement":
+				return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Statement.class },
+						new InvocationHandler() {
+							@Override
+							public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+								if (method.getName().equals("execute") && !"ok".equals(args[0])) {
+									throw new SQLException("Invalid statement");
+								}
+								return method.getReturnType() == boolean.class ? false : null;
+							}
+						});
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		}
+	}
+
+	@BeforeClass
+	public static void registerDriver() throws SQLException {
+		DriverManager.registerDriver(new FakeDriver());
+	}
+
+	@Test
+	public void testReusesReleasedConnection() throws Exception {
+		ConnectionPool pool = new ConnectionPool(URL, 2, null, 0, 0);
+		Connection first = pool.acquire();
+		pool.release(first);
+		Connection second = pool.acquire();
+		Assert.assertSame(first, second);
+		ConnectionPool.Statistics statistics = pool.getStatistics();
+		Assert.assertEquals(1, statistics.active);
+		Assert.assertEquals(0, statistics.idle);
+		Assert.assertEquals(2, statistics.acquired);
+		Assert.assertEquals(1, statistics.created);
+		pool.release(second);
+		Assert.assertEquals(1, pool.getStatistics().idle);
+	}
+
+	@Test
+	public void testAcquireTimesOut() throws Exception {
+		ConnectionPool pool = new ConnectionPool(URL, 1, null, 0, 50);
+		Connection connection = pool.acquire();
+		try {
+			pool.acquire();
+			Assert.fail("acquire() should time out");
+		} catch (SQLTimeoutException e) {
+			// expected
+		}
+		Assert.assertEquals(1, pool.getStatistics().timeouts);
+		pool.release(connection);
+		Assert.assertSame(connection, pool.acquire());
+	}
+
+	@Test
+	public void testAcquireWaitsForRelease() throws Exception {
+		final ConnectionPool pool = new ConnectionPool(URL, 1, null, 0, 10000);
+		final Connection connection = pool.acquire();
+		final CountDownLatch started = new CountDownLatch(1);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+				pool.release(connection);
+			}
+		};
+		thread.start();
+		started.await();
+		Assert.assertSame(connection, pool.acquire());
+		Assert.assertTrue(pool.getStatistics().getMaxWaitMillis() > 0);
+		thread.join();
+	}
+
+	@Test
+	public void testDiscardsInvalidConnections() throws Exception {
+		ConnectionPool pool = new ConnectionPool(URL, 2, "ok", 0, 0);
+		Connection closed = pool.acquire();
+		pool.release(pool.acquire());
+		pool.release(closed);
+		// closed is reused first, but fails validation once it is closed
+		closed.close();
+		Connection connection = pool.acquire();
+		Assert.assertNotSame(closed, connection);
+		Assert.assertFalse(connection.isClosed());
+		Assert.assertEquals(1, pool.getStatistics().invalid);
+
+		ConnectionPool failing = new ConnectionPool(URL, 1, "fail", 0, 0);
+		Connection first = failing.acquire();
+		failing.release(first);
+		Assert.assertNotSame(first, failing.acquire());
+		Assert.assertEquals(1, failing.getStatistics().invalid);
+	}
+
+	@Test
+	public void testEvictsIdleConnections() throws Exception {
+		ConnectionPool pool = new ConnectionPool(URL, 2, null, 20, 0);
+		Connection connection = pool.acquire();
+		pool.release(connection);
+		Thread.sleep(50);
+		Connection next = pool.acquire();
+		Assert.assertNotSame(connection, next);
+		Assert.assertTrue(connection.isClosed());
+		Assert.assertEquals(1, pool.getStatistics().evicted);
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		ConnectionPool pool = new ConnectionPool(URL, 2, null, 0, 0);
+		Connection idle = pool.acquire();
+		Connection borrowed = pool.acquire();
+		pool.release(idle);
+		pool.close();
+		Assert.assertTrue(idle.isClosed());
+		Assert.assertFalse(borrowed.isClosed());
+		pool.release(borrowed);
+		Assert.assertTrue(borrowed.isClosed());
+		try {
+			pool.acquire();
+			Assert.fail("acquire() should fail after close()");
+		} catch (SQLException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testConcurrentUseStaysWithinMaxSize() throws Exception {
+		final ConnectionPool pool = new ConnectionPool(URL, 3, null, 0, 10000);
+		final AtomicInteger borrowed = new AtomicInteger();
+		final AtomicInteger maxBorrowed = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 200; j++) {
+						try {
+							Connection connection = pool.acquire();
+							int current = borrowed.incrementAndGet();
+							int max;
+							while ((max = maxBorrowed.get()) < current && !maxBorrowed.compareAndSet(max, current)) {
+							}
+							borrowed.decrementAndGet();
+							pool.release(connection);
+						} catch (SQLException e) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join(TimeUnit.SECONDS.toMillis(10));
+		}
+		Assert.assertEquals(0, failures.get());
+		Assert.assertTrue(maxBorrowed.get() <= 3);
+		ConnectionPool.Statistics statistics = pool.getStatistics();
+		Assert.assertEquals(0, statistics.active);
+		Assert.assertEquals(1600, statistics.acquired);
+		Assert.assertTrue(statistics.created <= 3);
+	}
+}
@@ -0,0 +1,68 @@
+package arden.tests.implementation;
+
+import java.io.InputStream;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNull;
+import arden.runtime.ArdenValue;
+import arden.runtime.evoke.CallTrigger;
+
+public class ConstantFoldingTest extends ImplementationTest {
+	private static final String DATA = "x := 5;";
+	private static final String LOGIC = "results := (3 days * 24), (\"abc\" || \"def\"), ((1, 2, 3) + 1),"
+			+ " (1990-01-01T00:00:00 + 1 day), (1 day before 1990-01-01), (1 seqto 3), ((1 < 2) and not false),"
+			+ " (-5), (2 ** 10), (1 / 0), (x + 2 * 3), ((now + 1 day) - now), (time of (3 + 4));"
+			+ " conclude true;";
+	private static final String ACTION = "return results, (1, 2, 3);";
+
+	private static CompiledMlm compile(boolean optimize) throws Exception {
+		InputStream s = ConstantFoldingTest.class.getResourceAsStream("EvokeTemplate.mlm");
+		String fullCode = inputStreamToString(s)
+				.replace("$ACTION", ACTION)
+				.replace("$DATA", DATA)
+				.replace("$EVOKE", "")
+				.replace("$LOGIC", LOGIC);
+		Compiler c = new Compiler();
+		if (!optimize) {
+			c.disableOptimizations();
+		}
+		return c.compileMlm(new StringReader(fullCode));
+	}
+
+	private static ArdenValue[] run(CompiledMlm mlm) throws Exception {
+		ArdenValue[] result = mlm.run(new TestContext(), null, new CallTrigger());
+		Assert.assertEquals(2, result.length);
+		return result;
+	}
+
+	@Test
+	public void changedListDoesNotAffectLaterRuns() throws Exception {
+		CompiledMlm folded = compile(true);
+		ArdenList list = (ArdenList) run(folded)[1];
+		list.getElements()[0] = ArdenNull.INSTANCE;
+		Assert.assertEquals("(1,2,3)", run(folded)[1].toString());
+	}
+
+	@Test
+	public void sameResultsAsUnfoldedCode() throws Exception {
+		// lists are flattened
+		String expected = "(72 days,\"abcdef\",2,3,4,1990-01-02T00:00:00,1989-12-31T00:00:00,1,2,3,true,-5,1024,"
+				+ "null,11,1 day,null)";
+		Assert.assertEquals(expected, run(compile(false))[0].toString());
+		Assert.assertEquals(expected, run(compile(true))[0].toString());
+	}
+
+	@Test
+	public void constantListIsNotShared() throws Exception {
+		CompiledMlm folded = compile(true);
+		Assert.assertNotSame(run(folded)[1], run(folded)[1]);
+		CompiledMlm unfolded = compile(false);
+		Assert.assertNotSame(run(unfolded)[1], run(unfolded)[1]);
+	}
+}
@@ -0,0 +1,191 @@
+package arden.tests.implementation;
+
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.EventServer;
+import arden.engine.Call;
+import arden.engine.CallQueue;
+import arden.engine.CallQueue.OverloadPolicy;
+import arden.engine.EvokeEngine;
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenValue;
+import arden.runtime.MedicalLogicModule;
+
+public class EventServerTest extends ImplementationTest {
+	private Thread serverThread;
+
+	private static class EventContext extends TestContext {
+		final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+		final BlockingQueue<ArdenEvent> calledEvents = new LinkedBlockingQueue<>();
+		final BlockingQueue<Double> urgencies = new LinkedBlockingQueue<>();
+
+		@Override
+		public void call(ArdenEvent event, ArdenValue delay, double urgency) {
+			// add the event last, the test waits for it
+			urgencies.add(urgency);
+			events.add(event.name);
+			calledEvents.add(event);
+		}
+	}
+
+	private static int findFreePort() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		return port;
+	}
+
+	private static Socket connect(int port) throws Exception {
+		// wait for the server thread to bind the port
+		for (int i = 0; i < 50; i++) {
+			try {
+				return new Socket("127.0.0.1", port);
+			} catch (ConnectException e) {
+				Thread.sleep(20);
+			}
+		}
+		throw new AssertionError("Server did not start");
+	}
+
+	@After
+	public void stopServer() throws InterruptedException {
+		if (serverThread != null) {
+			serverThread.interrupt();
+			serverThread.join(1000);
+		}
+	}
+
+	@Test
+	public void testEventsFromSeveralConnections() throws Exception {
+		EventContext context = new EventContext();
+		int port = findFreePort();
+		serverThread = new Thread(new EventServer(context, false, port));
+		serverThread.start();
+
+		Socket first = connect(port);
+		Socket second = connect(port);
+		OutputStream firstOut = first.getOutputStream();
+		OutputStream secondOut = second.getOutputStream();
+
+		// lines may be split across reads and end with \r\n
+		firstOut.write("penicillin ".getBytes(StandardCharsets.UTF_8));
+		firstOut.flush();
+		secondOut.write("patient admission\r\n\n".getBytes(StandardCharsets.UTF_8));
+		secondOut.flush();
+		Assert.assertEquals("patient admission", context.events.poll(5, TimeUnit.SECONDS));
+
+		firstOut.write("storage\nlast event".getBytes(StandardCharsets.UTF_8));
+		first.close();
+		second.close();
+
+		List<String> events = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			events.add(context.events.poll(5, TimeUnit.SECONDS));
+		}
+		Assert.assertEquals(Arrays.asList("penicillin storage", "last event"), events);
+		Assert.assertNull(context.events.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testLongEvent() throws Exception {
+		EventContext context = new EventContext();
+		int port = findFreePort();
+		serverThread = new Thread(new EventServer(context, false, port));
+		serverThread.start();
+
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			name.append((char) ('a' + i % 26));
+		}
+		Socket socket = connect(port);
+		socket.getOutputStream().write((name + "\n").getBytes(StandardCharsets.UTF_8));
+		socket.close();
+
+		Assert.assertEquals(name.toString(), context.events.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testStructuredEvent() throws Exception {
+		EventContext context = new EventContext();
+		int port = findFreePort();
+		serverThread = new Thread(new EventServer(context, false, port));
+		serverThread.start();
+
+		Socket socket = connect(port);
+		socket.getOutputStream().write(("lab result\teventtime=1992-01-03T00:00:00\t"
+				+ "primarytime=1992-01-01T00:00:00\turgency=80\n"
+				+ "malformed\turgency=100\n"
+				+ "admission\tprimarytime=1992-01-02T00:00:00\n").getBytes(StandardCharsets.UTF_8));
+		socket.close();
+
+		ArdenEvent result = context.calledEvents.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals("lab result", result.name);
+		Assert.assertEquals(createDate(1992, 0, 3).value, result.eventTime);
+		Assert.assertEquals(createDate(1992, 0, 1).value, result.primaryTime);
+		Assert.assertEquals(80, context.urgencies.poll(), 0);
+
+		ArdenEvent admission = context.calledEvents.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals("admission", admission.name);
+		Assert.assertEquals(createDate(1992, 0, 2).value, admission.eventTime);
+		Assert.assertEquals(createDate(1992, 0, 2).value, admission.primaryTime);
+		Assert.assertEquals(50, context.urgencies.poll(), 0);
+	}
+
+	@Test
+	public void testPauseWhileEngineQueueIsFull() throws Exception {
+		EventContext context = new EventContext();
+		CallQueue queue = new CallQueue(2, OverloadPolicy.BLOCK, CallQueue.PRINT_HANDLER);
+		// the engine is not started, so the test takes its calls
+		EvokeEngine engine = new EvokeEngine(context, new ArrayList<MedicalLogicModule>(), 1, queue);
+		int port = findFreePort();
+		serverThread = new Thread(new EventServer(context, engine, 100, false, port));
+		serverThread.start();
+
+		Socket socket = connect(port);
+		socket.getOutputStream().write("first\nsecond\nthird\nfourth\n".getBytes(StandardCharsets.UTF_8));
+		socket.getOutputStream().flush();
+		waitForQueueSize(queue, 2);
+
+		// the server pauses instead of waiting for the full queue
+		Thread.sleep(100);
+		Assert.assertEquals(2, queue.size());
+		Assert.assertNotEquals(Thread.State.WAITING, serverThread.getState());
+		Socket later = connect(port);
+		later.getOutputStream().write("fifth\n".getBytes(StandardCharsets.UTF_8));
+		later.close();
+		socket.close();
+
+		// taking calls resumes reading, the events keep their order
+		List<String> calls = new ArrayList<>();
+		while (calls.size() < 5) {
+			waitForQueueSize(queue, Math.min(2, 5 - calls.size()));
+			Call call;
+			while ((call = queue.poll()) != null) {
+				calls.add(call.toString());
+			}
+		}
+		Assert.assertEquals(Arrays.asList("call of EVENT {first}", "call of EVENT {second}",
+				"call of EVENT {third}", "call of EVENT {fourth}", "call of EVENT {fifth}"), calls);
+	}
+
+	private static void waitForQueueSize(CallQueue queue, int size) throws InterruptedException {
+		for (int i = 0; i < 250 && queue.size() < size; i++) {
+			Thread.sleep(20);
+		}
+		Assert.assertEquals(size, queue.size());
+	}
+}
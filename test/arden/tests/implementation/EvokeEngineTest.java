@@ -0,0 +1,164 @@
+package arden.tests.implementation;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.Compiler;
+import arden.engine.EvokeEngine;
+import arden.runtime.ArdenEvent;
+import arden.runtime.ArdenRunnable;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.evoke.CallTrigger;
+import arden.runtime.evoke.Trigger;
+
+public class EvokeEngineTest extends ImplementationTest {
+	private Thread engineThread;
+
+	private EvokeEngine startEngine(int workers) {
+		final EvokeEngine engine = new EvokeEngine(new TestContext(), new ArrayList<MedicalLogicModule>(), workers);
+		engineThread = new Thread(engine);
+		engineThread.start();
+		return engine;
+	}
+
+	private static MedicalLogicModule compileEvoke(String dataCode, String evokeCode) throws Exception {
+		return compileEvoke(dataCode, evokeCode, "");
+	}
+
+	private static MedicalLogicModule compileEvoke(String dataCode, String evokeCode, String actionCode)
+			throws Exception {
+		InputStream s = EvokeEngineTest.class.getResourceAsStream("EvokeTemplate.mlm");
+		String fullCode = inputStreamToString(s)
+				.replace("$ACTION", actionCode)
+				.replace("$DATA", dataCode)
+				.replace("$EVOKE", evokeCode)
+				.replace("$LOGIC", "conclude true;");
+		return new Compiler().compileMlm(new StringReader(fullCode));
+	}
+
+	@After
+	public void stopEngine() throws InterruptedException {
+		if (engineThread != null) {
+			engineThread.interrupt();
+			engineThread.join(1000);
+		}
+	}
+
+	@Test
+	public void testDifferentMlmsRunInParallel() throws Exception {
+		EvokeEngine engine = startEngine(2);
+
+		// both MLMs can only pass the barrier if they run at the same time
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final CountDownLatch finished = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++) {
+			engine.call(new ArdenRunnable() {
+				@Override
+				public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger)
+						throws InvocationTargetException {
+					try {
+						barrier.await(5, TimeUnit.SECONDS);
+						finished.countDown();
+					} catch (Exception e) {
+						throw new InvocationTargetException(e);
+					}
+					return null;
+				}
+			}, null, 0, new CallTrigger(), 50);
+		}
+
+		Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testSameMlmRunsSerialized() throws Exception {
+		EvokeEngine engine = startEngine(4);
+
+		final int numberOfCalls = 20;
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch finished = new CountDownLatch(numberOfCalls);
+		ArdenRunnable mlm = new ArdenRunnable() {
+			@Override
+			public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments, Trigger evokingTrigger)
+					throws InvocationTargetException {
+				int nowRunning = running.incrementAndGet();
+				int max = maxRunning.get();
+				while (nowRunning > max && !maxRunning.compareAndSet(max, nowRunning)) {
+					max = maxRunning.get();
+				}
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					throw new InvocationTargetException(e);
+				}
+				running.decrementAndGet();
+				finished.countDown();
+				return null;
+			}
+		};
+		for (int i = 0; i < numberOfCalls; i++) {
+			engine.call(mlm, null, 0, new CallTrigger(), 50);
+		}
+
+		Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, maxRunning.get());
+	}
+
+	@Test
+	public void testFindModulesUsesEventIndex() throws Exception {
+		MedicalLogicModule penicillin = compileEvoke("e := EVENT{penicillin storage}", "e");
+		MedicalLogicModule delayed = compileEvoke("e := EVENT{Penicillin Storage}", "3 days after time of e");
+		MedicalLogicModule any = compileEvoke("a := EVENT{penicillin storage}; b := EVENT{other storage}",
+				"any of (a, b)");
+		MedicalLogicModule fixed = compileEvoke("", "1992-01-01T00:00:00");
+		EvokeEngine engine = new EvokeEngine(new TestContext(),
+				Arrays.asList(penicillin, delayed, any, fixed));
+
+		MedicalLogicModule[] found = engine.findModules(new ArdenEvent("PENICILLIN storage"));
+		Assert.assertArrayEquals(new MedicalLogicModule[] { penicillin, any }, found);
+		Assert.assertArrayEquals(new MedicalLogicModule[] { any }, engine.findModules(new ArdenEvent("other storage")));
+		Assert.assertEquals(0, engine.findModules(new ArdenEvent("unknown")).length);
+
+		Assert.assertEquals(3, engine.getEventIndex().getIndexHits());
+		Assert.assertEquals(0, engine.getEventIndex().getFullScans());
+	}
+
+	@Test
+	public void testTriggerMovedEarlierAndLaterRunsOncePerTime() throws Exception {
+		MedicalLogicModule mlm = compileEvoke("e := EVENT{lab result}", "1 second after time of e",
+				"write \"run\";");
+		TestContext context = new TestContext();
+		EvokeEngine engine = new EvokeEngine(context, Arrays.asList(mlm));
+		engineThread = new Thread(engine);
+		engineThread.start();
+
+		// the after trigger runs 1 second after the eventtime
+		long start = System.currentTimeMillis();
+		long later = start - 1000 + 600;
+		long earlier = start - 1000 + 300;
+		// scheduled -> moved earlier -> moved later after it fired
+		engine.call(new ArdenEvent("lab result", start, later), 0, 50);
+		engine.call(new ArdenEvent("lab result", start, earlier), 0, 50);
+		// same run time as the first event
+		engine.call(new ArdenEvent("lab result", start, later), 0, 50);
+
+		Thread.sleep(start + 450 - System.currentTimeMillis());
+		Assert.assertEquals("run\n", context.getOutputText());
+		Thread.sleep(start + 1200 - System.currentTimeMillis());
+		Assert.assertEquals("run\nrun\n", context.getOutputText());
+	}
+}
@@ -128,6 +128,20 @@ public class EvokeTest extends ImplementationTest {
 		Assert.assertEquals(1000 * 60 * 60 * 24 * 5, trigger.getDelay());
 	}
 
+	@Test
+	public void testScheduleEventReportsChangedRunTime() throws Exception {
+		TestContext context = new TestContext();
+
+		CompiledMlm mlm = parseEvoke("event1 := EVENT{penicillin storage}", "3 days after time of event1");
+		Trigger trigger = mlm.getTriggers(context)[0];
+
+		Assert.assertFalse(trigger.scheduleEvent(new ArdenEvent("other storage")));
+		Assert.assertTrue(trigger.scheduleEvent(new ArdenEvent("penicillin storage", createDate(1992, 0, 1).value)));
+
+		MedicalLogicModule eventMlm = parseEvoke("event1 := EVENT{penicillin storage}", "event1");
+		Assert.assertFalse(eventMlm.getTriggers(context)[0].scheduleEvent(new ArdenEvent("penicillin storage")));
+	}
+
 	@Test
 	public void testFixedDate() throws Exception {
 		TestContext context = new TestContext();
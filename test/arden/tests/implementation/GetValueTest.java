@@ -1,11 +1,18 @@
 package arden.tests.implementation;
 
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import arden.compiler.Compiler;
 import arden.runtime.ArdenNumber;
 import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
 import arden.runtime.MedicalLogicModule;
+import arden.runtime.MedicalLogicModuleImplementation;
 import arden.runtime.evoke.CallTrigger;
 
 public class GetValueTest extends ImplementationTest {
@@ -37,4 +44,71 @@ public class GetValueTest extends ImplementationTest {
 		Assert.assertEquals(ArdenNumber.create(2.0, ArdenValue.NOPRIMARYTIME), mlm.getValue("num"));
 		Assert.assertNull(mlm.getValue("does_not_exist"));
 	}
+
+	@Test
+	public void getValues() throws Exception {
+		MedicalLogicModule mlm = compile("x3.8.mlm");
+
+		// mlm has not been not run yet:
+		Assert.assertTrue(mlm.getValues().isEmpty());
+
+		TestContext context = new TestContext();
+		mlm.run(context, null, new CallTrigger());
+
+		Map<String, ArdenValue> values = mlm.getValues();
+		Assert.assertEquals(ArdenNumber.create(2.0, ArdenValue.NOPRIMARYTIME), values.get("num"));
+		Assert.assertTrue(values.containsKey("a_list"));
+		Assert.assertTrue(values.containsKey("allergen"));
+		Assert.assertFalse(values.containsKey("does_not_exist"));
+		for (Map.Entry<String, ArdenValue> entry : values.entrySet()) {
+			Assert.assertSame(entry.getValue(), mlm.getValue(entry.getKey()));
+		}
+	}
+
+	@Test
+	public void getValuesWithoutInternalFields() throws Exception {
+		InputStream s = GetValueTest.class.getResourceAsStream("EvokeTemplate.mlm");
+		String code = inputStreamToString(s)
+				.replace("$DATA", "started := now; triggered := triggertime; happened := eventtime;")
+				.replace("$EVOKE", "")
+				.replace("$LOGIC", "conclude true;")
+				.replace("$ACTION", "return started;");
+		Compiler compiler = new Compiler();
+		MedicalLogicModule mlm = compiler.compileMlm(new StringReader(code));
+		mlm.run(new TestContext(), null, new CallTrigger());
+
+		Map<String, ArdenValue> values = mlm.getValues();
+		Assert.assertEquals(3, values.size());
+		Assert.assertTrue(values.containsKey("started"));
+		Assert.assertFalse(values.containsKey("now"));
+		Assert.assertFalse(values.containsKey("eventtime"));
+		Assert.assertFalse(values.containsKey("triggertime"));
+		// getValue() still returns them
+		Assert.assertNotNull(mlm.getValue("now"));
+	}
+
+	/** Like MLMs compiled before getValues() was generated. */
+	public static class OldMlm extends MedicalLogicModuleImplementation {
+		private ArdenValue now = new ArdenNumber(1);
+		private ArdenValue eventtime = new ArdenNumber(2);
+		private ArdenValue triggertime = new ArdenNumber(3);
+		private ArdenValue dose = new ArdenNumber(4);
+
+		@Override
+		public boolean logic(ExecutionContext context) {
+			return now != null && eventtime != null && triggertime != null;
+		}
+
+		@Override
+		public ArdenValue[] action(ExecutionContext context) {
+			return new ArdenValue[] { dose };
+		}
+	}
+
+	@Test
+	public void reflectiveGetValuesWithoutInternalFields() throws Exception {
+		Map<String, ArdenValue> values = new OldMlm().getValues();
+		Assert.assertEquals(1, values.size());
+		Assert.assertEquals(new ArdenNumber(4), values.get("dose"));
+	}
 }
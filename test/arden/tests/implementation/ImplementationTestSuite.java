@@ -6,16 +6,24 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({
+	CallQueueTest.class,
 	CliTest.class,
+	ConnectionPoolTest.class,
+	ConstantFoldingTest.class,
 	ConstantParserTest.class,
+	EventServerTest.class,
+	EvokeEngineTest.class,
 	EvokeTest.class,
 	ExampleEvokeTest.class,
 	ExampleTest.class,
 	GetValueTest.class,
+	InvokeDynamicTest.class,
 	JDBCQueryTest.class,
 	LoadMlmFromBytecodeTest.class,
 	MetadataTest.class,
-	RuntimeTest.class
+	NumericExpressionTest.class,
+	RuntimeTest.class,
+	TimingWheelTest.class
 })
 public class ImplementationTestSuite {
 }
@@ -0,0 +1,79 @@
+package arden.tests.implementation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.runtime.ArdenValue;
+import arden.runtime.evoke.CallTrigger;
+
+public class InvokeDynamicTest extends ImplementationTest {
+	// each operator sees more operand types than its call site caches
+	private static final String DATA = "values := (1, 2.5, \"abc\", 1 day, 1990-01-01T00:00:00, true, null, (3, 4));";
+	private static final String LOGIC = "results := ();"
+			+ " for v in values do"
+			+ "   results := results, (v + 1), (v - v), (v * 2), (v / 2), (v < 2), (v = 1), (-v), (not v),"
+			+ "     (v + 1 day), (v - 1990-01-01T00:00:00), (1 day before v), (1 day after v),"
+			+ "     (substring 2 characters from v), (v is within 1 day preceding 1990-01-02T00:00:00);"
+			+ " enddo;"
+			+ " conclude true;";
+	private static final String ACTION = "return results;";
+
+	private static CompiledMlm compile(boolean invokeDynamic) throws Exception {
+		return compile(invokeDynamic, Compiler.DEFAULT_TARGET_VERSION);
+	}
+
+	private static CompiledMlm compile(boolean invokeDynamic, int targetVersion) throws Exception {
+		InputStream s = InvokeDynamicTest.class.getResourceAsStream("EvokeTemplate.mlm");
+		String fullCode = inputStreamToString(s)
+				.replace("$ACTION", ACTION)
+				.replace("$DATA", DATA)
+				.replace("$EVOKE", "")
+				.replace("$LOGIC", LOGIC);
+		Compiler c = new Compiler();
+		c.setTargetVersion(targetVersion);
+		if (invokeDynamic) {
+			c.enableInvokeDynamic();
+		}
+		return c.compileMlm(new StringReader(fullCode));
+	}
+
+	private static String run(CompiledMlm mlm) throws Exception {
+		ArdenValue[] result = mlm.run(new TestContext(), null, new CallTrigger());
+		Assert.assertEquals(1, result.length);
+		return result[0].toString();
+	}
+
+	private static String getClassFile(CompiledMlm mlm) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		mlm.saveClassFile(bos);
+		return new String(bos.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void sameResultsAsOperatorFields() throws Exception {
+		String expected = run(compile(false));
+		CompiledMlm mlm = compile(true);
+		// run twice, the second run uses the linked call sites
+		Assert.assertEquals(expected, run(mlm));
+		Assert.assertEquals(expected, run(mlm));
+	}
+
+	@Test
+	public void classFileHasBootstrapMethods() throws Exception {
+		Assert.assertFalse(getClassFile(compile(false)).contains("BootstrapMethods"));
+		Assert.assertTrue(getClassFile(compile(true)).contains("BootstrapMethods"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void requiresJava7() throws Exception {
+		compile(true, 6);
+	}
+}
@@ -13,6 +13,9 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -23,13 +26,20 @@ import arden.CommandLineOptions;
 import arden.compiler.CompiledMlm;
 import arden.compiler.Compiler;
 import arden.compiler.CompilerException;
+import arden.runtime.ArdenBoolean;
 import arden.runtime.ArdenList;
+import arden.runtime.ArdenNull;
 import arden.runtime.ArdenNumber;
 import arden.runtime.ArdenString;
+import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
+import arden.runtime.DatabaseQuery;
 import arden.runtime.ExecutionContext;
 import arden.runtime.MedicalLogicModule;
+import arden.runtime.MemoryQuery;
+import arden.runtime.NumberList;
 import arden.runtime.evoke.CallTrigger;
+import arden.runtime.jdbc.ConnectionPool;
 import arden.runtime.jdbc.DriverHelper;
 import arden.runtime.jdbc.JDBCExecutionContext;
 import arden.runtime.jdbc.JDBCQuery;
@@ -151,7 +161,286 @@ public class JDBCQueryTest extends ImplementationTest {
 
 		ArdenValue[] expected = {new ArdenNumber(1), new ArdenNumber(2), 
 				new ArdenString("A"), new ArdenString("B")};
-		ArdenValue[] resultList = ((ArdenList)(result[0])).values;
+		ArdenValue[] resultList = ((ArdenList)(result[0])).getElements();
+		
+		Assert.assertArrayEquals(expected, resultList);
+	}
+
+	@Test
+	public void testBindParameters() throws Exception {
+		List<ArdenValue> bound = new ArrayList<ArdenValue>();
+		String sql = JDBCQuery.bindParameters(
+				"select * from lab where patient = :Patient and time > '10:30' and value::int > :min or :other",
+				new String[] { "min", "patient" },
+				new ArdenValue[] { new ArdenNumber(5), new ArdenString("p1") },
+				bound);
+		Assert.assertEquals("select * from lab where patient = ? and time > '10:30' and value::int > ? or :other",
+				sql);
+		Assert.assertEquals(Arrays.<ArdenValue> asList(new ArdenString("p1"), new ArdenNumber(5)), bound);
+	}
+
+	@Test
+	public void testJDBCExecutionContextParameters() throws Exception {
+		if (loadSQLite() == null) {
+			return;
+		}
+		String[] args = new String[]{"--env", "jdbc:sqlite:"};
+		CommandLineOptions options = 
+				CliFactory.parseArguments(CommandLineOptions.class, args);
+		
+		ExecutionContext testContext = new JDBCExecutionContext(options);
+		MedicalLogicModule mlm = parseTemplate(
+				"varA := read {drop table if exists person};\n" +
+				"varB := read {create table person (id integer, name string)};\n" +
+				"varC := read {insert into person values (1, 'A')};\n" +
+				"varD := read {insert into person values (2, 'B:C')};\n" +
+				"id := argument;\n" +
+				"varE := read {select name from person where id = :id};\n" +
+				"id := 1;\n" +
+				"varF := read {select name from person where id = :ID};\n", 
+				"conclude true;", 
+				"return (varE, varF);");
+		ArdenValue[] result = mlm.run(testContext, new ArdenValue[] { new ArdenNumber(2) }, new CallTrigger());
+		Assert.assertEquals(1, result.length);
+
+		ArdenValue[] expected = {new ArdenString("B:C"), new ArdenString("A")};
+		ArdenValue[] resultList = ((ArdenList)(result[0])).getElements();
+		
+		Assert.assertArrayEquals(expected, resultList);
+	}
+
+	@Test
+	public void testLoopVariableParameter() throws Exception {
+		if (loadSQLite() == null) {
+			return;
+		}
+		String[] args = new String[]{"--env", "jdbc:sqlite:"};
+		CommandLineOptions options = 
+				CliFactory.parseArguments(CommandLineOptions.class, args);
+		
+		ExecutionContext testContext = new JDBCExecutionContext(options);
+		MedicalLogicModule mlm = parseTemplate(
+				"varA := read {create table person (id integer, name string)};\n" +
+				"varB := read {insert into person values (1, ':id')};\n" +
+				"varC := read {insert into person values (2, 'B')};\n" +
+				"for id in (1 seqto 2) do\n" +
+				"  name := read {select name from person where id = :id};\n" +
+				"  if id = 1 then first_name := name; else second_name := name; endif;\n" +
+				"enddo;\n", 
+				"conclude true;", 
+				"return (first_name, second_name);");
+		ArdenValue[] result = mlm.run(testContext, null, new CallTrigger());
+		Assert.assertEquals(1, result.length);
+		Assert.assertEquals("(\":id\",\"B\")", result[0].toString());
+	}
+
+	private static double[] numbers(ArdenValue[] columns) {
+		ArdenValue[] values = ((ArdenList) columns[0]).getElements();
+		double[] numbers = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			numbers[i] = ((ArdenNumber) values[i]).value;
+		}
+		return numbers;
+	}
+
+	@Test
+	public void testTimeConstraintsInSql() throws Exception {
+		if (loadSQLite() == null) {
+			return;
+		}
+		// an in-memory database exists as long as its single connection
+		ConnectionPool pool = new ConnectionPool("jdbc:sqlite:", 1, null, 0, 0);
+		Connection connection = pool.acquire();
+		Statement stmt = connection.createStatement();
+		stmt.executeUpdate("create table lab (value integer, time integer)");
+		for (int i = 1; i <= 5; i++) {
+			stmt.executeUpdate("insert into lab values (" + i + ", " + i * 1000 + ")");
+		}
+		stmt.close();
+		pool.release(connection);
+
+		String[] noNames = new String[0];
+		ArdenValue[] noValues = new ArdenValue[0];
+		DatabaseQuery query = new JDBCQuery("select value, time from lab", pool, "time", noNames, noValues);
+		DatabaseQuery within = query.occursWithinTo(new ArdenTime(4000), new ArdenTime(2000)).occursNotAt(
+				new ArdenTime(3000));
+		Assert.assertTrue(within instanceof JDBCQuery);
+		Assert.assertArrayEquals(new double[] { 2, 4 }, numbers(within.execute()), 0);
+		Assert.assertArrayEquals(new double[] { 1, 2 }, numbers(query.occursBefore(new ArdenTime(3000)).execute()), 0);
+		Assert.assertArrayEquals(new double[] { 3, 4, 5 }, numbers(query.occursNotBefore(new ArdenTime(3000))
+				.execute()), 0);
+		Assert.assertArrayEquals(new double[] { 5 }, numbers(query.occursAfter(new ArdenTime(4000)).execute()), 0);
+		Assert.assertArrayEquals(new double[] { 1, 5 }, numbers(query.occursNotWithinTo(new ArdenTime(2000),
+				new ArdenTime(4000)).execute()), 0);
+
+		// without a time column the constraints are applied in memory
+		DatabaseQuery unknownTime = new JDBCQuery("select value, time from lab", pool, null, noNames, noValues);
+		Assert.assertFalse(unknownTime.occursBefore(new ArdenTime(3000)) instanceof JDBCQuery);
+
+		// if the mapping doesn't return the time column, the constraints are
+		// applied to the results in memory
+		ArdenValue[] withoutTime = new JDBCQuery("select value from lab", pool, "time", noNames, noValues)
+				.occursBefore(new ArdenTime(3000)).execute();
+		Assert.assertEquals(1, withoutTime.length);
+		Assert.assertEquals(0, ((ArdenList) withoutTime[0]).getElements().length);
+		pool.close();
+	}
+
+	@Test
+	public void testAggregationsInSql() throws Exception {
+		if (loadSQLite() == null) {
+			return;
+		}
+		ConnectionPool pool = new ConnectionPool("jdbc:sqlite:", 1, null, 0, 0, 8);
+		Connection connection = pool.acquire();
+		Statement stmt = connection.createStatement();
+		stmt.executeUpdate("create table lab (value integer, time integer, note string)");
+		for (int i = 1; i <= 5; i++) {
+			// insert in a different order than the times
+			int value = (i * 3) % 5 + 1;
+			stmt.executeUpdate("insert into lab values (" + value + ", " + value * 1000 + ", 'n" + value + "')");
+		}
+		stmt.close();
+		pool.release(connection);
+
+		String[] noNames = new String[0];
+		ArdenValue[] noValues = new ArdenValue[0];
+		JDBCQuery query = new JDBCQuery("select value, time from lab", pool, "time", noNames, noValues);
+		MemoryQuery memory = new MemoryQuery(query.execute());
+		Assert.assertArrayEquals(new double[] { 1, 2, 3, 4, 5 }, numbers(memory.execute()), 0);
+
+		Assert.assertArrayEquals(memory.count().execute(), query.count().execute());
+		Assert.assertArrayEquals(memory.exist().execute(), query.exist().execute());
+		Assert.assertArrayEquals(memory.sum().execute(), query.sum().execute());
+		Assert.assertArrayEquals(memory.average().execute(), query.average().execute());
+		Assert.assertArrayEquals(memory.first().execute(), query.first().execute());
+		Assert.assertArrayEquals(memory.last().execute(), query.last().execute());
+		Assert.assertArrayEquals(memory.first(2).execute(), query.first(2).execute());
+		Assert.assertArrayEquals(memory.last(2).execute(), query.last(2).execute());
+		Assert.assertArrayEquals(memory.last(2).execute(), query.latest(2).execute());
+		Assert.assertArrayEquals(new double[] { 4, 5 }, numbers(query.occursAfter(new ArdenTime(2000)).last(2)
+				.execute()), 0);
+		// the time column is not counted, it only has the primary times
+		Assert.assertArrayEquals(new ArdenValue[] { new ArdenNumber(0) }, query.occursAfter(new ArdenTime(5000))
+				.count().execute());
+
+		// statements, which the database rejects as subqueries, are
+		// aggregated in memory
+		JDBCQuery commented = new JDBCQuery("select value, time from lab -- all rows", pool, "time", noNames,
+				noValues);
+		Assert.assertArrayEquals(new double[] { 1, 2, 3, 4, 5 }, numbers(commented.execute()), 0);
+		Assert.assertArrayEquals(new double[] { 4, 5 }, numbers(commented.latest(2).execute()), 0);
+		Assert.assertArrayEquals(new double[] { 1, 2 }, numbers(commented.occursBefore(new ArdenTime(3000))
+				.execute()), 0);
+
+		// sums of strings are null, like in memory
+		JDBCQuery notes = new JDBCQuery("select note from lab", pool, "time", noNames, noValues);
+		Assert.assertArrayEquals(new ArdenValue[] { ArdenNull.INSTANCE }, notes.sum().execute());
+		Assert.assertArrayEquals(new ArdenValue[] { ArdenBoolean.TRUE }, notes.exist().execute());
+		// without the time column the rows can't be selected by time
+		Assert.assertArrayEquals(new ArdenValue[] { ArdenNull.INSTANCE }, notes.latest().execute());
+		pool.close();
+	}
+
+	@Test
+	public void testPrimaryTimesFromTimeColumn() throws Exception {
+		if (loadSQLite() == null) {
+			return;
+		}
+		ConnectionPool pool = new ConnectionPool("jdbc:sqlite:", 1, null, 0, 0);
+		Connection connection = pool.acquire();
+		Statement stmt = connection.createStatement();
+		stmt.executeUpdate("create table lab (time integer, value real, note text, done boolean, taken date)");
+		stmt.executeUpdate("insert into lab values (2000, 2.5, 'b', 0, 20)");
+		stmt.executeUpdate("insert into lab values (1000, 1.5, 'a', 1, 10)");
+		stmt.executeUpdate("insert into lab values (3000, null, null, null, null)");
+		stmt.close();
+		pool.release(connection);
+
+		String[] noNames = new String[0];
+		ArdenValue[] noValues = new ArdenValue[0];
+		JDBCQuery query = new JDBCQuery("select * from lab", pool, "TIME", noNames, noValues);
+		// a small fetch size makes the arrays grow
+		query.setFetchSize(1);
+		ArdenValue[] columns = query.execute();
+		Assert.assertEquals(4, columns.length);
+		ArdenValue[] expected = { new ArdenNumber(1.5), new ArdenNumber(2.5), ArdenNull.INSTANCE };
+		ArdenValue[] values = ((ArdenList) columns[0]).getElements();
+		Assert.assertArrayEquals(expected, values);
+		for (int i = 0; i < values.length; i++) {
+			Assert.assertEquals((i + 1) * 1000, values[i].primaryTime);
+		}
+		Assert.assertArrayEquals(new ArdenValue[] { new ArdenString("a"), new ArdenString("b"),
+				ArdenNull.INSTANCE }, ((ArdenList) columns[1]).getElements());
+		Assert.assertArrayEquals(new ArdenValue[] { ArdenBoolean.TRUE, ArdenBoolean.FALSE, ArdenNull.INSTANCE },
+				((ArdenList) columns[2]).getElements());
+		ArdenValue taken = ((ArdenList) columns[3]).getElements()[1];
+		Assert.assertEquals(new ArdenTime(20), taken);
+		Assert.assertEquals(2000, taken.primaryTime);
+
+		// without nulls, the columns are converted to lists of primitives
+		ArdenValue[] timed = new JDBCQuery("select value, time from lab where value is not null", pool, "time",
+				noNames, noValues).execute();
+		Assert.assertEquals(1, timed.length);
+		Assert.assertTrue(timed[0] instanceof NumberList);
+		Assert.assertEquals(2000, ((NumberList) timed[0]).getPrimaryTime(1));
+
+		// the time column is kept if it is the only one
+		ArdenValue[] times = new JDBCQuery("select time from lab", pool, "time", noNames, noValues).execute();
+		Assert.assertEquals(1, times.length);
+		Assert.assertEquals(3, ((ArdenList) times[0]).getElements().length);
+		pool.close();
+	}
+
+	@Test
+	public void testValuesNotMatchingColumnType() throws Exception {
+		if (loadSQLite() == null) {
+			return;
+		}
+		ConnectionPool pool = new ConnectionPool("jdbc:sqlite:", 1, null, 0, 0);
+		Connection connection = pool.acquire();
+		Statement stmt = connection.createStatement();
+		// SQLite stores any type in any column
+		stmt.executeUpdate("create table lab (value numeric, taken date)");
+		stmt.executeUpdate("insert into lab values (1.5, 10)");
+		stmt.executeUpdate("insert into lab values ('high', 'unknown')");
+		stmt.close();
+		pool.release(connection);
+
+		ArdenValue[] columns = new JDBCQuery("select * from lab", pool, null, new String[0], new ArdenValue[0])
+				.execute();
+		Assert.assertArrayEquals(new ArdenValue[] { new ArdenNumber(1.5), new ArdenString("high") },
+				((ArdenList) columns[0]).getElements());
+		Assert.assertArrayEquals(new ArdenValue[] { new ArdenTime(10), new ArdenString("unknown") },
+				((ArdenList) columns[1]).getElements());
+		pool.close();
+	}
+
+	@Test
+	public void testJDBCExecutionContextPrimaryTimes() throws Exception {
+		if (loadSQLite() == null) {
+			return;
+		}
+		String[] args = new String[]{"--env", "jdbc:sqlite:", "--dbtimecolumn", "time", "--dbfetchsize", "2"};
+		CommandLineOptions options = 
+				CliFactory.parseArguments(CommandLineOptions.class, args);
+		
+		ExecutionContext testContext = new JDBCExecutionContext(options);
+		MedicalLogicModule mlm = parseTemplate(
+				"varA := read {drop table if exists lab};\n" +
+				"varB := read {create table lab (value integer, time integer)};\n" +
+				"varC := read {insert into lab values (7, 2000)};\n" +
+				"varD := read {insert into lab values (5, 3000)};\n" +
+				"varE := read {insert into lab values (9, 1000)};\n" +
+				"labs := read {select value, time from lab};\n", 
+				"conclude true;", 
+				"return (latest labs, time of earliest labs, sort time labs);");
+		ArdenValue[] result = mlm.run(testContext, null, new CallTrigger());
+		Assert.assertEquals(1, result.length);
+
+		ArdenValue[] expected = {new ArdenNumber(5), new ArdenTime(1000), 
+				new ArdenNumber(9), new ArdenNumber(7), new ArdenNumber(5)};
+		ArdenValue[] resultList = ((ArdenList)(result[0])).getElements();
 		
 		Assert.assertArrayEquals(expected, resultList);
 	}
@@ -170,6 +170,52 @@ public class LoadMlmFromBytecodeTest extends ImplementationTest {
 		Assert.assertEquals("", context.getOutputText());
 	}
 	
+	private static byte[] compileClassFile(String filename, int targetVersion) throws Exception {
+		Compiler c = new Compiler();
+		c.setTargetVersion(targetVersion);
+		CompiledMlm mlm = c
+				.compileMlm(new InputStreamReader(ExampleTest.class.getResourceAsStream(filename)));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		mlm.saveClassFile(bos);
+		bos.close();
+		return bos.toByteArray();
+	}
+
+	private static int getMajorVersion(byte[] classFile) {
+		return ((classFile[6] & 0xff) << 8) | (classFile[7] & 0xff);
+	}
+
+	@Test
+	public void defaultTargetVersion() throws Exception {
+		byte[] classFile = compileClassFile("x3.5.mlm", Compiler.DEFAULT_TARGET_VERSION);
+		Assert.assertEquals(51, getMajorVersion(classFile));
+	}
+
+	@Test
+	public void olderTargetVersions() throws Exception {
+		for (int target = 5; target <= 8; target++) {
+			byte[] classFile = compileClassFile("x3.5.mlm", target);
+			Assert.assertEquals(target + 44, getMajorVersion(classFile));
+
+			MedicalLogicModule mlm = new CompiledMlm(new ByteArrayInputStream(classFile), "gentamicin_monitoring");
+			TestContext context = new TestContext();
+			mlm.run(context, null, new CallTrigger());
+			Assert.assertEquals(
+					"Suggest obtaining a serum creatinine to follow up on renal function in the setting of gentamicin.\n",
+					context.getOutputText());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedTargetVersion() throws Exception {
+		new Compiler().setTargetVersion(4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownTargetVersion() throws Exception {
+		new Compiler().setTargetVersion(30);
+	}
+
 	@Test
 	public void x31Metadata() throws Exception {
 		MedicalLogicModule compiledMlm = compileBytecode("x3.1.mlm");
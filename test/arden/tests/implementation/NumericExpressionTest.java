@@ -0,0 +1,72 @@
+package arden.tests.implementation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.runtime.ArdenValue;
+import arden.runtime.evoke.CallTrigger;
+
+public class NumericExpressionTest extends ImplementationTest {
+	private static final String DATA = "a := 3; b := 0; items := (1, 2, 3);";
+	private static final String LOGIC = "zero := a / b;"
+			+ " inf := 1 / (1 / 0);"
+			+ " big := 1E308 * 10 - 1E308;"
+			+ " x := -(a * 2.5) + count of items - count of a;"
+			+ " i := 0;"
+			+ " total := 0;"
+			+ " while i < 5 do i := i + 1; total := total + i / 2; enddo;"
+			+ " mixed := 1;"
+			+ " mixed := \"text\";"
+			+ " results := zero, inf, big, x, i, total, (mixed + 1), (a + null), (a * 0 - 0),"
+			+ "   (a < b), (a = 3), (zero = zero), (zero <> 1), (a + 1 >= 4), (total <= i), (x > -10),"
+			+ "   (a is greater than b * 2), (a is less than zero), (+a), (-zero), ((a + 1) * (a - 1));"
+			+ " conclude true;";
+	private static final String ACTION = "return results;";
+
+	private static CompiledMlm compile(boolean optimize) throws Exception {
+		InputStream s = NumericExpressionTest.class.getResourceAsStream("EvokeTemplate.mlm");
+		String fullCode = inputStreamToString(s)
+				.replace("$ACTION", ACTION)
+				.replace("$DATA", DATA)
+				.replace("$EVOKE", "")
+				.replace("$LOGIC", LOGIC);
+		Compiler c = new Compiler();
+		if (!optimize) {
+			c.disableOptimizations();
+		}
+		return c.compileMlm(new StringReader(fullCode));
+	}
+
+	private static String run(CompiledMlm mlm) throws Exception {
+		ArdenValue[] result = mlm.run(new TestContext(), null, new CallTrigger());
+		Assert.assertEquals(1, result.length);
+		return result[0].toString();
+	}
+
+	private static String getClassFile(CompiledMlm mlm) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		mlm.saveClassFile(bos);
+		return new String(bos.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void sameResultsAsBoxedCode() throws Exception {
+		String expected = "(null,null,null,-5.5,5,7.5,null,null,0,false,true,null,null,true,false,true,true,null,3,null,8)";
+		Assert.assertEquals(expected, run(compile(false)));
+		Assert.assertEquals(expected, run(compile(true)));
+	}
+
+	@Test
+	public void numericExpressionsAreUnboxed() throws Exception {
+		Assert.assertFalse(getClassFile(compile(false)).contains("checkFinite"));
+		Assert.assertTrue(getClassFile(compile(true)).contains("checkFinite"));
+	}
+}
@@ -1,13 +1,44 @@
 package arden.tests.implementation;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Comparator;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import arden.codegenerator.ClassFileWriter;
+import arden.codegenerator.MethodWriter;
+import arden.runtime.ArdenBoolean;
+import arden.runtime.ArdenDuration;
+import arden.runtime.ArdenList;
 import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenObject;
 import arden.runtime.ArdenString;
 import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.BinaryOperator;
+import arden.runtime.ExpressionHelpers;
+import arden.runtime.NumberList;
+import arden.runtime.ObjectMemberAccess;
+import arden.runtime.ObjectType;
+import arden.runtime.RuntimeHelpers;
+import arden.runtime.TimeList;
+import arden.runtime.UnaryOperator;
 
 public class RuntimeTest {
 	
@@ -30,4 +61,221 @@ public class RuntimeTest {
 		Assert.assertTrue(c.compare(t2, null) < 0);
 		Assert.assertTrue(c.compare(null, t2) > 0);
 	}
+
+	@Test
+	public void testNumberListMatchesBoxedList() throws Exception {
+		double[] numbers = { 3, 1.5, -2, 8 };
+		long[] times = { 86400000L, 2 * 86400000L, 3 * 86400000L, 5 * 86400000L };
+		NumberList columnar = new NumberList(numbers, times);
+		ArdenValue[] elements = new ArdenValue[numbers.length];
+		for (int i = 0; i < numbers.length; i++)
+			elements[i] = ArdenNumber.create(numbers[i], times[i]);
+		ArdenList boxed = new ArdenList(elements);
+
+		Assert.assertEquals(boxed, columnar);
+		Assert.assertEquals(boxed.toString(), columnar.toString());
+		Assert.assertEquals(ExpressionHelpers.sum(boxed), ExpressionHelpers.sum(columnar));
+		Assert.assertEquals(ExpressionHelpers.average(boxed), ExpressionHelpers.average(columnar));
+		Assert.assertEquals(ExpressionHelpers.variance(boxed), ExpressionHelpers.variance(columnar));
+		Assert.assertEquals(ExpressionHelpers.slope(boxed), ExpressionHelpers.slope(columnar));
+		Assert.assertEquals(BinaryOperator.MUL.run(boxed, new ArdenNumber(2)),
+				BinaryOperator.MUL.run(columnar, new ArdenNumber(2)));
+		Assert.assertEquals(BinaryOperator.SUB.run(boxed, boxed), BinaryOperator.SUB.run(columnar, columnar));
+		Assert.assertEquals(UnaryOperator.TIME.run(boxed), UnaryOperator.TIME.run(columnar));
+		Assert.assertTrue(UnaryOperator.TIME.run(columnar) instanceof TimeList);
+	}
+
+	@Test
+	public void testNumberListArithmeticFallsBackForNull() throws Exception {
+		NumberList list = (NumberList) ExpressionHelpers.seqto(new ArdenNumber(0), new ArdenNumber(2));
+		ArdenValue result = BinaryOperator.DIV.run(new ArdenNumber(1), list);
+		Assert.assertFalse(result instanceof NumberList);
+		Assert.assertEquals("(null,1,0.5)", result.toString());
+		Assert.assertEquals(ArdenValue.NOPRIMARYTIME, list.getElements()[2].primaryTime);
+	}
+
+	@Test
+	public void testMedianMatchesSortedList() throws Exception {
+		Random random = new Random(42);
+		for (int run = 0; run < 200; run++) {
+			// few distinct values and times, so that there are many ties
+			ArdenValue[] values = new ArdenValue[1 + random.nextInt(12)];
+			for (int i = 0; i < values.length; i++)
+				values[i] = ArdenNumber.create(random.nextInt(4), random.nextInt(3) * 1000L);
+			ArdenList list = new ArdenList(values);
+			Assert.assertEquals(list.toString(), sortedMedian(values), ExpressionHelpers.median(list));
+			Assert.assertEquals(list.toString(), sortedMedian(values).primaryTime,
+					ExpressionHelpers.median(list).primaryTime);
+		}
+	}
+
+	/** MEDIAN as specified: sort by data and time, then take the middle element(s). */
+	private static ArdenValue sortedMedian(ArdenValue[] input) {
+		ArdenValue[] values = input.clone();
+		Arrays.sort(values, new Comparator<ArdenValue>() {
+			@Override
+			public int compare(ArdenValue o1, ArdenValue o2) {
+				int r = o1.compareTo(o2);
+				if (r != 0)
+					return r;
+				return Long.valueOf(o1.primaryTime).compareTo(o2.primaryTime);
+			}
+		});
+		int middle = values.length / 2;
+		int last = middle;
+		while (last + 1 < values.length && values[last + 1].compareTo(values[middle]) == 0)
+			last++;
+		if (values.length % 2 == 1)
+			return values[last];
+		ArdenValue left = values[middle - 1].compareTo(values[middle]) == 0 ? values[last - 1] : values[middle - 1];
+		return ExpressionHelpers.average(new ArdenList(new ArdenValue[] { left, values[last] }));
+	}
+
+	@Test
+	public void testIsInLargeList() throws Exception {
+		ArdenValue[] elements = new ArdenValue[40];
+		for (int i = 0; i < 20; i++) {
+			elements[2 * i] = ArdenNumber.create(i, 1000L * i);
+			elements[2 * i + 1] = new ArdenString("code" + i);
+		}
+		elements[10] = ArdenNumber.create(1, 5000L); // second occurrence of 1
+		ArdenList list = new ArdenList(elements);
+		ArdenList left = new ArdenList(new ArdenValue[] { new ArdenNumber(-0.0), new ArdenString("code7"),
+				new ArdenString("CODE7"), new ArdenNumber(7), ArdenNumber.create(1, 1000L), ArdenNumber.create(1, 5000L) });
+		// search several times, so that the hash index is used
+		for (int run = 0; run < 3; run++) {
+			ArdenValue[] result = ExpressionHelpers.isIn(left, list).getElements();
+			Assert.assertEquals("(true,true,false,true,true,true)", new ArdenList(result).toString());
+			Assert.assertEquals(ArdenValue.NOPRIMARYTIME, result[0].primaryTime);
+			Assert.assertEquals(ArdenValue.NOPRIMARYTIME, result[3].primaryTime);
+			Assert.assertEquals(1000L, result[4].primaryTime);
+			// only the first occurrence of an element is used
+			Assert.assertEquals(ArdenValue.NOPRIMARYTIME, result[5].primaryTime);
+			Assert.assertSame(ArdenBoolean.FALSE, ExpressionHelpers.isIn(new ArdenString("code20"), list));
+		}
+	}
+
+	@Test
+	public void testArdenTimeMatchesGregorianCalendar() throws Exception {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+		SimpleDateFormat formatWithMillis = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			// 1900 to 2100
+			long seconds = -2208988800L + (long) (random.nextDouble() * 6311433600L);
+			long time = seconds * 1000 + 1 + random.nextInt(999);
+			int months = random.nextInt(61) - 30;
+			GregorianCalendar c = new GregorianCalendar();
+			c.setTimeInMillis(time);
+			c.add(Calendar.MONTH, months);
+			ArdenTime ardenTime = new ArdenTime(time);
+			Assert.assertEquals(formatWithMillis.format(new Date(time)), ardenTime.toString());
+			Assert.assertEquals(format.format(new Date(seconds * 1000)), new ArdenTime(seconds * 1000).toString());
+			Assert.assertEquals(c.getTimeInMillis(), ardenTime.add((ArdenDuration) ArdenDuration.months(months,
+					ArdenValue.NOPRIMARYTIME)));
+		}
+		// the day of month is limited to the length of the month
+		ArdenTime endOfJanuary = new ArdenTime(new GregorianCalendar(2012, Calendar.JANUARY, 31).getTimeInMillis());
+		Assert.assertEquals("2012-02-29T00:00:00", new ArdenTime(endOfJanuary.add((ArdenDuration) ArdenDuration
+				.months(1, ArdenValue.NOPRIMARYTIME))).toString());
+	}
+
+	@Test
+	public void testFormatTimeWithPrecision() throws Exception {
+		GregorianCalendar c = new GregorianCalendar(1998, Calendar.JANUARY, 10, 17, 5, 3);
+		c.set(Calendar.MILLISECOND, 42);
+		ArdenTime time = new ArdenTime(c.getTimeInMillis());
+		Assert.assertEquals("1998", RuntimeHelpers.formatTime(time, 0));
+		Assert.assertEquals("1998-1", RuntimeHelpers.formatTime(time, 1));
+		Assert.assertEquals("Jan 10 1998", RuntimeHelpers.formatTime(time, 2));
+		Assert.assertEquals("Jan 10 1998 17h", RuntimeHelpers.formatTime(time, 3));
+		Assert.assertEquals("Jan 10 1998 17:05", RuntimeHelpers.formatTime(time, 4));
+		Assert.assertEquals("Jan 10 1998 17:05:03", RuntimeHelpers.formatTime(time, 5));
+		Assert.assertEquals("Jan 10 1998 17:05:03.042", RuntimeHelpers.formatTime(time, 6));
+	}
+
+	@Test
+	public void testArdenTimeIsThreadSafe() throws Exception {
+		final long[] times = new long[1000];
+		final String[] expected = new String[times.length];
+		Random random = new Random(42);
+		for (int i = 0; i < times.length; i++) {
+			times[i] = (long) (random.nextDouble() * 4102444800000L);
+			expected[i] = new ArdenTime(times[i]).toString();
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int thread = 0; thread < 8; thread++) {
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						for (int run = 0; run < 20; run++) {
+							for (int i = 0; i < times.length; i++) {
+								if (!expected[i].equals(new ArdenTime(times[i]).toString()))
+									return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results)
+				Assert.assertTrue(result.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testObjectMemberAccessWithSeveralTypes() throws Exception {
+		ObjectType lab = new ObjectType("Lab", new String[] { "Code", "Value" });
+		ObjectType vital = new ObjectType("Vital", new String[] { "Value" });
+		ArdenObject labResult = new ArdenObject(lab);
+		labResult.fields[1] = new ArdenNumber(1);
+		ArdenObject vitalSign = new ArdenObject(vital);
+		vitalSign.fields[0] = new ArdenNumber(2);
+		ArdenList objects = new ArdenList(new ArdenValue[] { labResult, vitalSign, labResult });
+
+		// resolved for the wrong type in advance
+		ObjectMemberAccess value = new ObjectMemberAccess("VALUE", vital, 0);
+		Assert.assertEquals("(1,2,1)", value.get(objects).toString());
+		Assert.assertEquals("null", new ObjectMemberAccess("CODE").get(vitalSign).toString());
+
+		value.set(objects, new ArdenNumber(3));
+		Assert.assertEquals("(3,3,3)", value.get(objects).toString());
+		Assert.assertEquals("null", labResult.fields[0].toString());
+	}
+
+	private static final class ByteArrayClassLoader extends ClassLoader {
+		public ByteArrayClassLoader() {
+			super(RuntimeTest.class.getClassLoader());
+		}
+
+		public Class<?> define(String name, byte[] data) {
+			return defineClass(name, data, 0, data.length);
+		}
+	}
+
+	@Test
+	public void testValuesFieldReadByOldCompiledCode() throws Exception {
+		// older versions of the FormattingCompiler read ArdenList.values directly
+		ClassFileWriter writer = new ClassFileWriter("OldFormatting", Object.class);
+		MethodWriter method = writer.createMethod("elements", Modifier.PUBLIC | Modifier.STATIC,
+				new Class<?>[] { ArdenValue.class }, ArdenValue[].class);
+		method.loadVariable(0);
+		method.invokeStatic(ExpressionHelpers.class.getMethod("unaryComma", ArdenValue.class));
+		method.loadInstanceField(ArdenList.class.getField("values"));
+		method.returnObjectFromFunction();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writer.save(new DataOutputStream(bytes));
+
+		Class<?> clazz = new ByteArrayClassLoader().define("OldFormatting", bytes.toByteArray());
+		Method elements = clazz.getMethod("elements", ArdenValue.class);
+		ArdenList list = ExpressionHelpers.binaryComma(new ArdenNumber(1), new ArdenString("a"));
+		Assert.assertSame(list.getElements(), elements.invoke(null, list));
+		ArdenValue[] single = (ArdenValue[]) elements.invoke(null, new ArdenNumber(2));
+		Assert.assertEquals(1, single.length);
+		Assert.assertEquals(new ArdenNumber(2), single[0]);
+	}
 }
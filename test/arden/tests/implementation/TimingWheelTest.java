@@ -0,0 +1,174 @@
+package arden.tests.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.engine.Call;
+import arden.engine.TimingWheel;
+import arden.engine.TimingWheel.Timeout;
+
+public class TimingWheelTest extends ImplementationTest {
+	private static final long SECOND = 1000;
+	private static final long DAY = 24 * 60 * 60 * SECOND;
+
+	private static class NamedCall extends Call {
+		private final String name;
+
+		NamedCall(String name) {
+			super(50);
+			this.name = name;
+		}
+
+		@Override
+		public void run() {
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static void schedule(TimingWheel wheel, Call call, long dueMillis) {
+		wheel.scheduleAt(Collections.singletonList(call), dueMillis);
+	}
+
+	@Test
+	public void testCallsAreAddedWhenDue() throws Exception {
+		List<Call> queue = new ArrayList<>();
+		TimingWheel wheel = new TimingWheel(queue, 10, 0);
+		Call soon = new NamedCall("soon");
+		Call later = new NamedCall("later");
+		Call nextMonth = new NamedCall("nextMonth");
+		schedule(wheel, soon, 5);
+		schedule(wheel, later, 90 * SECOND);
+		schedule(wheel, nextMonth, 40 * DAY + 123);
+		Assert.assertEquals(3, wheel.size());
+
+		wheel.advance(4);
+		Assert.assertTrue(queue.isEmpty());
+		wheel.advance(10);
+		Assert.assertEquals(Arrays.asList(soon), queue);
+
+		wheel.advance(90 * SECOND - 1);
+		Assert.assertEquals(1, queue.size());
+		wheel.advance(90 * SECOND);
+		Assert.assertEquals(Arrays.asList(soon, later), queue);
+
+		wheel.advance(40 * DAY);
+		Assert.assertEquals(2, queue.size());
+		wheel.advance(40 * DAY + 130);
+		Assert.assertEquals(Arrays.asList(soon, later, nextMonth), queue);
+		Assert.assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testGroupIsAddedInBulk() throws Exception {
+		List<Call> queue = new ArrayList<>();
+		TimingWheel wheel = new TimingWheel(queue, 10, 0);
+		List<Call> group = Arrays.<Call> asList(new NamedCall("a"), new NamedCall("b"), new NamedCall("c"));
+		wheel.scheduleAt(group, 3 * DAY);
+		wheel.advance(4 * DAY);
+		Assert.assertEquals(group, queue);
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		List<Call> queue = new ArrayList<>();
+		TimingWheel wheel = new TimingWheel(queue, 10, 0);
+		Call cancelled = new NamedCall("cancelled");
+		Call kept = new NamedCall("kept");
+		Timeout timeout = wheel.scheduleAt(Collections.singletonList(cancelled), 2 * DAY);
+		schedule(wheel, kept, 2 * DAY);
+
+		Assert.assertTrue(timeout.cancel());
+		Assert.assertFalse(timeout.cancel());
+		Assert.assertEquals(1, wheel.size());
+
+		wheel.advance(3 * DAY);
+		Assert.assertEquals(Arrays.asList(kept), queue);
+	}
+
+	@Test
+	public void testOverdueCallsAreAddedWithNextTick() throws Exception {
+		List<Call> queue = new ArrayList<>();
+		TimingWheel wheel = new TimingWheel(queue, 10, 0);
+		wheel.advance(DAY);
+		Call overdue = new NamedCall("overdue");
+		schedule(wheel, overdue, SECOND);
+		wheel.advance(DAY + 10);
+		Assert.assertEquals(Arrays.asList(overdue), queue);
+	}
+
+	@Test
+	public void testSkippedTicksDontLoseCalls() throws Exception {
+		List<Call> queue = new ArrayList<>();
+		TimingWheel wheel = new TimingWheel(queue, 10, 0);
+		Random random = new Random(42);
+		List<Call> calls = new ArrayList<>();
+		List<Long> dueTimes = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			// delays from milliseconds to months, many near cascade boundaries
+			long due = random.nextInt(4) == 0 ? (random.nextInt(64) + 1) * 2560L : (long) (random.nextDouble()
+					* random.nextDouble() * 60 * DAY);
+			Call call = new NamedCall("call" + i);
+			schedule(wheel, call, due);
+			calls.add(call);
+			dueTimes.add(due);
+		}
+
+		long now = 0;
+		while (wheel.size() > 0) {
+			now += random.nextInt(3) == 0 ? random.nextInt(1000) : (long) (random.nextDouble() * DAY);
+			wheel.advance(now);
+			for (int i = 0; i < calls.size(); i++) {
+				long due = dueTimes.get(i);
+				// calls are added with the first tick at or after their time
+				boolean isDue = (due + 9) / 10 * 10 <= now;
+				Assert.assertEquals(calls.get(i).toString(), isDue, queue.contains(calls.get(i)));
+			}
+		}
+		Assert.assertEquals(calls.size(), queue.size());
+	}
+
+	@Test
+	public void testThreadWakesUpForEarlierCalls() throws Exception {
+		final CountDownLatch added = new CountDownLatch(2);
+		List<Call> queue = new ArrayList<Call>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public synchronized boolean addAll(Collection<? extends Call> calls) {
+				for (int i = 0; i < calls.size(); i++) {
+					added.countDown();
+				}
+				return super.addAll(calls);
+			}
+		};
+		TimingWheel wheel = new TimingWheel(queue, 1, System.currentTimeMillis());
+		Thread thread = new Thread(wheel);
+		thread.start();
+		try {
+			wheel.schedule(new NamedCall("tomorrow"), DAY);
+			Thread.sleep(20);
+			// the thread waits for the cascade of tomorrow's call and has to
+			// wake up earlier for these calls
+			wheel.schedule(new NamedCall("soon"), 50);
+			wheel.schedule(new NamedCall("later"), 100);
+			Assert.assertTrue(added.await(10, TimeUnit.SECONDS));
+			Assert.assertEquals(1, wheel.size());
+		} finally {
+			thread.interrupt();
+			thread.join();
+		}
+	}
+}
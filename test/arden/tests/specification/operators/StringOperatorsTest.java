@@ -31,9 +31,7 @@ public class StringOperatorsTest extends SpecificationTest {
 	public void testFormattedWith() throws Exception {
 		assertEvaluatesTo("(1,2,3.3) formatted with \"%2.2d::%2.2d::%2.2d\"", "\"01::02::03\"");
 		assertEvaluatesTo("10.60528 formatted with \"The result was %.2f mg\"", "\"The result was 10.61 mg\"");
-		// TODO how to check implementation independent
-		// assertEvaluatesTo("1998-01-10T17:25:00 formatted with \"The date was
-		// %.2t\"", "\"The date was Jan 10 1998\"");
+		assertEvaluatesTo("1998-01-10T17:25:00 formatted with \"The date was %.2t\"", "\"The date was Jan 10 1998\"");
 		assertEvaluatesTo("1998-01-10T17:25:00 formatted with \"The year was %.0t\"", "\"The year was 1998\"");
 		assertEvaluatesTo("(\"ten\", \"twenty\", \"thirty\") formatted with \"%s, %s, %s or more\"", "\"ten, twenty, thirty or more\"");
 		assertEvaluatesTo("1 formatted with \"-%2.2d%%-\"", "\"-01%-\"");
@@ -80,6 +78,12 @@ public class StringOperatorsTest extends SpecificationTest {
 		assertEvaluatesTo("(\"stunned myocardium\", \"myocardial infarction\") MATCHES PATTERN \"%myocardium\"", "(TRUE,FALSE)");
 		assertEvaluatesTo("\"5%\" MATCHES PATTERN \"_\\%\"", "TRUE");
 		assertEvaluatesToWithData(createData(), "TIME (x MATCHES PATTERN \"%hello%\")", "NULL");
+		assertEvaluatesTo("\"fatal heart attack\" MATCHES PATTERN \"%HEART%\"", "TRUE");
+		assertEvaluatesTo("(\"Fatal\", \"fat\", \"fatal heart\") MATCHES PATTERN \"fatal%\"", "(TRUE,FALSE,TRUE)");
+		assertEvaluatesTo("(\"Fatal\", \"fatale\") MATCHES PATTERN \"FATAL\"", "(TRUE,FALSE)");
+		assertEvaluatesTo("(\"\", \"abc\") MATCHES PATTERN \"%%\"", "(TRUE,TRUE)");
+		assertEvaluatesTo("\"fatal heart attack\" MATCHES PATTERN (\"%\" || \"heart\" || \"%\")", "TRUE");
+		assertEvaluatesTo("\"fatal heart attack\" MATCHES PATTERN 5", "NULL");
 	}
 
 	@Test
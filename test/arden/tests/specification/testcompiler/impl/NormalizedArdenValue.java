@@ -31,8 +31,9 @@ class NormalizedArdenValue extends ArdenValue {
 		if (value instanceof ArdenList) {
 			// convert child elements
 			ArdenList list = (ArdenList) value;
-			for (int i = 0; i < list.values.length; i++) {
-				list.values[i] = new NormalizedArdenValue(list.values[i]);
+			ArdenValue[] values = list.getElements();
+			for (int i = 0; i < values.length; i++) {
+				values[i] = new NormalizedArdenValue(values[i]);
 			}
 			return list.toString();
 		} else if (value instanceof ArdenObject) {